@@ -50,7 +50,15 @@ public class AppConfig {
     	URL url = RoutingProfileManager.class.getClassLoader().getResource("../app.config");
 		if(System.getenv("ORS_APP_CONFIG") != null)
 			url = RoutingProfileManager.class.getClassLoader().getResource("../" + System.getenv("ORS_APP_CONFIG"));
-    	
+
+		if (url == null)
+		{
+			// no app.config on the class path, e.g. in unit tests; the settings keep their defaults
+			LOGGER.warn("app.config not found, default settings are used.");
+			_config = ConfigFactory.empty();
+			return;
+		}
+
     	File file = new File(url.getPath());
 		_config = ConfigFactory.parseFile(file);
 
@@ -13,23 +13,27 @@
  */
 package heigit.ors.isochrones;
 
-import com.carrotsearch.hppc.IntObjectMap;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.HintsMap;
-import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
 import com.graphhopper.storage.GraphHopperStorage;
-import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.storage.index.QueryResult;
 import com.vividsolutions.jts.geom.Coordinate;
 import heigit.ors.common.TravelRangeType;
 import heigit.ors.exceptions.InternalServerException;
 import heigit.ors.routing.RouteSearchContext;
 import heigit.ors.routing.RouteSearchParameters;
-import heigit.ors.routing.algorithms.DijkstraCostCondition;
+import heigit.ors.routing.algorithms.RangeDijkstra;
+import heigit.ors.routing.algorithms.RangePHAST;
 import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.EdgeFilterSequence;
 import heigit.ors.routing.graphhopper.extensions.weighting.DistanceWeighting;
 
 public class GraphEdgeMapFinder {
@@ -39,13 +43,11 @@ public class GraphEdgeMapFinder {
 	    FlagEncoder encoder = searchCntx.getEncoder();
 		GraphHopperStorage graph = gh.getGraphHopperStorage();
 
-		Coordinate loc = parameters.getLocation();
-		QueryResult res = gh.getLocationIndex().findClosest(loc.y, loc.x, searchCntx.getEdgeFilter());
-		int fromId = res.getClosestNode();
-
+		// the caller may have resolved the node already, e.g. to look up the isochrone cache
+		int fromId = parameters.getStartNode();
 		if (fromId == -1)
-			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "The closest node is null.");
-	
+			fromId = findStartNode(searchCntx, parameters.getLocation());
+
 		Weighting weighting = null;
 		
 		if (parameters.getRangeType() == TravelRangeType.Time)
@@ -65,14 +67,72 @@ public class GraphEdgeMapFinder {
 		{
 			weighting  = new DistanceWeighting(encoder);
 		}
-		// IMPORTANT: It only works with TraversalMode.NODE_BASED.
-		DijkstraCostCondition dijkstraAlg = new DijkstraCostCondition(graph, weighting, parameters.getMaximumRange(), parameters.getReverseDirection(),
-				TraversalMode.NODE_BASED);
+
+		if (parameters.getRangeType() == TravelRangeType.Time && gh instanceof ORSGraphHopper)
+		{
+			RangePHAST phastAlg = createPHAST((ORSGraphHopper) gh, searchCntx, weighting, parameters);
+			if (phastAlg != null)
+				return new AccessibilityMap(phastAlg.run(fromId));
+		}
+
+		RangeDijkstra dijkstraAlg = new RangeDijkstra(graph, weighting, parameters.getMaximumRange(), parameters.getReverseDirection());
 		dijkstraAlg.setEdgeFilter(searchCntx.getEdgeFilter());
-		dijkstraAlg.calcPath(fromId, Integer.MIN_VALUE);
 
-		IntObjectMap<SPTEntry> edgeMap = dijkstraAlg.getMap();
+		return new AccessibilityMap(dijkstraAlg.run(fromId));
+	}
+
+	/**
+	 * Creates a PHAST search if the profile has contraction hierarchies prepared for the weighting of the search and
+	 * the search has no restrictions beyond the access flags of the encoder, or returns null otherwise.
+	 */
+	private static RangePHAST createPHAST(ORSGraphHopper gh, RouteSearchContext searchCntx, Weighting weighting, IsochroneSearchParameters parameters)
+	{
+		RouteSearchParameters routeParams = parameters.getRouteParameters();
+		if (!gh.isCHEnabled() || (routeParams != null && routeParams.getMaximumSpeed() > 0) || !isDefaultEdgeFilter(searchCntx.getEdgeFilter()))
+			return null;
+
+		HintsMap hints = new HintsMap().setWeighting("fastest").setVehicle(searchCntx.getEncoder().toString());
+		for (PrepareContractionHierarchies pch : gh.getCHFactoryDecorator().getPreparations())
+		{
+			// e.g. a prepared PriorityWeighting is also named fastest, but its weights are no travel times
+			if (pch.getWeighting().matches(hints) && pch.getWeighting().getClass() == FastestWeighting.class)
+			{
+				GraphHopperStorage graph = gh.getGraphHopperStorage();
+				CHGraph chGraph = graph.getGraph(CHGraph.class, pch.getWeighting());
+
+				return new RangePHAST(chGraph, pch.getPrepareWeighting(), graph.getBaseGraph(), weighting,
+						parameters.getMaximumRange(), parameters.getReverseDirection());
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean isDefaultEdgeFilter(EdgeFilter edgeFilter)
+	{
+		if (edgeFilter instanceof EdgeFilterSequence)
+		{
+			for (EdgeFilter filter : (EdgeFilterSequence) edgeFilter)
+			{
+				if (!(filter instanceof DefaultEdgeFilter))
+					return false;
+			}
+			return true;
+		}
+
+		return edgeFilter == null || edgeFilter instanceof DefaultEdgeFilter;
+	}
+
+	/**
+	 * Returns the graph node closest to the location from which the isochrone search starts.
+	 */
+	public static int findStartNode(RouteSearchContext searchCntx, Coordinate loc) throws Exception {
+		QueryResult res = searchCntx.getGraphHopper().getLocationIndex().findClosest(loc.y, loc.x, searchCntx.getEdgeFilter());
+		int fromId = res.getClosestNode();
+
+		if (fromId == -1)
+			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "The closest node is null.");
 
-		return new AccessibilityMap(edgeMap, dijkstraAlg.getCurrentEdge());
+		return fromId;
 	}
 }
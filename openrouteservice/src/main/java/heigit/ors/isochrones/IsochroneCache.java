@@ -0,0 +1,203 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones;
+
+import heigit.ors.routing.RouteSearchParameters;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of isochrone maps of one graph, keyed by the node the location snaps to and the parameters that
+ * affect the geometry of the isochrones. The cache is bounded by the estimated memory of its maps.
+ * <p>
+ * Maps are copied when they are stored and when they are returned, so that the attributes computed for one
+ * request do not leak into another. The copies share the geometries, which are never modified.
+ */
+public class IsochroneCache {
+	// rough size of a coordinate in a polygon: the object itself and the reference to it
+	private static final long BYTES_PER_COORDINATE = 56;
+	private static final long BYTES_PER_ENTRY = 512;
+
+	private static class Key {
+		private final int _node;
+		private final boolean _reverse;
+		private final String _rangeType;
+		private final double[] _ranges;
+		private final String _calcMethod;
+		private final float _smoothingFactor;
+		private final String _routeParameters;
+		private final int _hashCode;
+
+		public Key(int node, IsochroneSearchParameters parameters) {
+			_node = node;
+			_reverse = Boolean.TRUE.equals(parameters.getReverseDirection());
+			_rangeType = parameters.getRangeType().toString();
+			_ranges = parameters.getRanges().clone();
+			_calcMethod = parameters.getCalcMethod() == null ? "" : parameters.getCalcMethod().toLowerCase();
+			_smoothingFactor = parameters.getSmoothingFactor();
+			_routeParameters = getRouteParametersKey(parameters.getRouteParameters());
+
+			int hash = 31 * node + (_reverse ? 1 : 0);
+			hash = 31 * hash + _rangeType.hashCode();
+			hash = 31 * hash + Arrays.hashCode(_ranges);
+			hash = 31 * hash + _calcMethod.hashCode();
+			hash = 31 * hash + Float.floatToIntBits(_smoothingFactor);
+			_hashCode = 31 * hash + _routeParameters.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return _hashCode == other._hashCode && _node == other._node && _reverse == other._reverse
+					&& _smoothingFactor == other._smoothingFactor && _rangeType.equals(other._rangeType)
+					&& Arrays.equals(_ranges, other._ranges) && _calcMethod.equals(other._calcMethod)
+					&& _routeParameters.equals(other._routeParameters);
+		}
+	}
+
+	private static class Entry {
+		private final IsochroneMap _map;
+		private final long _size;
+
+		public Entry(IsochroneMap map, long size) {
+			_map = map;
+			_size = size;
+		}
+	}
+
+	private final long _maximumSize;
+	private final Map<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long _size;
+	private long _hits;
+	private long _misses;
+
+	/**
+	 * @param maximumSize the estimated memory (in bytes) the cached maps may take
+	 */
+	public IsochroneCache(long maximumSize) {
+		_maximumSize = maximumSize;
+	}
+
+	/**
+	 * Isochrones which depend on the current traffic situation are not cached.
+	 */
+	public static boolean isCacheable(IsochroneSearchParameters parameters) {
+		RouteSearchParameters routeParams = parameters.getRouteParameters();
+		return routeParams == null || !Boolean.TRUE.equals(routeParams.getConsiderTraffic());
+	}
+
+	/**
+	 * Returns a copy of the map built for the given start node and parameters, centered at the location of the
+	 * parameters, or null if there is none.
+	 */
+	public synchronized IsochroneMap get(int node, IsochroneSearchParameters parameters) {
+		Entry entry = _entries.get(new Key(node, parameters));
+
+		if (entry == null) {
+			_misses++;
+			return null;
+		}
+
+		_hits++;
+		return copy(entry._map, parameters.getTravellerId(), parameters);
+	}
+
+	public synchronized void put(int node, IsochroneSearchParameters parameters, IsochroneMap map) {
+		long size = BYTES_PER_ENTRY;
+		for (Isochrone isochrone : map.getIsochrones())
+			size += BYTES_PER_COORDINATE * isochrone.getGeometry().getNumPoints();
+
+		if (size > _maximumSize)
+			return;
+
+		Entry old = _entries.put(new Key(node, parameters), new Entry(copy(map, map.getTravellerId(), parameters), size));
+		if (old != null)
+			_size -= old._size;
+		_size += size;
+
+		Iterator<Entry> iter = _entries.values().iterator();
+		while (_size > _maximumSize && iter.hasNext()) {
+			_size -= iter.next()._size;
+			iter.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		_entries.clear();
+		_size = 0;
+	}
+
+	public synchronized int getEntriesCount() {
+		return _entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory (in bytes) of the cached maps.
+	 */
+	public synchronized long getSize() {
+		return _size;
+	}
+
+	public synchronized long getHits() {
+		return _hits;
+	}
+
+	public synchronized long getMisses() {
+		return _misses;
+	}
+
+	private static IsochroneMap copy(IsochroneMap map, int travellerId, IsochroneSearchParameters parameters) {
+		IsochroneMap result = new IsochroneMap(travellerId, parameters.getLocation());
+		for (Isochrone isochrone : map.getIsochrones())
+			result.addIsochrone(new Isochrone(isochrone.getGeometry(), isochrone.getValue(), isochrone.getMaxRadius(null)));
+
+		return result;
+	}
+
+	/**
+	 * Describes the route parameters that affect the search. Avoid polygons and profile parameters are part of the
+	 * options.
+	 */
+	private static String getRouteParametersKey(RouteSearchParameters routeParams) {
+		if (routeParams == null)
+			return "";
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(routeParams.getProfileType()).append('|');
+		sb.append(routeParams.getWeightingMethod()).append('|');
+		sb.append(routeParams.getConsiderTurnRestrictions()).append('|');
+		sb.append(routeParams.getMaximumSpeed()).append('|');
+		sb.append(routeParams.getAvoidFeatureTypes()).append('|');
+		sb.append(routeParams.getVehicleType()).append('|');
+		sb.append(Arrays.toString(routeParams.getAvoidCountries())).append('|');
+		sb.append(routeParams.getAvoidBorders()).append('|');
+		sb.append(routeParams.getFlexibleMode()).append('|');
+		sb.append(routeParams.getOptions());
+
+		return sb.toString();
+	}
+}
@@ -17,6 +17,7 @@ import heigit.ors.isochrones.IsochroneSearchParameters;
 import heigit.ors.isochrones.builders.IsochroneMapBuilder;
 import heigit.ors.isochrones.builders.concaveballs.ConcaveBallsIsochroneMapBuilder;
 import heigit.ors.isochrones.builders.grid.GridBasedIsochroneMapBuilder;
+import heigit.ors.isochrones.builders.raster.RasterIsochroneMapBuilder;
 import heigit.ors.routing.RouteSearchContext;
 
 import com.graphhopper.util.Helper;
@@ -40,6 +41,10 @@ public class IsochroneMapBuilderFactory {
         {
         	isochroneBuilder= new GridBasedIsochroneMapBuilder();
         }
+        else if ("Raster".equalsIgnoreCase(method))
+        {
+        	isochroneBuilder = new RasterIsochroneMapBuilder();
+        }
         else
         {
 			throw new Exception("Unknown method.");
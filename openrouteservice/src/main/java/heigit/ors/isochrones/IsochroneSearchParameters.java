@@ -27,6 +27,7 @@ public class IsochroneSearchParameters {
 	private RouteSearchParameters _parameters;
 	private String _calcMethod;
 	private float _smoothingFactor = -1.0f;
+	private int _startNode = -1;
 
 	public IsochroneSearchParameters(int travellerId, Coordinate location, double[] ranges) {
 		_travellerId = travellerId;
@@ -47,6 +48,20 @@ public class IsochroneSearchParameters {
 	public void setLocation(Coordinate location)
 	{
 		_location = location;
+		_startNode = -1;
+	}
+
+	/**
+	 * Returns the graph node closest to the location if it has been resolved already, or -1 otherwise.
+	 */
+	public int getStartNode()
+	{
+		return _startNode;
+	}
+
+	public void setStartNode(int startNode)
+	{
+		_startNode = startNode;
 	}
 
 	public Boolean getReverseDirection()
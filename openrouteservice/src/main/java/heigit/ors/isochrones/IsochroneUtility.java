@@ -14,15 +14,153 @@
 package heigit.ors.isochrones;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+import org.apache.log4j.Logger;
+
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 import heigit.ors.common.Pair;
+import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.isochrones.statistics.StatisticsCache;
+import heigit.ors.isochrones.statistics.StatisticsProvider;
+import heigit.ors.isochrones.statistics.StatisticsProviderConfiguration;
+import heigit.ors.isochrones.statistics.StatisticsProviderFactory;
+import heigit.ors.services.isochrones.IsochronesServiceSettings;
 
 public class IsochroneUtility {
+	private static final Logger LOGGER = Logger.getLogger(IsochroneUtility.class.getName());
+
+	private static StatisticsCache _statisticsCache;
+	private static boolean _statisticsCacheInitialized;
+
+	/**
+	 * Computes the statistics attributes of all isochrones of the collection. The isochrones are passed to each
+	 * provider in one batch, results of geometries seen before are taken from the statistics cache.
+	 * <p>
+	 * Whenever the attributes contain total_pop, total_area_km is computed as well and vice versa.
+	 *
+	 * @param isochroneMaps The {@link IsochroneMapCollection} holding the isochrones
+	 * @param attributes The attributes are a {@link String}[] holding the set attributes from the api query
+	 * @throws Exception
+	 */
+	public static void computeAttributes(IsochroneMapCollection isochroneMaps, String[] attributes) throws Exception
+	{
+		if (attributes == null || isochroneMaps.getIsochronesCount() == 0)
+			return;
+
+		List<Isochrone> isochrones = new ArrayList<Isochrone>(isochroneMaps.getIsochronesCount());
+		for (IsochroneMap isoMap : isochroneMaps.getIsochroneMaps())
+		{
+			for (Isochrone isoLine : isoMap.getIsochrones())
+				isochrones.add(isoLine);
+		}
+
+		try
+		{
+			Map<StatisticsProviderConfiguration, List<String>> mapProviderToAttrs = new HashMap<StatisticsProviderConfiguration, List<String>>();
+			for (String attr : getRequiredAttributes(attributes))
+			{
+				StatisticsProviderConfiguration provConfig = IsochronesServiceSettings.getStatsProviders().get(attr);
+
+				if (provConfig != null)
+				{
+					List<String> attrList = mapProviderToAttrs.get(provConfig);
+					if (attrList == null)
+					{
+						attrList = new ArrayList<String>();
+						mapProviderToAttrs.put(provConfig, attrList);
+					}
+					attrList.add(attr);
+				}
+			}
+
+			StatisticsCache cache = getStatisticsCache();
+
+			for (Map.Entry<StatisticsProviderConfiguration, List<String>> entry : mapProviderToAttrs.entrySet())
+			{
+				StatisticsProviderConfiguration provConfig = entry.getKey();
+				StatisticsProvider provider = StatisticsProviderFactory.getProvider(provConfig.getName(), provConfig.getParameters());
+				String[] provAttrs = provConfig.getMappedProperties(entry.getValue());
+
+				double[][] attrValues = new double[isochrones.size()][];
+				List<Isochrone> missing = new ArrayList<Isochrone>();
+				for (int i = 0; i < attrValues.length; i++)
+				{
+					if (cache != null)
+						attrValues[i] = cache.get(provConfig.getName(), provAttrs, isochrones.get(i).getGeometry());
+					if (attrValues[i] == null)
+						missing.add(isochrones.get(i));
+				}
+
+				if (!missing.isEmpty())
+				{
+					double[][] values = provider.getStatistics(missing, provAttrs);
+					int j = 0;
+					for (int i = 0; i < attrValues.length; i++)
+					{
+						if (attrValues[i] == null)
+						{
+							attrValues[i] = values[j++];
+							if (cache != null)
+								cache.put(provConfig.getName(), provAttrs, isochrones.get(i).getGeometry(), attrValues[i]);
+						}
+					}
+				}
+
+				for (int i = 0; i < attrValues.length; i++)
+					isochrones.get(i).setAttributes(entry.getValue(), attrValues[i], provConfig.getAttribution());
+			}
+		}
+		catch (Exception ex)
+		{
+			LOGGER.error(ex);
+
+			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to compute isochrone attributes.");
+		}
+	}
+
+	private static String[] getRequiredAttributes(String[] attributes)
+	{
+		// If total_pop is set, total_area_km must always be set as well and vice versa.
+		List<String> attrList = Arrays.asList(attributes);
+		boolean hasPop = attrList.contains("total_pop");
+		boolean hasArea = attrList.contains("total_area_km");
+
+		if (hasPop && !hasArea)
+		{
+			String[] result = Arrays.copyOf(attributes, attributes.length + 1);
+			result[attributes.length] = "total_area_km";
+			return result;
+		}
+		else if (hasArea && !hasPop)
+		{
+			String[] result = Arrays.copyOf(attributes, attributes.length + 1);
+			result[attributes.length] = "total_pop";
+			return result;
+		}
+
+		return attributes;
+	}
+
+	private static synchronized StatisticsCache getStatisticsCache()
+	{
+		if (!_statisticsCacheInitialized)
+		{
+			int size = IsochronesServiceSettings.getStatisticsCacheSize();
+			if (size > 0)
+				_statisticsCache = new StatisticsCache(size);
+			_statisticsCacheInitialized = true;
+		}
+
+		return _statisticsCache;
+	}
+
 	public static List<IsochronesIntersection> computeIntersections(IsochroneMapCollection isochroneMaps)
 	{
 		if (isochroneMaps.size() == 1)
@@ -0,0 +1,42 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import heigit.ors.services.isochrones.IsochronesServiceSettings;
+import heigit.ors.util.BoundedExecutor;
+
+/**
+ * Bounded pool shared by all isochrone requests for building the maps of several travellers concurrently.
+ */
+public class ParallelIsochroneExecutor {
+	private static final BoundedExecutor EXECUTOR = new BoundedExecutor(IsochronesServiceSettings.getParallelThreads());
+
+	/**
+	 * Returns how many of the {@code locationsCount} travellers of a single request may be processed at the same time.
+	 */
+	public static int getConcurrency(int locationsCount) {
+		int concurrency = Math.min(IsochronesServiceSettings.getMaximumParallelLocations(), IsochronesServiceSettings.getParallelThreads());
+		return Math.max(1, Math.min(concurrency, locationsCount));
+	}
+
+	/**
+	 * Runs the tasks in the pool and waits for all of them. The first failure is rethrown.
+	 */
+	public static void invokeAll(List<Callable<Void>> tasks) throws Exception {
+		EXECUTOR.invokeAll(tasks);
+	}
+}
@@ -13,12 +13,9 @@
  */
 package heigit.ors.isochrones.builders.concaveballs;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
-import com.graphhopper.coll.GHIntObjectHashMap;
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
-import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.util.*;
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
@@ -32,9 +29,10 @@ import heigit.ors.routing.RouteSearchContext;
 import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
 import heigit.ors.util.GeomUtility;
 import org.apache.log4j.Logger;
-import org.opensphere.geometry.algorithm.ConcaveHull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.TreeSet;
 
@@ -48,6 +46,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 	private Envelope searchEnv = new Envelope();
 	private GeometryFactory _geomFactory;
 	private PointItemVisitor visitor = null;
+	private DistanceCalc dcFast = new DistancePlaneProjection();
 	private List<Coordinate> prevIsoPoints = null;
     private TreeSet<Coordinate>_treeSet;
 	private RouteSearchContext _searchContext;
@@ -87,9 +86,13 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 		if (edgeMap.isEmpty())
 			return isochroneMap;
 
+		// the point index grows with the ranges, since the points of a range are inside all following ones
 		_treeSet = new TreeSet<Coordinate>();
+		Quadtree qtree = new Quadtree();
+		IntArrayList crossingEdges = new IntArrayList();
+		prevIsoPoints = null;
 
-		List<Coordinate> isoPoints = new ArrayList<Coordinate>((int)(1.2*edgeMap.getMap().size()));
+		List<Coordinate> isoPoints = new ArrayList<Coordinate>((int)(1.2*edgeMap.size()));
 
 		if (LOGGER.isDebugEnabled())
 		{
@@ -97,12 +100,19 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 			sw.start();
 		}
 
-		markDeadEndEdges(edgeMap);
+		BitSet deadEnds = findDeadEndEdges(edgeMap);
+
+		// Sorting the edges by start cost once lets each range visit only the edges starting in it and the ones
+		// crossing the previous isoline instead of the whole map.
+		int[] edges = getEdgesSortedByCost(edgeMap);
+		float[] edgeCosts = new float[edges.length];
+		for (int i = 0; i < edges.length; i++)
+			edgeCosts[i] = (float) edgeMap.getWeight(edgeMap.getParent(edges[i]));
 
 		if (LOGGER.isDebugEnabled())
 		{
 			sw.stop();
-			LOGGER.debug("Mark dead ends: " + sw.getSeconds());
+			LOGGER.debug("Mark dead ends and sort edges: " + sw.getSeconds());
 		}
 
 		int nRanges = parameters.getRanges().length;
@@ -120,13 +130,13 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 				sw.start();
 			}
 
-			GeometryCollection points = buildIsochrone(edgeMap, isoPoints, loc.x, loc.y, isoValue, prevCost,maxSpeed, 0.85);
+			crossingEdges = buildIsochrone(edgeMap, edges, edgeCosts, deadEnds, crossingEdges, qtree, isoPoints, loc.x, loc.y, isoValue, prevCost, 0.85);
 
 			if (LOGGER.isDebugEnabled())
 			{
 				//	 savePoints(points, "D:\\isochrones3.shp");
 				sw.stop();
-				LOGGER.debug(i + " Find points: " + sw.getSeconds() + " " + points.getNumGeometries());
+				LOGGER.debug(i + " Find points: " + sw.getSeconds() + " " + isoPoints.size());
 
 				sw = new StopWatch();
 				sw.start();
@@ -134,10 +144,10 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 
 			switch(isochroneType) {
 				case Distance:
-					addIsochrone(isochroneMap, points, isoValue, isoValue, smoothingFactor);
+					addIsochrone(isochroneMap, isoPoints, isoValue, isoValue, smoothingFactor);
 					break;
 				case Time:
-					addIsochrone(isochroneMap, points, isoValue, metersPerSecond * isoValue, smoothingFactor);
+					addIsochrone(isochroneMap, isoPoints, isoValue, metersPerSecond * isoValue, smoothingFactor);
 					break;
 			}
 
@@ -163,7 +173,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 	 * @param maxRadius			The maximum radius of the isochrone (in metres)
 	 * @return
 	 */
-	private double convertSmoothingFactorToDistance(float smoothingFactor, double maxRadius)
+	static double convertSmoothingFactorToDistance(float smoothingFactor, double maxRadius)
 	{
 		if(smoothingFactor == -1) {
 			// No user defined smoothing factor, so use a default length (~1333m)
@@ -180,49 +190,100 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 		return maxLength;
 	}
 
-	private void addIsochrone(IsochroneMap isochroneMap, GeometryCollection points, double isoValue, double maxRadius, float smoothingFactor)
+	private void addIsochrone(IsochroneMap isochroneMap, List<Coordinate> points, double isoValue, double maxRadius, float smoothingFactor)
 	{
 		if (points.isEmpty())
 			return;
 
-		ConcaveHull ch = new ConcaveHull(points, convertSmoothingFactorToDistance(smoothingFactor, maxRadius), false);
-		Geometry geom = ch.getConcaveHull();
-
-		if (geom instanceof GeometryCollection)
+		double[] coords = new double[points.size() * 2];
+		for (int i = 0; i < points.size(); ++i)
 		{
-			GeometryCollection geomColl = (GeometryCollection)geom;
-			if (geomColl.isEmpty())
-				return;
+			Coordinate c = points.get(i);
+			coords[2 * i] = c.x;
+			coords[2 * i + 1] = c.y;
+		}
+
+		int[] ring = new FastConcaveHull(coords, convertSmoothingFactorToDistance(smoothingFactor, maxRadius)).getRing();
+
+		// the points do not span an area, so they are all passed on to the hull of the next range
+		if (ring.length < 3) {
+			prevIsoPoints = new ArrayList<Coordinate>(points);
+			return;
 		}
 
-		Polygon poly = (Polygon)geom;
+		Coordinate[] shell = new Coordinate[ring.length + 1];
+		for (int i = 0; i < ring.length; ++i)
+			shell[i] = new Coordinate(coords[2 * ring[i]], coords[2 * ring[i] + 1]);
+		shell[ring.length] = new Coordinate(shell[0]);
+
+		Polygon poly = _geomFactory.createPolygon(_geomFactory.createLinearRing(shell), null);
 
 		copyConvexHullPoints(poly);
 
 		isochroneMap.addIsochrone(new Isochrone(poly, isoValue, maxRadius));
 	}
 
-	private void markDeadEndEdges(AccessibilityMap edgeMap)
+	/**
+	 * Returns the tree entries whose node is not the parent of any other entry.
+	 */
+	private BitSet findDeadEndEdges(AccessibilityMap edgeMap)
 	{
-		IntObjectMap<SPTEntry> map = edgeMap.getMap();
-		IntObjectMap<Integer> result = new GHIntObjectHashMap<Integer>(map.size()/20);
+		int size = edgeMap.size();
+		BitSet deadEnds = new BitSet(size);
+		deadEnds.set(1, size);
+
+		for (int i = 1; i < size; i++)
+			deadEnds.clear(edgeMap.getParent(i));
 
-		for (IntObjectCursor<SPTEntry> entry : map) {
-			SPTEntry  edge = entry.value;
-			if (edge.originalEdge == -1)
+		return deadEnds;
+	}
+
+	/**
+	 * Returns the indices of all tree entries except the root, ordered by the cost of their parent.
+	 */
+	private int[] getEdgesSortedByCost(AccessibilityMap edgeMap)
+	{
+		int maxNodeId = _searchContext.getGraphHopper().getGraphHopperStorage().getNodes();
+		int size = edgeMap.size();
+
+		// costs are not negative, so the bits of a float sort like its value
+		long[] keys = new long[size];
+		int count = 0;
+		for (int i = 1; i < size; i++) {
+			int nodeId = edgeMap.getNode(i);
+			if (edgeMap.getEdge(i) == -1 || nodeId == -1 || nodeId > maxNodeId)
 				continue;
 
-			result.put(edge.parent.originalEdge, 1);
+			float cost = (float) edgeMap.getWeight(edgeMap.getParent(i));
+			keys[count++] = ((long) Float.floatToIntBits(cost) << 32) | i;
 		}
 
-		for (IntObjectCursor<SPTEntry> entry : map) {
-			SPTEntry  edge = entry.value;
-			if (edge.originalEdge == -1)
-				continue;
+		Arrays.sort(keys, 0, count);
 
-			if (!result.containsKey(edge.originalEdge))
-				edge.edge =-2;
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++)
+			result[i] = (int) keys[i];
+
+		return result;
+	}
+
+	/**
+	 * Returns the index of the first edge whose start cost is not lower than the given cost.
+	 */
+	private int findFirstEdge(float[] edgeCosts, double cost)
+	{
+		int low = 0;
+		int high = edgeCosts.length;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (edgeCosts[mid] < cost)
+				low = mid + 1;
+			else
+				high = mid;
 		}
+
+		return low;
 	}
 
 	public Boolean addPoint(List<Coordinate> points, Quadtree tree, double lon, double lat, boolean checkNeighbours) {
@@ -289,183 +350,172 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 		} 
 	}
 
-	private GeometryCollection buildIsochrone(AccessibilityMap edgeMap, List<Coordinate> points, double lon, double lat,
-			double isolineCost, double prevCost,  double maxSpeed, double detailedGeomFactor) {
-		IntObjectMap<SPTEntry> map = edgeMap.getMap();
-
+	/**
+	 * Adds the points of the edges starting below the isoline to the point index. The index and the edges crossing
+	 * the previous isoline are carried over from the previous range, so a range only visits the edges starting in it
+	 * and the ones still crossing, and {@code points} only receives the ring of the previous isochrone and the points
+	 * which are new. Returns the positions of the edges which cross the isoline and reach into the next range.
+	 */
+	private IntArrayList buildIsochrone(AccessibilityMap edgeMap, int[] edges, float[] edgeCosts, BitSet deadEnds, IntArrayList crossingEdges,
+			Quadtree qtree, List<Coordinate> points, double lon, double lat, double isolineCost, double prevCost, double detailedGeomFactor) {
 		points.clear();
-		_treeSet.clear();
 
 		if (prevIsoPoints != null)
 			points.addAll(prevIsoPoints);
 
-		GraphHopperStorage graph = _searchContext.getGraphHopper().getGraphHopperStorage();
-		NodeAccess nodeAccess = graph.getNodeAccess();
-		int maxNodeId = graph.getNodes();
+		searchWidth = 0.0008;
+		pointWidth = 0.005;
+		visitorThreshold = 0.0035;
 
-		SPTEntry edgeEntry = edgeMap.getEdgeEntry();
-		SPTEntry goalEdge = edgeEntry;
+		// make results a bit more precise for regions with low data density
+		if (edgeMap.size() < 10000)
+			visitorThreshold = 0.0025;
 
-		DistanceCalc dcFast = new DistancePlaneProjection();
-		double bufferSize = 0.0018;
-		Quadtree qtree = new Quadtree();
 		visitor = new PointItemVisitor(lon, lat, visitorThreshold);
 		double detailedZone = isolineCost * detailedGeomFactor;
+		IntArrayList stillCrossing = new IntArrayList();
 
-		double defaultSearchWidth = 0.0008;
-		double defaulPointWidth =  0.005;
-		double defaultVisitorThreshold = 0.0035;
-		
-		// make results a bit more precise for regions with low data density
-		if (map.size() < 10000)
-		{
-			defaultSearchWidth = 0.0008;
-			defaulPointWidth = 0.005;
-			defaultVisitorThreshold = 0.0025;  
+		// the points of these edges up to the previous isoline are in the index already
+		for (int i = 0; i < crossingEdges.size(); i++) {
+			int k = crossingEdges.get(i);
+			if (addEdgePoints(edgeMap, edges[k], edgeCosts[k], deadEnds, qtree, points, isolineCost, detailedZone))
+				stillCrossing.add(k);
 		}
-		
-		int nodeId, edgeId;
-
-		for (IntObjectCursor<SPTEntry> entry : map) {
-			goalEdge = entry.value;
-			edgeId = goalEdge.originalEdge;
 
-			if (edgeId == -1)
-				continue;
+		// edges starting below prevCost have been considered in the previous step
+		for (int k = findFirstEdge(edgeCosts, prevCost); k < edges.length; k++) {
+			// the remaining edges start beyond the isoline and belong to the next ranges
+			if (edgeCosts[k] >= isolineCost)
+				break;
 
-			nodeId = goalEdge.adjNode;
+			if (addEdgePoints(edgeMap, edges[k], edgeCosts[k], deadEnds, qtree, points, isolineCost, detailedZone))
+				stillCrossing.add(k);
+		}
 
-			if (nodeId == -1 || nodeId > maxNodeId)
-				continue;
-			
-			EdgeIteratorState iter = graph.getEdgeIteratorState(edgeId, nodeId);
+		return stillCrossing;
+	}
 
-			float maxCost = (float) (goalEdge.weight);
-			float minCost = (float) (goalEdge.parent.weight);
+	/**
+	 * Adds the points of the tree entry with the given index, as far as they are below the isoline, and returns true if
+	 * the edge crosses the isoline.
+	 */
+	private boolean addEdgePoints(AccessibilityMap edgeMap, int index, float minCost, BitSet deadEnds, Quadtree qtree, List<Coordinate> points,
+			double isolineCost, double detailedZone) {
+		GraphHopperStorage graph = _searchContext.getGraphHopper().getGraphHopperStorage();
+		NodeAccess nodeAccess = graph.getNodeAccess();
+		double bufferSize = 0.0018;
 
-			// ignore all edges that have been considered in the previous step
-			if (minCost < prevCost)
-				continue;
+		int edgeId = edgeMap.getEdge(index);
+		int nodeId = edgeMap.getNode(index);
+		boolean deadEnd = deadEnds.get(index);
 
-			searchWidth = defaultSearchWidth; 
-			visitorThreshold = defaultVisitorThreshold; 
-			pointWidth = defaulPointWidth;
+		EdgeIteratorState iter = graph.getEdgeIteratorState(edgeId, nodeId);
 
-			visitor.setThreshold(visitorThreshold);
+		float maxCost = (float) (edgeMap.getWeight(index));
 
-			// edges that are fully inside of the isochrone
-			if (isolineCost >= maxCost) {
+		// edges that are fully inside of the isochrone
+		if (isolineCost >= maxCost) {
 
-				if (goalEdge.edge == -2)
-				{
-					//addPoint(points, qtree, nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), true);
-				}
-				else
-				{
-					double edgeDist = iter.getDistance();
-					if (((maxCost >= detailedZone && maxCost <= isolineCost) || edgeDist > 300))
-					{
-						boolean detailedShape = (edgeDist > 300);
-						// always use mode=3, since other ones do not provide correct results
-						PointList pl = iter.fetchWayGeometry(3);
-						int size = pl.getSize();
-						if (size > 0) {
-							double lat0 = pl.getLat(0);
-							double lon0 = pl.getLon(0);
-							double lat1, lon1;
-
-							if (detailedShape && BUFFERED_OUTPUT)
-							{
-								for (int i = 1; i < size; ++i) {
-									lat1 = pl.getLat(i);
-									lon1 = pl.getLon(i);
-
-									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, goalEdge.edge < 0 && i == size - 1, true, bufferSize);
-
-									lon0 = lon1;
-									lat0 = lat1;
-								}
-							}
-							else
-							{
-								for (int i = 1; i < size; ++i) {
-									lat1 = pl.getLat(i);
-									lon1 = pl.getLon(i);
-
-									addPoint(points, qtree, lon0, lat0, true);
-									if (i == size -1)
-										addPoint(points, qtree, lon1, lat1, true);
-
-									lon0 = lon1;
-									lat0 = lat1;
-								}
-							}
-						}
-					} else {
-						addPoint(points, qtree, nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), true);
-					}
-				}
-			} else {
-				if ((minCost < isolineCost && maxCost >= isolineCost)) 
+			if (deadEnd)
+			{
+				//addPoint(points, qtree, nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), true);
+			}
+			else
+			{
+				double edgeDist = iter.getDistance();
+				if (((maxCost >= detailedZone && maxCost <= isolineCost) || edgeDist > 300))
 				{
-
+					boolean detailedShape = (edgeDist > 300);
+					// always use mode=3, since other ones do not provide correct results
 					PointList pl = iter.fetchWayGeometry(3);
-
 					int size = pl.getSize();
 					if (size > 0) {
-						double edgeCost = maxCost - minCost;
-						double edgeDist = iter.getDistance();
-						double costPerMeter = edgeCost / edgeDist;
-						double distPolyline = 0.0;
-
 						double lat0 = pl.getLat(0);
 						double lon0 = pl.getLon(0);
 						double lat1, lon1;
 
-						for (int i = 1; i < size; ++i) {
-							lat1 = pl.getLat(i);
-							lon1 = pl.getLon(i);
-
-							distPolyline += dcFast.calcDist(lat0, lon0, lat1, lon1);
+						if (detailedShape && BUFFERED_OUTPUT)
+						{
+							for (int i = 1; i < size; ++i) {
+								lat1 = pl.getLat(i);
+								lon1 = pl.getLon(i);
 
-							if (BUFFERED_OUTPUT)
-							{
-								double distCost = minCost + distPolyline * costPerMeter;
-								if (distCost >= isolineCost) {
-									double segLength = (1 - (distCost - isolineCost) / edgeCost);
-									double lon2 = lon0 + segLength * (lon1 - lon0);
-									double lat2 = lat0 + segLength * (lat1 - lat0);
+								addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, deadEnd && i == size - 1, true, bufferSize);
 
-									addBufferPoints(points, qtree, lon0, lat0, lon2, lat2, true, false, bufferSize);
-
-									break;
-								} else {
-									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, false, true, bufferSize);
-								}
+								lon0 = lon1;
+								lat0 = lat1;
 							}
-							else
-							{
+						}
+						else
+						{
+							for (int i = 1; i < size; ++i) {
+								lat1 = pl.getLat(i);
+								lon1 = pl.getLon(i);
+
 								addPoint(points, qtree, lon0, lat0, true);
-							}
+								if (i == size -1)
+									addPoint(points, qtree, lon1, lat1, true);
 
-							lat0 = lat1;
-							lon0 = lon1;
+								lon0 = lon1;
+								lat0 = lat1;
+							}
 						}
 					}
-				} 
+				} else {
+					addPoint(points, qtree, nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), true);
+				}
 			}
-		}
+		} else {
+			if ((minCost < isolineCost && maxCost >= isolineCost)) 
+			{
 
-		
-		Geometry[] geometries = new Geometry[points.size()];
+				PointList pl = iter.fetchWayGeometry(3);
 
-		for (int i = 0;i < points.size();++i)
-		{
-			Coordinate c = points.get(i);
-			geometries[i] = _geomFactory.createPoint(c);
+				int size = pl.getSize();
+				if (size > 0) {
+					double edgeCost = maxCost - minCost;
+					double edgeDist = iter.getDistance();
+					double costPerMeter = edgeCost / edgeDist;
+					double distPolyline = 0.0;
+
+					double lat0 = pl.getLat(0);
+					double lon0 = pl.getLon(0);
+					double lat1, lon1;
+
+					for (int i = 1; i < size; ++i) {
+						lat1 = pl.getLat(i);
+						lon1 = pl.getLon(i);
+
+						distPolyline += dcFast.calcDist(lat0, lon0, lat1, lon1);
+
+						if (BUFFERED_OUTPUT)
+						{
+							double distCost = minCost + distPolyline * costPerMeter;
+							if (distCost >= isolineCost) {
+								double segLength = (1 - (distCost - isolineCost) / edgeCost);
+								double lon2 = lon0 + segLength * (lon1 - lon0);
+								double lat2 = lat0 + segLength * (lat1 - lat0);
+
+								addBufferPoints(points, qtree, lon0, lat0, lon2, lat2, true, false, bufferSize);
+
+								break;
+							} else {
+								addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, false, true, bufferSize);
+							}
+						}
+						else
+						{
+							addPoint(points, qtree, lon0, lat0, true);
+						}
+
+						lat0 = lat1;
+						lon0 = lon1;
+					}
+				}
+			} 
 		}
 
-		return new GeometryCollection(geometries, _geomFactory);
+		return maxCost > isolineCost;
 	}
 
 	private void copyConvexHullPoints(Polygon poly)
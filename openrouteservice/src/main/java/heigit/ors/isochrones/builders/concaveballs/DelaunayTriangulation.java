@@ -0,0 +1,494 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones.builders.concaveballs;
+
+import java.util.Arrays;
+
+/**
+ * Delaunay triangulation of a set of points, built with the sweep-hull approach of the Delaunator library and stored
+ * as a half-edge structure in flat int arrays.
+ * <p>
+ * Triangle {@code t} consists of the half-edges {@code 3t}, {@code 3t + 1} and {@code 3t + 2}. Half-edge {@code e}
+ * starts at point {@code getTriangles()[e]} and ends at the start of {@link #nextHalfEdge(int)}, while
+ * {@code getHalfEdges()[e]} is the opposite half-edge in the adjacent triangle or -1 on the convex hull. Points that
+ * coincide with an earlier point are not part of the triangulation. If all points are collinear, there are no
+ * triangles.
+ */
+public class DelaunayTriangulation {
+	private static final double EPSILON = Math.pow(2, -52);
+
+	private final double[] _coords;
+	private final int[] _triangles;
+	private final int[] _halfEdges;
+	private int _trianglesLength;
+
+	// state of the sweep
+	private final int _hashSize;
+	private final int[] _hullPrev;
+	private final int[] _hullNext;
+	private final int[] _hullTri;
+	private final int[] _hullHash;
+	private int _hullStart;
+	private double _cx;
+	private double _cy;
+	private final int[] _edgeStack = new int[512];
+
+	/**
+	 * @param coords the coordinates of the points as {@code x0, y0, x1, y1, ...}
+	 */
+	public DelaunayTriangulation(double[] coords) {
+		_coords = coords;
+
+		int n = coords.length >> 1;
+		int maxTriangles = Math.max(2 * n - 5, 0);
+		_triangles = new int[maxTriangles * 3];
+		_halfEdges = new int[maxTriangles * 3];
+
+		_hashSize = (int) Math.ceil(Math.sqrt(n));
+		_hullPrev = new int[n];
+		_hullNext = new int[n];
+		_hullTri = new int[n];
+		_hullHash = new int[Math.max(_hashSize, 1)];
+
+		if (n >= 3)
+			triangulate(n);
+	}
+
+	public static int nextHalfEdge(int e) {
+		return (e % 3 == 2) ? e - 2 : e + 1;
+	}
+
+	public int getTrianglesCount() {
+		return _trianglesLength / 3;
+	}
+
+	/**
+	 * Returns the start point of every half-edge. Only the first {@code 3 * getTrianglesCount()} entries are used.
+	 */
+	public int[] getTriangles() {
+		return _triangles;
+	}
+
+	/**
+	 * Returns the opposite of every half-edge or -1. Only the first {@code 3 * getTrianglesCount()} entries are used.
+	 */
+	public int[] getHalfEdges() {
+		return _halfEdges;
+	}
+
+	private void triangulate(int n) {
+		double[] coords = _coords;
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		int[] ids = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			double x = coords[2 * i];
+			double y = coords[2 * i + 1];
+			if (x < minX) minX = x;
+			if (y < minY) minY = y;
+			if (x > maxX) maxX = x;
+			if (y > maxY) maxY = y;
+			ids[i] = i;
+		}
+
+		double cx = (minX + maxX) / 2;
+		double cy = (minY + maxY) / 2;
+
+		// seed point closest to the center
+		int i0 = 0;
+		double minDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			double d = dist(cx, cy, coords[2 * i], coords[2 * i + 1]);
+			if (d < minDist) {
+				i0 = i;
+				minDist = d;
+			}
+		}
+		double i0x = coords[2 * i0];
+		double i0y = coords[2 * i0 + 1];
+
+		// point closest to the seed
+		int i1 = -1;
+		minDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (i == i0)
+				continue;
+			double d = dist(i0x, i0y, coords[2 * i], coords[2 * i + 1]);
+			if (d < minDist && d > 0) {
+				i1 = i;
+				minDist = d;
+			}
+		}
+		if (i1 == -1)
+			return;
+		double i1x = coords[2 * i1];
+		double i1y = coords[2 * i1 + 1];
+
+		// third point which forms the smallest circumcircle with the first two
+		int i2 = -1;
+		double minRadius = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (i == i0 || i == i1)
+				continue;
+			double r = circumradius(i0x, i0y, i1x, i1y, coords[2 * i], coords[2 * i + 1]);
+			if (r < minRadius) {
+				i2 = i;
+				minRadius = r;
+			}
+		}
+		if (i2 == -1 || Double.isInfinite(minRadius) || Double.isNaN(minRadius))
+			return;
+		double i2x = coords[2 * i2];
+		double i2y = coords[2 * i2 + 1];
+
+		// all triangles are built in clockwise order, starting with the seed triangle
+		if (orient(i0x, i0y, i1x, i1y, i2x, i2y)) {
+			int i = i1;
+			double x = i1x;
+			double y = i1y;
+			i1 = i2;
+			i1x = i2x;
+			i1y = i2y;
+			i2 = i;
+			i2x = x;
+			i2y = y;
+		}
+
+		circumcenter(i0x, i0y, i1x, i1y, i2x, i2y);
+
+		double[] dists = new double[n];
+		for (int i = 0; i < n; i++)
+			dists[i] = dist(coords[2 * i], coords[2 * i + 1], _cx, _cy);
+
+		// sort the points by distance from the center of the seed triangle
+		quicksort(ids, dists, 0, n - 1);
+
+		_hullStart = i0;
+
+		_hullNext[i0] = _hullPrev[i2] = i1;
+		_hullNext[i1] = _hullPrev[i0] = i2;
+		_hullNext[i2] = _hullPrev[i1] = i0;
+
+		_hullTri[i0] = 0;
+		_hullTri[i1] = 1;
+		_hullTri[i2] = 2;
+
+		Arrays.fill(_hullHash, -1);
+		_hullHash[hashKey(i0x, i0y)] = i0;
+		_hullHash[hashKey(i1x, i1y)] = i1;
+		_hullHash[hashKey(i2x, i2y)] = i2;
+
+		_trianglesLength = 0;
+		addTriangle(i0, i1, i2, -1, -1, -1);
+
+		double xp = 0;
+		double yp = 0;
+		for (int k = 0; k < n; k++) {
+			int i = ids[k];
+			double x = coords[2 * i];
+			double y = coords[2 * i + 1];
+
+			// skip near-duplicate points
+			if (k > 0 && Math.abs(x - xp) <= EPSILON && Math.abs(y - yp) <= EPSILON)
+				continue;
+			xp = x;
+			yp = y;
+
+			// skip seed triangle points
+			if (i == i0 || i == i1 || i == i2)
+				continue;
+
+			// find a visible edge on the convex hull using the edge hash
+			int start = 0;
+			for (int j = 0, key = hashKey(x, y); j < _hashSize; j++) {
+				start = _hullHash[(key + j) % _hashSize];
+				if (start != -1 && start != _hullNext[start])
+					break;
+			}
+
+			start = _hullPrev[start];
+			int e = start;
+			int q;
+			while (!orient(x, y, coords[2 * e], coords[2 * e + 1], coords[2 * (q = _hullNext[e])], coords[2 * q + 1])) {
+				e = q;
+				if (e == start) {
+					e = -1;
+					break;
+				}
+			}
+			// likely a near-duplicate point, skip it
+			if (e == -1)
+				continue;
+
+			// add the first triangle from the point
+			int t = addTriangle(e, i, _hullNext[e], -1, -1, _hullTri[e]);
+
+			// flip triangles from the point until they satisfy the Delaunay condition
+			_hullTri[i] = legalize(t + 2);
+			_hullTri[e] = t;
+
+			// walk forward through the hull, adding more triangles and flipping
+			int m = _hullNext[e];
+			while (orient(x, y, coords[2 * m], coords[2 * m + 1], coords[2 * (q = _hullNext[m])], coords[2 * q + 1])) {
+				t = addTriangle(m, i, q, _hullTri[i], -1, _hullTri[m]);
+				_hullTri[i] = legalize(t + 2);
+				_hullNext[m] = m; // mark as removed
+				m = q;
+			}
+
+			// walk backward from the other side, adding more triangles and flipping
+			if (e == start) {
+				while (orient(x, y, coords[2 * (q = _hullPrev[e])], coords[2 * q + 1], coords[2 * e], coords[2 * e + 1])) {
+					t = addTriangle(q, i, e, -1, _hullTri[e], _hullTri[q]);
+					legalize(t + 2);
+					_hullTri[q] = t;
+					_hullNext[e] = e; // mark as removed
+					e = q;
+				}
+			}
+
+			// update the hull indices
+			_hullStart = _hullPrev[i] = e;
+			_hullNext[e] = _hullPrev[m] = i;
+			_hullNext[i] = m;
+
+			// save the two new edges in the hash table
+			_hullHash[hashKey(x, y)] = i;
+			_hullHash[hashKey(coords[2 * e], coords[2 * e + 1])] = e;
+		}
+	}
+
+	private int hashKey(double x, double y) {
+		return (int) Math.floor(pseudoAngle(x - _cx, y - _cy) * _hashSize) % _hashSize;
+	}
+
+	private int legalize(int a) {
+		int i = 0;
+		int ar;
+
+		// recursion eliminated with a fixed-size stack
+		while (true) {
+			int b = _halfEdges[a];
+
+			// if the pair of triangles does not satisfy the Delaunay condition (p1 is inside the circumcircle of
+			// [p0, pl, pr]), flip them, then do the same check for the new pair of triangles
+			int a0 = a - a % 3;
+			ar = a0 + (a + 2) % 3;
+
+			if (b == -1) { // convex hull edge
+				if (i == 0)
+					break;
+				a = _edgeStack[--i];
+				continue;
+			}
+
+			int b0 = b - b % 3;
+			int al = a0 + (a + 1) % 3;
+			int bl = b0 + (b + 2) % 3;
+
+			int p0 = _triangles[ar];
+			int pr = _triangles[a];
+			int pl = _triangles[al];
+			int p1 = _triangles[bl];
+
+			boolean illegal = inCircle(
+					_coords[2 * p0], _coords[2 * p0 + 1],
+					_coords[2 * pr], _coords[2 * pr + 1],
+					_coords[2 * pl], _coords[2 * pl + 1],
+					_coords[2 * p1], _coords[2 * p1 + 1]);
+
+			if (illegal) {
+				_triangles[a] = p1;
+				_triangles[b] = p0;
+
+				int hbl = _halfEdges[bl];
+
+				// edge swapped on the other side of the hull (rare), fix the half-edge reference
+				if (hbl == -1) {
+					int e = _hullStart;
+					do {
+						if (_hullTri[e] == bl) {
+							_hullTri[e] = a;
+							break;
+						}
+						e = _hullPrev[e];
+					} while (e != _hullStart);
+				}
+				link(a, hbl);
+				link(b, _halfEdges[ar]);
+				link(ar, bl);
+
+				int br = b0 + (b + 1) % 3;
+
+				// the stack can only overflow on extremely degenerate input
+				if (i < _edgeStack.length)
+					_edgeStack[i++] = br;
+			} else {
+				if (i == 0)
+					break;
+				a = _edgeStack[--i];
+			}
+		}
+
+		return ar;
+	}
+
+	private void link(int a, int b) {
+		_halfEdges[a] = b;
+		if (b != -1)
+			_halfEdges[b] = a;
+	}
+
+	private int addTriangle(int i0, int i1, int i2, int a, int b, int c) {
+		int t = _trianglesLength;
+
+		_triangles[t] = i0;
+		_triangles[t + 1] = i1;
+		_triangles[t + 2] = i2;
+
+		link(t, a);
+		link(t + 1, b);
+		link(t + 2, c);
+
+		_trianglesLength += 3;
+
+		return t;
+	}
+
+	private void circumcenter(double ax, double ay, double bx, double by, double cx, double cy) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double ex = cx - ax;
+		double ey = cy - ay;
+		double bl = dx * dx + dy * dy;
+		double cl = ex * ex + ey * ey;
+		double d = 0.5 / (dx * ey - dy * ex);
+
+		_cx = ax + (ey * bl - dy * cl) * d;
+		_cy = ay + (dx * cl - ex * bl) * d;
+	}
+
+	/**
+	 * Monotonically increases with the real angle, but does not need expensive trigonometry.
+	 */
+	private static double pseudoAngle(double dx, double dy) {
+		double p = dx / (Math.abs(dx) + Math.abs(dy));
+		return (dy > 0 ? 3 - p : 1 + p) / 4; // [0..1]
+	}
+
+	private static double dist(double ax, double ay, double bx, double by) {
+		double dx = ax - bx;
+		double dy = ay - by;
+		return dx * dx + dy * dy;
+	}
+
+	private static double orientIfSure(double px, double py, double rx, double ry, double qx, double qy) {
+		double l = (ry - py) * (qx - px);
+		double r = (rx - px) * (qy - py);
+		return Math.abs(l - r) >= 3.3306690738754716e-16 * Math.abs(l + r) ? l - r : 0;
+	}
+
+	/**
+	 * Returns true if the three points are in counter-clockwise order (in a y-up system). The determinant is
+	 * evaluated from the point where it can be decided reliably.
+	 */
+	private static boolean orient(double rx, double ry, double qx, double qy, double px, double py) {
+		double o = orientIfSure(px, py, rx, ry, qx, qy);
+		if (o == 0)
+			o = orientIfSure(rx, ry, qx, qy, px, py);
+		if (o == 0)
+			o = orientIfSure(qx, qy, px, py, rx, ry);
+		return o < 0;
+	}
+
+	private static boolean inCircle(double ax, double ay, double bx, double by, double cx, double cy, double px, double py) {
+		double dx = ax - px;
+		double dy = ay - py;
+		double ex = bx - px;
+		double ey = by - py;
+		double fx = cx - px;
+		double fy = cy - py;
+
+		double ap = dx * dx + dy * dy;
+		double bp = ex * ex + ey * ey;
+		double cp = fx * fx + fy * fy;
+
+		return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+	}
+
+	private static double circumradius(double ax, double ay, double bx, double by, double cx, double cy) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double ex = cx - ax;
+		double ey = cy - ay;
+		double bl = dx * dx + dy * dy;
+		double cl = ex * ex + ey * ey;
+		double d = 0.5 / (dx * ey - dy * ex);
+		double x = (ey * bl - dy * cl) * d;
+		double y = (dx * cl - ex * bl) * d;
+
+		return x * x + y * y;
+	}
+
+	private static void quicksort(int[] ids, double[] dists, int left, int right) {
+		if (right - left <= 20) {
+			for (int i = left + 1; i <= right; i++) {
+				int temp = ids[i];
+				double tempDist = dists[temp];
+				int j = i - 1;
+				while (j >= left && dists[ids[j]] > tempDist)
+					ids[j + 1] = ids[j--];
+				ids[j + 1] = temp;
+			}
+		} else {
+			int median = (left + right) >> 1;
+			int i = left + 1;
+			int j = right;
+			swap(ids, median, i);
+			if (dists[ids[left]] > dists[ids[right]]) swap(ids, left, right);
+			if (dists[ids[i]] > dists[ids[right]]) swap(ids, i, right);
+			if (dists[ids[left]] > dists[ids[i]]) swap(ids, left, i);
+
+			int temp = ids[i];
+			double tempDist = dists[temp];
+			while (true) {
+				do i++; while (dists[ids[i]] < tempDist);
+				do j--; while (dists[ids[j]] > tempDist);
+				if (j < i)
+					break;
+				swap(ids, i, j);
+			}
+			ids[left + 1] = ids[j];
+			ids[j] = temp;
+
+			if (right - i + 1 >= j - left) {
+				quicksort(ids, dists, i, right);
+				quicksort(ids, dists, left, j - 1);
+			} else {
+				quicksort(ids, dists, left, j - 1);
+				quicksort(ids, dists, i, right);
+			}
+		}
+	}
+
+	private static void swap(int[] arr, int i, int j) {
+		int tmp = arr[i];
+		arr[i] = arr[j];
+		arr[j] = tmp;
+	}
+}
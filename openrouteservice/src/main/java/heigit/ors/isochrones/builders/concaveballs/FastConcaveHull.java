@@ -0,0 +1,185 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones.builders.concaveballs;
+
+import java.util.Arrays;
+
+/**
+ * Concave hull of a set of points following Duckham et al. (2008), "Efficient generation of simple polygons for
+ * characterizing the shape of a set of points in the plane", as in {@link org.opensphere.geometry.algorithm.ConcaveHull}.
+ * <p>
+ * Starting from the Delaunay triangulation, the longest boundary edge is removed together with its triangle as long
+ * as it is longer than the threshold and the boundary stays a simple polygon that touches all points. The
+ * triangulation is a {@link DelaunayTriangulation}, the boundary edges are kept in a primitive max-heap ordered by
+ * length.
+ */
+public class FastConcaveHull {
+	private final double[] _coords;
+	private final double _threshold;
+
+	/**
+	 * @param coords the coordinates of the points as {@code x0, y0, x1, y1, ...}
+	 * @param threshold the length above which boundary edges are removed
+	 */
+	public FastConcaveHull(double[] coords, double threshold) {
+		_coords = coords;
+		_threshold = threshold;
+	}
+
+	/**
+	 * Returns the indices of the points on the hull in boundary order, without repeating the first one. The result
+	 * is empty if the points do not span an area.
+	 */
+	public int[] getRing() {
+		DelaunayTriangulation dt = new DelaunayTriangulation(_coords);
+		int[] triangles = dt.getTriangles();
+		int[] halfEdges = dt.getHalfEdges();
+		int edgesCount = dt.getTrianglesCount() * 3;
+
+		if (edgesCount == 0)
+			return new int[0];
+
+		boolean[] border = new boolean[_coords.length >> 1];
+		boolean[] removed = new boolean[dt.getTrianglesCount()];
+		EdgeHeap heap = new EdgeHeap(64);
+
+		for (int e = 0; e < edgesCount; e++) {
+			if (halfEdges[e] != -1)
+				continue;
+
+			border[triangles[e]] = true;
+			border[triangles[DelaunayTriangulation.nextHalfEdge(e)]] = true;
+			pushIfLong(heap, triangles, e);
+		}
+
+		while (!heap.isEmpty()) {
+			int e = heap.poll();
+			int e1 = DelaunayTriangulation.nextHalfEdge(e);
+			int e2 = DelaunayTriangulation.nextHalfEdge(e1);
+
+			// a second boundary edge means that removing the triangle would cut off a point
+			if (halfEdges[e1] == -1 || halfEdges[e2] == -1)
+				continue;
+
+			// if the opposite point is already on the boundary, the boundary would touch itself
+			int opposite = triangles[e2];
+			if (border[opposite])
+				continue;
+
+			removed[e / 3] = true;
+			border[opposite] = true;
+
+			int t1 = halfEdges[e1];
+			int t2 = halfEdges[e2];
+			halfEdges[t1] = -1;
+			halfEdges[t2] = -1;
+			pushIfLong(heap, triangles, t1);
+			pushIfLong(heap, triangles, t2);
+		}
+
+		// each boundary point has exactly one outgoing boundary edge
+		int[] next = new int[border.length];
+		int start = -1;
+		int boundaryCount = 0;
+		for (int e = 0; e < edgesCount; e++) {
+			if (halfEdges[e] != -1 || removed[e / 3])
+				continue;
+
+			start = triangles[e];
+			next[start] = triangles[DelaunayTriangulation.nextHalfEdge(e)];
+			boundaryCount++;
+		}
+
+		int[] ring = new int[boundaryCount];
+		int count = 0;
+		int node = start;
+		do {
+			ring[count++] = node;
+			node = next[node];
+		} while (node != start && count < boundaryCount);
+
+		return count == boundaryCount ? ring : Arrays.copyOf(ring, count);
+	}
+
+	private void pushIfLong(EdgeHeap heap, int[] triangles, int e) {
+		int p0 = triangles[e];
+		int p1 = triangles[DelaunayTriangulation.nextHalfEdge(e)];
+		double dx = _coords[2 * p1] - _coords[2 * p0];
+		double dy = _coords[2 * p1 + 1] - _coords[2 * p0 + 1];
+		double length = Math.sqrt(dx * dx + dy * dy);
+
+		if (length > _threshold)
+			heap.push(e, length);
+	}
+
+	/**
+	 * Binary max-heap of half-edges ordered by their length.
+	 */
+	private static class EdgeHeap {
+		private int[] _edges;
+		private double[] _lengths;
+		private int _size;
+
+		EdgeHeap(int capacity) {
+			_edges = new int[capacity];
+			_lengths = new double[capacity];
+		}
+
+		boolean isEmpty() {
+			return _size == 0;
+		}
+
+		void push(int edge, double length) {
+			if (_size == _edges.length) {
+				_edges = Arrays.copyOf(_edges, _size * 2);
+				_lengths = Arrays.copyOf(_lengths, _size * 2);
+			}
+
+			int pos = _size++;
+			while (pos > 0) {
+				int parent = (pos - 1) >> 1;
+				if (_lengths[parent] >= length)
+					break;
+				_edges[pos] = _edges[parent];
+				_lengths[pos] = _lengths[parent];
+				pos = parent;
+			}
+			_edges[pos] = edge;
+			_lengths[pos] = length;
+		}
+
+		int poll() {
+			int result = _edges[0];
+			int edge = _edges[--_size];
+			double length = _lengths[_size];
+
+			int pos = 0;
+			int half = _size >> 1;
+			while (pos < half) {
+				int child = 2 * pos + 1;
+				if (child + 1 < _size && _lengths[child + 1] > _lengths[child])
+					child++;
+				if (length >= _lengths[child])
+					break;
+				_edges[pos] = _edges[child];
+				_lengths[pos] = _lengths[child];
+				pos = child;
+			}
+			_edges[pos] = edge;
+			_lengths[pos] = length;
+
+			return result;
+		}
+	}
+}
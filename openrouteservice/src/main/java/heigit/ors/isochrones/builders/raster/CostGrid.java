@@ -0,0 +1,128 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import java.util.Arrays;
+
+/**
+ * A regular grid of travel costs. Samples that have not been reached hold {@link Float#POSITIVE_INFINITY}.
+ * <p>
+ * Sample {@code (x, y)} is stored at {@code y * width + x}, with {@code y} growing northwards.
+ */
+public class CostGrid {
+	private final int _width;
+	private final int _height;
+	private final float[] _values;
+
+	public CostGrid(int width, int height) {
+		_width = width;
+		_height = height;
+		_values = new float[width * height];
+		Arrays.fill(_values, Float.POSITIVE_INFINITY);
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
+	}
+
+	public float getValue(int x, int y) {
+		return _values[y * _width + x];
+	}
+
+	/**
+	 * Lowers the value of the sample to the given cost if it is smaller than the current one.
+	 */
+	public void setMinValue(int x, int y, float cost) {
+		int index = y * _width + x;
+		if (cost < _values[index])
+			_values[index] = cost;
+	}
+
+	/**
+	 * Replaces every value by the minimum within the square window of the given radius around it. For every
+	 * threshold this grows the region of samples not exceeding it by the radius.
+	 */
+	public void applyMinFilter(int radius) {
+		applyFilter(radius, true);
+	}
+
+	/**
+	 * Replaces every value by the maximum within the square window of the given radius around it. For every
+	 * threshold this shrinks the region of samples not exceeding it by the radius.
+	 */
+	public void applyMaxFilter(int radius) {
+		applyFilter(radius, false);
+	}
+
+	/**
+	 * Marks the outermost samples as not reached, so that every region is enclosed by the grid.
+	 */
+	public void clearBorder() {
+		float inf = Float.POSITIVE_INFINITY;
+		for (int x = 0; x < _width; x++) {
+			_values[x] = inf;
+			_values[(_height - 1) * _width + x] = inf;
+		}
+		for (int y = 0; y < _height; y++) {
+			_values[y * _width] = inf;
+			_values[y * _width + _width - 1] = inf;
+		}
+	}
+
+	private void applyFilter(int radius, boolean min) {
+		if (radius <= 0)
+			return;
+
+		// the square window is separable into a pass over the rows and one over the columns
+		int n = Math.max(_width, _height);
+		float[] line = new float[n];
+		int[] queue = new int[n];
+
+		for (int y = 0; y < _height; y++)
+			filterLine(y * _width, 1, _width, radius, min, line, queue);
+		for (int x = 0; x < _width; x++)
+			filterLine(x, _width, _height, radius, min, line, queue);
+	}
+
+	/**
+	 * Sliding window minimum (or maximum) over one row or column using a monotonic queue, which takes linear time
+	 * independent of the radius. Samples outside of the grid are ignored.
+	 */
+	private void filterLine(int offset, int stride, int n, int radius, boolean min, float[] line, int[] queue) {
+		for (int i = 0; i < n; i++)
+			line[i] = _values[offset + i * stride];
+
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < n + radius; i++) {
+			if (i < n) {
+				float value = line[i];
+				while (tail > head && (min ? line[queue[tail - 1]] >= value : line[queue[tail - 1]] <= value))
+					tail--;
+				queue[tail++] = i;
+			}
+
+			int pos = i - radius;
+			if (pos >= 0) {
+				while (queue[head] < pos - radius)
+					head++;
+				_values[offset + pos * stride] = line[queue[head]];
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Traces the contours of a {@link CostGrid} for several thresholds at once with marching squares.
+ * <p>
+ * The region of a threshold consists of the samples whose cost does not exceed it. Contour points lie on the grid
+ * lines between two samples, so a point is identified by the grid line it lies on: {@code 2 * (y * width + x)} for
+ * the line from {@code (x, y)} to {@code (x + 1, y)} and {@code 2 * (y * width + x) + 1} for the line from
+ * {@code (x, y)} to {@code (x, y + 1)}. Every square links the points on its boundary so that the region is on the
+ * left, which gives each point exactly one successor and lets the rings be followed without searching.
+ */
+public class MarchingSquares {
+	private final CostGrid _grid;
+	private final int _width;
+
+	public MarchingSquares(CostGrid grid) {
+		_grid = grid;
+		_width = grid.getWidth();
+	}
+
+	/**
+	 * Returns for each of the ascending thresholds the closed rings around its region, in grid coordinates as
+	 * {@code x0, y0, x1, y1, ...} without repeating the first point. Outer rings are counter-clockwise, holes
+	 * clockwise. The border samples of the grid must not belong to any region.
+	 */
+	public List<List<double[]>> traceContours(double[] thresholds) {
+		int nThresholds = thresholds.length;
+		IntIntHashMap[] successors = new IntIntHashMap[nThresholds];
+		IntArrayList[] starts = new IntArrayList[nThresholds];
+		for (int t = 0; t < nThresholds; t++) {
+			successors[t] = new IntIntHashMap();
+			starts[t] = new IntArrayList();
+		}
+
+		int[] ids = new int[4];
+		boolean[] leaving = new boolean[4];
+
+		// one pass over all squares, each only looks at the thresholds between its lowest and its highest corner
+		for (int y = 0; y < _grid.getHeight() - 1; y++) {
+			for (int x = 0; x < _width - 1; x++) {
+				float v0 = _grid.getValue(x, y);
+				float v1 = _grid.getValue(x + 1, y);
+				float v2 = _grid.getValue(x + 1, y + 1);
+				float v3 = _grid.getValue(x, y + 1);
+
+				float min = Math.min(Math.min(v0, v1), Math.min(v2, v3));
+				float max = Math.max(Math.max(v0, v1), Math.max(v2, v3));
+				if (min == max)
+					continue;
+
+				for (int t = findFirstThreshold(thresholds, min); t < nThresholds && thresholds[t] < max; t++) {
+					double threshold = thresholds[t];
+					boolean in0 = v0 <= threshold;
+					boolean in1 = v1 <= threshold;
+					boolean in2 = v2 <= threshold;
+					boolean in3 = v3 <= threshold;
+
+					// crossings in counter-clockwise order, flagged if the boundary leaves the region there
+					int n = 0;
+					if (in0 != in1) {
+						ids[n] = 2 * (y * _width + x);
+						leaving[n++] = in0;
+					}
+					if (in1 != in2) {
+						ids[n] = 2 * (y * _width + x + 1) + 1;
+						leaving[n++] = in1;
+					}
+					if (in2 != in3) {
+						ids[n] = 2 * ((y + 1) * _width + x);
+						leaving[n++] = in2;
+					}
+					if (in3 != in0) {
+						ids[n] = 2 * (y * _width + x) + 1;
+						leaving[n++] = in3;
+					}
+
+					if (n == 2) {
+						int from = leaving[0] ? 0 : 1;
+						addSegment(successors[t], starts[t], ids[from], ids[1 - from]);
+					} else if (n == 4) {
+						// saddle: the value at the center decides whether the two inside corners are connected
+						boolean centerInside = (v0 + v1 + v2 + v3) / 4 <= threshold;
+						for (int i = 0; i < 4; i++) {
+							if (leaving[i])
+								addSegment(successors[t], starts[t], ids[i], ids[centerInside ? (i + 1) & 3 : (i + 3) & 3]);
+						}
+					}
+				}
+			}
+		}
+
+		List<List<double[]>> result = new ArrayList<List<double[]>>(nThresholds);
+		for (int t = 0; t < nThresholds; t++)
+			result.add(collectRings(successors[t], starts[t], thresholds[t]));
+
+		return result;
+	}
+
+	private void addSegment(IntIntHashMap successors, IntArrayList starts, int from, int to) {
+		successors.put(from, to);
+		starts.add(from);
+	}
+
+	private List<double[]> collectRings(IntIntHashMap successors, IntArrayList starts, double threshold) {
+		List<double[]> rings = new ArrayList<double[]>();
+		double[] buffer = new double[64];
+
+		for (int i = 0; i < starts.size(); i++) {
+			int start = starts.get(i);
+			if (!successors.containsKey(start))
+				continue;
+
+			int count = 0;
+			int id = start;
+			do {
+				if (count + 2 > buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				count = addPoint(buffer, count, id, threshold);
+				id = successors.remove(id);
+			} while (id != start);
+
+			rings.add(Arrays.copyOf(buffer, count));
+		}
+
+		return rings;
+	}
+
+	/**
+	 * Writes the position of the contour point on the given grid line, interpolated between the costs of its two
+	 * samples. Where one of them has not been reached, the point is placed half way.
+	 */
+	private int addPoint(double[] buffer, int count, int id, double threshold) {
+		int sample = id >> 1;
+		int x = sample % _width;
+		int y = sample / _width;
+		boolean vertical = (id & 1) == 1;
+
+		float v0 = _grid.getValue(x, y);
+		float v1 = vertical ? _grid.getValue(x, y + 1) : _grid.getValue(x + 1, y);
+		double offset = Float.isInfinite(v0) || Float.isInfinite(v1) ? 0.5 : (threshold - v0) / (v1 - v0);
+
+		buffer[count] = vertical ? x : x + offset;
+		buffer[count + 1] = vertical ? y + offset : y;
+		return count + 2;
+	}
+
+	/**
+	 * Returns the index of the first threshold which is not lower than the given cost.
+	 */
+	private static int findFirstThreshold(double[] thresholds, float cost) {
+		int low = 0;
+		int high = thresholds.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (thresholds[mid] < cost)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+}
@@ -0,0 +1,370 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import heigit.ors.common.TravelRangeType;
+import heigit.ors.isochrones.GraphEdgeMapFinder;
+import heigit.ors.isochrones.Isochrone;
+import heigit.ors.isochrones.IsochroneMap;
+import heigit.ors.isochrones.IsochroneSearchParameters;
+import heigit.ors.isochrones.builders.AbstractIsochroneMapBuilder;
+import heigit.ors.routing.RouteSearchContext;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds isochrones from a cost raster instead of a hull around sampled points.
+ * <p>
+ * The reached edges of the shortest path tree are drawn into a {@link CostGrid} with their costs interpolated along
+ * the edge geometry. A minimum filter spreads the costs over a buffer around the roads and a following maximum
+ * filter closes gaps that are narrower than the closing distance. Then the contours of all ranges are traced in one
+ * {@link MarchingSquares} pass. Since the region of a range is all samples not exceeding it, the polygons of the
+ * ranges are nested by construction and unreached areas inside of them become holes.
+ */
+public class RasterIsochroneMapBuilder extends AbstractIsochroneMapBuilder
+{
+	private final Logger LOGGER = Logger.getLogger(RasterIsochroneMapBuilder.class.getName());
+
+	// maximum number of samples along each side of the grid
+	private static final int MAX_GRID_SIZE = 1000;
+	// smallest distance between two samples (in metres)
+	private static final double MIN_CELL_SIZE = 20;
+	// distance to a reached road within which the area counts as reached (in metres)
+	private static final double ROAD_BUFFER = 150;
+	// gaps up to about twice this distance are closed if no smoothing factor is given (in metres)
+	private static final double DEFAULT_CLOSING_DISTANCE = 600;
+	private static final double MIN_CLOSING_DISTANCE = 300;
+
+	private GeometryFactory _geomFactory;
+	private RouteSearchContext _searchContext;
+
+	public void initialize(RouteSearchContext searchContext) {
+		_geomFactory = new GeometryFactory();
+		_searchContext = searchContext;
+	}
+
+	public IsochroneMap compute(IsochroneSearchParameters parameters) throws Exception {
+		StopWatch swTotal = null;
+		StopWatch sw = null;
+		if (LOGGER.isDebugEnabled())
+		{
+			swTotal = new StopWatch();
+			swTotal.start();
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		double maxSpeed = _searchContext.getEncoder().getMaxSpeed();
+		double metersPerSecond = maxSpeed / 3.6;
+
+		Coordinate loc = parameters.getLocation();
+		IsochroneMap isochroneMap = new IsochroneMap(parameters.getTravellerId(), loc);
+		AccessibilityMap edgeMap = GraphEdgeMapFinder.findEdgeMap(_searchContext, parameters);
+
+		if (LOGGER.isDebugEnabled())
+		{
+			sw.stop();
+			LOGGER.debug("Find edges: " + sw.getSeconds());
+		}
+
+		if (edgeMap.isEmpty())
+			return isochroneMap;
+
+		double[] ranges = parameters.getRanges();
+		double maxCost = ranges[ranges.length - 1];
+		double maxRadius = parameters.getRangeType() == TravelRangeType.Time ? metersPerSecond * maxCost : maxCost;
+		double closingDistance = getClosingDistance(parameters.getSmoothingFactor(), maxRadius);
+
+		if (LOGGER.isDebugEnabled())
+		{
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		RasterExtent extent = createExtent(edgeMap, maxCost, ROAD_BUFFER + closingDistance);
+		CostGrid grid = new CostGrid(extent.width, extent.height);
+		drawEdges(edgeMap, grid, extent, maxCost);
+
+		int bufferRadius = Math.max(1, (int) Math.round(ROAD_BUFFER / extent.cellSize));
+		int closingRadius = (int) Math.round(closingDistance / extent.cellSize);
+		grid.applyMinFilter(bufferRadius + closingRadius);
+		grid.applyMaxFilter(closingRadius);
+		grid.clearBorder();
+
+		if (LOGGER.isDebugEnabled())
+		{
+			sw.stop();
+			LOGGER.debug("Build cost grid " + extent.width + "x" + extent.height + ": " + sw.getSeconds());
+
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		List<List<double[]>> contours = new MarchingSquares(grid).traceContours(ranges);
+
+		for (int i = 0; i < ranges.length; i++) {
+			double isoValue = ranges[i];
+			Polygon poly = createPolygon(contours.get(i), extent);
+			if (poly == null)
+				continue;
+
+			switch (parameters.getRangeType()) {
+				case Distance:
+					isochroneMap.addIsochrone(new Isochrone(poly, isoValue, isoValue));
+					break;
+				case Time:
+					isochroneMap.addIsochrone(new Isochrone(poly, isoValue, metersPerSecond * isoValue));
+					break;
+			}
+		}
+
+		if (LOGGER.isDebugEnabled())
+		{
+			LOGGER.debug("Trace contours: " + sw.stop().getSeconds());
+			LOGGER.debug("Total time: " + swTotal.stop().getSeconds());
+		}
+
+		return isochroneMap;
+	}
+
+	/**
+	 * Converts the smoothing factor into the width of the gaps (in metres) which are closed, in the same way as the
+	 * concave hull threshold depends on it.
+	 */
+	private double getClosingDistance(float smoothingFactor, double maxRadius)
+	{
+		if (smoothingFactor == -1)
+			return DEFAULT_CLOSING_DISTANCE;
+
+		return Math.max(MIN_CLOSING_DISTANCE, maxRadius / 200 * smoothingFactor);
+	}
+
+	/**
+	 * Places the grid over the tree nodes that are reached below the maximum cost, extended by the margin (in metres)
+	 * the filters spread the costs over and one sample on each side which is kept empty.
+	 */
+	private RasterExtent createExtent(AccessibilityMap edgeMap, double maxCost, double margin)
+	{
+		NodeAccess nodeAccess = _searchContext.getGraphHopper().getGraphHopperStorage().getNodeAccess();
+		int maxNodeId = _searchContext.getGraphHopper().getGraphHopperStorage().getNodes();
+
+		double minLon = Double.MAX_VALUE, minLat = Double.MAX_VALUE;
+		double maxLon = -Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+
+		for (int i = 0; i < edgeMap.size(); i++) {
+			int nodeId = edgeMap.getNode(i);
+			if (nodeId == -1 || nodeId > maxNodeId)
+				continue;
+			if (i > 0 && edgeMap.getWeight(edgeMap.getParent(i)) > maxCost)
+				continue;
+
+			double lon = nodeAccess.getLon(nodeId);
+			double lat = nodeAccess.getLat(nodeId);
+			minLon = Math.min(minLon, lon);
+			maxLon = Math.max(maxLon, lon);
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+		}
+
+		RasterExtent extent = new RasterExtent();
+		double metersPerLat = DistanceCalcEarth.METERS_PER_DEGREE;
+		double metersPerLon = metersPerLat * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+		double width = (maxLon - minLon) * metersPerLon + 2 * margin;
+		double height = (maxLat - minLat) * metersPerLat + 2 * margin;
+
+		extent.cellSize = Math.max(MIN_CELL_SIZE, Math.max(width, height) / (MAX_GRID_SIZE - 3));
+		extent.width = (int) Math.ceil(width / extent.cellSize) + 3;
+		extent.height = (int) Math.ceil(height / extent.cellSize) + 3;
+		extent.lonStep = extent.cellSize / metersPerLon;
+		extent.latStep = extent.cellSize / metersPerLat;
+		extent.minLon = minLon - margin / metersPerLon - extent.lonStep;
+		extent.minLat = minLat - margin / metersPerLat - extent.latStep;
+
+		return extent;
+	}
+
+	/**
+	 * Draws the edges starting below the maximum cost into the grid. Points are placed at most half a cell apart along
+	 * the edge geometry with the cost interpolated between the costs of both ends, and each sample keeps the lowest
+	 * cost drawn onto it.
+	 */
+	private void drawEdges(AccessibilityMap edgeMap, CostGrid grid, RasterExtent extent, double maxCost)
+	{
+		GraphHopperStorage graph = _searchContext.getGraphHopper().getGraphHopperStorage();
+		int maxNodeId = graph.getNodes();
+		DistanceCalc dcFast = new DistancePlaneProjection();
+		double step = extent.cellSize / 2;
+
+		for (int i = 1; i < edgeMap.size(); i++) {
+			int edgeId = edgeMap.getEdge(i);
+			int nodeId = edgeMap.getNode(i);
+			if (edgeId == -1 || nodeId == -1 || nodeId > maxNodeId)
+				continue;
+
+			double startCost = edgeMap.getWeight(edgeMap.getParent(i));
+			if (startCost > maxCost)
+				continue;
+			double endCost = edgeMap.getWeight(i);
+
+			// always use mode=3, since other ones do not provide correct results
+			PointList pl = graph.getEdgeIteratorState(edgeId, nodeId).fetchWayGeometry(3);
+			int size = pl.getSize();
+			if (size == 0)
+				continue;
+
+			double length = 0;
+			for (int k = 1; k < size; k++)
+				length += dcFast.calcDist(pl.getLat(k - 1), pl.getLon(k - 1), pl.getLat(k), pl.getLon(k));
+			double costPerMeter = length > 0 ? (endCost - startCost) / length : 0;
+
+			drawPoint(grid, extent, pl.getLon(0), pl.getLat(0), startCost);
+
+			double dist = 0;
+			for (int k = 1; k < size; k++) {
+				double lon0 = pl.getLon(k - 1), lat0 = pl.getLat(k - 1);
+				double lon1 = pl.getLon(k), lat1 = pl.getLat(k);
+				double segLength = dcFast.calcDist(lat0, lon0, lat1, lon1);
+				int steps = Math.max(1, (int) Math.ceil(segLength / step));
+
+				for (int s = 1; s <= steps; s++) {
+					double f = (double) s / steps;
+					double cost = startCost + (dist + f * segLength) * costPerMeter;
+					// the rest of the edge is beyond all ranges
+					if (cost > maxCost) {
+						k = size;
+						break;
+					}
+
+					drawPoint(grid, extent, lon0 + f * (lon1 - lon0), lat0 + f * (lat1 - lat0), cost);
+				}
+
+				dist += segLength;
+			}
+		}
+	}
+
+	private void drawPoint(CostGrid grid, RasterExtent extent, double lon, double lat, double cost)
+	{
+		int x = extent.getX(lon);
+		int y = extent.getY(lat);
+		if (x > 0 && y > 0 && x < extent.width - 1 && y < extent.height - 1)
+			grid.setMinValue(x, y, (float) cost);
+	}
+
+	/**
+	 * Creates the polygon of one range from its largest outer ring and the holes inside of it. Rings inside of a hole
+	 * belong to separate areas, which are left out like the other outer rings.
+	 */
+	private Polygon createPolygon(List<double[]> rings, RasterExtent extent)
+	{
+		LinearRing shell = null;
+		double shellArea = 0;
+		List<Coordinate[]> holes = new ArrayList<Coordinate[]>();
+
+		for (double[] ring : rings) {
+			int n = ring.length / 2;
+			if (n < 3)
+				continue;
+
+			Coordinate[] coords = new Coordinate[n + 1];
+			for (int k = 0; k < n; k++)
+				coords[k] = new Coordinate(extent.minLon + ring[2 * k] * extent.lonStep, extent.minLat + ring[2 * k + 1] * extent.latStep);
+			coords[n] = new Coordinate(coords[0]);
+
+			if (CGAlgorithms.isCCW(coords)) {
+				double area = Math.abs(CGAlgorithms.signedArea(coords));
+				if (area > shellArea) {
+					shellArea = area;
+					shell = _geomFactory.createLinearRing(coords);
+				}
+			} else {
+				holes.add(coords);
+			}
+		}
+
+		if (shell == null)
+			return null;
+
+		Polygon outer = _geomFactory.createPolygon(shell, null);
+
+		// larger holes first, so that holes of areas inside of them can be recognized
+		Collections.sort(holes, new Comparator<Coordinate[]>() {
+			@Override
+			public int compare(Coordinate[] a, Coordinate[] b) {
+				return Double.compare(Math.abs(CGAlgorithms.signedArea(b)), Math.abs(CGAlgorithms.signedArea(a)));
+			}
+		});
+
+		List<Polygon> keptHoles = new ArrayList<Polygon>();
+		List<LinearRing> interiors = new ArrayList<LinearRing>();
+		for (Coordinate[] coords : holes) {
+			LinearRing hole = _geomFactory.createLinearRing(coords);
+			if (!outer.getEnvelopeInternal().contains(hole.getEnvelopeInternal()) || !outer.contains(hole.getStartPoint()))
+				continue;
+
+			boolean nested = false;
+			for (Polygon kept : keptHoles) {
+				if (kept.getEnvelopeInternal().contains(hole.getEnvelopeInternal()) && kept.contains(hole.getStartPoint())) {
+					nested = true;
+					break;
+				}
+			}
+			if (nested)
+				continue;
+
+			keptHoles.add(_geomFactory.createPolygon(hole, null));
+			interiors.add(hole);
+		}
+
+		return _geomFactory.createPolygon(shell, interiors.toArray(new LinearRing[interiors.size()]));
+	}
+
+	private static class RasterExtent
+	{
+		double minLon;
+		double minLat;
+		double lonStep;
+		double latStep;
+		double cellSize;
+		int width;
+		int height;
+
+		int getX(double lon)
+		{
+			return (int) Math.round((lon - minLon) / lonStep);
+		}
+
+		int getY(double lat)
+		{
+			return (int) Math.round((lat - minLat) / latStep);
+		}
+	}
+}
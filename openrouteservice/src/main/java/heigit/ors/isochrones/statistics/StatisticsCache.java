@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   	http://www.giscience.uni-hd.de
+ *   	http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of the statistics computed for isochrone geometries. Entries are keyed by the provider, the requested
+ * properties and a hash of the coordinates of the geometry; a hit is only reported if the cached geometry is exactly
+ * the same, so hash collisions can not return wrong values.
+ * <p>
+ * Isochrones of popular locations come out of the isochrone cache with identical geometries, which makes repeated
+ * statistics queries against the data source unnecessary.
+ */
+public class StatisticsCache {
+    private static class Key {
+        private final String _provider;
+        private final String _properties;
+        private final long _geometryHash;
+
+        public Key(String provider, String[] properties, Geometry geometry) {
+            _provider = provider;
+            _properties = String.join(",", properties);
+            _geometryHash = computeHash(geometry);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (_geometryHash ^ (_geometryHash >>> 32)) * 31 + _properties.hashCode() * 17 + _provider.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return _geometryHash == other._geometryHash && _provider.equals(other._provider) && _properties.equals(other._properties);
+        }
+    }
+
+    private static class Entry {
+        private final Geometry _geometry;
+        private final double[] _values;
+
+        public Entry(Geometry geometry, double[] values) {
+            _geometry = geometry;
+            _values = values;
+        }
+    }
+
+    private final Map<Key, Entry> _entries;
+    private long _hits;
+    private long _misses;
+
+    /**
+     * @param maximumEntries the number of results kept in the cache
+     */
+    public StatisticsCache(final int maximumEntries) {
+        _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the values computed by the given provider for the geometry, or null if there are none.
+     */
+    public synchronized double[] get(String provider, String[] properties, Geometry geometry) {
+        Entry entry = _entries.get(new Key(provider, properties, geometry));
+
+        if (entry == null || !entry._geometry.equalsExact(geometry)) {
+            _misses++;
+            return null;
+        }
+
+        _hits++;
+        return entry._values.clone();
+    }
+
+    public synchronized void put(String provider, String[] properties, Geometry geometry, double[] values) {
+        _entries.put(new Key(provider, properties, geometry), new Entry(geometry, values.clone()));
+    }
+
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    public synchronized int getEntriesCount() {
+        return _entries.size();
+    }
+
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    private static long computeHash(Geometry geometry) {
+        long hash = 1125899906842597L;
+        for (Coordinate c : geometry.getCoordinates()) {
+            hash = 31 * hash + Double.doubleToLongBits(c.x);
+            hash = 31 * hash + Double.doubleToLongBits(c.y);
+        }
+
+        return hash;
+    }
+}
@@ -20,6 +20,7 @@
  */
 package heigit.ors.isochrones.statistics;
 
+import java.util.List;
 import java.util.Map;
 
 import heigit.ors.isochrones.Isochrone;
@@ -30,4 +31,10 @@ public interface StatisticsProvider {
 	public String getName();
 	
     public double[] getStatistics(Isochrone isochrone, String[] properties) throws Exception;
+
+    /**
+     * Returns the values of the properties for each of the isochrones, in the order of the list. Providers that
+     * query a database should do so in one round-trip.
+     */
+    public double[][] getStatistics(List<Isochrone> isochrones, String[] properties) throws Exception;
 }
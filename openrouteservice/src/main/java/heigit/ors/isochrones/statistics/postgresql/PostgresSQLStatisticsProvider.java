@@ -38,6 +38,9 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -127,46 +130,65 @@ public class PostgresSQLStatisticsProvider extends AbstractStatisticsProvider {
      */
     @Override
     public double[] getStatistics(Isochrone isochrone, String[] properties) throws Exception {
+        return getStatistics(Collections.singletonList(isochrone), properties)[0];
+    }
+
+    /**
+     * Computes the statistics of all isochrones with one query. The geometries are passed as a single text array
+     * parameter and unnested on the server, so the statement text does not depend on the isochrones.
+     *
+     * @param isochrones {@link List} of the {@link Isochrone} objects.
+     * @param properties {@link String}[] as input holding the attributes parameters.
+     * @return Returns per isochrone a double[] holding the desired values in the order that was asked for in the attributes.
+     * @throws Exception If the sql is corrupt or the data source fails, an {@link Exception} will be thrown.
+     */
+    @Override
+    public double[][] getStatistics(List<Isochrone> isochrones, String[] properties) throws Exception {
         int nProperties = properties.length;
-        double[] res = new double[nProperties];
+        double[][] res = new double[isochrones.size()][nProperties];
+
+        boolean supported = false;
+        for (String property : properties) {
+            if ("total_area_km".equals(property) || "total_pop".equals(property))
+                supported = true;
+        }
+
+        if (!supported || isochrones.isEmpty())
+            return res;
+
+        String sql = "SELECT g.idx, ST_Area(g.poly) / 1000000 AS total_area_km, ROUND(SUM((ST_SummaryStats(ST_Clip(" + _geomColumn + ", g.poly))).sum)) AS total_pop" +
+                " FROM (SELECT t.idx, ST_Simplify(ST_Transform(ST_GeomFromText(t.wkt, 4326), 954009), 125) AS poly FROM unnest(?::text[]) WITH ORDINALITY AS t(wkt, idx)) AS g" +
+                " LEFT JOIN " + _tableName + " ON ST_Intersects(g.poly, " + _geomColumn + ") GROUP BY g.idx, g.poly;";
+
+        String[] polyGeoms = new String[isochrones.size()];
+        for (int i = 0; i < polyGeoms.length; i++)
+            polyGeoms[i] = isochrones.get(i).getGeometry().toText();
+
         Connection connection = null;
         PreparedStatement preparedStatement = null;
-        ResultSet resultSet;
         try {
-            String sql = null;
-            for (String property : properties) {
-                String polyGeom = isochrone.getGeometry().toText();
-                switch (property) {
-                    case "total_area_km":
-                    case "total_pop":
-                        sql = "SELECT ST_Area(poly) / 1000000 AS total_area_km, ROUND(SUM((ST_SummaryStats(ST_Clip(" + _geomColumn + ", poly))).sum)) AS total_pop FROM " + _tableName + ", ST_Simplify(ST_Transform(ST_GeomFromText('" + polyGeom + "', 4326), 954009), 125) AS poly WHERE ST_Intersects(poly, " + _geomColumn + ") GROUP BY poly;";
-                        break;
-                    default:
-                        break;
-                }
-
-            }
             connection = _dataSource.getConnection();
             connection.setAutoCommit(false);
             preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setArray(1, connection.createArrayOf("text", polyGeoms));
+
+            ResultSet resultSet = preparedStatement.executeQuery();
 
-            resultSet = preparedStatement.executeQuery();
-            // check if the resultSet contains values
-            if (resultSet.next()) {
-                // check for each property if the result contains a value
-                int propertyCounter = 0;
-                for (String property : properties) {
-                    int i = 0;
-                    // check each value
-                    while (i < nProperties) {
-                        // Get the column name
-                        String columnName = resultSet.getMetaData().getColumnName(i + 1);
-                        // If a value fits the current property it is set in the correct place in the result[]
-                        if (columnName.equals(property))
-                            res[propertyCounter] = resultSet.getDouble(i + 1);
-                        i++;
-                    }
-                    propertyCounter++;
+            // position of the column of each property in the result, 0 if it has none
+            int[] columns = new int[nProperties];
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            for (int i = 0; i < nProperties; i++) {
+                for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                    if (metaData.getColumnName(c).equals(properties[i]))
+                        columns[i] = c;
+                }
+            }
+
+            while (resultSet.next()) {
+                int index = (int) resultSet.getLong(1) - 1;
+                for (int i = 0; i < nProperties; i++) {
+                    if (columns[i] > 0)
+                        res[index][i] = resultSet.getDouble(columns[i]);
                 }
             }
         } catch (Exception ex) {
@@ -182,7 +204,6 @@ public class PostgresSQLStatisticsProvider extends AbstractStatisticsProvider {
             }
         }
         return res;
-
     }
 
 
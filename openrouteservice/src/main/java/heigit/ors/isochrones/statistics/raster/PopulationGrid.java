@@ -0,0 +1,210 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   	http://www.giscience.uni-hd.de
+ *   	http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * In-memory population grid in WGS84 coordinates. A cell counts towards a geometry if its centre lies inside,
+ * which is decided row by row with a scanline over the rings of the polygons (even-odd rule).
+ *
+ * @author OpenRouteServiceTeam
+ */
+public class PopulationGrid {
+    private final int _cols;
+    private final int _rows;
+    private final double _minX;
+    private final double _minY;
+    private final double _cellSize;
+    // row-major, the first row is the northernmost one
+    private final float[] _values;
+
+    /**
+     * @param minX     longitude of the left border of the grid
+     * @param minY     latitude of the lower border of the grid
+     * @param cellSize size of a cell in degrees
+     * @param values   values of the cells row by row, starting with the northernmost row
+     */
+    public PopulationGrid(int cols, int rows, double minX, double minY, double cellSize, float[] values) {
+        if (values.length != cols * rows)
+            throw new IllegalArgumentException("The grid has " + cols * rows + " cells, but " + values.length + " values were given.");
+
+        _cols = cols;
+        _rows = rows;
+        _minX = minX;
+        _minY = minY;
+        _cellSize = cellSize;
+        _values = values;
+    }
+
+    /**
+     * Reads a grid in the ESRI ASCII raster format. Cells holding the NODATA value count as empty.
+     *
+     * @param fileName path to the .asc file
+     * @throws IOException if the file can not be read or is not a valid grid
+     */
+    public static PopulationGrid load(String fileName) throws IOException {
+        int cols = -1;
+        int rows = -1;
+        double x = Double.NaN;
+        double y = Double.NaN;
+        boolean centered = false;
+        double cellSize = Double.NaN;
+        double noData = Double.NaN;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName), 1 << 16)) {
+            String line;
+            float[] values = null;
+            int n = 0;
+
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+
+                if (values == null && Character.isLetter(line.charAt(0))) {
+                    String[] parts = line.split("\\s+");
+                    if (parts.length != 2)
+                        throw new IOException("Invalid header line '" + line + "'.");
+
+                    String key = parts[0].toLowerCase();
+                    switch (key) {
+                        case "ncols":
+                            cols = Integer.parseInt(parts[1]);
+                            break;
+                        case "nrows":
+                            rows = Integer.parseInt(parts[1]);
+                            break;
+                        case "xllcorner":
+                        case "xllcenter":
+                            x = Double.parseDouble(parts[1]);
+                            centered = "xllcenter".equals(key);
+                            break;
+                        case "yllcorner":
+                        case "yllcenter":
+                            y = Double.parseDouble(parts[1]);
+                            break;
+                        case "cellsize":
+                            cellSize = Double.parseDouble(parts[1]);
+                            break;
+                        case "nodata_value":
+                            noData = Double.parseDouble(parts[1]);
+                            break;
+                        default:
+                            throw new IOException("Unknown header entry '" + parts[0] + "'.");
+                    }
+                    continue;
+                }
+
+                if (values == null) {
+                    if (cols <= 0 || rows <= 0 || Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(cellSize))
+                        throw new IOException("Incomplete grid header in '" + fileName + "'.");
+                    values = new float[cols * rows];
+                }
+
+                for (String part : line.split("\\s+")) {
+                    if (n == values.length)
+                        throw new IOException("The grid '" + fileName + "' holds more than " + values.length + " values.");
+
+                    double value = Double.parseDouble(part);
+                    values[n++] = value == noData || value < 0 ? 0 : (float) value;
+                }
+            }
+
+            if (values == null || n != values.length)
+                throw new IOException("The grid '" + fileName + "' holds " + n + " values, " + (values == null ? 0 : values.length) + " were expected.");
+
+            if (centered) {
+                x -= cellSize / 2;
+                y -= cellSize / 2;
+            }
+
+            return new PopulationGrid(cols, rows, x, y, cellSize, values);
+        }
+    }
+
+    /**
+     * Sums the values of the cells whose centres lie inside the polygons of the geometry.
+     */
+    public double sum(Geometry geometry) {
+        double sum = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon)
+                sum += sum((Polygon) part);
+        }
+
+        return sum;
+    }
+
+    private double sum(Polygon polygon) {
+        Coordinate[][] rings = new Coordinate[polygon.getNumInteriorRing() + 1][];
+        rings[0] = polygon.getExteriorRing().getCoordinates();
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++)
+            rings[i + 1] = polygon.getInteriorRingN(i).getCoordinates();
+
+        Envelope env = polygon.getEnvelopeInternal();
+        // rows are counted from the top, row r has its centre at _minY + (_rows - r - 0.5) * _cellSize
+        int firstRow = Math.max(0, (int) Math.floor(_rows - 0.5 - (env.getMaxY() - _minY) / _cellSize));
+        int lastRow = Math.min(_rows - 1, (int) Math.ceil(_rows - 0.5 - (env.getMinY() - _minY) / _cellSize));
+
+        double[] crossings = new double[16];
+        double sum = 0;
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            double y = _minY + (_rows - r - 0.5) * _cellSize;
+            int n = 0;
+
+            for (Coordinate[] ring : rings) {
+                for (int i = 1; i < ring.length; i++) {
+                    Coordinate a = ring[i - 1];
+                    Coordinate b = ring[i];
+                    if ((a.y > y) != (b.y > y)) {
+                        if (n == crossings.length)
+                            crossings = Arrays.copyOf(crossings, n * 2);
+                        crossings[n++] = a.x + (y - a.y) * (b.x - a.x) / (b.y - a.y);
+                    }
+                }
+            }
+
+            Arrays.sort(crossings, 0, n);
+
+            int offset = r * _cols;
+            for (int i = 0; i + 1 < n; i += 2) {
+                // cells with centres in [crossings[i], crossings[i + 1])
+                int c0 = Math.max(0, (int) Math.ceil((crossings[i] - _minX) / _cellSize - 0.5));
+                int c1 = Math.min(_cols, (int) Math.ceil((crossings[i + 1] - _minX) / _cellSize - 0.5));
+                for (int c = c0; c < c1; c++)
+                    sum += _values[offset + c];
+            }
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   	http://www.giscience.uni-hd.de
+ *   	http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import com.graphhopper.util.Helper;
+import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.isochrones.Isochrone;
+import heigit.ors.isochrones.IsochronesErrorCodes;
+import heigit.ors.isochrones.statistics.AbstractStatisticsProvider;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+
+/**
+ * This class computes the population statistics from a population grid held in memory, so that no database is
+ * needed. The grid is read from the ESRI ASCII raster file set by the 'file' parameter in the app.config.
+ *
+ * @author OpenRouteServiceTeam
+ */
+public class RasterStatisticsProvider extends AbstractStatisticsProvider {
+    private static final Logger LOGGER = Logger.getLogger(RasterStatisticsProvider.class.getName());
+
+    private PopulationGrid _grid;
+
+    @Override
+    public void init(Map<String, Object> parameters) throws Exception {
+        _grid = null;
+
+        String value = (String) parameters.get("file");
+        if (Helper.isEmpty(value))
+            throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "'file' parameter can not be null or empty.");
+
+        long startTime = System.currentTimeMillis();
+        _grid = PopulationGrid.load(value);
+        LOGGER.info("Population grid '" + value + "' loaded in " + (System.currentTimeMillis() - startTime) / 1000.0 + " s.");
+    }
+
+    @Override
+    public void close() {
+        _grid = null;
+    }
+
+    /**
+     * Computes the values of total_pop and total_area_km for the isochrone, the other properties are 0.
+     *
+     * @param isochrone  {@link Isochrone} as input.
+     * @param properties {@link String}[] as input holding the attributes parameters.
+     * @return Returns a double[] holding the desired values in the order that was asked for in the attributes.
+     */
+    @Override
+    public double[] getStatistics(Isochrone isochrone, String[] properties) throws Exception {
+        double[] res = new double[properties.length];
+
+        for (int i = 0; i < properties.length; i++) {
+            switch (properties[i]) {
+                case "total_pop":
+                    res[i] = Math.round(_grid.sum(isochrone.getGeometry()));
+                    break;
+                case "total_area_km":
+                    res[i] = isochrone.getArea("km");
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public String getName() {
+        return "raster";
+    }
+}
@@ -40,4 +40,40 @@ public abstract class AbstractMapMatcher implements MapMatcher {
 	{
 		return null;
 	}
+
+	/**
+	 * Chooses between the segments matched in both directions of a trace. A segment which is considerably longer
+	 * than the other one contains unneeded loops and is dropped; the remaining segments are returned with the
+	 * forward one first.
+	 */
+	protected static RouteSegmentInfo[] selectSegments(RouteSegmentInfo seg1, RouteSegmentInfo seg2)
+	{
+		if (seg1 !=  null && seg2 != null)
+		{
+			double koef = 1.1;
+			if (seg1.getDistance() < 100)
+				koef = 1.2;
+			else if (seg1.getDistance() > 1000)
+				koef = 1.25;
+			// Remove unneeded loops. see example
+			// 53856-53857
+			
+			if (seg1.getDistance() > seg2.getDistance()) {
+				if (seg1.getDistance() > koef * seg2.getDistance())
+					seg1 = null;
+			} else {
+				if (seg2.getDistance() > koef * seg1.getDistance())
+					seg2 = null;
+			}
+		}
+		
+		RouteSegmentInfo result[] = new RouteSegmentInfo[2];
+		if (seg1 != null) {
+			result[0] = seg1;
+			result[1] = seg2;
+		} else
+			result[0] = seg2;
+		
+		return result;
+	}
 }
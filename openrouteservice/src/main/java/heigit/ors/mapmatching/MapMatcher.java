@@ -26,4 +26,9 @@ public interface MapMatcher {
 	public void setGraphHopper(GraphHopper gh);
 	
 	public RouteSegmentInfo[] match(Coordinate[] locations, boolean bothDirections);
+
+	/**
+	 * Releases the state of the last match, called before an idle matcher is kept for reuse.
+	 */
+	public void trim();
 }
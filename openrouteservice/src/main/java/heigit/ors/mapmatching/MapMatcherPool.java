@@ -0,0 +1,64 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching;
+
+import com.graphhopper.GraphHopper;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the map matchers of one graph. Matchers keep the state of the trace they are matching, so every match
+ * borrows an instance of its own; idle instances are kept in a lock-free queue for reuse by later requests.
+ */
+public abstract class MapMatcherPool<T extends MapMatcher> {
+	private final GraphHopper _graphHopper;
+	private final int _maximumIdle;
+	private final ConcurrentLinkedQueue<T> _matchers = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger _idle = new AtomicInteger();
+
+	/**
+	 * @param maximumIdle the number of idle matchers kept for reuse
+	 */
+	public MapMatcherPool(GraphHopper gh, int maximumIdle) {
+		_graphHopper = gh;
+		_maximumIdle = maximumIdle;
+	}
+
+	protected abstract T createMatcher();
+
+	/**
+	 * Returns a matcher which is not used by any other thread until it is released.
+	 */
+	public T acquire() {
+		T matcher = _matchers.poll();
+		if (matcher != null) {
+			_idle.decrementAndGet();
+			return matcher;
+		}
+
+		matcher = createMatcher();
+		matcher.setGraphHopper(_graphHopper);
+		return matcher;
+	}
+
+	public void release(T matcher) {
+		if (_idle.incrementAndGet() <= _maximumIdle) {
+			matcher.trim();
+			_matchers.offer(matcher);
+		}
+		else
+			_idle.decrementAndGet();
+	}
+}
@@ -19,5 +19,6 @@ public class MapMatchingErrorCodes {
    public static int INVALID_PARAMETER_FORMAT = 802;
    public static int INVALID_PARAMETER_VALUE = 803;
    public static int PARAMETER_VALUE_EXCEEDS_MAXIMUM = 804;
+   public static int TRACK_NOT_MATCHED = 805;
    public static int UNKNOWN = 899; 
 }
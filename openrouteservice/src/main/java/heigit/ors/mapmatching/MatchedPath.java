@@ -0,0 +1,61 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Part of a matched trace that does not pass an edge twice, given by its matched end positions and the original
+ * edges the matcher has selected in between. Routing from start to end on these edges only reproduces the path.
+ */
+public class MatchedPath {
+	private final Coordinate start;
+	private Coordinate end;
+	private final IntHashSet edges = new IntHashSet();
+	private int lastEdge = -1;
+
+	public MatchedPath(Coordinate start) {
+		this.start = start;
+		this.end = start;
+	}
+
+	public Coordinate getStart() {
+		return start;
+	}
+
+	public Coordinate getEnd() {
+		return end;
+	}
+
+	public void setEnd(Coordinate end) {
+		this.end = end;
+	}
+
+	public IntHashSet getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Returns true if the edge is part of the path and not the one the path currently ends on.
+	 */
+	public boolean revisits(int edge) {
+		return edge != lastEdge && edges.contains(edge);
+	}
+
+	public void addEdge(int edge) {
+		edges.add(edge);
+		lastEdge = edge;
+	}
+}
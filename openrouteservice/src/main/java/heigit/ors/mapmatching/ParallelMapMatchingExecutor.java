@@ -0,0 +1,91 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import heigit.ors.services.mapmatching.MapMatchingServiceSettings;
+import heigit.ors.util.BoundedExecutor;
+
+/**
+ * Bounded pool shared by all batch map matching requests. Results are handed back in the order the traces
+ * complete, so that they can be written out while the remaining traces are still being matched.
+ */
+public class ParallelMapMatchingExecutor {
+	private static final BoundedExecutor EXECUTOR = new BoundedExecutor(MapMatchingServiceSettings.getParallelThreads());
+
+	public interface CompletionListener<T> {
+		/**
+		 * Called on the submitting thread for each task, with either its result or the exception it failed with.
+		 */
+		void completed(int index, T result, Exception error) throws Exception;
+	}
+
+	/**
+	 * Returns how many of the {@code tracesCount} traces of a single request may be matched at the same time.
+	 */
+	public static int getConcurrency(int tracesCount) {
+		int concurrency = Math.min(MapMatchingServiceSettings.getMaximumParallelTraces(), MapMatchingServiceSettings.getParallelThreads());
+		return Math.max(1, Math.min(concurrency, tracesCount));
+	}
+
+	/**
+	 * Runs the tasks in the pool, keeping at most {@link #getConcurrency(int)} of them in flight, and reports each
+	 * one to the listener as soon as it completes. A failing task does not stop the others; an exception thrown
+	 * by the listener does, and cancels the tasks still pending.
+	 */
+	public static <T> void execute(List<Callable<T>> tasks, CompletionListener<T> listener) throws Exception {
+		int nTasks = tasks.size();
+		int concurrency = getConcurrency(nTasks);
+
+		CompletionService<T> completionService = new ExecutorCompletionService<T>(EXECUTOR.getPool());
+		Map<Future<T>, Integer> pending = new IdentityHashMap<Future<T>, Integer>(concurrency);
+		int nextTask = 0;
+
+		try {
+			for (; nextTask < concurrency; nextTask++)
+				pending.put(completionService.submit(tasks.get(nextTask)), nextTask);
+
+			while (!pending.isEmpty()) {
+				Future<T> future = completionService.take();
+				int index = pending.remove(future);
+
+				if (nextTask < nTasks) {
+					pending.put(completionService.submit(tasks.get(nextTask)), nextTask);
+					nextTask++;
+				}
+
+				T result = null;
+				Exception error = null;
+				try {
+					result = future.get();
+				} catch (ExecutionException ex) {
+					error = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+				}
+
+				listener.completed(index, result, error);
+			}
+		} finally {
+			for (Future<T> future : pending.keySet())
+				future.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,463 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntIntHashMap;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Candidate lookup for the points of a single trace. {@link #build} walks the cells of the location index
+ * once for the corridor around the trace and copies the geometry of the edges found there into primitive
+ * arrays, bucketed by a regular grid. {@link #findCandidates} then answers the radius query of a trace point
+ * from the buckets around it, without allocating anything. Long traces are better indexed in chunks with
+ * {@link #buildChunk}. All arrays are kept and reused by the next trace until {@link #trim} is called.
+ * <p>
+ * Instances are not thread-safe; each map matcher owns one.
+ */
+public class TraceCandidateIndex {
+	// the corridor is split into boxes of at most this size (in degrees) when walking the location index
+	private static final double MAX_BOX_SIZE = 0.05;
+	private static final int MAX_CELLS = 1 << 18;
+	// arrays beyond these sizes are dropped by trim()
+	private static final int MAX_RETAINED_EDGES = 1 << 12;
+	private static final int MAX_RETAINED_POINTS = 1 << 15;
+
+	private final Graph _graph;
+	private final NodeAccess _nodeAccess;
+	private final LocationIndexTree _locationIndex;
+	private final DistanceCalc _distCalc = Helper.DIST_PLANE;
+
+	// edges of the corridor and their geometry
+	private final GHIntIntHashMap _edgeIds = new GHIntIntHashMap();
+	private EdgeIteratorState[] _edges = new EdgeIteratorState[64];
+	private int[] _pointStart = new int[65];
+	private int _nEdges;
+	private double[] _lats = new double[256];
+	private double[] _lons = new double[256];
+	private int[] _pointEdges = new int[256];
+	private int _nPoints;
+
+	// grid of segments, identified by the index of their first point
+	private double _minLat, _minLon, _cellLat, _cellLon;
+	private int _nx, _ny;
+	private int[] _cellStart = new int[1];
+	private int[] _cellSegments = new int[256];
+
+	// per query state, indexed by edge
+	private int[] _queryStamps = new int[64];
+	private double[] _distances = new double[64];
+	private int[] _wayIndices = new int[64];
+	private QueryResult.Position[] _positions = new QueryResult.Position[64];
+	private int[] _results = new int[64];
+	private int _nResults;
+	private int _queryId;
+
+	private final GHIntHashSet _visitedNodes = new GHIntHashSet();
+	private final IntArrayList _nodes = new IntArrayList();
+
+	public TraceCandidateIndex(Graph graph, LocationIndexTree locationIndex) {
+		_graph = graph;
+		_nodeAccess = graph.getNodeAccess();
+		_locationIndex = locationIndex;
+	}
+
+	/**
+	 * Collects the edges accepted by the filter which lie within {@code radius} meters of the trace.
+	 */
+	public void build(Coordinate[] trace, double radius, EdgeFilter edgeFilter) {
+		clear();
+
+		if (trace.length == 0)
+			return;
+
+		double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+		for (Coordinate c : trace) {
+			minLat = Math.min(minLat, c.y);
+			maxLat = Math.max(maxLat, c.y);
+			minLon = Math.min(minLon, c.x);
+			maxLon = Math.max(maxLon, c.x);
+		}
+
+		double dLat = radius / DistanceCalcEarth.METERS_PER_DEGREE;
+		double dLon = dLat / Math.cos(Math.toRadians(Math.min(89, Math.max(Math.abs(minLat), Math.abs(maxLat)))));
+
+		// Walk the location index once per box of consecutive points, so that long traces do not pull in
+		// everything within their bounding box.
+		EdgeExplorer explorer = _graph.createEdgeExplorer(edgeFilter);
+		int start = 0;
+		while (start < trace.length) {
+			BBox box = new BBox(trace[start].x - dLon, trace[start].x + dLon, trace[start].y - dLat, trace[start].y + dLat);
+			int end = extendBox(trace, start, dLat, dLon, box);
+
+			collectEdges(box, explorer);
+			start = end;
+		}
+
+		buildGrid(minLat - dLat, minLon - dLon, maxLat + dLat, maxLon + dLon, dLat, dLon);
+		initQueries();
+	}
+
+	/**
+	 * Collects the edges accepted by the filter which lie within {@code radius} meters of the points of the trace
+	 * from {@code start} on, as far as the points fit into one box of at most {@link #MAX_BOX_SIZE} degrees. In
+	 * contrast to {@link #build}, the memory needed is bounded by the size of the box, regardless of the length of
+	 * the trace.
+	 *
+	 * @return the end (exclusive) of the points covered, queries are only valid for the points before it
+	 */
+	public int buildChunk(Coordinate[] trace, int start, double radius, EdgeFilter edgeFilter) {
+		clear();
+
+		if (start >= trace.length)
+			return trace.length;
+
+		double dLat = radius / DistanceCalcEarth.METERS_PER_DEGREE;
+		// the points of the box differ in latitude by less than its size
+		double dLon = dLat / Math.cos(Math.toRadians(Math.min(89, Math.abs(trace[start].y) + MAX_BOX_SIZE)));
+
+		BBox box = new BBox(trace[start].x - dLon, trace[start].x + dLon, trace[start].y - dLat, trace[start].y + dLat);
+		int end = extendBox(trace, start, dLat, dLon, box);
+
+		collectEdges(box, _graph.createEdgeExplorer(edgeFilter));
+		buildGrid(box.minLat, box.minLon, box.maxLat, box.maxLon, dLat, dLon);
+		initQueries();
+
+		return end;
+	}
+
+	/**
+	 * Drops the edges of the last trace and shrinks the arrays which have grown beyond the needs of a typical
+	 * trace, so that an idle index does not pin the memory of the largest trace it has seen.
+	 */
+	public void trim() {
+		Arrays.fill(_edges, 0, _nEdges, null);
+		Arrays.fill(_positions, null);
+		clear();
+
+		if (_edges.length > MAX_RETAINED_EDGES) {
+			_edges = new EdgeIteratorState[64];
+			_pointStart = new int[65];
+			_queryStamps = new int[64];
+			_distances = new double[64];
+			_wayIndices = new int[64];
+			_positions = new QueryResult.Position[64];
+			_results = new int[64];
+		}
+		if (_lats.length > MAX_RETAINED_POINTS) {
+			_lats = new double[256];
+			_lons = new double[256];
+			_pointEdges = new int[256];
+		}
+		if (_cellStart.length > MAX_RETAINED_POINTS)
+			_cellStart = new int[1];
+		if (_cellSegments.length > MAX_RETAINED_POINTS)
+			_cellSegments = new int[256];
+
+		_edgeIds.release();
+		_visitedNodes.release();
+		_nodes.release();
+	}
+
+	private void clear() {
+		_edgeIds.clear();
+		_nEdges = 0;
+		_nPoints = 0;
+		_pointStart[0] = 0;
+		_nResults = 0;
+		_nx = _ny = 0;
+	}
+
+	/**
+	 * Extends the box around the point at {@code start} by the following points, as long as it does not exceed
+	 * {@link #MAX_BOX_SIZE}, and returns the end (exclusive) of the points within the box.
+	 */
+	private static int extendBox(Coordinate[] trace, int start, double dLat, double dLon, BBox box) {
+		int end = start + 1;
+		while (end < trace.length) {
+			Coordinate c = trace[end];
+			double boxMinLon = Math.min(box.minLon, c.x - dLon), boxMaxLon = Math.max(box.maxLon, c.x + dLon);
+			double boxMinLat = Math.min(box.minLat, c.y - dLat), boxMaxLat = Math.max(box.maxLat, c.y + dLat);
+			if (boxMaxLon - boxMinLon > MAX_BOX_SIZE || boxMaxLat - boxMinLat > MAX_BOX_SIZE)
+				break;
+
+			box.minLon = boxMinLon;
+			box.maxLon = boxMaxLon;
+			box.minLat = boxMinLat;
+			box.maxLat = boxMaxLat;
+			end++;
+		}
+
+		return end;
+	}
+
+	private void initQueries() {
+		if (_queryStamps.length < _nEdges) {
+			int size = Math.max(_nEdges, 2 * _queryStamps.length);
+			_queryStamps = new int[size];
+			_distances = new double[size];
+			_wayIndices = new int[size];
+			_positions = new QueryResult.Position[size];
+			_results = new int[size];
+		} else
+			Arrays.fill(_queryStamps, 0, _nEdges, 0);
+		_queryId = 0;
+	}
+
+	/**
+	 * Finds the edges within {@code radius} meters of the given point, which must not exceed the radius the
+	 * index was built with. Returns the number of candidates found; they are sorted by their distance.
+	 */
+	public int findCandidates(double lat, double lon, double radius) {
+		_queryId++;
+		_nResults = 0;
+
+		if (_nx == 0)
+			return 0;
+
+		double maxDist = _distCalc.calcNormalizedDist(radius);
+		double dLat = radius / DistanceCalcEarth.METERS_PER_DEGREE;
+		double dLon = dLat / Math.cos(Math.toRadians(Math.min(89, Math.abs(lat))));
+
+		int x0 = Math.max(0, cellX(lon - dLon)), x1 = Math.min(_nx - 1, cellX(lon + dLon));
+		int y0 = Math.max(0, cellY(lat - dLat)), y1 = Math.min(_ny - 1, cellY(lat + dLat));
+
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				int cell = y * _nx + x;
+				for (int k = _cellStart[cell]; k < _cellStart[cell + 1]; k++)
+					checkSegment(_cellSegments[k], lat, lon, maxDist);
+			}
+		}
+
+		// the number of candidates is small, so insertion sort will do
+		for (int i = 1; i < _nResults; i++) {
+			int edge = _results[i];
+			int j = i - 1;
+			while (j >= 0 && _distances[_results[j]] > _distances[edge]) {
+				_results[j + 1] = _results[j];
+				j--;
+			}
+			_results[j + 1] = edge;
+		}
+
+		return _nResults;
+	}
+
+	/**
+	 * Returns the distance in meters of the i-th candidate of the last query.
+	 */
+	public double getDistance(int i) {
+		return _distCalc.calcDenormalizedDist(_distances[_results[i]]);
+	}
+
+	/**
+	 * Returns the original id of the edge of the i-th candidate of the last query.
+	 */
+	public int getEdge(int i) {
+		return _edges[_results[i]].getEdge();
+	}
+
+	/**
+	 * Creates the query result of the i-th candidate of the last query.
+	 */
+	public QueryResult createQueryResult(int i, double lat, double lon) {
+		int edge = _results[i];
+		EdgeIteratorState edgeState = _edges[edge];
+		int wayIndex = _wayIndices[edge];
+		QueryResult.Position pos = _positions[edge];
+
+		QueryResult qr = new QueryResult(lat, lon);
+		qr.setQueryDistance(_distCalc.calcDenormalizedDist(_distances[edge]));
+		qr.setClosestEdge(edgeState);
+		qr.setClosestNode(pos == QueryResult.Position.TOWER && wayIndex > 0 ? edgeState.getAdjNode() : edgeState.getBaseNode());
+		qr.setWayIndex(wayIndex);
+		qr.setSnappedPosition(pos);
+		qr.calcSnappedPoint(_distCalc);
+
+		return qr;
+	}
+
+	private void collectEdges(final BBox box, EdgeExplorer explorer) {
+		_visitedNodes.clear();
+		_nodes.clear();
+
+		_locationIndex.query(box, new LocationIndex.Visitor() {
+			@Override
+			public void onNode(int node) {
+				if (_visitedNodes.add(node))
+					_nodes.add(node);
+			}
+		});
+
+		// The cells only hold entry points into the network, so the edges around them are explored as well,
+		// as long as the nodes lie within the box.
+		for (int i = 0; i < _nodes.size(); i++) {
+			EdgeIterator iter = explorer.setBaseNode(_nodes.get(i));
+			while (iter.next()) {
+				addEdge(iter);
+
+				int adjNode = iter.getAdjNode();
+				if (box.contains(_nodeAccess.getLat(adjNode), _nodeAccess.getLon(adjNode)) && _visitedNodes.add(adjNode))
+					_nodes.add(adjNode);
+			}
+		}
+	}
+
+	private void addEdge(EdgeIteratorState iter) {
+		if (_edgeIds.containsKey(iter.getEdge()))
+			return;
+
+		EdgeIteratorState edge = iter.detach(false);
+		PointList points = edge.fetchWayGeometry(3);
+		int nPoints = points.size();
+
+		if (_nEdges == _edges.length) {
+			_edges = Arrays.copyOf(_edges, 2 * _nEdges);
+			_pointStart = Arrays.copyOf(_pointStart, 2 * _nEdges + 1);
+		}
+		if (_nPoints + nPoints > _lats.length) {
+			int size = Math.max(_nPoints + nPoints, 2 * _lats.length);
+			_lats = Arrays.copyOf(_lats, size);
+			_lons = Arrays.copyOf(_lons, size);
+			_pointEdges = Arrays.copyOf(_pointEdges, size);
+		}
+
+		for (int i = 0; i < nPoints; i++) {
+			_lats[_nPoints] = points.getLat(i);
+			_lons[_nPoints] = points.getLon(i);
+			_pointEdges[_nPoints] = _nEdges;
+			_nPoints++;
+		}
+
+		_edgeIds.put(edge.getEdge(), _nEdges);
+		_edges[_nEdges] = edge;
+		_nEdges++;
+		_pointStart[_nEdges] = _nPoints;
+	}
+
+	private void buildGrid(double minLat, double minLon, double maxLat, double maxLon, double cellLat, double cellLon) {
+		_minLat = minLat;
+		_minLon = minLon;
+		_cellLat = cellLat;
+		_cellLon = cellLon;
+		_nx = cellX(maxLon) + 1;
+		_ny = cellY(maxLat) + 1;
+		while ((long) _nx * _ny > MAX_CELLS) {
+			_cellLat *= 2;
+			_cellLon *= 2;
+			_nx = cellX(maxLon) + 1;
+			_ny = cellY(maxLat) + 1;
+		}
+
+		int nCells = _nx * _ny;
+		if (_cellStart.length < nCells + 1)
+			_cellStart = new int[nCells + 1];
+		Arrays.fill(_cellStart, 0, nCells + 1, 0);
+
+		// first pass counts the segments of each cell, the second one fills them in
+		for (int pass = 0; pass < 2; pass++) {
+			if (pass == 1) {
+				for (int cell = 0; cell < nCells; cell++)
+					_cellStart[cell + 1] += _cellStart[cell];
+				if (_cellSegments.length < _cellStart[nCells])
+					_cellSegments = new int[Math.max(_cellStart[nCells], 2 * _cellSegments.length)];
+			}
+
+			for (int edge = 0; edge < _nEdges; edge++) {
+				for (int p = _pointStart[edge]; p < _pointStart[edge + 1] - 1; p++) {
+					int x0 = Math.max(0, cellX(Math.min(_lons[p], _lons[p + 1]))), x1 = Math.min(_nx - 1, cellX(Math.max(_lons[p], _lons[p + 1])));
+					int y0 = Math.max(0, cellY(Math.min(_lats[p], _lats[p + 1]))), y1 = Math.min(_ny - 1, cellY(Math.max(_lats[p], _lats[p + 1])));
+
+					for (int y = y0; y <= y1; y++) {
+						for (int x = x0; x <= x1; x++) {
+							if (pass == 0)
+								_cellStart[y * _nx + x + 1]++;
+							else
+								_cellSegments[_cellStart[y * _nx + x]++] = p;
+						}
+					}
+				}
+			}
+		}
+
+		// the fill pass has moved every start to the start of the next cell
+		for (int cell = nCells; cell > 0; cell--)
+			_cellStart[cell] = _cellStart[cell - 1];
+		_cellStart[0] = 0;
+	}
+
+	private void checkSegment(int p, double lat, double lon, double maxDist) {
+		int edge = _pointEdges[p];
+		int first = _pointStart[edge];
+		double dist;
+		int wayIndex;
+		QueryResult.Position pos;
+
+		if (_distCalc.validEdgeDistance(lat, lon, _lats[p], _lons[p], _lats[p + 1], _lons[p + 1])) {
+			dist = _distCalc.calcNormalizedEdgeDistance(lat, lon, _lats[p], _lons[p], _lats[p + 1], _lons[p + 1]);
+			wayIndex = p - first;
+			pos = QueryResult.Position.EDGE;
+		} else {
+			double distA = _distCalc.calcNormalizedDist(lat, lon, _lats[p], _lons[p]);
+			double distB = _distCalc.calcNormalizedDist(lat, lon, _lats[p + 1], _lons[p + 1]);
+			if (distA <= distB) {
+				dist = distA;
+				wayIndex = p - first;
+			} else {
+				dist = distB;
+				wayIndex = p + 1 - first;
+			}
+			pos = wayIndex == 0 || wayIndex == _pointStart[edge + 1] - 1 - first ? QueryResult.Position.TOWER : QueryResult.Position.PILLAR;
+		}
+
+		if (dist > maxDist)
+			return;
+
+		if (_queryStamps[edge] != _queryId) {
+			_queryStamps[edge] = _queryId;
+			_results[_nResults++] = edge;
+		} else if (dist >= _distances[edge])
+			return;
+
+		_distances[edge] = dist;
+		_wayIndices[edge] = wayIndex;
+		_positions[edge] = pos;
+	}
+
+	private int cellX(double lon) {
+		return (int) Math.floor((lon - _minLon) / _cellLon);
+	}
+
+	private int cellY(double lat) {
+		return (int) Math.floor((lat - _minLat) / _cellLat);
+	}
+}
@@ -13,25 +13,25 @@
  */
 package heigit.ors.mapmatching.hmm;
 
-import com.graphhopper.GHRequest;
-import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
-import com.graphhopper.PathWrapper;
 import com.graphhopper.routing.EdgeIteratorStateHelper;
+import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.vividsolutions.jts.geom.Coordinate;
 import heigit.ors.mapmatching.AbstractMapMatcher;
-import heigit.ors.mapmatching.LocationIndexMatch;
 import heigit.ors.mapmatching.RouteSegmentInfo;
+import heigit.ors.mapmatching.TraceCandidateIndex;
 import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
@@ -43,18 +43,22 @@ import java.util.List;
 public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 
 	private DistanceCalc distCalcEarth = new DistanceCalcEarth(); // DistancePlaneProjection
-	private LocationIndexMatch locationIndex;
+	private TraceCandidateIndex candidateIndex;
 	private FlagEncoder encoder;
 	private List<MatchPoint> matchPoints = new ArrayList<>(2);
 	private List<Integer> roadSegments = new ArrayList<Integer>();
 	
-	private static double sigma_z = 4.07;// sigma_z(z, x); this value is taken from a paper by Newson and Krumm
-	private static double beta =  0.00959442; // beta(z, x); 
-	private static double denom = Math.sqrt(2 * Math.PI) * sigma_z; // see Equation 1
+	// transitions are searched up to this multiple of the distance between the measurements
+	private static double maxDetourFactor = 2.0;
 	
 	private double[] distances = new double[2];
 	private double[] longitudes = new double[2];
 	private double[] latitudes = new double[2];
+	private double[] gpsDistances = new double[2];
+	private int[] targetNodes = new int[2];
+	private int[] targetIndices = new int[2];
+	private double[] pathDistances = new double[2];
+	private long[] pathTimes = new long[2];
 
 	
 	@SuppressWarnings("serial")
@@ -62,17 +66,16 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		public int segmentId;
 		public double distance;
 		public int measuredPointIndex;
+		public QueryResult queryResult;
 
 		public MatchPoint(double lat, double lon) {
-			super(lat, lon);
+			super(lon, lat);
 		}
 	}
 
 	public void setSearchRadius(double radius)
 	{
 		_searchRadius = radius;
-		if (locationIndex != null)
-			locationIndex.setGpxAccuracy(radius);
 	}
 
 	public void setGraphHopper(GraphHopper gh) {
@@ -80,8 +83,14 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 
 		encoder = gh.getEncodingManager().fetchEdgeEncoders().get(0);
 		GraphHopperStorage graph = gh.getGraphHopperStorage();
-		locationIndex = new LocationIndexMatch(graph,
-				(com.graphhopper.storage.index.LocationIndexTree) gh.getLocationIndex(), (int)_searchRadius);
+		candidateIndex = new TraceCandidateIndex(graph, (com.graphhopper.storage.index.LocationIndexTree) gh.getLocationIndex());
+	}
+
+	@Override
+	public void trim() {
+		matchPoints = new ArrayList<>(2);
+		roadSegments = new ArrayList<Integer>();
+		candidateIndex.trim();
 	}
 
 	@Override
@@ -104,6 +113,7 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		// Phase I: We are looking for the nearest road segments
 		MatchPoint[][] x = new MatchPoint[Nz][];
 		double searchRadius = _searchRadius;
+		candidateIndex.build(z, bPreciseMode ? Math.max(50, searchRadius) : searchRadius, edgeFilter);
 		
 		for (int i = 0; i < nPoints; i++) {
 			Coordinate zt = z[i];
@@ -128,7 +138,16 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		double[][] emissionProbs = new double[Nr][Nz];
 		double[] startProbs = new double[Nr];
 
-		RouteSegmentInfo seg1 = findRouteSegments(z, x, Nr, Nz, startProbs, emissionProbs, transProbs, edgeFilter);
+		// All candidates are snapped into one query graph, which is shared by the transition searches of both directions.
+		List<QueryResult> queryResults = new ArrayList<QueryResult>(matchPoints.size());
+		for (MatchPoint mp : matchPoints)
+			queryResults.add(mp.queryResult);
+
+		QueryGraph queryGraph = new QueryGraph(_graphHopper.getGraphHopperStorage());
+		queryGraph.lookup(queryResults);
+		TransitionSearch transitionSearch = new TransitionSearch(queryGraph, new FastestWeighting(encoder), _edgeFilter);
+
+		RouteSegmentInfo seg1 = findRouteSegments(z, x, Nr, Nz, startProbs, emissionProbs, transProbs, transitionSearch, edgeFilter);
 		RouteSegmentInfo seg2 = null;
 		
 		if (bothDirections)
@@ -154,43 +173,17 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 				}
 			}
 
-			seg2 = findRouteSegments(z, x, Nr, Nz, startProbs, emissionProbs, transProbs, edgeFilter);
-		}
-		
-		if (seg1 !=  null && seg2 != null)
-		{
-			double koef = 1.1;
-			if (seg1.getDistance() < 100)
-				koef = 1.2;
-			else if (seg1.getDistance() > 1000)
-				koef = 1.25;
-			// Remove unneeded loops. see example
-			// 53856-53857
-			
-			if (seg1.getDistance() > seg2.getDistance()) {
-				if (seg1.getDistance() > koef * seg2.getDistance())
-					seg1 = null;
-			} else {
-				if (seg2.getDistance() > koef * seg1.getDistance())
-					seg2 = null;
-			}
+			seg2 = findRouteSegments(z, x, Nr, Nz, startProbs, emissionProbs, transProbs, transitionSearch, edgeFilter);
 		}
 		
-		RouteSegmentInfo result[] = new RouteSegmentInfo[2];
-		if (seg1 != null) {
-			result[0] = seg1;
-			result[1] = seg2;
-		} else
-			result[0] = seg2;
-		
-		return result;
+		return selectSegments(seg1, seg2);
 	}
 
-	private RouteSegmentInfo findRouteSegments(Coordinate[] z, MatchPoint[][] x, int Nr, int Nz, double[] startProbs, double[][] emissionProbs, double[][] transProbs, EdgeFilter edgeFilter)
+	private RouteSegmentInfo findRouteSegments(Coordinate[] z, MatchPoint[][] x, int Nr, int Nz, double[] startProbs, double[][] emissionProbs, double[][] transProbs, TransitionSearch transitionSearch, EdgeFilter edgeFilter)
 	{
 		// Phase II: Compute distances, probabilities, etc.
 
-		double v, dist;
+		double dist;
 		Coordinate z0 = z[0];
 		
 		double defaultProbability = 0.0;
@@ -205,26 +198,25 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 				dist = xi.distance;// distCalcEarth.calcDist(zt.lat, zt.lon, xi.lat, xi.lon);
 				if (dist > distThreshold)
 					emissionProbs[ri][t] = defaultProbability;
-				else {
-					v = dist / sigma_z;
-					emissionProbs[ri][t] = Math.exp(-0.5 * v * v) / denom;
-				}
+				else
+					emissionProbs[ri][t] = Math.exp(HmmProbabilityModel.logEmission(dist));
 
 				if (startProbs[ri] == 0.0)
 				{
-					dist = distCalcEarth.calcDist(z0.y, z0.x, xi.y, xi.x) / sigma_z;
+					dist = distCalcEarth.calcDist(z0.y, z0.x, xi.y, xi.x) / HmmProbabilityModel.SIGMA_Z;
 					if (dist > distThreshold || xi.measuredPointIndex != 0)
 						startProbs[ri] = defaultProbability;
-					else {
-						v = dist / sigma_z;
-						startProbs[ri] = Math.exp(-0.5 * v * v) / denom;
-					}
+					else
+						startProbs[ri] = Math.exp(HmmProbabilityModel.logEmission(dist));
 				}
 			}
 		}
 		
 		if (z.length > distances.length)
+		{
 			distances = new double[z.length];
+			gpsDistances = new double[z.length];
+		}
 		
 		for (int i = 0; i < z.length - 1 ; i++)
 		{
@@ -234,62 +226,54 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		}
 		
 		distances[z.length - 1] = distances[0];
-		
-		double perfTime = (distances[0]/encoder.getMaxSpeed())*3600;
+
+		// distance along the measurements from the first one
+		gpsDistances[0] = 0;
+		for (int i = 1; i < z.length; i++)
+			gpsDistances[i] = gpsDistances[i - 1] + distances[i - 1];
+
+		if (Nr > targetNodes.length)
+		{
+			targetNodes = new int[Nr];
+			targetIndices = new int[Nr];
+			pathDistances = new double[Nr];
+			pathTimes = new long[Nr];
+		}
 		
 		for (int i = 0; i < Nr; i++) {
-		    MatchPoint xi = matchPoints.get(i);
-			
+			MatchPoint xi = matchPoints.get(i);
+			Arrays.fill(transProbs[i], defaultProbability);
+
+			// check the order of points from 0 -> 1
+			int nTargets = 0;
+			double maxGpsDistance = 0;
 			for (int j = 0; j < Nr; j++) {
-				
-				double value = defaultProbability;
-				
-				if (i != j)
+				MatchPoint xj = matchPoints.get(j);
+				if (i != j && xi.measuredPointIndex < xj.measuredPointIndex)
 				{
-					MatchPoint xj = matchPoints.get(j);
-				 
-					// check the order of points from 0 -> 1
-					if (xi.measuredPointIndex < xj.measuredPointIndex)
-					{
-						//Point zt = z[xi.measuredPointIndex ];
-						//Point zt1 = z[xj.measuredPointIndex];
-						double dz = distances[xi.measuredPointIndex]; // distCalcEarth.calcDist(zt.lat, zt.lon, zt1.lat, zt1.lon);
-				
-						GHRequest req = new GHRequest(xi.y, xi.x, xj.y, xj.x);
-						req.getHints().put("ch.disable", true);
-						req.getHints().put("lm.disable", true);
-						req.setAlgorithm("dijkstrabi"); 
-						
-						try
-						{
-							GHResponse resp = _graphHopper.route(req);
-						
-							if (!resp.hasErrors())
-							{
-								PathWrapper path = resp.getBest();
-								/*
-								double dx = resp.getDistance();
-								double dt = Math.abs(dz - dx);
-                                								
-								value = exponentialDistribution(100*beta, dt);  // Equation 2
-								*/
-								
-								double dx = path.getDistance();
-								double dt = Math.abs(dz - dx)/distances[0]; // normalize 
-
-								double time = path.getTime();
-								//(distances[0]/1000/encoder.getMaxSpeed())*60*60*1000
-                                double dt2 = Math.abs(time - perfTime)/perfTime;
-                                								
-								value = exponentialDistribution(beta, 0.2*dt + 0.8*dt2); 
-							}
-						}
-						catch(Exception ex)
-						{}
-					}
+					targetNodes[nTargets] = xj.queryResult.getClosestNode();
+					targetIndices[nTargets] = j;
+					nTargets++;
+					maxGpsDistance = Math.max(maxGpsDistance, gpsDistances[xj.measuredPointIndex] - gpsDistances[xi.measuredPointIndex]);
 				}
-				
-				transProbs[i][j] = value;
+			}
+
+			if (nTargets == 0)
+				continue;
+
+			// One search reaches all candidates of the following measurements. Paths much longer than the GPS
+			// steps are not plausible, so the search does not follow them.
+			transitionSearch.calcPaths(xi.queryResult.getClosestNode(), targetNodes, nTargets, maxDetourFactor * maxGpsDistance + 2 * _searchRadius, pathDistances, pathTimes);
+
+			for (int k = 0; k < nTargets; k++) {
+				if (Double.isNaN(pathDistances[k]))
+					continue;
+
+				MatchPoint xj = matchPoints.get(targetIndices[k]);
+				double dz = gpsDistances[xj.measuredPointIndex] - gpsDistances[xi.measuredPointIndex];
+
+				// the same model as the online matcher, so results do not change with the length of the trace
+				transProbs[i][targetIndices[k]] = Math.exp(HmmProbabilityModel.logTransition(dz, pathDistances[k], pathTimes[k], encoder.getMaxSpeed()));
 			}
 		}
 
@@ -333,20 +317,16 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 		return res;
 	}
 	
-	static double exponentialDistribution(double beta, double x) {
-        return 1.0 / beta * Math.exp(-x / beta); 
-    }
-	
 	private MatchPoint[] findNearestPoints(double lat, double lon, int measuredPointIndex, EdgeFilter edgeFilter, List<MatchPoint> matchPoints,
 			List<Integer> roadSegments) {
-		List<QueryResult> qResults = locationIndex.findNClosest(lat, lon, edgeFilter);
-		if (qResults.isEmpty())
+		int nCandidates = candidateIndex.findCandidates(lat, lon, _searchRadius);
+		if (nCandidates == 0)
 			return null;
 
 		int nMatchPoints = matchPoints.size();
 
-		for (int matchIndex = 0; matchIndex < qResults.size(); matchIndex++) {
-			QueryResult qr = qResults.get(matchIndex);
+		for (int matchIndex = 0; matchIndex < nCandidates; matchIndex++) {
+			QueryResult qr = candidateIndex.createQueryResult(matchIndex, lat, lon);
 
 			double spLat = qr.getSnappedPoint().getLat();
 			double spLon = qr.getSnappedPoint().getLon();
@@ -361,6 +341,7 @@ public class HiddenMarkovMapMatcher extends AbstractMapMatcher {
 					roadSegments.add(edgeId);
 
 				MatchPoint mp = new MatchPoint(spLat, spLon);
+				mp.queryResult = qr;
 				mp.distance = distance;
                 mp.segmentId = roadSegments.indexOf(edgeId);
                 mp.measuredPointIndex = measuredPointIndex;
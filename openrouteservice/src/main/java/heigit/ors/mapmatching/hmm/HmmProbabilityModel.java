@@ -0,0 +1,66 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching.hmm;
+
+/**
+ * Emission and transition probabilities shared by {@link HiddenMarkovMapMatcher} and
+ * {@link OnlineHiddenMarkovMapMatcher}, so that a trace is matched the same way whichever of the two is used.
+ * <p>
+ * The emission probability is the Gaussian of the distance between a measurement and its candidate (Equation 1 of
+ * Newson and Krumm). The transition probability is exponential in the deviation of the path between two candidates
+ * from the step between their measurements, combining the relative deviation of the path length from the distance
+ * between the measurements and of the path time from the time needed for that distance at the maximum speed.
+ */
+final class HmmProbabilityModel {
+	// standard deviation (in meters) of the GPS measurements; this value is taken from the paper by Newson and Krumm
+	static final double SIGMA_Z = 4.07;
+	static final double BETA = 0.00959442;
+	// weights of the relative distance and time deviations of a transition
+	private static final double DISTANCE_FACTOR = 0.2;
+	private static final double TIME_FACTOR = 0.8;
+	// steps shorter than this (in meters) are not used to normalise deviations, e.g. repeated measurements
+	private static final double MIN_STEP = 1.0;
+
+	private static final double LOG_EMISSION_NORM = Math.log(Math.sqrt(2 * Math.PI) * SIGMA_Z);
+	private static final double LOG_BETA = Math.log(BETA);
+
+	private HmmProbabilityModel() {
+	}
+
+	/**
+	 * Returns the log-probability of a measurement at the given distance (in meters) from the candidate.
+	 */
+	static double logEmission(double distance) {
+		double v = distance / SIGMA_Z;
+		return -0.5 * v * v - LOG_EMISSION_NORM;
+	}
+
+	/**
+	 * Returns the log-probability of the transition between two candidates.
+	 *
+	 * @param gpsDistance distance (in meters) between the measurements of the candidates
+	 * @param pathDistance length (in meters) of the path between the candidates
+	 * @param pathTime time (in milliseconds) of the path between the candidates
+	 * @param maxSpeed maximum speed (in km/h) of the encoder
+	 */
+	static double logTransition(double gpsDistance, double pathDistance, double pathTime, double maxSpeed) {
+		double step = Math.max(gpsDistance, MIN_STEP);
+		double perfTime = gpsDistance / maxSpeed * 3600;
+
+		double dd = Math.abs(gpsDistance - pathDistance) / step;
+		double dt = Math.abs(pathTime - perfTime) / (step / maxSpeed * 3600);
+
+		return -LOG_BETA - (DISTANCE_FACTOR * dd + TIME_FACTOR * dt) / BETA;
+	}
+}
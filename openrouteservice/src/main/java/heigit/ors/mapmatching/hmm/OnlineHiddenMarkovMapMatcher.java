@@ -0,0 +1,336 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching.hmm;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.EdgeIteratorStateHelper;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.mapmatching.AbstractMapMatcher;
+import heigit.ors.mapmatching.MatchedPath;
+import heigit.ors.mapmatching.RouteSegmentInfo;
+import heigit.ors.mapmatching.TraceCandidateIndex;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hidden Markov map matching (Newson and Krumm) for long traces. In contrast to {@link HiddenMarkovMapMatcher},
+ * the trace is processed point by point with an {@link OnlineViterbiSolver}: only the candidates of the points
+ * whose match is not decided yet are kept, and transitions are computed between adjacent points only, on a
+ * QueryGraph holding the candidates of both points. Memory therefore does not grow with the length of the trace.
+ * <p>
+ * Both matchers share the {@link HmmProbabilityModel}, so they only differ in how transitions are searched and decoded.
+ * <p>
+ * Points without candidates are skipped. If no candidate of a point can be reached from the previous point, the
+ * matched sequence is broken up and a new one starts at that point.
+ */
+public class OnlineHiddenMarkovMapMatcher extends AbstractMapMatcher {
+	// transitions are searched up to this multiple of the distance between the points
+	private static final double MAX_DETOUR_FACTOR = 2.0;
+	// number of points after which the match of the oldest undecided point is forced
+	private static final int MAX_WINDOW = 50;
+
+	private DistanceCalc _distCalc = new DistanceCalcEarth();
+	private TraceCandidateIndex _candidateIndex;
+	private FlagEncoder _encoder;
+
+	private static class CandidateLayer {
+		private final int time;
+		private final Coordinate z;
+		private final QueryResult[] candidates;
+
+		public CandidateLayer(int time, Coordinate z, QueryResult[] candidates) {
+			this.time = time;
+			this.z = z;
+			this.candidates = candidates;
+		}
+	}
+
+	private interface MatchListener {
+		void matched(Coordinate z, QueryResult qr);
+	}
+
+	public void setSearchRadius(double radius)
+	{
+		_searchRadius = radius;
+	}
+
+	public void setGraphHopper(GraphHopper gh) {
+		_graphHopper = gh;
+
+		_encoder = gh.getEncodingManager().fetchEdgeEncoders().get(0);
+		_candidateIndex = new TraceCandidateIndex(gh.getGraphHopperStorage(), (com.graphhopper.storage.index.LocationIndexTree) gh.getLocationIndex());
+	}
+
+	@Override
+	public void trim() {
+		_candidateIndex.trim();
+	}
+
+	@Override
+	public RouteSegmentInfo[] match(Coordinate[] locations, boolean bothDirections) {
+		EdgeFilter edgeFilter = _edgeFilter == null ? new DefaultEdgeFilter(_encoder) : _edgeFilter;
+
+		RouteSegmentInfo seg1 = matchSegment(locations, edgeFilter);
+		RouteSegmentInfo seg2 = null;
+
+		if (bothDirections)
+		{
+			Coordinate[] reversed = new Coordinate[locations.length];
+			for (int i = 0; i < locations.length; i++)
+				reversed[i] = locations[locations.length - i - 1];
+
+			seg2 = matchSegment(reversed, edgeFilter);
+		}
+
+		return selectSegments(seg1, seg2);
+	}
+
+	/**
+	 * Returns the path the trace is matched to, split into parts which can each be reproduced by a single route
+	 * search: a part ends where the matched sequence is broken up or where the path passes an edge a second time.
+	 * Parts without edges are left out, so the list is empty if the trace can not be matched.
+	 */
+	public List<MatchedPath> matchPaths(Coordinate[] locations) {
+		EdgeFilter edgeFilter = _edgeFilter == null ? new DefaultEdgeFilter(_encoder) : _edgeFilter;
+		final Weighting weighting = new FastestWeighting(_encoder);
+		final List<MatchedPath> paths = new ArrayList<MatchedPath>();
+
+		matchTrace(locations, edgeFilter, new MatchListener() {
+			private MatchedPath path;
+			private QueryResult prevResult;
+			private Coordinate prevZ;
+
+			@Override
+			public void matched(Coordinate z, QueryResult qr) {
+				Coordinate position = new Coordinate(qr.getSnappedPoint().getLon(), qr.getSnappedPoint().getLat());
+				List<EdgeIteratorState> edges = prevResult == null ? null : findPath(prevResult, prevZ, qr, z, weighting);
+
+				if (edges == null) {
+					// first point of a matched sequence
+					path = new MatchedPath(position);
+					paths.add(path);
+				} else {
+					for (EdgeIteratorState edge : edges) {
+						if (path.revisits(EdgeIteratorStateHelper.getOriginalEdge(edge))) {
+							path = new MatchedPath(path.getEnd());
+							paths.add(path);
+							break;
+						}
+					}
+
+					for (EdgeIteratorState edge : edges)
+						path.addEdge(EdgeIteratorStateHelper.getOriginalEdge(edge));
+					path.setEnd(position);
+				}
+
+				prevResult = qr;
+				prevZ = z;
+			}
+		});
+
+		Iterator<MatchedPath> iter = paths.iterator();
+		while (iter.hasNext()) {
+			if (iter.next().getEdges().isEmpty())
+				iter.remove();
+		}
+
+		return paths;
+	}
+
+	private RouteSegmentInfo matchSegment(Coordinate[] z, EdgeFilter edgeFilter) {
+		final List<Coordinate> matched = new ArrayList<Coordinate>(z.length);
+		matchTrace(z, edgeFilter, new MatchListener() {
+			@Override
+			public void matched(Coordinate zt, QueryResult qr) {
+				matched.add(new Coordinate(qr.getSnappedPoint().getLon(), qr.getSnappedPoint().getLat()));
+			}
+		});
+
+		if (matched.size() < 2)
+			return null;
+
+		double[] latitudes = new double[matched.size()];
+		double[] longitudes = new double[matched.size()];
+		for (int i = 0; i < latitudes.length; i++) {
+			latitudes[i] = matched.get(i).y;
+			longitudes[i] = matched.get(i).x;
+		}
+
+		return ((ORSGraphHopper)_graphHopper).getRouteSegment(latitudes, longitudes, _encoder.toString(), edgeFilter);
+	}
+
+	/**
+	 * Matches the trace and passes the selected candidates to the listener in the order of the trace.
+	 */
+	private void matchTrace(Coordinate[] z, EdgeFilter edgeFilter, final MatchListener listener) {
+		final ArrayDeque<CandidateLayer> layers = new ArrayDeque<CandidateLayer>();
+
+		OnlineViterbiSolver solver = new OnlineViterbiSolver(new OnlineViterbiSolver.CommitListener() {
+			@Override
+			public void commit(int time, int state) {
+				while (layers.peekFirst().time < time)
+					layers.pollFirst();
+
+				CandidateLayer layer = layers.peekFirst();
+				listener.matched(layer.z, layer.candidates[state]);
+			}
+		}, MAX_WINDOW);
+
+		Weighting weighting = new FastestWeighting(_encoder);
+		QueryResult[] prevCandidates = null;
+		Coordinate prevZ = null;
+		double[] pathDistances = new double[0];
+		long[] pathTimes = new long[0];
+		int[] targetNodes = new int[0];
+		int[] from = new int[0];
+		int[] to = new int[0];
+		double[] logTransitions = new double[0];
+
+		// the index only covers the points around the current one, so it does not grow with the trace
+		int indexEnd = 0;
+
+		for (int t = 0; t < z.length; t++) {
+			Coordinate zt = z[t];
+			if (t >= indexEnd)
+				indexEnd = _candidateIndex.buildChunk(z, t, _searchRadius, edgeFilter);
+
+			QueryResult[] candidates = findCandidates(zt);
+			if (candidates == null)
+				continue;
+
+			int n = candidates.length;
+			double[] logEmissions = new double[n];
+			for (int j = 0; j < n; j++)
+				logEmissions[j] = HmmProbabilityModel.logEmission(candidates[j].getQueryDistance());
+
+			boolean added;
+			if (prevCandidates == null)
+				added = solver.start(logEmissions, n);
+			else {
+				int nPrev = prevCandidates.length;
+				if (pathDistances.length < n) {
+					pathDistances = new double[n];
+					pathTimes = new long[n];
+					targetNodes = new int[n];
+				}
+				if (from.length < nPrev * n) {
+					from = new int[nPrev * n];
+					to = new int[nPrev * n];
+					logTransitions = new double[nPrev * n];
+				}
+
+				// The query results are modified by the lookup, so every query graph gets its own copies.
+				List<QueryResult> queryResults = new ArrayList<QueryResult>(nPrev + n);
+				for (QueryResult qr : prevCandidates)
+					queryResults.add(copy(qr));
+				for (QueryResult qr : candidates)
+					queryResults.add(copy(qr));
+
+				QueryGraph queryGraph = new QueryGraph(_graphHopper.getGraphHopperStorage());
+				queryGraph.lookup(queryResults);
+				TransitionSearch search = new TransitionSearch(queryGraph, weighting, _edgeFilter);
+
+				for (int j = 0; j < n; j++)
+					targetNodes[j] = queryResults.get(nPrev + j).getClosestNode();
+
+				double dz = _distCalc.calcDist(prevZ.y, prevZ.x, zt.y, zt.x);
+				int nTransitions = 0;
+
+				for (int i = 0; i < nPrev; i++) {
+					search.calcPaths(queryResults.get(i).getClosestNode(), targetNodes, n, MAX_DETOUR_FACTOR * dz + 2 * _searchRadius, pathDistances, pathTimes);
+
+					for (int j = 0; j < n; j++) {
+						if (Double.isNaN(pathDistances[j]))
+							continue;
+
+						from[nTransitions] = i;
+						to[nTransitions] = j;
+						logTransitions[nTransitions] = HmmProbabilityModel.logTransition(dz, pathDistances[j], pathTimes[j], _encoder.getMaxSpeed());
+						nTransitions++;
+					}
+				}
+
+				added = solver.next(logEmissions, n, from, to, logTransitions, nTransitions);
+				if (!added)
+					added = solver.start(logEmissions, n);
+			}
+
+			if (added) {
+				layers.addLast(new CandidateLayer(solver.getTime(), zt, candidates));
+				prevCandidates = candidates;
+				prevZ = zt;
+			}
+		}
+
+		solver.finish();
+	}
+
+	/**
+	 * Returns the edges of the transition between two matched candidates or null if there is none, which means that
+	 * the matched sequence has been broken up between them.
+	 */
+	private List<EdgeIteratorState> findPath(QueryResult from, Coordinate fromZ, QueryResult to, Coordinate toZ, Weighting weighting) {
+		List<QueryResult> queryResults = new ArrayList<QueryResult>(2);
+		queryResults.add(copy(from));
+		queryResults.add(copy(to));
+
+		QueryGraph queryGraph = new QueryGraph(_graphHopper.getGraphHopperStorage());
+		queryGraph.lookup(queryResults);
+		TransitionSearch search = new TransitionSearch(queryGraph, weighting, _edgeFilter);
+
+		// the same bound as for the transitions, so the path found is the one the transition has been computed for
+		double dz = _distCalc.calcDist(fromZ.y, fromZ.x, toZ.y, toZ.x);
+		int[] targetNodes = new int[] { queryResults.get(1).getClosestNode() };
+		search.calcPaths(queryResults.get(0).getClosestNode(), targetNodes, 1, MAX_DETOUR_FACTOR * dz + 2 * _searchRadius, new double[1], new long[1]);
+
+		return search.getPath(targetNodes[0]);
+	}
+
+	private QueryResult[] findCandidates(Coordinate z) {
+		int n = _candidateIndex.findCandidates(z.y, z.x, _searchRadius);
+		if (n == 0)
+			return null;
+
+		QueryResult[] res = new QueryResult[n];
+		for (int i = 0; i < n; i++)
+			res[i] = _candidateIndex.createQueryResult(i, z.y, z.x);
+
+		return res;
+	}
+
+	private QueryResult copy(QueryResult qr) {
+		QueryResult res = new QueryResult(qr.getQueryPoint().getLat(), qr.getQueryPoint().getLon());
+		res.setQueryDistance(qr.getQueryDistance());
+		res.setClosestNode(qr.getClosestNode());
+		res.setClosestEdge(qr.getClosestEdge());
+		res.setWayIndex(qr.getWayIndex());
+		res.setSnappedPosition(qr.getSnappedPosition());
+		res.calcSnappedPoint(_distCalc);
+		return res;
+	}
+}
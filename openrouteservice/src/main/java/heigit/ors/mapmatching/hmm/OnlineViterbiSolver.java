@@ -0,0 +1,270 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching.hmm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Viterbi solver which consumes the time steps one by one and only keeps the candidate layers whose most likely
+ * state is not decided yet. Whenever the back pointers of all surviving states converge in an older layer, the
+ * states up to that layer are committed to the {@link CommitListener}, as in the online Viterbi algorithm of
+ * Bloit and Rodet. If the paths do not converge within the maximum window, the oldest layer is decided by the
+ * currently most likely path.
+ * <p>
+ * Probabilities are handled as logarithms and transitions are passed as sparse lists, so that neither dense
+ * matrices nor whole traces are held in memory.
+ */
+public class OnlineViterbiSolver {
+	public interface CommitListener {
+		void commit(int time, int state);
+	}
+
+	private static class Layer {
+		private final int time;
+		private final Node[] nodes;
+		private int alive;
+
+		public Layer(int time, int nStates) {
+			this.time = time;
+			this.nodes = new Node[nStates];
+		}
+	}
+
+	private static class Node {
+		private final int state;
+		private final Layer layer;
+		private Node parent;
+		private int children;
+		private boolean alive = true;
+		private boolean committed;
+
+		public Node(int state, Layer layer, Node parent) {
+			this.state = state;
+			this.layer = layer;
+			this.parent = parent;
+		}
+	}
+
+	private final CommitListener _listener;
+	private final int _maxWindow;
+	private final ArrayDeque<Layer> _window = new ArrayDeque<Layer>();
+	// log-probabilities of the most likely paths ending in the states of the last layer
+	private double[] _scores;
+	private int _time = -1;
+
+	/**
+	 * @param maxWindow the number of layers kept at most before the oldest one is decided
+	 */
+	public OnlineViterbiSolver(CommitListener listener, int maxWindow) {
+		_listener = listener;
+		_maxWindow = Math.max(2, maxWindow);
+	}
+
+	/**
+	 * Returns the time of the last layer added.
+	 */
+	public int getTime() {
+		return _time;
+	}
+
+	/**
+	 * Returns the number of layers which are not committed yet.
+	 */
+	public int getWindowSize() {
+		return _window.size();
+	}
+
+	/**
+	 * Starts a new sequence, the states of a running one are committed first.
+	 *
+	 * @param logProbabilities start log-probabilities (including the emissions) of the states
+	 * @return false if no state is possible, then nothing has been added
+	 */
+	public boolean start(double[] logProbabilities, int nStates) {
+		finish();
+
+		Layer layer = new Layer(_time + 1, nStates);
+		double[] scores = new double[nStates];
+		for (int i = 0; i < nStates; i++) {
+			scores[i] = logProbabilities[i];
+			if (scores[i] > Double.NEGATIVE_INFINITY) {
+				layer.nodes[i] = new Node(i, layer, null);
+				layer.alive++;
+			}
+		}
+
+		if (layer.alive == 0)
+			return false;
+
+		addLayer(layer, scores);
+		return true;
+	}
+
+	/**
+	 * Adds the next time step. The transitions are given as parallel arrays, a transition k leads from the state
+	 * from[k] of the last layer to the state to[k] of the new one. Missing transitions are impossible.
+	 *
+	 * @return false if none of the new states can be reached, then nothing has been added and the caller has to
+	 * start a new sequence
+	 */
+	public boolean next(double[] logEmissions, int nStates, int[] from, int[] to, double[] logTransitions, int nTransitions) {
+		if (_window.isEmpty())
+			return start(logEmissions, nStates);
+
+		Node[] prevNodes = _window.peekLast().nodes;
+		double[] scores = new double[nStates];
+		int[] back = new int[nStates];
+		Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+		Arrays.fill(back, -1);
+
+		for (int k = 0; k < nTransitions; k++) {
+			int i = from[k];
+			if (prevNodes[i] == null || !prevNodes[i].alive)
+				continue;
+
+			double score = _scores[i] + logTransitions[k];
+			if (score > scores[to[k]]) {
+				scores[to[k]] = score;
+				back[to[k]] = i;
+			}
+		}
+
+		Layer layer = new Layer(_time + 1, nStates);
+		for (int j = 0; j < nStates; j++) {
+			if (back[j] < 0)
+				continue;
+
+			scores[j] += logEmissions[j];
+			if (scores[j] > Double.NEGATIVE_INFINITY) {
+				Node parent = prevNodes[back[j]];
+				layer.nodes[j] = new Node(j, layer, parent);
+				layer.alive++;
+				parent.children++;
+			}
+		}
+
+		if (layer.alive == 0)
+			return false;
+
+		// states of the last layer which are not continued can not be part of the most likely path any more
+		for (Node node : prevNodes) {
+			if (node != null && node.alive && node.children == 0)
+				kill(node);
+		}
+
+		addLayer(layer, scores);
+		return true;
+	}
+
+	/**
+	 * Commits the states of the most likely path through the layers left and ends the sequence.
+	 */
+	public void finish() {
+		if (_window.isEmpty())
+			return;
+
+		Node node = _window.peekLast().nodes[getBestState()];
+		Node[] path = new Node[_window.size()];
+		int n = 0;
+		while (node != null && !node.committed) {
+			path[n++] = node;
+			node = node.parent;
+		}
+
+		for (int i = n - 1; i >= 0; i--)
+			_listener.commit(path[i].layer.time, path[i].state);
+
+		_window.clear();
+		_scores = null;
+	}
+
+	private void addLayer(Layer layer, double[] scores) {
+		// keep the scores in a sensible range, only their differences matter
+		double max = Double.NEGATIVE_INFINITY;
+		for (double score : scores)
+			max = Math.max(max, score);
+		for (int i = 0; i < scores.length; i++)
+			scores[i] -= max;
+
+		_window.addLast(layer);
+		_scores = scores;
+		_time = layer.time;
+
+		commitConverged();
+
+		if (_window.size() > _maxWindow) {
+			decideOldest();
+			commitConverged();
+		}
+	}
+
+	private void commitConverged() {
+		while (_window.size() > 1 && _window.peekFirst().alive == 1) {
+			Layer layer = _window.pollFirst();
+			for (Node node : layer.nodes) {
+				if (node != null && node.alive) {
+					_listener.commit(layer.time, node.state);
+					node.committed = true;
+					node.parent = null;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all states of the last layer whose paths do not pass the state of the oldest layer on the currently
+	 * most likely path, so that the oldest layer converges.
+	 */
+	private void decideOldest() {
+		Layer oldest = _window.peekFirst();
+		Node[] nodes = _window.peekLast().nodes;
+		Node best = getAncestor(nodes[getBestState()], oldest);
+
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != null && nodes[i].alive && getAncestor(nodes[i], oldest) != best) {
+				kill(nodes[i]);
+				_scores[i] = Double.NEGATIVE_INFINITY;
+			}
+		}
+	}
+
+	private static Node getAncestor(Node node, Layer layer) {
+		while (node.layer != layer)
+			node = node.parent;
+		return node;
+	}
+
+	private static void kill(Node node) {
+		while (node != null && !node.committed) {
+			node.alive = false;
+			node.layer.alive--;
+
+			node = node.parent;
+			if (node == null || --node.children > 0)
+				break;
+		}
+	}
+
+	private int getBestState() {
+		Node[] nodes = _window.peekLast().nodes;
+		int best = -1;
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != null && nodes[i].alive && (best < 0 || _scores[i] > _scores[best]))
+				best = i;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,166 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.mapmatching.hmm;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import heigit.ors.routing.algorithms.IndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One-to-many Dijkstra search used to compute the transitions between the candidates of a trace. The search
+ * minimizes the weight, but does not follow paths longer than the given distance bound, so that it only explores
+ * the surroundings of the GPS step.
+ * <p>
+ * The graph is meant to be a QueryGraph holding the snaps of all candidates, so that one search reaches all
+ * candidates of the following measurements.
+ */
+public class TransitionSearch {
+	private static class Entry {
+		private int edge;
+		private int parent;
+		private double weight;
+		private double distance;
+		private long time;
+	}
+
+	private final Graph _graph;
+	private final Weighting _weighting;
+	private final EdgeFilter _edgeFilter;
+	private final EdgeExplorer _explorer;
+	private final IntObjectMap<Entry> _entries = new GHIntObjectHashMap<Entry>(256);
+	private final IndexedMinHeap _heap = new IndexedMinHeap(256);
+	private final IntIntHashMap _targets = new IntIntHashMap();
+	private int _visitedNodes;
+
+	/**
+	 * @param edgeFilter additional filter of the edges to follow, may be null
+	 */
+	public TransitionSearch(Graph graph, Weighting weighting, EdgeFilter edgeFilter) {
+		_graph = graph;
+		_weighting = weighting;
+		_edgeFilter = edgeFilter;
+		_explorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+	}
+
+	/**
+	 * Computes the distances (in meters) and times (in milliseconds) of the fastest paths from the node to the
+	 * first nTargets target nodes. Targets which are not reachable within maxDistance get NaN and -1.
+	 */
+	public void calcPaths(int from, int[] targets, int nTargets, double maxDistance, double[] distances, long[] times) {
+		_entries.clear();
+		_heap.clear();
+		_targets.clear();
+
+		for (int i = 0; i < nTargets; i++)
+			_targets.put(targets[i], 1);
+
+		int targetsLeft = _targets.size();
+
+		Entry curr = new Entry();
+		curr.edge = EdgeIterator.NO_EDGE;
+		curr.parent = -1;
+		_entries.put(from, curr);
+		int currNode = from;
+
+		while (true) {
+			_visitedNodes++;
+
+			if (_targets.containsKey(currNode) && --targetsLeft == 0)
+				break;
+
+			EdgeIterator iter = _explorer.setBaseNode(currNode);
+			while (iter.next()) {
+				if (iter.getEdge() == curr.edge || (_edgeFilter != null && !_edgeFilter.accept(iter)))
+					continue;
+
+				double distance = curr.distance + iter.getDistance();
+				if (distance > maxDistance)
+					continue;
+
+				double weight = curr.weight + _weighting.calcWeight(iter, false, curr.edge);
+				if (Double.isInfinite(weight))
+					continue;
+
+				int adjNode = iter.getAdjNode();
+				Entry entry = _entries.get(adjNode);
+				if (entry == null) {
+					entry = new Entry();
+					_entries.put(adjNode, entry);
+				} else if (entry.weight <= weight)
+					continue;
+
+				entry.edge = iter.getEdge();
+				entry.parent = currNode;
+				entry.weight = weight;
+				entry.distance = distance;
+				entry.time = curr.time + _weighting.calcMillis(iter, false, curr.edge);
+				_heap.push(adjNode, weight);
+			}
+
+			if (_heap.isEmpty())
+				break;
+
+			currNode = _heap.poll();
+			curr = _entries.get(currNode);
+		}
+
+		Arrays.fill(distances, 0, nTargets, Double.NaN);
+		Arrays.fill(times, 0, nTargets, -1);
+
+		for (int i = 0; i < nTargets; i++) {
+			Entry entry = _entries.get(targets[i]);
+			if (entry != null) {
+				distances[i] = entry.distance;
+				times[i] = entry.time;
+			}
+		}
+	}
+
+	/**
+	 * Returns the edges of the path to the node found by the last call of {@link #calcPaths}, in the order of travel,
+	 * or null if the node has not been reached.
+	 */
+	public List<EdgeIteratorState> getPath(int node) {
+		Entry entry = _entries.get(node);
+		if (entry == null)
+			return null;
+
+		List<EdgeIteratorState> path = new ArrayList<EdgeIteratorState>();
+		while (entry.edge != EdgeIterator.NO_EDGE) {
+			path.add(_graph.getEdgeIteratorState(entry.edge, node));
+			node = entry.parent;
+			entry = _entries.get(node);
+		}
+
+		Collections.reverse(path);
+		return path;
+	}
+
+	public int getVisitedNodes() {
+		return _visitedNodes;
+	}
+}
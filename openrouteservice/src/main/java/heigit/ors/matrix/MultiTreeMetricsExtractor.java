@@ -13,7 +13,6 @@
  */
 package heigit.ors.matrix;
 
-import com.graphhopper.coll.GHLongObjectHashMap;
 import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.FastestWeighting;
@@ -25,17 +24,11 @@ import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 
 import heigit.ors.common.DistanceUnit;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntryItem;
+import heigit.ors.routing.algorithms.CHSearchSpace;
+import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 import heigit.ors.util.DistanceUnitUtil;
 
 public class MultiTreeMetricsExtractor {
-	private class MetricsItem {
-		public double time;
-		public double distance;
-		public double weight;
-	}
-
 	private int _metrics;
 	private Graph _graph;
 	private CHGraph _chGraph;
@@ -46,9 +39,8 @@ public class MultiTreeMetricsExtractor {
 	private double _edgeTime;
 	private DistanceUnit _distUnits;
 	private boolean _reverseOrder = true;
-	private boolean _unpackDistance = true;
-	private GHLongObjectHashMap<MetricsItem> _edgeMetrics;
-	private long _maxEdgeId = 0;
+	private ShortcutMetricsCache _edgeMetrics;
+	private final double[] _cachedValues = new double[3];
 
 	public MultiTreeMetricsExtractor(int metrics, Graph graph, FlagEncoder encoder, Weighting weighting,
 			DistanceUnit units) {
@@ -57,7 +49,6 @@ public class MultiTreeMetricsExtractor {
 		_weighting = weighting;
 		_timeWeighting = new FastestWeighting(encoder);
 		_distUnits = units;
-		_edgeMetrics = new GHLongObjectHashMap<MetricsItem>();
 
 		if (graph instanceof CHGraph)
 			_chGraph = (CHGraph) graph;
@@ -68,7 +59,15 @@ public class MultiTreeMetricsExtractor {
 				_chGraph = (CHGraph) mainGraph;
 		}
 		
-		_maxEdgeId = _chGraph.getAllEdges().getMaxId();
+		_edgeMetrics = new ShortcutMetricsCache(_chGraph.getAllEdges().getMaxId());
+	}
+
+	/**
+	 * Replaces the cache of this extractor by one which is shared with other requests on the same graph and
+	 * weighting.
+	 */
+	public void setShortcutMetricsCache(ShortcutMetricsCache cache) {
+		_edgeMetrics = cache;
 	}
 
 	public void setEmptyValues(int sourceIndex, MatrixLocations srcData, MatrixLocations dstData, float[] times,
@@ -88,7 +87,7 @@ public class MultiTreeMetricsExtractor {
 		}
 	}
 
-	public void calcValues(MultiTreeSPEntry[] targets, MatrixLocations srcData, MatrixLocations dstData, float[] times,
+	public void calcValues(MultiTreeSPStorage labels, int[] targets, MatrixLocations srcData, MatrixLocations dstData, float[] times,
 			float[] distances, float[] weights) throws Exception {
 		if (targets == null)
 			throw new IllegalStateException("Target destinations not set");
@@ -96,12 +95,10 @@ public class MultiTreeMetricsExtractor {
 		// int index = sourceIndex * dstData.size();
 		int index = 0;
 		double pathTime = 0.0, pathDistance = 0.0, pathWeight = 0.0;
-		long entryHash = 0;
 		boolean calcTime = MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Duration);
 		boolean calcDistance = MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Distance);
 		boolean calcWeight = MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Weight);
-		MetricsItem edgeMetricsItem = null;
-		MultiTreeSPEntryItem sptItem = null;
+		int slot, edge;
 
 		for (int i = 0; i < targets.length; ++i) {
 			// index = i * dstData.size();
@@ -114,96 +111,32 @@ public class MultiTreeMetricsExtractor {
 				index = j * dstData.size() + i;
 
 				if (srcData.getNodeId(j) != -1) {
-					MultiTreeSPEntry targetEntry = targets[i];
+					slot = targets[i];
 
-					if (targetEntry != null) {
+					if (slot != MultiTreeSPStorage.NO_SLOT) {
 						pathTime = 0.0;
 						pathDistance = 0.0;
 						pathWeight = 0.0;
 
-						sptItem = targetEntry.getItem(srcNode);
-
-						if (sptItem.parent != null) {
-							while (EdgeIterator.Edge.isValid(sptItem.edge)) {
-								edgeMetricsItem = null;
-								if (_edgeMetrics != null) {
-									entryHash = getMultiTreeSPEntryHash(targetEntry, srcNode);
-									edgeMetricsItem = _edgeMetrics.get(entryHash);
-								}
-
-								if (edgeMetricsItem == null) {
-									if (_chGraph != null) {
-										CHEdgeIteratorState iterState = (CHEdgeIteratorState) _graph
-												.getEdgeIteratorState(sptItem.edge, targetEntry.adjNode);
-
-										if (calcWeight || calcTime || _unpackDistance) {
-											if (iterState.isShortcut()) {
-												if (_chGraph.getLevel(iterState.getBaseNode()) > _chGraph
-														.getLevel(iterState.getAdjNode())) {
-													_reverseOrder = true;
-													extractEdgeValues(iterState, false);
-												} else {
-													_reverseOrder = false;
-													extractEdgeValues(iterState, true);
-												}
-											} else {
-												extractEdgeValues(iterState, false);
-											}
-
-											if (_unpackDistance)
-												_edgeDistance = (_distUnits == DistanceUnit.Meters) ? _edgeDistance
-														: DistanceUnitUtil.convert(_edgeDistance, DistanceUnit.Meters,
-																_distUnits);
-										}
-
-										if (!_unpackDistance && calcDistance)
-											_edgeDistance = (_distUnits == DistanceUnit.Meters)
-													? iterState.getDistance()
-													: DistanceUnitUtil.convert(iterState.getDistance(),
-															DistanceUnit.Meters, _distUnits);
-									} else {
-										EdgeIteratorState iter = _graph.getEdgeIteratorState(sptItem.edge,
-												targetEntry.adjNode);
-
-										if (calcDistance)
-											_edgeDistance = (_distUnits == DistanceUnit.Meters) ? iter.getDistance()
-													: DistanceUnitUtil.convert(iter.getDistance(), DistanceUnit.Meters,
-															_distUnits);
-
-										if (calcTime)
-											_edgeTime = _timeWeighting.calcMillis(iter, false, EdgeIterator.NO_EDGE)
-													/ 1000.0;
-
-										if (calcWeight)
-											_edgeWeight = _weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
-									}
-
-									if (_edgeMetrics != null) {
-										edgeMetricsItem = new MetricsItem();
-										edgeMetricsItem.distance = _edgeDistance;
-										edgeMetricsItem.time = _edgeTime;
-										edgeMetricsItem.weight = _edgeWeight;
-										_edgeMetrics.put(entryHash, edgeMetricsItem);
-									}
+						if (labels.getParent(slot, srcNode) != MultiTreeSPStorage.NO_SLOT) {
+							edge = labels.getEdge(slot, srcNode);
+
+							while (EdgeIterator.Edge.isValid(edge)) {
+								calcEdgeMetrics(edge, labels.getAdjNode(slot));
 
+								if (calcDistance)
 									pathDistance += _edgeDistance;
+								if (calcTime)
 									pathTime += _edgeTime;
+								if (calcWeight)
 									pathWeight += _edgeWeight;
-								} else {
-									if (calcDistance)
-										pathDistance += edgeMetricsItem.distance;
-									if (calcTime)
-										pathTime += edgeMetricsItem.time;
-									if (calcWeight)
-										pathWeight += edgeMetricsItem.weight;
-								}
-
-								targetEntry = sptItem.parent;
-
-								if (targetEntry == null)
+
+								slot = labels.getParent(slot, srcNode);
+
+								if (slot == MultiTreeSPStorage.NO_SLOT)
 									break;
 
-								sptItem = targetEntry.getItem(srcNode);
+								edge = labels.getEdge(slot, srcNode);
 							}
 						}
 					}
@@ -222,8 +155,66 @@ public class MultiTreeMetricsExtractor {
 		}
 	}
 
-	private long getMultiTreeSPEntryHash(MultiTreeSPEntry entry, int sptEntry) {
-		return entry.adjNode * _maxEdgeId  + entry.getItem(sptEntry).edge;
+	/**
+	 * Adds time, distance and weight of the edge leading to {@code adjNode} to {@code values[0]},
+	 * {@code values[1]} and {@code values[2]}. Shortcuts are unpacked.
+	 */
+	public void addEdgeValues(int edge, int adjNode, double[] values) {
+		calcEdgeMetrics(edge, adjNode);
+		values[0] += _edgeTime;
+		values[1] += _edgeDistance;
+		values[2] += _edgeWeight;
+	}
+
+	/**
+	 * Adds the metrics of the path between the root of the search space and the node with the given index.
+	 */
+	public void addPathValues(CHSearchSpace space, int index, double[] values) {
+		int parent = space.getParent(index);
+
+		while (parent != -1) {
+			addEdgeValues(space.getEdge(index), space.getNode(space.isReverse() ? parent : index), values);
+			index = parent;
+			parent = space.getParent(index);
+		}
+	}
+
+	/**
+	 * Sets the time, distance and weight fields to the values of the edge leading to {@code adjNode}. Shortcuts
+	 * are only unpacked if the cache does not contain them yet.
+	 */
+	private void calcEdgeMetrics(int edge, int adjNode) {
+		if (_edgeMetrics.isCacheable(edge) && _edgeMetrics.get(edge, adjNode, _cachedValues)) {
+			_edgeTime = _cachedValues[0];
+			_edgeDistance = _cachedValues[1];
+			_edgeWeight = _cachedValues[2];
+		} else if (_chGraph != null) {
+			CHEdgeIteratorState iterState = (CHEdgeIteratorState) _graph.getEdgeIteratorState(edge, adjNode);
+
+			if (iterState.isShortcut()) {
+				if (_chGraph.getLevel(iterState.getBaseNode()) > _chGraph.getLevel(iterState.getAdjNode())) {
+					_reverseOrder = true;
+					extractEdgeValues(iterState, false);
+				} else {
+					_reverseOrder = false;
+					extractEdgeValues(iterState, true);
+				}
+			} else {
+				extractEdgeValues(iterState, false);
+			}
+
+			// all values are cached, independent of the metrics of the current request
+			_edgeMetrics.put(edge, iterState.getBaseNode(), adjNode, _edgeTime, _edgeDistance, _edgeWeight);
+		} else {
+			EdgeIteratorState iter = _graph.getEdgeIteratorState(edge, adjNode);
+
+			_edgeDistance = iter.getDistance();
+			_edgeTime = _timeWeighting.calcMillis(iter, false, EdgeIterator.NO_EDGE) / 1000.0;
+			_edgeWeight = _weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+		}
+
+		if (_distUnits != DistanceUnit.Meters)
+			_edgeDistance = DistanceUnitUtil.convert(_edgeDistance, DistanceUnit.Meters, _distUnits);
 	}
 
 	private void extractEdgeValues(CHEdgeIteratorState iterState, boolean reverse) {
@@ -237,23 +228,17 @@ public class MultiTreeMetricsExtractor {
 
 			expandEdge(iterState, reverse);
 		} else {
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Distance))
-				_edgeDistance = iterState.getDistance();
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Duration))
-				_edgeTime = _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Weight))
-				_edgeWeight = _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
+			_edgeDistance = iterState.getDistance();
+			_edgeTime = _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
+			_edgeWeight = _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
 		}
 	}
 
 	private void expandEdge(CHEdgeIteratorState iterState, boolean reverse) {
 		if (!iterState.isShortcut()) {
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Distance))
-				_edgeDistance += iterState.getDistance();
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Duration))
-				_edgeTime += _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Weight))
-				_edgeWeight += _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
+			_edgeDistance += iterState.getDistance();
+			_edgeTime += _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
+			_edgeWeight += _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
 			return;
 		}
 
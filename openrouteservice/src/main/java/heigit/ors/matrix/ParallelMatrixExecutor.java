@@ -0,0 +1,57 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.util.BoundedExecutor;
+
+/**
+ * Bounded pool shared by all matrix requests for computing partitions of the sources in parallel.
+ */
+public class ParallelMatrixExecutor {
+	private static final BoundedExecutor EXECUTOR = new BoundedExecutor(MatrixServiceSettings.getParallelThreads());
+
+	/**
+	 * Splits the sources into at most as many partitions as there are threads in the pool. Every partition except
+	 * the last one holds at least {@code minSize} sources and a multiple of {@code granularity} sources.
+	 * 
+	 * @return the bounds of the partitions, i.e. partition {@code i} covers the sources {@code [bounds[i], bounds[i + 1])}
+	 */
+	public static int[] getPartitions(int sourcesCount, int granularity, int minSize) {
+		minSize = Math.max(granularity, minSize);
+		if (sourcesCount < 2 * minSize || MatrixServiceSettings.getParallelThreads() == 1)
+			return new int[] { 0, sourcesCount };
+
+		int count = Math.min(MatrixServiceSettings.getParallelThreads(), sourcesCount / minSize);
+		int size = (sourcesCount + count - 1) / count;
+		size = ((size + granularity - 1) / granularity) * granularity;
+		count = (sourcesCount + size - 1) / size;
+
+		int[] bounds = new int[count + 1];
+		for (int i = 1; i < bounds.length; i++)
+			bounds[i] = Math.min(sourcesCount, i * size);
+
+		return bounds;
+	}
+
+	/**
+	 * Runs the tasks in the pool and waits for all of them. The first failure is rethrown.
+	 */
+	public static void invokeAll(List<Callable<Void>> tasks) throws Exception {
+		EXECUTOR.invokeAll(tasks);
+	}
+}
@@ -0,0 +1,163 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Time, distance and weight of unpacked CH edges, stored in primitive arrays per edge id and direction.
+ * <p>
+ * The values only depend on the graph and the weighting, so one instance is shared by all requests of a profile.
+ * Pages of entries are allocated when the first edge in them is stored. Entries are published through the key
+ * array, so concurrent readers either see a complete entry or none at all.
+ * <p>
+ * At most {@code maximumPages} pages are kept. When another page is needed, one is evicted with the clock
+ * algorithm: pages which have been read since the hand last passed them get a second chance. A reader works on
+ * the page it looked up, so an eviction at the same time only means that the next lookup misses.
+ */
+public class ShortcutMetricsCache {
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private static class Page {
+		// adjacent node + 1 of the entry, 0 marks a free slot
+		private final AtomicIntegerArray _keys = new AtomicIntegerArray(PAGE_SIZE);
+		private final double[] _times = new double[PAGE_SIZE];
+		private final double[] _distances = new double[PAGE_SIZE];
+		private final double[] _weights = new double[PAGE_SIZE];
+		private volatile boolean _referenced;
+	}
+
+	private final int _edgesCount;
+	private final AtomicReferenceArray<Page> _pages;
+	private final int _maximumPages;
+	private int _pagesCount;
+	private int _clockHand;
+
+	/**
+	 * Creates a cache which keeps the values of all edges.
+	 *
+	 * @param edgesCount number of edges including shortcuts in the CH graph, edges with a higher id (e.g. virtual
+	 *                   edges of a query graph) are never cached
+	 */
+	public ShortcutMetricsCache(int edgesCount) {
+		this(edgesCount, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param edgesCount number of edges including shortcuts in the CH graph, edges with a higher id (e.g. virtual
+	 *                   edges of a query graph) are never cached
+	 * @param maximumEntries number of entries up to which the cache grows, rounded up to whole pages
+	 */
+	public ShortcutMetricsCache(int edgesCount, int maximumEntries) {
+		_edgesCount = Math.min(edgesCount, Integer.MAX_VALUE / 2);
+		_pages = new AtomicReferenceArray<Page>((_edgesCount * 2 + PAGE_SIZE - 1) >>> PAGE_BITS);
+		_maximumPages = Math.max(1, (int) ((maximumEntries + (long) PAGE_SIZE - 1) >>> PAGE_BITS));
+	}
+
+	public boolean isCacheable(int edge) {
+		return edge >= 0 && edge < _edgesCount;
+	}
+
+	/**
+	 * Copies time, distance and weight of the edge traversed towards {@code adjNode} into {@code values} and
+	 * returns true, or returns false if the edge is not cached.
+	 */
+	public boolean get(int edge, int adjNode, double[] values) {
+		Page page = _pages.get((edge * 2) >>> PAGE_BITS);
+		if (page == null)
+			return false;
+
+		int offset = (edge * 2) & PAGE_MASK;
+		if (page._keys.get(offset) != adjNode + 1) {
+			offset++;
+			if (page._keys.get(offset) != adjNode + 1)
+				return false;
+		}
+
+		values[0] = page._times[offset];
+		values[1] = page._distances[offset];
+		values[2] = page._weights[offset];
+		if (!page._referenced)
+			page._referenced = true;
+
+		return true;
+	}
+
+	/**
+	 * Stores the values of the edge from {@code baseNode} to {@code adjNode}. Loops are not stored since both of
+	 * their directions end at the same node.
+	 */
+	public void put(int edge, int baseNode, int adjNode, double time, double distance, double weight) {
+		if (baseNode == adjNode || !isCacheable(edge))
+			return;
+
+		int slot = edge * 2 + (adjNode < baseNode ? 0 : 1);
+		int pageIndex = slot >>> PAGE_BITS;
+		Page page = _pages.get(pageIndex);
+
+		if (page == null)
+			page = allocate(pageIndex);
+
+		int offset = slot & PAGE_MASK;
+		page._times[offset] = time;
+		page._distances[offset] = distance;
+		page._weights[offset] = weight;
+		page._keys.set(offset, adjNode + 1);
+	}
+
+	/**
+	 * Returns the number of pages currently allocated.
+	 */
+	public synchronized int getPagesCount() {
+		return _pagesCount;
+	}
+
+	private synchronized Page allocate(int pageIndex) {
+		Page page = _pages.get(pageIndex);
+		if (page != null)
+			return page;
+
+		if (_pagesCount >= _maximumPages)
+			evict();
+
+		page = new Page();
+		_pages.set(pageIndex, page);
+		_pagesCount++;
+
+		return page;
+	}
+
+	private void evict() {
+		int length = _pages.length();
+
+		// terminates within two rounds since the first round clears all reference bits
+		while (true) {
+			_clockHand = (_clockHand + 1) % length;
+			Page page = _pages.get(_clockHand);
+			if (page == null)
+				continue;
+
+			if (page._referenced) {
+				page._referenced = false;
+			} else {
+				_pages.set(_clockHand, null);
+				_pagesCount--;
+				return;
+			}
+		}
+	}
+}
@@ -18,7 +18,11 @@ import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 
+import heigit.ors.common.DistanceUnit;
 import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MultiTreeMetricsExtractor;
+import heigit.ors.matrix.ShortcutMetricsCache;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
 
 public abstract class AbstractMatrixAlgorithm implements MatrixAlgorithm {
   protected GraphHopper _graphHopper;
@@ -33,4 +37,19 @@ public abstract class AbstractMatrixAlgorithm implements MatrixAlgorithm {
 	  _encoder = encoder;
 	  _weighting = weighting;
   }
+
+  /**
+   * Creates an extractor for CH search trees which shares the unpacked shortcut metrics with other requests.
+   */
+  protected MultiTreeMetricsExtractor createMultiTreeMetricsExtractor(int metrics, Weighting weighting, DistanceUnit units)
+  {
+	  MultiTreeMetricsExtractor extractor = new MultiTreeMetricsExtractor(metrics, _graph, _encoder, weighting, units);
+	  if (_graphHopper instanceof ORSGraphHopper) {
+		  ShortcutMetricsCache cache = ((ORSGraphHopper) _graphHopper).getShortcutMetricsCache(weighting);
+		  if (cache != null)
+			  extractor.setShortcutMetricsCache(cache);
+	  }
+
+	  return extractor;
+  }
 }
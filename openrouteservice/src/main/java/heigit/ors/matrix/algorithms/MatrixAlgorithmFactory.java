@@ -17,18 +17,52 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.FlagEncoder;
 
 import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.algorithms.buckets.CHBucketMatrixAlgorithm;
 import heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.lm.LMMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.rphast.RPHASTBlockedMatrixAlgorithm;
 import heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
+import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class MatrixAlgorithmFactory {
 	public static MatrixAlgorithm createAlgorithm(MatrixRequest req, GraphHopper gh, FlagEncoder encoder) {
 		MatrixAlgorithm alg = null;
 
 		if (!req.getFlexibleMode() && gh.isCHEnabled())
-			alg = new RPHASTMatrixAlgorithm();
+		{
+			int sources = req.getSources().length;
+			int destinations = req.getDestinations().length;
+
+			if ("rphast_blocked".equalsIgnoreCase(req.getAlgorithm()))
+				alg = new RPHASTBlockedMatrixAlgorithm();
+			else if ("rphast".equalsIgnoreCase(req.getAlgorithm()))
+				alg = new RPHASTMatrixAlgorithm();
+			else if ("ch_buckets".equalsIgnoreCase(req.getAlgorithm()) || preferBuckets(sources, destinations))
+				alg = new CHBucketMatrixAlgorithm();
+			// the blocked sweep pays off once the per-source label updates dominate the search
+			else if (sources >= MatrixServiceSettings.getBlockedSweepMinSources())
+				alg = new RPHASTBlockedMatrixAlgorithm();
+			else
+				alg = new RPHASTMatrixAlgorithm();
+		}
+		else if (LMMatrixAlgorithm.getPreparation(gh, encoder, req.getWeightingMethod()) != null)
+			alg = new LMMatrixAlgorithm();
 		else
 			alg = new DijkstraMatrixAlgorithm();
 
 		return alg;
 	}
+
+	/**
+	 * Rough cost model in units of one upward search. Both algorithms run one upward search per location, RPHAST
+	 * additionally pays for the target selection, while the bucket algorithm pays for scanning the buckets for
+	 * every pair of locations.
+	 */
+	private static boolean preferBuckets(int sources, int destinations) {
+		double bucketsCost = sources + destinations
+				+ (double) sources * destinations / MatrixServiceSettings.getBucketPairsPerSearch();
+		double rphastCost = sources + destinations + MatrixServiceSettings.getRPHASTSetupCost();
+
+		return bucketsCost <= rphastCost;
+	}
 }
@@ -0,0 +1,180 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix.algorithms.buckets;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+
+import heigit.ors.matrix.MatrixLocations;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.MultiTreeMetricsExtractor;
+import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
+import heigit.ors.routing.algorithms.CHSearchSpace;
+import heigit.ors.routing.algorithms.CHUpwardSearch;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
+
+/**
+ * Bucket based many-to-many CH algorithm. A backward upward search from every destination stores its weight in
+ * buckets at all nodes it reaches, a forward upward search from every source then scans the buckets of its nodes.
+ * There is no target selection phase, which makes it the cheaper choice for small matrices.
+ */
+public class CHBucketMatrixAlgorithm extends AbstractMatrixAlgorithm {
+	private PrepareContractionHierarchies _prepareCH;
+	private MultiTreeMetricsExtractor _pathMetricsExtractor;
+	private CHGraph _chGraph;
+
+	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting) {
+		super.init(req, gh, graph, encoder, weighting);
+
+		_prepareCH = _graphHopper.getCHFactoryDecorator().getPreparations().get(0);
+		_pathMetricsExtractor = createMultiTreeMetricsExtractor(req.getMetrics(), weighting, req.getUnits());
+
+		if (graph instanceof CHGraph)
+			_chGraph = (CHGraph) graph;
+		else if (graph instanceof QueryGraph)
+			_chGraph = (CHGraph) ((QueryGraph) graph).getMainGraph();
+	}
+
+	@Override
+	public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception {
+		MatrixResult mtxResult = new MatrixResult(srcData.getLocations(), dstData.getLocations());
+
+		float[] times = null;
+		float[] distances = null;
+		float[] weights = null;
+
+		int tableSize = srcData.size() * dstData.size();
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			times = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			distances = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			weights = new float[tableSize];
+
+		if (!srcData.hasValidNodes() || !dstData.hasValidNodes())
+		{
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
+				_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+		}
+		else
+		{
+			Weighting weighting = _prepareCH.getPrepareWeighting();
+			int dstCount = dstData.size();
+
+			// buckets are single linked lists of entries, starting at the head entry of every node
+			IntIntHashMap bucketHeads = new IntIntHashMap();
+			IntArrayList bucketNext = new IntArrayList();
+			IntArrayList bucketTargets = new IntArrayList();
+			IntArrayList bucketIndices = new IntArrayList();
+			DoubleArrayList bucketWeights = new DoubleArrayList();
+
+			CHUpwardSearch backwardSearch = new CHUpwardSearch(_graph, weighting,
+					new DownwardSearchEdgeFilter(_chGraph, _encoder), true);
+			CHSearchSpace[] targetSpaces = new CHSearchSpace[dstCount];
+
+			for (int dstIndex = 0; dstIndex < dstCount; dstIndex++) {
+				int targetId = dstData.getNodeId(dstIndex);
+				if (targetId == -1)
+					continue;
+
+				CHSearchSpace space = backwardSearch.run(targetId);
+				targetSpaces[dstIndex] = space;
+
+				for (int i = 0; i < space.size(); i++) {
+					int node = space.getNode(i);
+					bucketNext.add(bucketHeads.getOrDefault(node, -1));
+					bucketHeads.put(node, bucketTargets.size());
+					bucketTargets.add(dstIndex);
+					bucketIndices.add(i);
+					bucketWeights.add(space.getWeight(i));
+				}
+			}
+
+			CHUpwardSearch forwardSearch = new CHUpwardSearch(_graph, weighting,
+					new UpwardSearchEdgeFilter(_chGraph, _encoder), false);
+			double[] best = new double[dstCount];
+			int[] meetSource = new int[dstCount];
+			int[] meetTarget = new int[dstCount];
+			double[] values = new double[3];
+
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) {
+				int sourceId = srcData.getNodeId(srcIndex);
+
+				if (sourceId == -1) {
+					_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+					continue;
+				}
+
+				CHSearchSpace space = forwardSearch.run(sourceId);
+				Arrays.fill(best, Double.POSITIVE_INFINITY);
+
+				for (int i = 0; i < space.size(); i++) {
+					double weight = space.getWeight(i);
+
+					for (int entry = bucketHeads.getOrDefault(space.getNode(i), -1); entry != -1; entry = bucketNext.get(entry)) {
+						int target = bucketTargets.get(entry);
+						double pathWeight = weight + bucketWeights.get(entry);
+
+						if (pathWeight < best[target]) {
+							best[target] = pathWeight;
+							meetSource[target] = i;
+							meetTarget[target] = bucketIndices.get(entry);
+						}
+					}
+				}
+
+				for (int dstIndex = 0; dstIndex < dstCount; dstIndex++) {
+					int index = srcIndex * dstCount + dstIndex;
+
+					if (best[dstIndex] == Double.POSITIVE_INFINITY) {
+						values[0] = values[1] = values[2] = -1;
+					} else {
+						values[0] = values[1] = values[2] = 0.0;
+						_pathMetricsExtractor.addPathValues(space, meetSource[dstIndex], values);
+						_pathMetricsExtractor.addPathValues(targetSpaces[dstIndex], meetTarget[dstIndex], values);
+					}
+
+					if (times != null)
+						times[index] = (float) values[0];
+					if (distances != null)
+						distances[index] = (float) values[1];
+					if (weights != null)
+						weights[index] = (float) values[2];
+				}
+			}
+		}
+
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			mtxResult.setTable(MatrixMetricsType.Duration, times);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			mtxResult.setTable(MatrixMetricsType.Distance, distances);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			mtxResult.setTable(MatrixMetricsType.Weight, weights);
+
+		return mtxResult;
+	}
+}
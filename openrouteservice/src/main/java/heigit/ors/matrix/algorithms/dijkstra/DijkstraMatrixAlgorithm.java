@@ -13,6 +13,10 @@
  */
 package heigit.ors.matrix.algorithms.dijkstra;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
@@ -20,10 +24,12 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.SPTEntry;
 
+import heigit.ors.common.DistanceUnit;
 import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
 import heigit.ors.matrix.MatrixLocations;
+import heigit.ors.matrix.ParallelMatrixExecutor;
 import heigit.ors.matrix.PathMetricsExtractor;
 import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import heigit.ors.routing.algorithms.DijkstraOneToManyAlgorithm;
@@ -31,11 +37,16 @@ import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 	private PathMetricsExtractor _pathMetricsExtractor;
+	private int _metrics;
+	private DistanceUnit _units;
 
 	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting)
 	{
 		super.init(req, gh, graph, encoder, weighting);
 
+		_metrics = req.getMetrics();
+		_units = req.getUnits();
+
 		_pathMetricsExtractor = new PathMetricsExtractor(req.getMetrics(), _graph, _encoder, _weighting, req.getUnits());
 	}
 
@@ -62,42 +73,91 @@ public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 		}
 		else
 		{
-			DijkstraOneToManyAlgorithm algorithm = new DijkstraOneToManyAlgorithm(_graph, _weighting, TraversalMode.NODE_BASED);
-			algorithm.prepare(srcData.getNodeIds(),  dstData.getNodeIds());
+			int[] partitions = ParallelMatrixExecutor.getPartitions(srcData.size(), 1,
+					MatrixServiceSettings.getParallelMinSourcesFlexible());
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions.length - 1);
+
+			for (int i = 0; i < partitions.length - 1; i++) {
+				// every worker needs its own algorithm and extractor, only the query graph is shared
+				PathMetricsExtractor extractor = i == 0 ? _pathMetricsExtractor
+						: new PathMetricsExtractor(_metrics, _graph, _encoder, _weighting, _units);
+				tasks.add(new SourcePartition(partitions[i], partitions[i + 1], extractor, srcData, dstData, times,
+						distances, weights));
+			}
+
+			ParallelMatrixExecutor.invokeAll(tasks);
+		}
+
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			mtxResult.setTable(MatrixMetricsType.Duration, times);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			mtxResult.setTable(MatrixMetricsType.Distance, distances);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			mtxResult.setTable(MatrixMetricsType.Weight, weights);
+
+		return mtxResult;
+	}
+
+	/**
+	 * Creates the one-to-many search of one worker.
+	 */
+	protected DijkstraOneToManyAlgorithm createAlgorithm(MatrixLocations dstData) {
+		return new DijkstraOneToManyAlgorithm(_graph, _weighting, TraversalMode.NODE_BASED);
+	}
+
+	private class SourcePartition implements Callable<Void> {
+		private final int _fromSource;
+		private final int _toSource;
+		private final PathMetricsExtractor _extractor;
+		private final MatrixLocations _srcData;
+		private final MatrixLocations _dstData;
+		private final float[] _times;
+		private final float[] _distances;
+		private final float[] _weights;
+
+		SourcePartition(int fromSource, int toSource, PathMetricsExtractor extractor, MatrixLocations srcData,
+				MatrixLocations dstData, float[] times, float[] distances, float[] weights) {
+			_fromSource = fromSource;
+			_toSource = toSource;
+			_extractor = extractor;
+			_srcData = srcData;
+			_dstData = dstData;
+			_times = times;
+			_distances = distances;
+			_weights = weights;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			DijkstraOneToManyAlgorithm algorithm = createAlgorithm(_dstData);
+			algorithm.prepare(_srcData.getNodeIds(), _dstData.getNodeIds());
 			algorithm.setMaxVisitedNodes(MatrixServiceSettings.getMaximumVisitedNodes());
-			
+
 			int sourceId = -1;
 
-			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) {
-				sourceId = srcData.getNodeId(srcIndex);
+			for (int srcIndex = _fromSource; srcIndex < _toSource; srcIndex++) {
+				sourceId = _srcData.getNodeId(srcIndex);
 
 				if (sourceId == -1)
 				{
-					_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+					_extractor.setEmptyValues(srcIndex, _srcData, _dstData, _times, _distances, _weights);
 				}
 				else
 				{
 					algorithm.reset();
-					SPTEntry[] targets = algorithm.calcPaths(sourceId, dstData.getNodeIds());
+					SPTEntry[] targets = algorithm.calcPaths(sourceId, _dstData.getNodeIds());
 
 					if (algorithm.getFoundTargets() != algorithm.getTargetsCount())
 						throw new Exception("Search exceeds the limit of visited nodes.");
 
 					if (targets != null)
 					{
-						_pathMetricsExtractor.calcValues(srcIndex, targets, srcData, dstData, times, distances, weights);
+						_extractor.calcValues(srcIndex, targets, _srcData, _dstData, _times, _distances, _weights);
 					}
 				}
 			}
-		}
 
-		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
-			mtxResult.setTable(MatrixMetricsType.Duration, times);
-		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
-			mtxResult.setTable(MatrixMetricsType.Distance, distances);
-		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
-			mtxResult.setTable(MatrixMetricsType.Weight, weights);
-
-		return mtxResult;
+			return null;
+		}
 	}
 }
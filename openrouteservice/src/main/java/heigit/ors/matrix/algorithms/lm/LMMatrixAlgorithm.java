@@ -0,0 +1,108 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix.algorithms.lm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Helper;
+
+import heigit.ors.matrix.MatrixLocations;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
+import heigit.ors.routing.algorithms.AStarOneToManyAlgorithm;
+import heigit.ors.routing.algorithms.DijkstraOneToManyAlgorithm;
+
+/**
+ * Flexible-mode matrix algorithm which directs the one-to-many searches towards the destinations using the lower
+ * bounds of the landmark preparation of the profile.
+ */
+public class LMMatrixAlgorithm extends DijkstraMatrixAlgorithm {
+	private PrepareLandmarks _prepareLM;
+	private AlgorithmOptions _algoOpts;
+
+	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting)
+	{
+		super.init(req, gh, graph, encoder, weighting);
+
+		_prepareLM = getPreparation(gh, encoder, req.getWeightingMethod());
+		_algoOpts = AlgorithmOptions.start().weighting(weighting).traversalMode(TraversalMode.NODE_BASED).build();
+	}
+
+	/**
+	 * Returns the landmark preparation matching the vehicle and the weighting of the request or null if the graph
+	 * has none.
+	 */
+	public static PrepareLandmarks getPreparation(GraphHopper gh, FlagEncoder encoder, String weightingMethod) {
+		if (!gh.getLMFactoryDecorator().isEnabled())
+			return null;
+
+		HintsMap hints = new HintsMap();
+		hints.setWeighting(Helper.isEmpty(weightingMethod) ? "fastest" : weightingMethod);
+		hints.setVehicle(encoder.toString());
+
+		for (PrepareLandmarks prepare : gh.getLMFactoryDecorator().getPreparations()) {
+			if (prepare.getWeighting().matches(hints))
+				return prepare;
+		}
+
+		return null;
+	}
+
+	@Override
+	protected DijkstraOneToManyAlgorithm createAlgorithm(MatrixLocations dstData) {
+		List<WeightApproximator> approximators = new ArrayList<WeightApproximator>(dstData.size());
+
+		for (int nodeId : dstData.getNodeIds()) {
+			if (nodeId == -1)
+				continue;
+
+			ApproximationCapture capture = new ApproximationCapture(_graph, _weighting);
+			_prepareLM.getDecoratedAlgorithm(_graph, capture, _algoOpts);
+			capture._approximation.setTo(nodeId);
+			approximators.add(capture._approximation);
+		}
+
+		return new AStarOneToManyAlgorithm(_graph, _weighting, TraversalMode.NODE_BASED,
+				approximators.toArray(new WeightApproximator[approximators.size()]));
+	}
+
+	/**
+	 * The landmark storage is not accessible, so the approximation is taken from the A* instance which the
+	 * preparation decorates.
+	 */
+	private static class ApproximationCapture extends AStar {
+		private WeightApproximator _approximation;
+
+		ApproximationCapture(Graph graph, Weighting weighting) {
+			super(graph, weighting, TraversalMode.NODE_BASED);
+		}
+
+		@Override
+		public AStar setApproximation(WeightApproximator approx) {
+			_approximation = approx;
+			return super.setApproximation(approx);
+		}
+	}
+}
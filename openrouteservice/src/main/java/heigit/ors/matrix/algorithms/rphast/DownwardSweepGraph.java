@@ -0,0 +1,244 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix.algorithms.rphast;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+import heigit.ors.routing.algorithms.PreparedTargetGraph;
+
+/**
+ * Target graph of RPHAST with the nodes stored in topological order of the downward edges.
+ * <p>
+ * Labels of the downward pass are kept in one {@code double[]} with {@code lanes} consecutive values per node, so that
+ * relaxing an edge for a whole block of sources is a tight loop over contiguous memory. Edges which run against the
+ * order (only possible between virtual nodes of a query graph and their neighbours) are kept separately and handled
+ * by repeating the sweep until nothing changes.
+ */
+public class DownwardSweepGraph {
+	// relative error up to which an edge is taken to explain a label when paths are recovered
+	private static final double TIGHT_EDGE_TOLERANCE = 1e-9;
+
+	private final IntIntHashMap _node2index;
+	private final int[] _nodes;
+	// outgoing edges by tail index; entries below _forwardEdges are ordered by tail, the rest are backward edges
+	private final int[] _offsets;
+	private final int[] _tails;
+	private final int[] _heads;
+	private final int[] _edges;
+	private final double[] _weights;
+	private final int _forwardEdges;
+	// incoming edges by head index, referring to positions in the arrays above
+	private final int[] _inOffsets;
+	private final int[] _inPositions;
+
+	public DownwardSweepGraph(PreparedTargetGraph graph) {
+		int nodesCount = graph.getNodesCount();
+		int edgesCount = graph.getEdgesCount();
+		int[] rank = computeOrder(graph);
+
+		_nodes = new int[nodesCount];
+		_node2index = new IntIntHashMap(Math.max(16, nodesCount));
+		for (int i = 0; i < nodesCount; i++) {
+			_nodes[rank[i]] = graph.getNode(i);
+			_node2index.put(graph.getNode(i), rank[i]);
+		}
+
+		int forwardEdges = 0;
+		_offsets = new int[nodesCount + 1];
+		for (int i = 0; i < nodesCount; i++) {
+			for (int pos = graph.getEdgesStart(i); pos < graph.getEdgesEnd(i); pos++) {
+				if (rank[i] < rank[graph.getNodeIndex(graph.getAdjNode(pos))]) {
+					_offsets[rank[i] + 1]++;
+					forwardEdges++;
+				}
+			}
+		}
+		for (int i = 0; i < nodesCount; i++)
+			_offsets[i + 1] += _offsets[i];
+		_forwardEdges = forwardEdges;
+
+		_tails = new int[edgesCount];
+		_heads = new int[edgesCount];
+		_edges = new int[edgesCount];
+		_weights = new double[edgesCount];
+
+		int[] fill = Arrays.copyOf(_offsets, nodesCount);
+		int backward = forwardEdges;
+		int[] inCounts = new int[nodesCount + 1];
+
+		for (int i = 0; i < nodesCount; i++) {
+			for (int pos = graph.getEdgesStart(i); pos < graph.getEdgesEnd(i); pos++) {
+				int tail = rank[i];
+				int head = rank[graph.getNodeIndex(graph.getAdjNode(pos))];
+				int target = tail < head ? fill[tail]++ : backward++;
+
+				_tails[target] = tail;
+				_heads[target] = head;
+				_edges[target] = graph.getEdge(pos);
+				_weights[target] = graph.getWeight(pos);
+				inCounts[head + 1]++;
+			}
+		}
+
+		for (int i = 0; i < nodesCount; i++)
+			inCounts[i + 1] += inCounts[i];
+		_inOffsets = inCounts;
+		_inPositions = new int[edgesCount];
+
+		fill = Arrays.copyOf(_inOffsets, nodesCount);
+		for (int pos = 0; pos < edgesCount; pos++)
+			_inPositions[fill[_heads[pos]]++] = pos;
+	}
+
+	/**
+	 * Computes the position of every node in a reverse post-order of a depth-first search over the downward edges.
+	 * The search starts at the nodes which were found last in phase I, i.e. at the top of the hierarchy.
+	 */
+	private static int[] computeOrder(PreparedTargetGraph graph) {
+		int nodesCount = graph.getNodesCount();
+		int[] rank = new int[nodesCount];
+		boolean[] visited = new boolean[nodesCount];
+		int[] stackNodes = new int[nodesCount];
+		int[] stackPositions = new int[nodesCount];
+		int next = nodesCount;
+
+		for (int root = nodesCount - 1; root >= 0; root--) {
+			if (visited[root])
+				continue;
+
+			int depth = 0;
+			visited[root] = true;
+			stackNodes[0] = root;
+			stackPositions[0] = graph.getEdgesStart(root);
+
+			while (depth >= 0) {
+				int node = stackNodes[depth];
+				int pos = stackPositions[depth];
+
+				if (pos < graph.getEdgesEnd(node)) {
+					stackPositions[depth]++;
+					int adj = graph.getNodeIndex(graph.getAdjNode(pos));
+
+					if (!visited[adj]) {
+						visited[adj] = true;
+						depth++;
+						stackNodes[depth] = adj;
+						stackPositions[depth] = graph.getEdgesStart(adj);
+					}
+				} else {
+					rank[node] = --next;
+					depth--;
+				}
+			}
+		}
+
+		return rank;
+	}
+
+	public int getNodesCount() {
+		return _nodes.length;
+	}
+
+	/**
+	 * Returns the position of the node in the topological order or -1 if the node is not part of the graph.
+	 */
+	public int getNodeIndex(int node) {
+		return _node2index.getOrDefault(node, -1);
+	}
+
+	public int getNode(int nodeIndex) {
+		return _nodes[nodeIndex];
+	}
+
+	/**
+	 * Runs the downward pass for a block of sources. {@code labels} holds {@code lanes} values per node index, which
+	 * are initialised with the weights of the upward searches and contain the shortest path weights afterwards.
+	 */
+	public void sweep(double[] labels, int lanes) {
+		int nodesCount = _nodes.length;
+		boolean changed = true;
+
+		for (int pass = 0; changed && pass < nodesCount; pass++) {
+			for (int node = 0; node < nodesCount; node++) {
+				int from = node * lanes;
+
+				for (int pos = _offsets[node]; pos < _offsets[node + 1]; pos++)
+					relax(labels, from, _heads[pos] * lanes, _weights[pos], lanes);
+			}
+
+			changed = false;
+
+			for (int pos = _forwardEdges; pos < _weights.length; pos++) {
+				int from = _tails[pos] * lanes;
+				int to = _heads[pos] * lanes;
+
+				for (int lane = 0; lane < lanes; lane++) {
+					double weight = labels[from + lane] + _weights[pos];
+
+					if (weight < labels[to + lane]) {
+						labels[to + lane] = weight;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	// branch free min-plus update of one edge for all lanes, which is what the JIT is able to vectorise
+	private static void relax(double[] labels, int from, int to, double weight, int lanes) {
+		for (int lane = 0; lane < lanes; lane++)
+			labels[to + lane] = Math.min(labels[to + lane], labels[from + lane] + weight);
+	}
+
+	/**
+	 * Returns the position of an edge which leads to the node with the given index on a shortest path of the lane,
+	 * or -1 if no incoming edge accounts for the label of the node. Labels are sums of doubles, so an edge counts as
+	 * tight if it matches the label up to a relative error of {@link #TIGHT_EDGE_TOLERANCE}, and the closest match
+	 * wins.
+	 */
+	public int findParentEdge(double[] labels, int lanes, int nodeIndex, int lane) {
+		double weight = labels[nodeIndex * lanes + lane];
+		double bestDeviation = Double.POSITIVE_INFINITY;
+		int bestPos = -1;
+
+		for (int i = _inOffsets[nodeIndex]; i < _inOffsets[nodeIndex + 1]; i++) {
+			int pos = _inPositions[i];
+			double deviation = Math.abs(labels[_tails[pos] * lanes + lane] + _weights[pos] - weight);
+
+			if (deviation < bestDeviation && isTight(deviation, weight)) {
+				bestDeviation = deviation;
+				bestPos = pos;
+			}
+		}
+
+		return bestPos;
+	}
+
+	/**
+	 * Returns true if a path weight deviating from the label by the given amount explains the label.
+	 */
+	public static boolean isTight(double deviation, double label) {
+		return deviation <= TIGHT_EDGE_TOLERANCE * Math.max(1.0, Math.abs(label));
+	}
+
+	public int getTail(int pos) {
+		return _tails[pos];
+	}
+
+	public int getEdge(int pos) {
+		return _edges[pos];
+	}
+}
@@ -0,0 +1,296 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.matrix.algorithms.rphast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+
+import heigit.ors.common.DistanceUnit;
+import heigit.ors.matrix.MatrixLocations;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.MultiTreeMetricsExtractor;
+import heigit.ors.matrix.ParallelMatrixExecutor;
+import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
+import heigit.ors.routing.algorithms.CHSearchSpace;
+import heigit.ors.routing.algorithms.CHUpwardSearch;
+import heigit.ors.routing.algorithms.PreparedTargetGraph;
+import heigit.ors.routing.algorithms.TargetGraphCache;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+
+/**
+ * RPHAST variant for many sources. Sources are processed in blocks of {@link #BLOCK_SIZE}; for each block the
+ * downward pass is a single linear sweep over the target graph in topological order, relaxing every edge for all
+ * sources of the block at once. Large requests are split into partitions of whole blocks which are computed in
+ * parallel on the same target graph.
+ */
+public class RPHASTBlockedMatrixAlgorithm extends AbstractMatrixAlgorithm {
+	public static final int BLOCK_SIZE = 8;
+
+	private PrepareContractionHierarchies _prepareCH;
+	private MultiTreeMetricsExtractor _pathMetricsExtractor;
+	private CHGraph _chGraph;
+	private int _metrics;
+	private DistanceUnit _units;
+
+	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting) {
+		super.init(req, gh, graph, encoder, weighting);
+
+		_prepareCH = _graphHopper.getCHFactoryDecorator().getPreparations().get(0);
+		_metrics = req.getMetrics();
+		_units = req.getUnits();
+		_pathMetricsExtractor = createMultiTreeMetricsExtractor(req.getMetrics(), weighting, req.getUnits());
+
+		if (graph instanceof CHGraph)
+			_chGraph = (CHGraph) graph;
+		else if (graph instanceof QueryGraph)
+			_chGraph = (CHGraph) ((QueryGraph) graph).getMainGraph();
+	}
+
+	@Override
+	public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception {
+		MatrixResult mtxResult = new MatrixResult(srcData.getLocations(), dstData.getLocations());
+
+		float[] times = null;
+		float[] distances = null;
+		float[] weights = null;
+
+		int tableSize = srcData.size() * dstData.size();
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			times = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			distances = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			weights = new float[tableSize];
+
+		if (!srcData.hasValidNodes() || !dstData.hasValidNodes())
+		{
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
+				_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+		}
+		else
+		{
+			Weighting weighting = _prepareCH.getPrepareWeighting();
+			IntArrayList destIds = new IntArrayList(dstData.size());
+			for (int dst : dstData.getNodeIds()) {
+				if (dst != -1)
+					destIds.add(dst);
+			}
+
+			PreparedTargetGraph targetGraph = getTargetGraph(weighting, destIds.toArray());
+			DownwardSweepGraph sweepGraph = new DownwardSweepGraph(targetGraph);
+
+			int[] targets = new int[dstData.size()];
+			for (int i = 0; i < targets.length; i++)
+				targets[i] = dstData.getNodeId(i) == -1 ? -1 : sweepGraph.getNodeIndex(dstData.getNodeId(i));
+
+			int[] partitions = ParallelMatrixExecutor.getPartitions(srcData.size(), BLOCK_SIZE,
+					MatrixServiceSettings.getParallelMinSources());
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions.length - 1);
+
+			for (int i = 0; i < partitions.length - 1; i++) {
+				// the first partition reuses the extractor of the algorithm, the others need their own one
+				MultiTreeMetricsExtractor extractor = i == 0 ? _pathMetricsExtractor
+						: createMultiTreeMetricsExtractor(_metrics, _weighting, _units);
+				tasks.add(new SourcePartition(partitions[i], partitions[i + 1], weighting, sweepGraph, targets,
+						extractor, srcData, dstData, times, distances, weights));
+			}
+
+			ParallelMatrixExecutor.invokeAll(tasks);
+		}
+
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			mtxResult.setTable(MatrixMetricsType.Duration, times);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			mtxResult.setTable(MatrixMetricsType.Distance, distances);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			mtxResult.setTable(MatrixMetricsType.Weight, weights);
+
+		return mtxResult;
+	}
+
+	/**
+	 * Returns the target graph of the destinations. If all of them are nodes of the CH graph, the graph is shared with
+	 * {@link heigit.ors.routing.algorithms.RPHASTAlgorithm} through the target graph cache of the profile, under the
+	 * same key, so a repeated destination set skips phase I. Virtual nodes of a query graph differ between requests,
+	 * so target graphs containing them are built for the request only.
+	 */
+	private PreparedTargetGraph getTargetGraph(Weighting weighting, int[] destIds) {
+		TargetGraphCache cache = _graphHopper instanceof ORSGraphHopper ? ((ORSGraphHopper) _graphHopper).getTargetGraphCache() : null;
+
+		int[] nodes = destIds.clone();
+		Arrays.sort(nodes);
+		int count = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (i == 0 || nodes[i] != nodes[i - 1])
+				nodes[count++] = nodes[i];
+		}
+		nodes = Arrays.copyOf(nodes, count);
+
+		if (cache == null || count == 0 || nodes[count - 1] >= _chGraph.getNodes())
+			return PreparedTargetGraph.create(_graph, weighting, new DownwardSearchEdgeFilter(_chGraph, _encoder), destIds);
+
+		String weightingName = weighting.toString();
+		PreparedTargetGraph graph = cache.get(weightingName, nodes);
+
+		if (graph == null) {
+			graph = PreparedTargetGraph.create(_chGraph, weighting, new DownwardSearchEdgeFilter(_chGraph, _encoder), nodes);
+			cache.put(weightingName, nodes, graph);
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Sums up the metrics of the path to the target. The sweep keeps no parent pointers, so the downward part is
+	 * recovered from the labels by looking for an incoming edge which is tight, until the label comes from the
+	 * upward search of the source. Returns false if the path cannot be recovered, in which case the values are
+	 * incomplete and must not be used.
+	 */
+	private static boolean addPathValues(DownwardSweepGraph sweepGraph, double[] labels, int lane, int nodeIndex,
+			CHSearchSpace space, MultiTreeMetricsExtractor extractor, double[] values) {
+		for (int steps = 0; steps <= sweepGraph.getNodesCount(); steps++) {
+			int node = sweepGraph.getNode(nodeIndex);
+			int index = space.getIndex(node);
+			double label = labels[nodeIndex * BLOCK_SIZE + lane];
+
+			if (index != -1 && DownwardSweepGraph.isTight(Math.abs(space.getWeight(index) - label), label)) {
+				extractor.addPathValues(space, index, values);
+				return true;
+			}
+
+			int pos = sweepGraph.findParentEdge(labels, BLOCK_SIZE, nodeIndex, lane);
+			if (pos == -1)
+				return false;
+
+			extractor.addEdgeValues(sweepGraph.getEdge(pos), node, values);
+			nodeIndex = sweepGraph.getTail(pos);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Computes the rows of a range of sources. Partitions share the read-only sweep graph and write into disjoint
+	 * rows of the result tables.
+	 */
+	private class SourcePartition implements Callable<Void> {
+		private final int _fromSource;
+		private final int _toSource;
+		private final Weighting _prepareWeighting;
+		private final DownwardSweepGraph _sweepGraph;
+		private final int[] _targets;
+		private final MultiTreeMetricsExtractor _extractor;
+		private final MatrixLocations _srcData;
+		private final MatrixLocations _dstData;
+		private final float[] _times;
+		private final float[] _distances;
+		private final float[] _weights;
+
+		SourcePartition(int fromSource, int toSource, Weighting prepareWeighting, DownwardSweepGraph sweepGraph,
+				int[] targets, MultiTreeMetricsExtractor extractor, MatrixLocations srcData, MatrixLocations dstData,
+				float[] times, float[] distances, float[] weights) {
+			_fromSource = fromSource;
+			_toSource = toSource;
+			_prepareWeighting = prepareWeighting;
+			_sweepGraph = sweepGraph;
+			_targets = targets;
+			_extractor = extractor;
+			_srcData = srcData;
+			_dstData = dstData;
+			_times = times;
+			_distances = distances;
+			_weights = weights;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			CHUpwardSearch upwardSearch = new CHUpwardSearch(_graph, _prepareWeighting,
+					new UpwardSearchEdgeFilter(_chGraph, _encoder), false);
+			CHSearchSpace[] spaces = new CHSearchSpace[BLOCK_SIZE];
+			double[] labels = new double[_sweepGraph.getNodesCount() * BLOCK_SIZE];
+			double[] values = new double[3];
+
+			for (int blockStart = _fromSource; blockStart < _toSource; blockStart += BLOCK_SIZE) {
+				int blockSize = Math.min(BLOCK_SIZE, _toSource - blockStart);
+				Arrays.fill(labels, Double.POSITIVE_INFINITY);
+
+				for (int lane = 0; lane < blockSize; lane++) {
+					int sourceId = _srcData.getNodeId(blockStart + lane);
+					spaces[lane] = sourceId == -1 ? null : upwardSearch.run(sourceId);
+
+					if (spaces[lane] != null)
+						seed(spaces[lane], labels, lane);
+				}
+
+				_sweepGraph.sweep(labels, BLOCK_SIZE);
+
+				for (int lane = 0; lane < blockSize; lane++) {
+					int srcIndex = blockStart + lane;
+
+					if (spaces[lane] == null) {
+						_extractor.setEmptyValues(srcIndex, _srcData, _dstData, _times, _distances, _weights);
+						continue;
+					}
+
+					for (int dstIndex = 0; dstIndex < _targets.length; dstIndex++) {
+						int index = srcIndex * _dstData.size() + dstIndex;
+						int target = _targets[dstIndex];
+
+						if (target == -1 || labels[target * BLOCK_SIZE + lane] == Double.POSITIVE_INFINITY) {
+							values[0] = values[1] = values[2] = -1;
+						} else {
+							values[0] = values[1] = values[2] = 0.0;
+							// a path that cannot be recovered is reported as unreachable rather than with a partial sum
+							if (!addPathValues(_sweepGraph, labels, lane, target, spaces[lane], _extractor, values))
+								values[0] = values[1] = values[2] = -1;
+						}
+
+						if (_times != null)
+							_times[index] = (float) values[0];
+						if (_distances != null)
+							_distances[index] = (float) values[1];
+						if (_weights != null)
+							_weights[index] = (float) values[2];
+					}
+				}
+			}
+
+			return null;
+		}
+
+		private void seed(CHSearchSpace space, double[] labels, int lane) {
+			for (int i = 0; i < space.size(); i++) {
+				int nodeIndex = _sweepGraph.getNodeIndex(space.getNode(i));
+				if (nodeIndex != -1)
+					labels[nodeIndex * BLOCK_SIZE + lane] = space.getWeight(i);
+			}
+		}
+	}
+}
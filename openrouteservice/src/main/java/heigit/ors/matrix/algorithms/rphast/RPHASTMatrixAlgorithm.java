@@ -30,7 +30,8 @@ import heigit.ors.matrix.MatrixResult;
 import heigit.ors.matrix.MultiTreeMetricsExtractor;
 import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import heigit.ors.routing.algorithms.RPHASTAlgorithm;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
+import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 
 public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 	private PrepareContractionHierarchies _prepareCH;
@@ -40,8 +41,7 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 		super.init(req, gh, graph, encoder, weighting);
 
 		_prepareCH = _graphHopper.getCHFactoryDecorator().getPreparations().get(0);
-		_pathMetricsExtractor = new MultiTreeMetricsExtractor(req.getMetrics(), graph, _encoder, weighting,
-				req.getUnits());
+		_pathMetricsExtractor = createMultiTreeMetricsExtractor(req.getMetrics(), weighting, req.getUnits());
 	}
 
 	@Override
@@ -69,27 +69,29 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 		{
 			RPHASTAlgorithm algorithm = new RPHASTAlgorithm(_graph, _prepareCH.getPrepareWeighting(),
 					TraversalMode.NODE_BASED);
+			if (_graphHopper instanceof ORSGraphHopper)
+				algorithm.setTargetGraphCache(((ORSGraphHopper)_graphHopper).getTargetGraphCache());
 			
 			int[] srcIds = getValidNodeIds(srcData.getNodeIds());
 			int[] destIds = getValidNodeIds(dstData.getNodeIds());
 			
 			algorithm.prepare(srcIds, destIds);
 
-			MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
+			int[] destSlots = algorithm.calcPaths(srcIds, destIds);
 
-			MultiTreeSPEntry[] originalDestTrees = new MultiTreeSPEntry[dstData.size()];
+			int[] originalDestSlots = new int[dstData.size()];
 			
 			int j = 0;
 			for (int i = 0; i < dstData.size(); i++) {
 				if (dstData.getNodeIds()[i] != -1) {
-					originalDestTrees[i] = destTrees[j];
+					originalDestSlots[i] = destSlots[j];
 					++j;
 				} else {
-					originalDestTrees[i] = null;
+					originalDestSlots[i] = MultiTreeSPStorage.NO_SLOT;
 				}
 			}
 
-			_pathMetricsExtractor.calcValues(originalDestTrees, srcData, dstData, times, distances, weights);
+			_pathMetricsExtractor.calcValues(algorithm.getLabels(), originalDestSlots, srcData, dstData, times, distances, weights);
 		}
 
 		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
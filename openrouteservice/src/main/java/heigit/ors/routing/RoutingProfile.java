@@ -35,12 +35,11 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import heigit.ors.exceptions.InternalServerException;
 import heigit.ors.isochrones.*;
-import heigit.ors.isochrones.statistics.StatisticsProvider;
-import heigit.ors.isochrones.statistics.StatisticsProviderConfiguration;
-import heigit.ors.isochrones.statistics.StatisticsProviderFactory;
-import heigit.ors.mapmatching.MapMatcher;
+import heigit.ors.mapmatching.MapMatcherPool;
+import heigit.ors.mapmatching.MatchedPath;
 import heigit.ors.mapmatching.RouteSegmentInfo;
 import heigit.ors.mapmatching.hmm.HiddenMarkovMapMatcher;
+import heigit.ors.mapmatching.hmm.OnlineHiddenMarkovMapMatcher;
 import heigit.ors.matrix.*;
 import heigit.ors.matrix.algorithms.MatrixAlgorithm;
 import heigit.ors.matrix.algorithms.MatrixAlgorithmFactory;
@@ -58,7 +57,8 @@ import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
 import heigit.ors.routing.parameters.*;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
 import heigit.ors.routing.traffic.TrafficEdgeAnnotator;
-import heigit.ors.services.isochrones.IsochronesServiceSettings;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+import heigit.ors.services.mapmatching.MapMatchingServiceSettings;
 import heigit.ors.services.matrix.MatrixServiceSettings;
 import heigit.ors.services.optimization.OptimizationServiceSettings;
 import heigit.ors.util.DebugUtility;
@@ -95,7 +95,6 @@ public class RoutingProfile {
     private Integer[] mRoutePrefs;
     private Integer mUseCounter;
     private boolean mUpdateRun;
-    private MapMatcher mMapMatcher;
 
     private RouteProfileConfiguration _config;
     private String _astarApproximation;
@@ -388,6 +387,11 @@ public class RoutingProfile {
                 if (!isGHUsed()) {
                     GraphHopper ghOld = mGraphHopper;
 
+                    // the maps of the old graph must not be served any longer, the new graph starts with an empty cache
+                    IsochroneCache isochroneCache = mGraphHopper.getIsochroneCache();
+                    if (isochroneCache != null)
+                        isochroneCache.clear();
+
                     ghOld.close();
                     ghOld.clean();
 
@@ -438,9 +442,7 @@ public class RoutingProfile {
     }
 
     /**
-     * This function creates the actual {@link IsochroneMap}.
-     * It is important, that whenever attributes contains pop_total it must also contain pop_area. If not the data won't be complete.
-     * So the first step in the function is a checkup on that.
+     * This function creates the actual {@link IsochroneMap} and computes the statistics attributes of its isochrones.
      *
      * @param parameters The input are {@link IsochroneSearchParameters}
      * @param attributes The input are a {@link String}[] holding the attributes if set
@@ -448,31 +450,6 @@ public class RoutingProfile {
      * @throws Exception
      */
     public IsochroneMap buildIsochrone(IsochroneSearchParameters parameters, String[] attributes) throws Exception {
-        // Checkup for pop_total. If the value is set, pop_area must always be set here, if not already done so by the user.
-        String[] tempAttributes;
-        if (Arrays.toString(attributes).contains("total_pop".toLowerCase()) && !(Arrays.toString(attributes).contains("total_area_km".toLowerCase()))) {
-            tempAttributes = new String[attributes.length + 1];
-            int i = 0;
-            while (i < attributes.length) {
-                String attribute = attributes[i];
-                tempAttributes[i] = attribute;
-                i++;
-            }
-            tempAttributes[i] = "total_area_km";
-        } else if ((Arrays.toString(attributes).contains("total_area_km".toLowerCase())) && (!Arrays.toString(attributes).contains("total_pop".toLowerCase()))) {
-            tempAttributes = new String[attributes.length + 1];
-            int i = 0;
-            while (i < attributes.length) {
-                String attribute = attributes[i];
-                tempAttributes[i] = attribute;
-                i++;
-            }
-            tempAttributes[i] = "total_pop";
-        } else {
-            tempAttributes = attributes;
-        }
-
-
         IsochroneMap result = null;
         waitForUpdateCompletion();
 
@@ -481,8 +458,21 @@ public class RoutingProfile {
         try {
             RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters(), RouteSearchMode.Isochrones, null);
 
-            IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
-            result = isochroneMapBuilderFactory.buildMap(parameters);
+            IsochroneCache cache = mGraphHopper.getIsochroneCache();
+            int startNode = -1;
+            if (cache != null && IsochroneCache.isCacheable(parameters)) {
+                startNode = GraphEdgeMapFinder.findStartNode(searchCntx, parameters.getLocation());
+                parameters.setStartNode(startNode);
+                result = cache.get(startNode, parameters);
+            }
+
+            if (result == null) {
+                IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
+                result = isochroneMapBuilderFactory.buildMap(parameters);
+
+                if (startNode != -1)
+                    cache.put(startNode, parameters, result);
+            }
 
             endUseGH();
         } catch (Exception ex) {
@@ -493,40 +483,10 @@ public class RoutingProfile {
             throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to build an isochrone map.");
         }
 
-        if (tempAttributes != null && result.getIsochronesCount() > 0) {
-            try {
-                Map<StatisticsProviderConfiguration, List<String>> mapProviderToAttrs = new HashMap<StatisticsProviderConfiguration, List<String>>();
-                for (String attr : tempAttributes) {
-                    StatisticsProviderConfiguration provConfig = IsochronesServiceSettings.getStatsProviders().get(attr);
-
-                    if (provConfig != null) {
-                        if (mapProviderToAttrs.containsKey(provConfig)) {
-                            List<String> attrList = mapProviderToAttrs.get(provConfig);
-                            attrList.add(attr);
-                        } else {
-                            List<String> attrList = new ArrayList<String>();
-                            attrList.add(attr);
-                            mapProviderToAttrs.put(provConfig, attrList);
-                        }
-                    }
-                }
-
-                for (Map.Entry<StatisticsProviderConfiguration, List<String>> entry : mapProviderToAttrs.entrySet()) {
-                    StatisticsProviderConfiguration provConfig = entry.getKey();
-                    StatisticsProvider provider = StatisticsProviderFactory.getProvider(provConfig.getName(), provConfig.getParameters());
-                    String[] provAttrs = provConfig.getMappedProperties(entry.getValue());
-
-                    for (Isochrone isochrone : result.getIsochrones()) {
-                        double[] attrValues = provider.getStatistics(isochrone, provAttrs);
-                        isochrone.setAttributes(entry.getValue(), attrValues, provConfig.getAttribution());
-                    }
-                }
-
-            } catch (Exception ex) {
-                LOGGER.error(ex);
-
-                throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to compute isochrone attributes.");
-            }
+        if (attributes != null && result.getIsochronesCount() > 0) {
+            IsochroneMapCollection isoMaps = new IsochroneMapCollection();
+            isoMaps.add(result);
+            IsochroneUtility.computeAttributes(isoMaps, attributes);
         }
 
         return result;
@@ -752,8 +712,11 @@ public class RoutingProfile {
         if (searchParams.getConsiderTraffic()) {
             RealTrafficDataProvider trafficData = RealTrafficDataProvider.getInstance();
             if (RoutingProfileType.isDriving(profileType) && searchParams.getWeightingMethod() != WeightingMethod.SHORTEST && trafficData.isInitialized()) {
+                // the weighting gets the version, so that filter and weighting work on the same snapshot
+                TrafficSnapshot snapshot = trafficData.getSnapshot(gs);
                 props.put("weighting_traffic_block", true);
-                edgeFilters.add(new BlockedEdgesEdgeFilter(flagEncoder, trafficData.getBlockedEdges(gs), trafficData.getHeavyVehicleBlockedEdges(gs)));
+                props.put("weighting_traffic_version", snapshot.getVersion());
+                edgeFilters.add(new BlockedEdgesEdgeFilter(flagEncoder, snapshot));
             }
         }
 
@@ -786,15 +749,55 @@ public class RoutingProfile {
 
     private RouteSegmentInfo[] getMatchedSegmentsInternal(Coordinate[] locations,
                                                           double searchRadius, EdgeFilter edgeFilter, boolean bothDirections) {
-        if (mMapMatcher == null) {
-            mMapMatcher = new HiddenMarkovMapMatcher();
-            mMapMatcher.setGraphHopper(mGraphHopper);
+        // long traces are matched point by point, so that memory does not grow with their length
+        if (locations.length > MapMatchingServiceSettings.getOnlineMatchingThreshold()) {
+            MapMatcherPool<OnlineHiddenMarkovMapMatcher> pool = mGraphHopper.getOnlineMapMatchers();
+            OnlineHiddenMarkovMapMatcher matcher = pool.acquire();
+            try {
+                matcher.setSearchRadius(searchRadius);
+                matcher.setEdgeFilter(edgeFilter);
+                return matcher.match(locations, bothDirections);
+            } finally {
+                pool.release(matcher);
+            }
+        } else {
+            MapMatcherPool<HiddenMarkovMapMatcher> pool = mGraphHopper.getMapMatchers();
+            HiddenMarkovMapMatcher matcher = pool.acquire();
+            try {
+                matcher.setSearchRadius(searchRadius);
+                matcher.setEdgeFilter(edgeFilter);
+                return matcher.match(locations, bothDirections);
+            } finally {
+                pool.release(matcher);
+            }
         }
+    }
 
-        mMapMatcher.setSearchRadius(searchRadius);
-        mMapMatcher.setEdgeFilter(edgeFilter);
+    /**
+     * Matches a whole trace to the road network.
+     *
+     * @return the path the trace is matched to, in parts as described at
+     * {@link OnlineHiddenMarkovMapMatcher#matchPaths(Coordinate[])}, empty if the trace can not be matched
+     */
+    public List<MatchedPath> matchTrack(Coordinate[] locations, double searchRadius) throws Exception {
+        List<MatchedPath> res = null;
+
+        waitForUpdateCompletion();
+
+        beginUseGH();
+
+        MapMatcherPool<OnlineHiddenMarkovMapMatcher> pool = mGraphHopper.getOnlineMapMatchers();
+        OnlineHiddenMarkovMapMatcher matcher = pool.acquire();
+        try {
+            matcher.setSearchRadius(searchRadius);
+            matcher.setEdgeFilter(null);
+            res = matcher.matchPaths(locations);
+        } finally {
+            pool.release(matcher);
+            endUseGH();
+        }
 
-        return mMapMatcher.match(locations, bothDirections);
+        return res;
     }
 
     public boolean canProcessRequest(double totalDistance, double longestSegmentDistance, int wayPoints) {
@@ -32,8 +32,13 @@ import heigit.ors.exceptions.PointNotFoundException;
 import heigit.ors.exceptions.RouteNotFoundException;
 import heigit.ors.exceptions.ServerLimitExceededException;
 import heigit.ors.isochrones.IsochroneMap;
+import heigit.ors.isochrones.IsochroneMapCollection;
+import heigit.ors.isochrones.IsochroneUtility;
 import heigit.ors.isochrones.IsochroneSearchParameters;
+import heigit.ors.isochrones.ParallelIsochroneExecutor;
+import heigit.ors.mapmatching.MapMatchingErrorCodes;
 import heigit.ors.mapmatching.MapMatchingRequest;
+import heigit.ors.mapmatching.MatchedPath;
 import heigit.ors.matrix.MatrixErrorCodes;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
@@ -42,10 +47,12 @@ import heigit.ors.optimization.RouteOptimizationRequest;
 import heigit.ors.optimization.RouteOptimizationResult;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
 import heigit.ors.routing.configuration.RoutingManagerConfiguration;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.EdgeSetEdgeFilter;
 import heigit.ors.routing.parameters.VehicleParameters;
 import heigit.ors.routing.pathprocessors.ElevationSmoothPathProcessor;
 import heigit.ors.routing.pathprocessors.ExtraInfoProcessor;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
+import heigit.ors.services.mapmatching.MapMatchingServiceSettings;
 import heigit.ors.services.routing.RoutingServiceSettings;
 import heigit.ors.util.FormatUtility;
 import heigit.ors.util.RuntimeUtility;
@@ -58,6 +65,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RoutingProfileManager {
     private static final Logger LOGGER = Logger.getLogger(RoutingProfileManager.class.getName());
@@ -340,21 +348,79 @@ public class RoutingProfileManager {
         return routes;
     }
 
+    /**
+     * Matches the trace of the request to the road network. The path selected by the matcher is then routed once
+     * on its own edges, so that the result carries geometry, extra info and instructions like a route. A new segment
+     * only starts where the matched path is broken up or passes an edge a second time.
+     * <p>
+     * The number of locations is limited by the map matching service, not by the waypoint limit of the profile.
+     */
     public RouteResult matchTrack(MapMatchingRequest req) throws Exception {
-        //RoutingProfile rp = getRouteProfile(req, false);
+        RoutingProfile rp = selectRouteProfile(req);
+
+        Coordinate[] locations = req.getCoordinates();
+        double searchRadius = Math.min(req.getAccuracy(), MapMatchingServiceSettings.getMaximumSearchRadius());
+        List<MatchedPath> paths = rp.matchTrack(locations, searchRadius);
+
+        if (paths.isEmpty())
+            throw new RouteNotFoundException(MapMatchingErrorCodes.TRACK_NOT_MATCHED, "Unable to match the track to the road network.");
+
+        PathProcessor pathProcessor = null;
+
+        if (req.getExtraInfo() > 0) {
+            pathProcessor = new ExtraInfoProcessor(rp.getGraphhopper(), req);
+        } else {
+            if (req.getIncludeElevation())
+                pathProcessor = new ElevationSmoothPathProcessor();
+        }
 
-        return null;
+        RouteProcessContext routeProcCntx = new RouteProcessContext(pathProcessor);
+        RouteSearchParameters searchParams = req.getSearchParameters();
+        boolean flexibleMode = searchParams.getFlexibleMode();
+        List<GHResponse> routes = new ArrayList<GHResponse>(paths.size());
+        Coordinate[] wayPoints = new Coordinate[paths.size() + 1];
+
+        // the shortcuts of contraction hierarchies would bypass the edge filter
+        searchParams.setFlexibleMode(true);
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                MatchedPath path = paths.get(i);
+                Coordinate c0 = path.getStart();
+                Coordinate c1 = path.getEnd();
+
+                if (pathProcessor != null)
+                    pathProcessor.setSegmentIndex(i, paths.size());
+
+                GHResponse gr = rp.computeRoute(c0.y, c0.x, c1.y, c1.x, null, null, false, searchParams, new EdgeSetEdgeFilter(path.getEdges()), routeProcCntx);
+                if (gr.hasErrors())
+                    throw new RouteNotFoundException(MapMatchingErrorCodes.TRACK_NOT_MATCHED, "Unable to match the track to the road network.");
+
+                routes.add(gr);
+                wayPoints[i] = c0;
+                wayPoints[i + 1] = c1;
+            }
+
+            req.setCoordinates(wayPoints);
+            return new RouteResultBuilder().createRouteResult(routes, req, (pathProcessor != null && (pathProcessor instanceof ExtraInfoProcessor)) ? ((ExtraInfoProcessor) pathProcessor).getExtras() : null);
+        } finally {
+            searchParams.setFlexibleMode(flexibleMode);
+            req.setCoordinates(locations);
+        }
     }
 
     public RouteResult computeRoute(RoutingRequest req) throws Exception {
-        List<GHResponse> routes = new ArrayList<GHResponse>();
-
 //System.out.println("PATCHED!!!!");
 //req.setExtraInfo(512);
 //req.getSearchParameters().setOptions("{\"profile_params\":{\"restrictions\":{\"trail_difficulty\":1}}}");
 //req.getSearchParameters().setFlexibleMode(true);
 
         RoutingProfile rp = getRouteProfile(req, false);
+
+        return computeRoute(rp, req);
+    }
+
+    private RouteResult computeRoute(RoutingProfile rp, RoutingRequest req) throws Exception {
+        List<GHResponse> routes = new ArrayList<GHResponse>();
         RouteSearchParameters searchParams = req.getSearchParameters();
         PathProcessor pathProcessor = null;
 
@@ -462,11 +528,18 @@ public class RoutingProfileManager {
             return 0;
     }
 
-    public RoutingProfile getRouteProfile(RoutingRequest req, boolean oneToMany) throws Exception {
-        RouteSearchParameters searchParams = req.getSearchParameters();
+    private static boolean hasDynamicWeights(RouteSearchParameters searchParams) {
         int profileType = searchParams.getProfileType();
 
-        boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidBorders() || searchParams.hasAvoidCountries() || searchParams.getMaximumSpeed() > 0 || (RoutingProfileType.isDriving(profileType) && ((RoutingProfileType.isHeavyVehicle(profileType) && searchParams.getVehicleType() > 0) || searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
+        return (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidBorders() || searchParams.hasAvoidCountries() || searchParams.getMaximumSpeed() > 0 || (RoutingProfileType.isDriving(profileType) && ((RoutingProfileType.isHeavyVehicle(profileType) && searchParams.getVehicleType() > 0) || searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
+    }
+
+    /**
+     * Returns the profile which serves the request, without checking the limits of the profile.
+     */
+    private RoutingProfile selectRouteProfile(RoutingRequest req) throws Exception {
+        int profileType = req.getSearchParameters().getProfileType();
+        boolean dynamicWeights = hasDynamicWeights(req.getSearchParameters());
 
         RoutingProfile rp = _routeProfiles.getRouteProfile(profileType, !dynamicWeights);
 
@@ -474,7 +547,15 @@ public class RoutingProfileManager {
             rp = _routeProfiles.getRouteProfile(profileType, false);
 
         if (rp == null)
-            throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "Unable to get an appropriate route profile for RoutePreference = " + RoutingProfileType.getName(req.getSearchParameters().getProfileType()));
+            throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "Unable to get an appropriate route profile for RoutePreference = " + RoutingProfileType.getName(profileType));
+
+        return rp;
+    }
+
+    public RoutingProfile getRouteProfile(RoutingRequest req, boolean oneToMany) throws Exception {
+        RouteSearchParameters searchParams = req.getSearchParameters();
+        boolean dynamicWeights = hasDynamicWeights(searchParams);
+        RoutingProfile rp = selectRouteProfile(req);
 
         RouteProfileConfiguration config = rp.getConfiguration();
 
@@ -546,6 +627,46 @@ public class RoutingProfileManager {
         return rp.buildIsochrone(parameters, attributes);
     }
 
+    /**
+     * Builds the isochrone maps of several travellers. Independent travellers are computed concurrently on the
+     * shared {@link ParallelIsochroneExecutor}, limited by the per-request concurrency of the isochrones service.
+     * The attributes of all isochrones are computed afterwards in one batch per statistics provider.
+     *
+     * @param parameters The {@link IsochroneSearchParameters} of the travellers
+     * @param attributes The attributes are a {@link String}[] holding the set attributes from the api query
+     * @return Return is a {@link IsochroneMapCollection} holding the maps in the order of the given parameters.
+     * @throws Exception
+     */
+    public IsochroneMapCollection buildIsochrones(final List<IsochroneSearchParameters> parameters, final String[] attributes) throws Exception {
+        final IsochroneMap[] maps = new IsochroneMap[parameters.size()];
+        final AtomicInteger nextIndex = new AtomicInteger();
+
+        int concurrency = ParallelIsochroneExecutor.getConcurrency(parameters.size());
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < maps.length)
+                        maps[index] = buildIsochrone(parameters.get(index), null);
+                    return null;
+                }
+            });
+        }
+
+        if (!tasks.isEmpty())
+            ParallelIsochroneExecutor.invokeAll(tasks);
+
+        IsochroneMapCollection isoMaps = new IsochroneMapCollection();
+        for (IsochroneMap map : maps)
+            isoMaps.add(map);
+
+        IsochroneUtility.computeAttributes(isoMaps, attributes);
+
+        return isoMaps;
+    }
+
     public MatrixResult computeMatrix(MatrixRequest req) throws Exception {
         RoutingProfile rp = _routeProfiles.getRouteProfile(req.getProfileType(), !req.getFlexibleMode());
 
@@ -0,0 +1,64 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Parameters;
+
+/**
+ * One-to-many A* search towards a set of targets. The lower bound of a node is the minimum of the lower bounds
+ * to the single targets, which is consistent if those are, so every target is final once it is settled.
+ */
+public class AStarOneToManyAlgorithm extends DijkstraOneToManyAlgorithm {
+    private final WeightApproximator[] _approximators;
+    // bounds do not depend on the source and are therefore kept for all searches of this instance
+    private final IntDoubleHashMap _approximations;
+
+    /**
+     * @param approximators one approximator per target, each already set to its target
+     */
+    public AStarOneToManyAlgorithm(Graph graph, Weighting weighting, TraversalMode tMode, WeightApproximator[] approximators) {
+        super(graph, weighting, tMode);
+        _approximators = approximators;
+        _approximations = new IntDoubleHashMap(1000);
+    }
+
+    @Override
+    protected double approximate(int node) {
+        double value = _approximations.getOrDefault(node, -1);
+
+        if (value < 0) {
+            value = Double.POSITIVE_INFINITY;
+
+            for (WeightApproximator approximator : _approximators)
+                value = Math.min(value, approximator.approximate(node));
+
+            if (Double.isInfinite(value))
+                value = 0;
+
+            _approximations.put(node, value);
+        }
+
+        return value;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.ASTAR;
+    }
+}
@@ -0,0 +1,91 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Shortest path tree of one upward CH search. Nodes are numbered in the order in which they have been found, the
+ * root has index 0 and no parent.
+ */
+public class CHSearchSpace {
+	private final IntIntHashMap _node2index = new IntIntHashMap();
+	private final IntArrayList _nodes = new IntArrayList();
+	private final DoubleArrayList _weights = new DoubleArrayList();
+	private final IntArrayList _edges = new IntArrayList();
+	private final IntArrayList _parents = new IntArrayList();
+	private final boolean _reverse;
+
+	CHSearchSpace(boolean reverse) {
+		_reverse = reverse;
+	}
+
+	int add(int node, double weight, int edge, int parent) {
+		int index = _nodes.size();
+		_node2index.put(node, index);
+		_nodes.add(node);
+		_weights.add(weight);
+		_edges.add(edge);
+		_parents.add(parent);
+		return index;
+	}
+
+	void update(int index, double weight, int edge, int parent) {
+		_weights.set(index, weight);
+		_edges.set(index, edge);
+		_parents.set(index, parent);
+	}
+
+	/**
+	 * Returns true if the tree has been built by a backward search, i.e. all edges lead from a node to its parent.
+	 */
+	public boolean isReverse() {
+		return _reverse;
+	}
+
+	public int size() {
+		return _nodes.size();
+	}
+
+	/**
+	 * Returns the index of the node or -1 if the search has not reached it.
+	 */
+	public int getIndex(int node) {
+		return _node2index.getOrDefault(node, -1);
+	}
+
+	public int getNode(int index) {
+		return _nodes.get(index);
+	}
+
+	public double getWeight(int index) {
+		return _weights.get(index);
+	}
+
+	/**
+	 * Returns the edge between the node and its parent.
+	 */
+	public int getEdge(int index) {
+		return _edges.get(index);
+	}
+
+	/**
+	 * Returns the index of the parent or -1 for the root.
+	 */
+	public int getParent(int index) {
+		return _parents.get(index);
+	}
+}
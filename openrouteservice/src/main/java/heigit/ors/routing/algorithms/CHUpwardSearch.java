@@ -0,0 +1,77 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import heigit.ors.routing.graphhopper.extensions.edgefilters.CHLevelEdgeFilter;
+
+/**
+ * Complete upward search in a CH graph. With an {@code UpwardSearchEdgeFilter} it runs forward from a source, with
+ * a {@code DownwardSearchEdgeFilter} and {@code reverse} set it runs backward from a target. Instances are not
+ * thread safe but can run any number of searches one after the other.
+ */
+public class CHUpwardSearch {
+	private final Weighting _weighting;
+	private final CHLevelEdgeFilter _edgeFilter;
+	private final boolean _reverse;
+	private final EdgeExplorer _explorer;
+	private final IndexedMinHeap _heap = new IndexedMinHeap(100);
+
+	public CHUpwardSearch(Graph graph, Weighting weighting, CHLevelEdgeFilter edgeFilter, boolean reverse) {
+		_weighting = weighting;
+		_edgeFilter = edgeFilter;
+		_reverse = reverse;
+		_explorer = graph.createEdgeExplorer();
+	}
+
+	public CHSearchSpace run(int root) {
+		CHSearchSpace space = new CHSearchSpace(_reverse);
+		_heap.clear();
+		_heap.push(space.add(root, 0.0, EdgeIterator.NO_EDGE, -1), 0.0);
+
+		while (!_heap.isEmpty()) {
+			int index = _heap.poll();
+			int baseNode = space.getNode(index);
+			double baseWeight = space.getWeight(index);
+
+			EdgeIterator iter = _explorer.setBaseNode(baseNode);
+			_edgeFilter.setBaseNode(baseNode);
+
+			while (iter.next()) {
+				if (!_edgeFilter.accept(iter))
+					continue;
+
+				double weight = baseWeight + _weighting.calcWeight(iter, _reverse, EdgeIterator.NO_EDGE);
+				if (Double.isInfinite(weight))
+					continue;
+
+				int adjIndex = space.getIndex(iter.getAdjNode());
+
+				if (adjIndex == -1) {
+					adjIndex = space.add(iter.getAdjNode(), weight, iter.getEdge(), index);
+					_heap.push(adjIndex, weight);
+				} else if (weight < space.getWeight(adjIndex)) {
+					space.update(adjIndex, weight, iter.getEdge(), index);
+					_heap.push(adjIndex, weight);
+				}
+			}
+		}
+
+		return space;
+	}
+}
@@ -23,11 +23,9 @@ import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.Parameters;
 
-import java.util.PriorityQueue;
-
 public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorithm {
     protected IntObjectMap<SPTEntry> _fromMap;
-    protected PriorityQueue<SPTEntry> _fromHeap;
+    protected IndexedMinHeap _fromHeap;
     protected SPTEntry _currEdge;
     private int _visitedNodes;
     
@@ -42,7 +40,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
     }
 
     protected void initCollections(int size) {
-        _fromHeap = new PriorityQueue<SPTEntry>(size);
+        _fromHeap = new IndexedMinHeap(size);
         _fromMap = new GHIntObjectHashMap<SPTEntry>(size);
         _targets = new GHIntObjectHashMap<SPTEntry>();
     }
@@ -125,13 +123,12 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
                     nEdge = new SPTEntry(iter.getEdge(), iter.getAdjNode(), tmpWeight);
                     nEdge.parent = _currEdge;
                     _fromMap.put(traversalId, nEdge);
-                    _fromHeap.add(nEdge);
+                    _fromHeap.push(traversalId, tmpWeight + approximate(iter.getAdjNode()));
                 } else if (nEdge.weight > tmpWeight) {
-                    _fromHeap.remove(nEdge);
                     nEdge.edge = iter.getEdge();
                     nEdge.weight = tmpWeight;
                     nEdge.parent = _currEdge;
-                    _fromHeap.add(nEdge);
+                    _fromHeap.push(traversalId, tmpWeight + approximate(iter.getAdjNode()));
                 } else
                     continue;
             }
@@ -139,12 +136,20 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
             if (_fromHeap.isEmpty())
                 break;
 
-            _currEdge = _fromHeap.poll();
+            _currEdge = _fromMap.get(_fromHeap.poll());
             if (_currEdge == null)
                 throw new AssertionError("Empty edge cannot happen");
         }
     }
 
+    /**
+     * Returns a lower bound of the weight from the node to the closest target, which is used to direct the search.
+     * Plain Dijkstra does not use any.
+     */
+    protected double approximate(int node) {
+        return 0;
+    }
+
     private boolean finished() {
     	if (_currEdge.edge != -1)
     	{
@@ -0,0 +1,175 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Binary min-heap of int keys (node ids or label slots) ordered by a double weight.
+ * <p>
+ * The position of every key in the heap is tracked, so that the weight of a key which is already queued can be
+ * decreased (or increased) in O(log n) instead of removing and re-adding it. Every key is contained at most once.
+ */
+public class IndexedMinHeap {
+	private int[] _keys;
+	private double[] _weights;
+	private int _size;
+	private final IntIntHashMap _positions;
+
+	public IndexedMinHeap(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		_keys = new int[capacity];
+		_weights = new double[capacity];
+		_positions = new IntIntHashMap(capacity);
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the number of keys the heap can hold without growing.
+	 */
+	int getCapacity() {
+		return _keys.length;
+	}
+
+	public void clear() {
+		_size = 0;
+		_positions.clear();
+	}
+
+	public boolean contains(int key) {
+		return _positions.containsKey(key);
+	}
+
+	/**
+	 * Adds the key to the heap or, if it is already queued, moves it according to its new weight.
+	 */
+	public void push(int key, double weight) {
+		int pos = _positions.getOrDefault(key, -1);
+
+		if (pos == -1) {
+			if (_size == _keys.length) {
+				int capacity = _size + (_size >> 1);
+				_keys = Arrays.copyOf(_keys, capacity);
+				_weights = Arrays.copyOf(_weights, capacity);
+			}
+
+			pos = _size++;
+			_keys[pos] = key;
+			_weights[pos] = weight;
+			_positions.put(key, pos);
+			siftUp(pos);
+		} else {
+			double oldWeight = _weights[pos];
+			_weights[pos] = weight;
+
+			if (weight < oldWeight)
+				siftUp(pos);
+			else if (weight > oldWeight)
+				siftDown(pos);
+		}
+	}
+
+	public int peekKey() {
+		if (_size == 0)
+			throw new IllegalStateException("Heap is empty");
+
+		return _keys[0];
+	}
+
+	public double peekWeight() {
+		if (_size == 0)
+			throw new IllegalStateException("Heap is empty");
+
+		return _weights[0];
+	}
+
+	/**
+	 * Removes and returns the key with the smallest weight.
+	 */
+	public int poll() {
+		if (_size == 0)
+			throw new IllegalStateException("Heap is empty");
+
+		int key = _keys[0];
+		_positions.remove(key);
+
+		_size--;
+		if (_size > 0) {
+			_keys[0] = _keys[_size];
+			_weights[0] = _weights[_size];
+			_positions.put(_keys[0], 0);
+			siftDown(0);
+		}
+
+		return key;
+	}
+
+	private void siftUp(int pos) {
+		int key = _keys[pos];
+		double weight = _weights[pos];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (_weights[parent] <= weight)
+				break;
+
+			move(parent, pos);
+			pos = parent;
+		}
+
+		place(key, weight, pos);
+	}
+
+	private void siftDown(int pos) {
+		int key = _keys[pos];
+		double weight = _weights[pos];
+		int half = _size >>> 1;
+
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child + 1;
+			if (right < _size && _weights[right] < _weights[child])
+				child = right;
+
+			if (weight <= _weights[child])
+				break;
+
+			move(child, pos);
+			pos = child;
+		}
+
+		place(key, weight, pos);
+	}
+
+	private void move(int from, int to) {
+		_keys[to] = _keys[from];
+		_weights[to] = _weights[from];
+		_positions.put(_keys[to], to);
+	}
+
+	private void place(int key, double weight, int pos) {
+		_keys[pos] = key;
+		_weights[pos] = weight;
+		_positions.put(key, pos);
+	}
+}
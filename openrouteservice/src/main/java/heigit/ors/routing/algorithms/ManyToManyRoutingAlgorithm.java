@@ -13,13 +13,19 @@
  */
 package heigit.ors.routing.algorithms;
 
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 
 public interface ManyToManyRoutingAlgorithm {
 
 	void prepare(int[] from, int[] to);
 
-	MultiTreeSPEntry[] calcPaths(int[] from, int[] to);
+	/**
+	 * Returns the label slots of the target nodes, {@link MultiTreeSPStorage#NO_SLOT} for targets that have not
+	 * been reached. The labels themselves are available through {@link #getLabels()}.
+	 */
+	int[] calcPaths(int[] from, int[] to);
+
+	MultiTreeSPStorage getLabels();
 
 	void reset();
 
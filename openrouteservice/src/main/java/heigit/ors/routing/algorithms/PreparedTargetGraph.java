@@ -0,0 +1,177 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
+
+/**
+ * Immutable target graph of the RPHAST downward pass in compressed sparse row form.
+ * <p>
+ * For every node, the edges leading down towards the targets are stored in one contiguous range of the
+ * {@code edges}, {@code adjNodes} and {@code weights} arrays, starting at {@code offsets[index]}. Instances never
+ * change after construction and can therefore be shared between request threads.
+ */
+public class PreparedTargetGraph {
+	private final IntIntHashMap _node2index;
+	private final int[] _nodes;
+	private final int[] _offsets;
+	private final int[] _edges;
+	private final int[] _adjNodes;
+	private final double[] _weights;
+
+	private PreparedTargetGraph(IntIntHashMap node2index, int[] nodes, int[] offsets, int[] edges, int[] adjNodes,
+			double[] weights) {
+		_node2index = node2index;
+		_nodes = nodes;
+		_offsets = offsets;
+		_edges = edges;
+		_adjNodes = adjNodes;
+		_weights = weights;
+	}
+
+	/**
+	 * Runs phase I of RPHAST on the given CH or query graph, i.e. collects all nodes and edges which are reachable
+	 * from the given seed nodes by a backward upward search.
+	 */
+	public static PreparedTargetGraph create(Graph graph, Weighting weighting, DownwardSearchEdgeFilter edgeFilter, int[] seeds) {
+		IntIntHashMap node2index = new IntIntHashMap(Math.max(seeds.length * 4, 16));
+		IntArrayList nodes = new IntArrayList(seeds.length * 4);
+		IntArrayList edgeNodes = new IntArrayList();
+		IntArrayList edges = new IntArrayList();
+		IntArrayList adjNodes = new IntArrayList();
+		DoubleArrayList weights = new DoubleArrayList();
+
+		for (int seed : seeds) {
+			if (!node2index.containsKey(seed)) {
+				node2index.put(seed, nodes.size());
+				nodes.add(seed);
+			}
+		}
+
+		EdgeExplorer explorer = graph.createEdgeExplorer();
+
+		for (int head = 0; head < nodes.size(); head++) {
+			int node = nodes.get(head);
+			EdgeIterator iter = explorer.setBaseNode(node);
+			edgeFilter.setBaseNode(node);
+
+			while (iter.next()) {
+				if (!edgeFilter.accept(iter))
+					continue;
+
+				int upperNode = iter.getAdjNode();
+				EdgeIteratorState iterState = graph.getEdgeIteratorState(iter.getEdge(), node);
+				double weight = weighting.calcWeight(iterState, false, 0);
+				if (Double.isInfinite(weight))
+					continue;
+
+				if (!node2index.containsKey(upperNode)) {
+					node2index.put(upperNode, nodes.size());
+					nodes.add(upperNode);
+				}
+
+				edgeNodes.add(node2index.get(upperNode));
+				edges.add(iter.getEdge());
+				adjNodes.add(node);
+				weights.add(weight);
+			}
+		}
+
+		int nodesCount = nodes.size();
+		int edgesCount = edges.size();
+		int[] offsets = new int[nodesCount + 1];
+
+		for (int i = 0; i < edgesCount; i++)
+			offsets[edgeNodes.get(i) + 1]++;
+		for (int i = 0; i < nodesCount; i++)
+			offsets[i + 1] += offsets[i];
+
+		int[] fill = Arrays.copyOf(offsets, nodesCount);
+		int[] csrEdges = new int[edgesCount];
+		int[] csrAdjNodes = new int[edgesCount];
+		double[] csrWeights = new double[edgesCount];
+
+		for (int i = 0; i < edgesCount; i++) {
+			int pos = fill[edgeNodes.get(i)]++;
+			csrEdges[pos] = edges.get(i);
+			csrAdjNodes[pos] = adjNodes.get(i);
+			csrWeights[pos] = weights.get(i);
+		}
+
+		return new PreparedTargetGraph(node2index, nodes.toArray(), offsets, csrEdges, csrAdjNodes, csrWeights);
+	}
+
+	public boolean containsNode(int node) {
+		return _node2index.containsKey(node);
+	}
+
+	/**
+	 * Returns the row index of the node or -1 if the node is not part of the graph.
+	 */
+	public int getNodeIndex(int node) {
+		return _node2index.getOrDefault(node, -1);
+	}
+
+	public int getNode(int nodeIndex) {
+		return _nodes[nodeIndex];
+	}
+
+	public int getNodesCount() {
+		return _offsets.length - 1;
+	}
+
+	public int getEdgesCount() {
+		return _edges.length;
+	}
+
+	public int getEdgesStart(int nodeIndex) {
+		return _offsets[nodeIndex];
+	}
+
+	public int getEdgesEnd(int nodeIndex) {
+		return _offsets[nodeIndex + 1];
+	}
+
+	public int getEdge(int pos) {
+		return _edges[pos];
+	}
+
+	public int getAdjNode(int pos) {
+		return _adjNodes[pos];
+	}
+
+	public double getWeight(int pos) {
+		return _weights[pos];
+	}
+
+	/**
+	 * Returns the estimated memory (in bytes) of the arrays and of the node index, whose hash table holds a key and
+	 * a value per slot at a load factor of 0.75.
+	 */
+	public long getMemoryUsage() {
+		long size = 4L * (_nodes.length + _offsets.length + _edges.length + _adjNodes.length) + 8L * _weights.length;
+		return size + 8L * _node2index.size() * 4 / 3;
+	}
+}
@@ -13,10 +13,10 @@
  */
 package heigit.ors.routing.algorithms;
 
+import java.util.Arrays;
 import java.util.PriorityQueue;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.graphhopper.coll.GHIntObjectHashMap;
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
@@ -28,27 +28,26 @@ import com.graphhopper.util.EdgeIterator;
 
 import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
 import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntryItem;
+import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStorage;
 
 public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
-	//private final Logger logger = LoggerFactory.getLogger(getClass());
-
-	private IntObjectMap<MultiTreeSPEntry> _bestWeightMapFrom;
-	private MultiTreeSPEntry _currFrom;
-	private MultiTreeSPEntry _currTo;
-	private PriorityQueue<MultiTreeSPEntry> _prioQueue;
+	private MultiTreeSPStorage _labels;
+	private int _currFrom;
+	private int _currTo;
+	private IndexedMinHeap _prioQueue;
 	private UpwardSearchEdgeFilter _upwardEdgeFilter;
 	private DownwardSearchEdgeFilter _downwardEdgeFilter;
 	private SubGraph _targetGraph;
+	private PreparedTargetGraph _preparedTargetGraph;
+	private TargetGraphCache _targetGraphCache;
+	private CHGraph _chGraph;
 	private boolean _finishedFrom;
 	private boolean _finishedTo;
 	private int _visitedCountFrom;
 	private int _visitedCountTo;
 	private int _treeEntrySize;
+	private int _initialCapacity;
 	
-	private MultiTreeSPEntryItem _msptItem;
-	private MultiTreeSPEntryItem _msptSubItem;
 	private boolean _addToQueue = false;
 	private double _edgeWeight, _entryWeight, _tmpWeight;
 	
@@ -59,27 +58,26 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 
 		initCollections(size);
 
-		CHGraph chGraph = null;
 		if (graph instanceof CHGraph)
-			chGraph = (CHGraph) graph;
+			_chGraph = (CHGraph) graph;
 		else if (graph instanceof QueryGraph) {
 			QueryGraph qGraph = (QueryGraph) graph;
-			chGraph = (CHGraph) qGraph.getMainGraph();
+			_chGraph = (CHGraph) qGraph.getMainGraph();
 		}
 
 		setMaxVisitedNodes(Integer.MAX_VALUE);
 		FlagEncoder encoder = weighting.getFlagEncoder();
 
-		_upwardEdgeFilter = new UpwardSearchEdgeFilter(chGraph, encoder);
-		_downwardEdgeFilter = new DownwardSearchEdgeFilter(chGraph, encoder);
+		_upwardEdgeFilter = new UpwardSearchEdgeFilter(_chGraph, encoder);
+		_downwardEdgeFilter = new DownwardSearchEdgeFilter(_chGraph, encoder);
 
 		_inEdgeExplorer = graph.createEdgeExplorer();
 		_outEdgeExplorer = graph.createEdgeExplorer();
 	}
 
 	protected void initCollections(int size) {
-		_prioQueue = new PriorityQueue<MultiTreeSPEntry>(size);
-		_bestWeightMapFrom = new GHIntObjectHashMap<MultiTreeSPEntry>(size);
+		_initialCapacity = size;
+		_prioQueue = new IndexedMinHeap(size);
 	}
 
 	@Override
@@ -87,7 +85,21 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		_finishedFrom = false;
 		_finishedTo = false;
 		_prioQueue.clear();
-		_bestWeightMapFrom.clear();
+		if (_labels != null)
+			_labels.clear();
+	}
+
+	@Override
+	public MultiTreeSPStorage getLabels() {
+		return _labels;
+	}
+
+	/**
+	 * Enables reuse of the part of the target graph which lies in the CH graph. Only the virtual nodes of the
+	 * query graph are then expanded per request.
+	 */
+	public void setTargetGraphCache(TargetGraphCache cache) {
+		_targetGraphCache = cache;
 	}
 
 	@Override
@@ -98,11 +110,22 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		// Phase I: build shortest path tree from all target nodes to the
 		// highest node
 		_targetGraph = new SubGraph(_graph);
+		_preparedTargetGraph = null;
 
 		addNodes(_targetGraph, prioQueue, targets);
 
+		IntArrayList seeds = _targetGraphCache == null ? null : new IntArrayList();
+		int baseNodes = _chGraph.getNodes();
+
 		while (!prioQueue.isEmpty()) {
 			int adjNode = prioQueue.poll();
+
+			// nodes of the CH graph are expanded in the shared, cached part of the target graph
+			if (seeds != null && adjNode < baseNodes) {
+				seeds.add(adjNode);
+				continue;
+			}
+
 			EdgeIterator iter = _outEdgeExplorer.setBaseNode(adjNode);
 			_downwardEdgeFilter.setBaseNode(adjNode);
 
@@ -115,8 +138,34 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			}
 		}
 
-		//if (logger.isInfoEnabled())
-		//	_targetGraph.print();
+		if (seeds != null)
+			_preparedTargetGraph = getPreparedTargetGraph(seeds);
+	}
+
+	private PreparedTargetGraph getPreparedTargetGraph(IntArrayList seeds) {
+		int[] nodes = seeds.toArray();
+		Arrays.sort(nodes);
+
+		int count = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (i == 0 || nodes[i] != nodes[i - 1])
+				nodes[count++] = nodes[i];
+		}
+		nodes = Arrays.copyOf(nodes, count);
+
+		String weightingName = _weighting.toString();
+		PreparedTargetGraph graph = _targetGraphCache.get(weightingName, nodes);
+
+		if (graph == null) {
+			graph = PreparedTargetGraph.create(_chGraph, _weighting, new DownwardSearchEdgeFilter(_chGraph, _flagEncoder), nodes);
+			_targetGraphCache.put(weightingName, nodes, graph);
+		}
+
+		return graph;
+	}
+
+	private boolean isTargetGraphNode(int node) {
+		return _targetGraph.containsNode(node) || (_preparedTargetGraph != null && _preparedTargetGraph.containsNode(node));
 	}
 
 	private void addNodes(SubGraph graph, PriorityQueue<Integer> prioQueue, int[] nodes) {
@@ -152,7 +201,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			return false;
 
 		_currFrom = _prioQueue.poll();
-		fillEdgesUpward(_currFrom, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
+		fillEdgesUpward(_currFrom, _prioQueue, _labels, _outEdgeExplorer);
 		_visitedCountFrom++;
 
 		return true;
@@ -163,102 +212,78 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			return false;
 
 		_currTo = _prioQueue.poll();
-		fillEdgesDownward(_currTo, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
+		fillEdgesDownward(_currTo, _prioQueue, _labels, _outEdgeExplorer);
 		_visitedCountTo++;
 
 		return true;
 	}
 
 	@Override
-	public MultiTreeSPEntry[] calcPaths(int[] from, int[] to) {
+	public int[] calcPaths(int[] from, int[] to) {
+		if (_labels == null || _labels.getNumTrees() != from.length)
+			_labels = new MultiTreeSPStorage(from.length, _initialCapacity);
+
 		for (int i = 0; i < from.length; i++) {
 			if (from[i] == -1)
 			  continue;
 
 			//If two queried points are on the same node, this case can occur
-			MultiTreeSPEntry existing = _bestWeightMapFrom.get(from[i]);
-			if (existing != null) {
-				existing.getItem(i).weight = 0.0;
+			int existing = _labels.getSlot(from[i]);
+			if (existing != MultiTreeSPStorage.NO_SLOT) {
+				_labels.setWeight(existing, i, 0.0);
 				continue;
 			}
-			
-			_currFrom = new MultiTreeSPEntry(from[i], EdgeIterator.NO_EDGE, 0.0, true, null, from.length);
-			_currFrom.getItem(i).weight = 0.0;
-			_currFrom.visited = true;
-				_prioQueue.add(_currFrom);
-
-			if (!_traversalMode.isEdgeBased()) 
-				_bestWeightMapFrom.put(from[i], _currFrom);
-			else
+
+			if (_traversalMode.isEdgeBased())
 				throw new IllegalStateException("Edge-based behavior not supported");
+
+			_currFrom = _labels.addEntry(from[i], EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+			_labels.setWeight(_currFrom, i, 0.0);
+			_labels.setVisited(_currFrom, true);
+			_prioQueue.push(_currFrom, _labels.getTotalWeight(_currFrom));
 		}
  
 		_outEdgeExplorer = _graph.createEdgeExplorer();
-	//	StopWatch sw = new StopWatch();
-	//	sw.start();
 
 		runUpwardSearch();
 
-	//	sw.stop();
-		
-	//	if (logger.isInfoEnabled())
-	//	{
-	//		logger.info(Long.toString(sw.getTime()));
-	//		logger.info("HN: " + Integer.toString(_upwardEdgeFilter.getHighestNode()));
-	//	}
-
-
-		_currFrom = _bestWeightMapFrom.get(_upwardEdgeFilter.getHighestNode());
-		_currFrom.visited = true;
-		_currFrom.resetUpdate(true);
+		_currFrom = _labels.getSlot(_upwardEdgeFilter.getHighestNode());
+		_labels.setVisited(_currFrom, true);
+		_labels.resetUpdate(_currFrom, true);
 		_prioQueue.clear();
-		_prioQueue.add(_currFrom);
+		_prioQueue.push(_currFrom, _labels.getTotalWeight(_currFrom));
 
 		for (int i = 0; i < from.length; i++) {
 			int sourceNode = from[i];
-			MultiTreeSPEntry mspTree = _bestWeightMapFrom.get(sourceNode);
-			mspTree.getItem(i).update = true;
-			_prioQueue.add(mspTree);
+			if (sourceNode == -1)
+				continue;
+
+			int slot = _labels.getSlot(sourceNode);
+			_labels.setUpdate(slot, i, true);
+			_prioQueue.push(slot, _labels.getTotalWeight(slot));
 		}
 
 		_outEdgeExplorer = _targetGraph.createExplorer();
-	//	sw = new StopWatch();
-	//	sw.start();
+
 		runDownwardSearch();
-	//	sw.stop();
-		
-	//	if (logger.isInfoEnabled())
-	//	{
-	//		logger.info(Long.toString(sw.getTime()));
-			
-	//		logger.info("Iters: " + upwardIters + " " + downwardIters);
-	//		logger.info("Total: " + upwardItersTotal + " " + downwardItersTotal);
-	//		logger.info("Skipped: " + upwardItersSkipped + " " + downwardItersSkipped);
-	//	}
-		
-		MultiTreeSPEntry[] targets = new MultiTreeSPEntry[to.length];
+
+		int[] targets = new int[to.length];
 
 		for (int i = 0; i < to.length; ++i)
-			targets[i] = _bestWeightMapFrom.get(to[i]);
+			targets[i] = _labels.getSlot(to[i]);
 
 		return targets;
 	}
 
-/*	private int downwardIters = 0;
-	private int upwardIters = 0;
-	private int downwardItersTotal = 0;
-	private int upwardItersTotal = 0;
-	private int downwardItersSkipped = 0;
-	private int upwardItersSkipped = 0;*/
-
-	private void fillEdgesUpward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
-			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
-		EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
+	private void fillEdgesUpward(int currSlot, IndexedMinHeap prioQueue, MultiTreeSPStorage labels,
+			EdgeExplorer explorer) {
+		int baseNode = labels.getAdjNode(currSlot);
+		EdgeIterator iter = explorer.setBaseNode(baseNode);
 
 		if (iter == null) // we reach one of the target nodes
 			return;
 
-		_upwardEdgeFilter.setBaseNode(currEdge.adjNode);
+		_upwardEdgeFilter.setBaseNode(baseNode);
 
 		while (iter.next()) {
 			if (!_upwardEdgeFilter.accept(iter))
@@ -269,60 +294,60 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			_edgeWeight = _weighting.calcWeight(iter, false, 0);
 
 			if (!Double.isInfinite(_edgeWeight)) {
-				MultiTreeSPEntry ee = shortestWeightMap.get(iter.getAdjNode());
+				int eeSlot = labels.getSlot(iter.getAdjNode());
 
-				if (ee == null) {
-					ee = new MultiTreeSPEntry(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currEdge, currEdge.getSize());
-
-					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
+				if (eeSlot == MultiTreeSPStorage.NO_SLOT) {
+					eeSlot = labels.addEntry(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currSlot);
+					prioQueue.push(eeSlot, labels.getTotalWeight(eeSlot));
 				} else {
 					_addToQueue = false;
 					
 					for (int i = 0; i < _treeEntrySize; ++i) {
-						_msptItem = currEdge.getItem(i);
-						_entryWeight = _msptItem.weight;
+						_entryWeight = labels.getWeight(currSlot, i);
 						
 						if (_entryWeight == Double.POSITIVE_INFINITY)
 							continue;
 
-						if (_msptItem.update == false) {
-							//					upwardItersSkipped++;
+						if (!labels.isUpdate(currSlot, i))
 							continue;
-						}
-						_msptSubItem = ee.getItem(i);
-						
+
 						_tmpWeight = _edgeWeight + _entryWeight;
 
-						if (_msptSubItem.weight > _tmpWeight) {
-							_msptSubItem.weight = _tmpWeight;
-							_msptSubItem.edge = iter.getEdge();
-							_msptSubItem.parent = currEdge;
-							_msptSubItem.update = true;
-							
+						if (labels.getWeight(eeSlot, i) > _tmpWeight) {
+							labels.setItem(eeSlot, i, _tmpWeight, iter.getEdge(), currSlot);
 							_addToQueue = true;
-		//					upwardIters++;
-
-						} //else
-		//					upwardItersTotal++;
+						}
 					}
 
 					if (_addToQueue) {
-						ee.updateWeights();
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
+						labels.updateTotalWeight(eeSlot);
+						prioQueue.push(eeSlot, labels.getTotalWeight(eeSlot));
 					}
 				}
 			}
 		}
 		
-		if(!_targetGraph.containsNode(currEdge.adjNode)) currEdge.resetUpdate(false);
+		if (!isTargetGraphNode(baseNode))
+			labels.resetUpdate(currSlot, false);
 	}
 
-	private void fillEdgesDownward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
-			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
+	private void fillEdgesDownward(int currSlot, IndexedMinHeap prioQueue, MultiTreeSPStorage labels,
+			EdgeExplorer explorer) {
+		int baseNode = labels.getAdjNode(currSlot);
 
-		EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
+		if (_preparedTargetGraph != null) {
+			int index = _preparedTargetGraph.getNodeIndex(baseNode);
+
+			if (index >= 0) {
+				int end = _preparedTargetGraph.getEdgesEnd(index);
+
+				for (int pos = _preparedTargetGraph.getEdgesStart(index); pos < end; pos++)
+					relaxDownward(currSlot, _preparedTargetGraph.getAdjNode(pos), _preparedTargetGraph.getEdge(pos),
+							_preparedTargetGraph.getWeight(pos), prioQueue, labels);
+			}
+		}
+
+		EdgeIterator iter = explorer.setBaseNode(baseNode);
 
 		if (iter == null)
 			return;
@@ -330,69 +355,48 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		while (iter.next()) {
 			_edgeWeight = _weighting.calcWeight(iter, false, 0);
 
-			if (!Double.isInfinite(_edgeWeight)) {
-				MultiTreeSPEntry ee = shortestWeightMap.get(iter.getAdjNode());
+			if (!Double.isInfinite(_edgeWeight))
+				relaxDownward(currSlot, iter.getAdjNode(), iter.getEdge(), _edgeWeight, prioQueue, labels);
+		}
+	}
 
-				if (ee == null) {
-					ee = new MultiTreeSPEntry(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currEdge, currEdge.getSize());
-					ee.visited = true;
+	private void relaxDownward(int currSlot, int adjNode, int edge, double edgeWeight, IndexedMinHeap prioQueue,
+			MultiTreeSPStorage labels) {
+		int eeSlot = labels.getSlot(adjNode);
 
-					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
-				} else {
-					_addToQueue = false;
-					
-					for (int i = 0; i < _treeEntrySize; ++i) {
-						_msptItem = currEdge.getItem(i);
-						_entryWeight = _msptItem.weight;
-						
-						if (_entryWeight == Double.POSITIVE_INFINITY)
-							continue;
+		if (eeSlot == MultiTreeSPStorage.NO_SLOT) {
+			eeSlot = labels.addEntry(adjNode, edge, edgeWeight, true, currSlot);
+			labels.setVisited(eeSlot, true);
+			prioQueue.push(eeSlot, labels.getTotalWeight(eeSlot));
+		} else {
+			_addToQueue = false;
 
-//						if (_msptItem.update == false) {
-//		//					downwardItersSkipped++;
-//							continue;
-//						}
+			for (int i = 0; i < _treeEntrySize; ++i) {
+				_entryWeight = labels.getWeight(currSlot, i);
 
-						_tmpWeight = _edgeWeight + _entryWeight;
+				if (_entryWeight == Double.POSITIVE_INFINITY)
+					continue;
 
-						MultiTreeSPEntryItem eeItem = ee.getItem(i);
+				_tmpWeight = edgeWeight + _entryWeight;
 
-						if (eeItem.weight > _tmpWeight) {
-							eeItem.weight = _tmpWeight;
-							eeItem.edge = iter.getEdge();
-							eeItem.parent = currEdge;
-							eeItem.update = true;
-							
-							_addToQueue = true;
-		//					downwardIters++;
-						} //else
-						//	downwardItersTotal++;
-					}
-					
-					ee.updateWeights();
-					
-					if (ee.visited == false) {
-						// // This is the case if the node has been assigned a
-						// weight in
-						// // the upwards pass (fillEdges). We need to use it in
-						// the
-						// // downwards pass to access lower level nodes, though
-						// the
-						// weight
-						// // does not have to be reset necessarily //
-						ee.visited = true;
-//						ee.resetUpdate(true);
-						prioQueue.add(ee);
-					} else if (_addToQueue) {
-						ee.visited = true;
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
-					}
+				if (labels.getWeight(eeSlot, i) > _tmpWeight) {
+					labels.setItem(eeSlot, i, _tmpWeight, edge, currSlot);
+					_addToQueue = true;
 				}
 			}
+
+			if (!labels.isVisited(eeSlot)) {
+				// This is the case if the node has been assigned a weight in
+				// the upwards pass (fillEdges). We need to use it in the
+				// downwards pass to access lower level nodes, though the
+				// weight does not have to be reset necessarily
+				labels.updateTotalWeight(eeSlot);
+				labels.setVisited(eeSlot, true);
+				prioQueue.push(eeSlot, labels.getTotalWeight(eeSlot));
+			} else if (_addToQueue) {
+				labels.updateTotalWeight(eeSlot);
+				prioQueue.push(eeSlot, labels.getTotalWeight(eeSlot));
+			}
 		}
-		
-//		currEdge.resetUpdate(false);
 	}
 }
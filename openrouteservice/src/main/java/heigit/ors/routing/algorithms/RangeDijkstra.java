@@ -0,0 +1,131 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Node based Dijkstra search that settles all nodes up to a maximum cost, as needed for isochrones. The tree is kept
+ * in a {@link ShortestPathTree} instead of one object per node. Tree and queue are pooled per thread, so the tree
+ * returned by {@link #run(int)} stays valid until the next search on the same thread. A tree or queue that has grown
+ * beyond {@link #MAX_RETAINED_CAPACITY} is dropped at the next search, so a single large search does not pin its
+ * memory to the thread.
+ */
+public class RangeDijkstra {
+	private static final int MAX_RETAINED_CAPACITY = 1 << 17;
+
+	private static final ThreadLocal<ShortestPathTree> TREES = new ThreadLocal<ShortestPathTree>() {
+		@Override
+		protected ShortestPathTree initialValue() {
+			return new ShortestPathTree(1000);
+		}
+	};
+
+	private static final ThreadLocal<IndexedMinHeap> HEAPS = new ThreadLocal<IndexedMinHeap>() {
+		@Override
+		protected IndexedMinHeap initialValue() {
+			return new IndexedMinHeap(1000);
+		}
+	};
+
+	private final Weighting _weighting;
+	private final double _maxCost;
+	private final boolean _reverse;
+	private final EdgeExplorer _explorer;
+	private EdgeFilter _edgeFilter;
+	private int _visitedNodes;
+
+	public RangeDijkstra(Graph graph, Weighting weighting, double maxCost, boolean reverse) {
+		_weighting = weighting;
+		_maxCost = maxCost;
+		_reverse = reverse;
+
+		FlagEncoder encoder = weighting.getFlagEncoder();
+		_explorer = graph.createEdgeExplorer(reverse ? new DefaultEdgeFilter(encoder, true, false) : new DefaultEdgeFilter(encoder, false, true));
+	}
+
+	public void setEdgeFilter(EdgeFilter edgeFilter) {
+		_edgeFilter = edgeFilter;
+	}
+
+	public int getVisitedNodes() {
+		return _visitedNodes;
+	}
+
+	/**
+	 * Settles all nodes whose cost from (or, in reverse mode, to) the root does not exceed the maximum cost. The
+	 * returned tree also holds the nodes that have been reached but not settled, i.e. the ends of the edges crossing
+	 * the maximum cost.
+	 */
+	public ShortestPathTree run(int root) {
+		ShortestPathTree tree = TREES.get();
+		if (tree.getCapacity() > MAX_RETAINED_CAPACITY) {
+			tree = new ShortestPathTree(1000);
+			TREES.set(tree);
+		}
+
+		IndexedMinHeap heap = HEAPS.get();
+		if (heap.getCapacity() > MAX_RETAINED_CAPACITY) {
+			heap = new IndexedMinHeap(1000);
+			HEAPS.set(heap);
+		}
+
+		tree.clear();
+		heap.clear();
+		_visitedNodes = 0;
+
+		heap.push(tree.add(root, 0.0, EdgeIterator.NO_EDGE, -1), 0.0);
+
+		while (!heap.isEmpty()) {
+			int index = heap.poll();
+			double baseWeight = tree.getWeight(index);
+			if (baseWeight > _maxCost)
+				break;
+
+			_visitedNodes++;
+			int baseEdge = tree.getEdge(index);
+
+			EdgeIterator iter = _explorer.setBaseNode(tree.getNode(index));
+			while (iter.next()) {
+				if (iter.getEdge() == baseEdge || (_edgeFilter != null && !_edgeFilter.accept(iter)))
+					continue;
+
+				double weight = baseWeight + _weighting.calcWeight(iter, _reverse, baseEdge);
+				if (Double.isInfinite(weight))
+					continue;
+
+				int adjIndex = tree.getIndex(iter.getAdjNode());
+
+				if (adjIndex == -1) {
+					adjIndex = tree.add(iter.getAdjNode(), weight, iter.getEdge(), index);
+					heap.push(adjIndex, weight);
+				} else if (weight < tree.getWeight(adjIndex)) {
+					tree.update(adjIndex, weight, iter.getEdge(), index);
+					heap.push(adjIndex, weight);
+				}
+			}
+		}
+
+		heap.clear();
+
+		// The tree belongs to the calling thread and stays valid until its next isochrone search.
+		return tree;
+	}
+}
@@ -0,0 +1,218 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import heigit.ors.routing.graphhopper.extensions.edgefilters.CHLevelEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
+
+/**
+ * One-to-all search on a CH graph following PHAST (Delling et al., 2011) that finds the same nodes as
+ * {@link RangeDijkstra} for searches without additional edge filters.
+ * <p>
+ * An upward search from the root is followed by a sweep in descending CH level, in which every node takes the lowest
+ * cost over the edges coming down from its higher neighbours. Instead of visiting all nodes of the graph, the sweep
+ * only visits the nodes of the upward search space and the lower neighbours of the nodes within the maximum cost,
+ * which are queued by level. This is enough because a node within the maximum cost gets its cost from a higher
+ * neighbour within the maximum cost, so the work grows with the range and not with the size of the graph.
+ * <p>
+ * Since the isochrone builders need the geometry of the original edges, the tree is then rebuilt on the base graph:
+ * every reached node gets the base edge from the neighbour it is reached from cheapest, and the ends of the base
+ * edges crossing the maximum cost are added like in {@link RangeDijkstra}.
+ * <p>
+ * The tree is pooled per thread, so the tree returned by {@link #run(int)} stays valid until the next search on the
+ * same thread. A tree that has grown beyond {@link #MAX_RETAINED_CAPACITY} is dropped at the next search.
+ */
+public class RangePHAST {
+	private static final int MAX_RETAINED_CAPACITY = 1 << 17;
+
+	private static final ThreadLocal<ShortestPathTree> TREES = new ThreadLocal<ShortestPathTree>() {
+		@Override
+		protected ShortestPathTree initialValue() {
+			return new ShortestPathTree(1000);
+		}
+	};
+
+	private final CHGraph _chGraph;
+	private final Weighting _chWeighting;
+	private final Weighting _weighting;
+	private final double _maxCost;
+	private final boolean _reverse;
+	private final EdgeExplorer _parentExplorer;
+	private final EdgeExplorer _childExplorer;
+
+	/**
+	 * @param chGraph the CH graph prepared for {@code chWeighting}
+	 * @param chWeighting the preparation weighting, which also knows the weights of shortcuts
+	 * @param baseGraph the graph the tree is built on
+	 * @param weighting the weighting of the base edges, matching the prepared one
+	 */
+	public RangePHAST(CHGraph chGraph, Weighting chWeighting, Graph baseGraph, Weighting weighting, double maxCost,
+			boolean reverse) {
+		_chGraph = chGraph;
+		_chWeighting = chWeighting;
+		_weighting = weighting;
+		_maxCost = maxCost;
+		_reverse = reverse;
+
+		FlagEncoder encoder = weighting.getFlagEncoder();
+		_parentExplorer = baseGraph.createEdgeExplorer(reverse ? new DefaultEdgeFilter(encoder, false, true) : new DefaultEdgeFilter(encoder, true, false));
+		_childExplorer = baseGraph.createEdgeExplorer(reverse ? new DefaultEdgeFilter(encoder, true, false) : new DefaultEdgeFilter(encoder, false, true));
+	}
+
+	public ShortestPathTree run(int root) {
+		IntDoubleHashMap costs = new IntDoubleHashMap(1000);
+		IndexedMinHeap sweepQueue = new IndexedMinHeap(1000);
+		IntArrayList reached = new IntArrayList();
+
+		upwardSearch(root, costs, sweepQueue);
+		downwardSweep(costs, sweepQueue, reached);
+		return buildTree(root, costs, reached);
+	}
+
+	private void upwardSearch(int root, IntDoubleHashMap costs, IndexedMinHeap sweepQueue) {
+		FlagEncoder encoder = _chWeighting.getFlagEncoder();
+		CHLevelEdgeFilter filter = _reverse ? new DownwardSearchEdgeFilter(_chGraph, encoder) : new UpwardSearchEdgeFilter(_chGraph, encoder);
+		CHSearchSpace space = new CHUpwardSearch(_chGraph, _chWeighting, filter, _reverse).run(root);
+
+		for (int i = 0; i < space.size(); i++) {
+			int node = space.getNode(i);
+			costs.put(node, space.getWeight(i));
+			sweepQueue.push(node, -_chGraph.getLevel(node));
+		}
+	}
+
+	private void downwardSweep(IntDoubleHashMap costs, IndexedMinHeap sweepQueue, IntArrayList reached) {
+		FlagEncoder encoder = _chWeighting.getFlagEncoder();
+		// the edges are followed from the higher node down to the base node, so the filter for the opposite direction applies
+		CHLevelEdgeFilter filter = _reverse ? new UpwardSearchEdgeFilter(_chGraph, encoder) : new DownwardSearchEdgeFilter(_chGraph, encoder);
+		EdgeExplorer explorer = _chGraph.createEdgeExplorer();
+
+		// the queue holds the nodes by descending level, so all higher neighbours of a node are final when it is polled
+		while (!sweepQueue.isEmpty()) {
+			int node = sweepQueue.poll();
+			double cost = costs.getOrDefault(node, Double.POSITIVE_INFINITY);
+
+			EdgeIterator iter = explorer.setBaseNode(node);
+			filter.setBaseNode(node);
+
+			while (iter.next()) {
+				double adjCost = costs.getOrDefault(iter.getAdjNode(), Double.POSITIVE_INFINITY);
+				if (adjCost > _maxCost || !filter.accept(iter))
+					continue;
+
+				double weight = adjCost + _chWeighting.calcWeight(iter, !_reverse, EdgeIterator.NO_EDGE);
+				if (weight < cost)
+					cost = weight;
+			}
+
+			if (cost > _maxCost)
+				continue;
+
+			costs.put(node, cost);
+			reached.add(node);
+
+			int level = _chGraph.getLevel(node);
+			iter = explorer.setBaseNode(node);
+			while (iter.next()) {
+				int adjNode = iter.getAdjNode();
+				int adjLevel = _chGraph.getLevel(adjNode);
+				if (adjLevel < level && (_reverse ? iter.isBackward(encoder) : iter.isForward(encoder)))
+					sweepQueue.push(adjNode, -adjLevel);
+			}
+		}
+	}
+
+	private ShortestPathTree buildTree(int root, IntDoubleHashMap costs, IntArrayList reached) {
+		ShortestPathTree tree = TREES.get();
+		if (tree.getCapacity() > MAX_RETAINED_CAPACITY) {
+			tree = new ShortestPathTree(1000);
+			TREES.set(tree);
+		}
+		tree.clear();
+
+		tree.add(root, 0.0, EdgeIterator.NO_EDGE, -1);
+		for (int i = 0; i < reached.size(); i++) {
+			int node = reached.get(i);
+			if (node != root)
+				tree.add(node, costs.get(node), EdgeIterator.NO_EDGE, -1);
+		}
+
+		int reachedCount = tree.size();
+
+		for (int index = 1; index < reachedCount; index++) {
+			int node = tree.getNode(index);
+			double cost = costs.get(node);
+			double bestWeight = Double.POSITIVE_INFINITY;
+			int bestEdge = EdgeIterator.NO_EDGE;
+			int bestParent = 0;
+
+			EdgeIterator iter = _parentExplorer.setBaseNode(node);
+			while (iter.next()) {
+				int adjNode = iter.getAdjNode();
+				double adjCost = costs.getOrDefault(adjNode, Double.POSITIVE_INFINITY);
+				if (adjCost > cost)
+					continue;
+
+				int adjIndex = tree.getIndex(adjNode);
+				// among nodes of equal cost the one added first is the parent, which keeps the tree free of cycles
+				if (adjCost == cost && adjIndex >= index)
+					continue;
+
+				double weight = adjCost + _weighting.calcWeight(iter, !_reverse, EdgeIterator.NO_EDGE);
+				if (weight < bestWeight) {
+					bestWeight = weight;
+					bestEdge = iter.getEdge();
+					bestParent = adjIndex;
+				}
+			}
+
+			tree.update(index, cost, bestEdge, bestParent);
+		}
+
+		// the ends of the edges leaving the reached nodes, as far as they are beyond the maximum cost themselves
+		for (int index = 0; index < reachedCount; index++) {
+			double baseWeight = tree.getWeight(index);
+
+			EdgeIterator iter = _childExplorer.setBaseNode(tree.getNode(index));
+			while (iter.next()) {
+				int adjNode = iter.getAdjNode();
+				if (costs.getOrDefault(adjNode, Double.POSITIVE_INFINITY) <= _maxCost)
+					continue;
+
+				double weight = baseWeight + _weighting.calcWeight(iter, _reverse, EdgeIterator.NO_EDGE);
+				if (Double.isInfinite(weight))
+					continue;
+
+				int adjIndex = tree.getIndex(adjNode);
+				if (adjIndex == -1)
+					tree.add(adjNode, weight, iter.getEdge(), index);
+				else if (adjIndex >= reachedCount && weight < tree.getWeight(adjIndex))
+					tree.update(adjIndex, weight, iter.getEdge(), index);
+			}
+		}
+
+		return tree;
+	}
+}
@@ -0,0 +1,110 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Shortest path tree stored in primitive arrays. Nodes are numbered in the order in which they have been found, the
+ * root has index 0 and no parent. The arrays keep their capacity when the tree is cleared, so that one instance can
+ * serve any number of searches one after the other.
+ */
+public class ShortestPathTree {
+	private final IntIntHashMap _node2index;
+	private int[] _nodes;
+	private double[] _weights;
+	private int[] _edges;
+	private int[] _parents;
+	private int _size;
+
+	public ShortestPathTree(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		_node2index = new IntIntHashMap(capacity);
+		_nodes = new int[capacity];
+		_weights = new double[capacity];
+		_edges = new int[capacity];
+		_parents = new int[capacity];
+	}
+
+	void clear() {
+		_node2index.clear();
+		_size = 0;
+	}
+
+	int add(int node, double weight, int edge, int parent) {
+		if (_size == _nodes.length) {
+			int capacity = _nodes.length + (_nodes.length >> 1);
+			_nodes = Arrays.copyOf(_nodes, capacity);
+			_weights = Arrays.copyOf(_weights, capacity);
+			_edges = Arrays.copyOf(_edges, capacity);
+			_parents = Arrays.copyOf(_parents, capacity);
+		}
+
+		int index = _size++;
+		_node2index.put(node, index);
+		_nodes[index] = node;
+		_weights[index] = weight;
+		_edges[index] = edge;
+		_parents[index] = parent;
+		return index;
+	}
+
+	void update(int index, double weight, int edge, int parent) {
+		_weights[index] = weight;
+		_edges[index] = edge;
+		_parents[index] = parent;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns the number of nodes the arrays can hold without growing.
+	 */
+	int getCapacity() {
+		return _nodes.length;
+	}
+
+	/**
+	 * Returns the index of the node or -1 if the search has not reached it.
+	 */
+	public int getIndex(int node) {
+		return _node2index.getOrDefault(node, -1);
+	}
+
+	public int getNode(int index) {
+		return _nodes[index];
+	}
+
+	public double getWeight(int index) {
+		return _weights[index];
+	}
+
+	/**
+	 * Returns the edge between the node and its parent or -1 for the root.
+	 */
+	public int getEdge(int index) {
+		return _edges[index];
+	}
+
+	/**
+	 * Returns the index of the parent or -1 for the root.
+	 */
+	public int getParent(int index) {
+		return _parents[index];
+	}
+}
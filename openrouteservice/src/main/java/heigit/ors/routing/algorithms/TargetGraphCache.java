@@ -0,0 +1,139 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link PreparedTargetGraph} instances of one graph, keyed by the weighting and the sorted set of
+ * nodes from which phase I of RPHAST has been started. The cache is bounded by the estimated memory of its graphs,
+ * as the size of a target graph grows with the number and the spread of its nodes.
+ */
+public class TargetGraphCache {
+	private static final long BYTES_PER_ENTRY = 128;
+
+	private static class Key {
+		private final String _weighting;
+		private final int[] _nodes;
+		private final int _hashCode;
+
+		public Key(String weighting, int[] nodes) {
+			_weighting = weighting;
+			_nodes = nodes;
+			_hashCode = 31 * weighting.hashCode() + Arrays.hashCode(nodes);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return _hashCode == other._hashCode && _weighting.equals(other._weighting) && Arrays.equals(_nodes, other._nodes);
+		}
+	}
+
+	private static class Entry {
+		private final PreparedTargetGraph _graph;
+		private final long _size;
+
+		public Entry(PreparedTargetGraph graph, long size) {
+			_graph = graph;
+			_size = size;
+		}
+	}
+
+	private final long _maximumSize;
+	private final Map<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long _size;
+	private long _hits;
+	private long _misses;
+
+	/**
+	 * @param maximumSize the estimated memory (in bytes) the cached graphs and their keys may take
+	 */
+	public TargetGraphCache(long maximumSize) {
+		_maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param nodes sorted array of distinct node ids
+	 */
+	public synchronized PreparedTargetGraph get(String weighting, int[] nodes) {
+		Entry entry = _entries.get(new Key(weighting, nodes));
+
+		if (entry == null) {
+			_misses++;
+			return null;
+		}
+
+		_hits++;
+		return entry._graph;
+	}
+
+	/**
+	 * Stores the graph and evicts the least recently used ones until the cache fits into its memory again. A graph
+	 * which is larger than the whole cache is not stored.
+	 */
+	public synchronized void put(String weighting, int[] nodes, PreparedTargetGraph graph) {
+		long size = BYTES_PER_ENTRY + 4L * nodes.length + graph.getMemoryUsage();
+		if (size > _maximumSize)
+			return;
+
+		Entry old = _entries.put(new Key(weighting, nodes), new Entry(graph, size));
+		if (old != null)
+			_size -= old._size;
+		_size += size;
+
+		Iterator<Entry> iter = _entries.values().iterator();
+		while (_size > _maximumSize && iter.hasNext()) {
+			_size -= iter.next()._size;
+			iter.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		_entries.clear();
+		_size = 0;
+	}
+
+	public synchronized int getEntriesCount() {
+		return _entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory (in bytes) of the cached graphs.
+	 */
+	public synchronized long getSize() {
+		return _size;
+	}
+
+	public synchronized long getHits() {
+		return _hits;
+	}
+
+	public synchronized long getMisses() {
+		return _misses;
+	}
+}
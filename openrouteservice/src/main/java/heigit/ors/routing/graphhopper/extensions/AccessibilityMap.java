@@ -13,31 +13,47 @@
  */
 package heigit.ors.routing.graphhopper.extensions;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.graphhopper.storage.SPTEntry;
+import heigit.ors.routing.algorithms.ShortestPathTree;
 
+/**
+ * Read-only view of the shortest path tree of an isochrone search. Entries are addressed by their index in the
+ * tree; the entry at index 0 is the start node and has no edge.
+ */
 public class AccessibilityMap {
-	private IntObjectMap<SPTEntry> map;
-	private SPTEntry edgeEntry;
+	private ShortestPathTree tree;
 	
-	public AccessibilityMap(IntObjectMap<SPTEntry> map, SPTEntry edgeEntry)
+	public AccessibilityMap(ShortestPathTree tree)
 	{
-		this.map = map;
-		this.edgeEntry = edgeEntry;
+		this.tree = tree;
 	}
 	
 	public boolean isEmpty()
 	{
-		return map.size() == 0;
+		return tree.size() == 0;
+	}
+	
+	public int size()
+	{
+		return tree.size();
+	}
+	
+	public int getNode(int index)
+	{
+		return tree.getNode(index);
+	}
+	
+	public double getWeight(int index)
+	{
+		return tree.getWeight(index);
 	}
 	
-	public IntObjectMap<SPTEntry> getMap()
+	public int getEdge(int index)
 	{
-		return map;
+		return tree.getEdge(index);
 	}
 	
-	public SPTEntry getEdgeEntry()
+	public int getParent(int index)
 	{
-		return edgeEntry;
+		return tree.getParent(index);
 	}
 }
@@ -30,20 +30,22 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-
-import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
-import com.graphhopper.routing.util.FlagEncoder;
-import com.graphhopper.util.CmdArgs;
-import heigit.ors.mapmatching.RouteSegmentInfo;
-import heigit.ors.routing.RoutingProfile;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
@@ -52,7 +54,20 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import heigit.ors.isochrones.IsochroneCache;
+import heigit.ors.mapmatching.MapMatcherPool;
+import heigit.ors.mapmatching.RouteSegmentInfo;
+import heigit.ors.mapmatching.hmm.HiddenMarkovMapMatcher;
+import heigit.ors.mapmatching.hmm.OnlineHiddenMarkovMapMatcher;
+import heigit.ors.matrix.ShortcutMetricsCache;
+import heigit.ors.routing.RoutingProfile;
+import heigit.ors.routing.algorithms.TargetGraphCache;
+import heigit.ors.services.isochrones.IsochronesServiceSettings;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+
 public class ORSGraphHopper extends GraphHopper {
+    // idle map matchers kept per pool, more are created under load
+    private static final int MAP_MATCHERS_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -63,6 +78,16 @@ public class ORSGraphHopper extends GraphHopper {
     // A route profile for referencing which is used to extract names of adjacent streets and other objects.
     private RoutingProfile refRouteProfile;
 
+    // Caches and pools are bound to this instance so that they are dropped together with the graph. They are
+    // created up front, as they are read by every request and must not serialize the requests on this instance.
+    private final TargetGraphCache targetGraphCache;
+    private final IsochroneCache isochroneCache;
+    private final MapMatcherPool<HiddenMarkovMapMatcher> mapMatchers;
+    private final MapMatcherPool<OnlineHiddenMarkovMapMatcher> onlineMapMatchers;
+
+    // Unpacked metrics of CH edges per weighting, shared by all matrix requests.
+    private final Map<String, ShortcutMetricsCache> shortcutMetricsCaches = new ConcurrentHashMap<>();
+
     public ORSGraphHopper(GraphProcessContext procCntx, boolean useTmc, RoutingProfile refProfile) {
         _procCntx = procCntx;
         this.refRouteProfile = refProfile;
@@ -73,6 +98,24 @@ public class ORSGraphHopper extends GraphHopper {
             osmId2EdgeIds = new HashMap<Long, ArrayList<Integer>>();
         }
         _procCntx.init(this);
+
+        targetGraphCache = MatrixServiceSettings.getTargetGraphCacheSize() > 0
+                ? new TargetGraphCache(MatrixServiceSettings.getTargetGraphCacheSize() * 1024L * 1024L) : null;
+        isochroneCache = IsochronesServiceSettings.getCacheSize() > 0
+                ? new IsochroneCache(IsochronesServiceSettings.getCacheSize() * 1024L * 1024L) : null;
+
+        mapMatchers = new MapMatcherPool<HiddenMarkovMapMatcher>(this, MAP_MATCHERS_IDLE) {
+            @Override
+            protected HiddenMarkovMapMatcher createMatcher() {
+                return new HiddenMarkovMapMatcher();
+            }
+        };
+        onlineMapMatchers = new MapMatcherPool<OnlineHiddenMarkovMapMatcher>(this, MAP_MATCHERS_IDLE) {
+            @Override
+            protected OnlineHiddenMarkovMapMatcher createMatcher() {
+                return new OnlineHiddenMarkovMapMatcher();
+            }
+        };
     }
 
     protected DataReader createReader(GraphHopperStorage tmpGraph) {
@@ -241,4 +284,59 @@ public class ORSGraphHopper extends GraphHopper {
     public HashMap<Long, ArrayList<Integer>> getOsmId2EdgeIds() {
         return osmId2EdgeIds;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the cache of RPHAST target graphs or null if caching is disabled.
+     */
+    public TargetGraphCache getTargetGraphCache() {
+        return targetGraphCache;
+    }
+
+    /**
+     * Returns the cache of isochrone maps or null if caching is disabled. A new graph comes with an empty cache.
+     */
+    public IsochroneCache getIsochroneCache() {
+        return isochroneCache;
+    }
+
+    /**
+     * Returns the pool of matchers for short traces, which match in both directions.
+     */
+    public MapMatcherPool<HiddenMarkovMapMatcher> getMapMatchers() {
+        return mapMatchers;
+    }
+
+    /**
+     * Returns the pool of matchers for whole traces, see {@link OnlineHiddenMarkovMapMatcher}.
+     */
+    public MapMatcherPool<OnlineHiddenMarkovMapMatcher> getOnlineMapMatchers() {
+        return onlineMapMatchers;
+    }
+
+    /**
+     * Returns the cache of unpacked shortcuts of the CH graph prepared for the weighting, or null if no CH graph
+     * has been prepared for it. Only the creation of a cache is synchronized, lookups go to the concurrent map.
+     */
+    public ShortcutMetricsCache getShortcutMetricsCache(Weighting weighting) {
+        String key = weighting.toString();
+        ShortcutMetricsCache cache = shortcutMetricsCaches.get(key);
+        if (cache != null)
+            return cache;
+
+        synchronized (shortcutMetricsCaches) {
+            cache = shortcutMetricsCaches.get(key);
+            if (cache == null) {
+                for (PrepareContractionHierarchies pch : getCHFactoryDecorator().getPreparations()) {
+                    if (pch.getWeighting().toString().equals(key)) {
+                        CHGraph chGraph = getGraphHopperStorage().getGraph(CHGraph.class, pch.getWeighting());
+                        cache = new ShortcutMetricsCache(chGraph.getAllEdges().getMaxId(), MatrixServiceSettings.getShortcutCacheSize());
+                        shortcutMetricsCaches.put(key, cache);
+                        break;
+                    }
+                }
+            }
+        }
+
+        return cache;
+    }
+}
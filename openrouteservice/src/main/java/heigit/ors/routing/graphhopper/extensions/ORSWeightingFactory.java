@@ -28,6 +28,7 @@ import heigit.ors.routing.ProfileWeighting;
 import heigit.ors.routing.graphhopper.extensions.flagencoders.deprecated.exghoverwrite.ExGhORSFootFlagEncoder;
 import heigit.ors.routing.graphhopper.extensions.weighting.*;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -90,7 +91,8 @@ public class ORSWeightingFactory extends DefaultWeightingFactory {
 		if (hintsMap.getBool("weighting_traffic_block", false))
 		{
 			//String strPref = weighting.substring(weighting.indexOf("-") + 1);
-			result = new TrafficAvoidWeighting(result, encoder, m_trafficDataProvider.getAvoidEdges(graphStorage));
+			TrafficSnapshot snapshot = m_trafficDataProvider.getSnapshot(graphStorage, hintsMap.getLong("weighting_traffic_version", -1));
+			result = new TrafficAvoidWeighting(result, encoder, snapshot.getAvoidEdges());
 		}
 
 		if (encoder.supports(TurnWeighting.class) && !isFootBasedFlagEncoder(encoder) && graphStorage != null && !tMode.equals(TraversalMode.NODE_BASED)) {
@@ -13,26 +13,23 @@
  */
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
+import com.carrotsearch.hppc.IntSet;
 import com.graphhopper.routing.EdgeIteratorStateHelper;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.util.EdgeIteratorState;
 import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
-
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 public class BlockedEdgesEdgeFilter implements EdgeFilter {
-	private Set<Integer> blockedEdges;
-
-	public BlockedEdgesEdgeFilter(FlagEncoder encoder, List<Integer> edges, List<Integer> edges_hv) {
-		// use HashSet which has O(1) performance compared to O(n) for List<Integer>
-		this.blockedEdges = new HashSet<Integer>();
-		this.blockedEdges.addAll(edges);
+	private IntSet blockedEdges;
 
+	public BlockedEdgesEdgeFilter(FlagEncoder encoder, TrafficSnapshot snapshot) {
+		// the set of the snapshot is used as is, it does not change once published
 		if (encoder instanceof HeavyVehicleFlagEncoder)
-			this.blockedEdges.addAll(edges_hv);
+			this.blockedEdges = snapshot.getHeavyVehicleBlockedEdges();
+		else
+			this.blockedEdges = snapshot.getBlockedEdges();
 	}
 
 	@Override
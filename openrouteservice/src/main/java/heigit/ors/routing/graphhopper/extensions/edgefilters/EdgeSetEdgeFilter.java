@@ -11,21 +11,25 @@
  *  You should have received a copy of the GNU Lesser General Public License along with this library; 
  *  if not, see <https://www.gnu.org/licenses/>.  
  */
-package heigit.ors.routing.graphhopper.extensions.storages;
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
-import com.graphhopper.util.EdgeIterator;
+import com.carrotsearch.hppc.IntSet;
+import com.graphhopper.routing.EdgeIteratorStateHelper;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.util.EdgeIteratorState;
 
-public class MultiTreeSPEntryItem {
-	public int edge = EdgeIterator.NO_EDGE;
-	public double weight = Double.POSITIVE_INFINITY;
-	public boolean update =  false;
-	public MultiTreeSPEntry parent = null;
-	
-	public void assignFrom(MultiTreeSPEntryItem item)
-	{
-		edge = item.edge;
-		weight = item.weight;
-		update = item.update;
-		parent = item.parent;
+/**
+ * Accepts the given edges only, e.g. to route along the path a trace has been matched to.
+ */
+public class EdgeSetEdgeFilter implements EdgeFilter {
+	private IntSet edges;
+
+	public EdgeSetEdgeFilter(IntSet edges) {
+		this.edges = edges;
+	}
+
+	@Override
+	public boolean accept(EdgeIteratorState iter) {
+		return edges.contains(EdgeIteratorStateHelper.getOriginalEdge(iter));
 	}
 }
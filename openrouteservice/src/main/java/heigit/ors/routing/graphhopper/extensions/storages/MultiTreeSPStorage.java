@@ -0,0 +1,201 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Flat storage of the labels of a multi-source shortest path tree.
+ * <p>
+ * Every reached node gets a slot, and the labels of all trees of a slot are kept next to each other in
+ * primitive arrays indexed by {@code slot * numTrees + tree}. Parents are stored as slot indices, so the
+ * whole tree does not contain a single object per node or label.
+ */
+public class MultiTreeSPStorage {
+	public static final int NO_SLOT = -1;
+
+	private final int _numTrees;
+	private final IntIntHashMap _node2slot;
+	private int _size;
+	private int _capacity;
+
+	private int[] _adjNodes;
+	private boolean[] _visited;
+	private double[] _totalWeights;
+
+	private double[] _weights;
+	private int[] _edges;
+	private int[] _parents;
+	private boolean[] _updates;
+
+	public MultiTreeSPStorage(int numTrees, int initialCapacity) {
+		_numTrees = numTrees;
+		_capacity = Math.max(initialCapacity, 16);
+		_node2slot = new IntIntHashMap(_capacity);
+
+		_adjNodes = new int[_capacity];
+		_visited = new boolean[_capacity];
+		_totalWeights = new double[_capacity];
+
+		int itemsCapacity = _capacity * _numTrees;
+		_weights = new double[itemsCapacity];
+		_edges = new int[itemsCapacity];
+		_parents = new int[itemsCapacity];
+		_updates = new boolean[itemsCapacity];
+	}
+
+	public int getNumTrees() {
+		return _numTrees;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public void clear() {
+		_node2slot.clear();
+		_size = 0;
+	}
+
+	/**
+	 * Returns the slot of the given node or {@link #NO_SLOT} if the node has not been reached yet.
+	 */
+	public int getSlot(int node) {
+		return _node2slot.getOrDefault(node, NO_SLOT);
+	}
+
+	/**
+	 * Creates a new slot for the node. The labels of every tree are derived from the labels of the parent slot
+	 * by adding the given edge weight; trees in which the parent has not been reached stay unreached.
+	 */
+	public int addEntry(int adjNode, int edgeId, double edgeWeight, boolean updated, int parentSlot) {
+		if (_size == _capacity)
+			grow();
+
+		int slot = _size++;
+		_node2slot.put(adjNode, slot);
+		_adjNodes[slot] = adjNode;
+		_visited[slot] = false;
+
+		double totalWeight = 0.0;
+		int offset = slot * _numTrees;
+		int parentOffset = parentSlot * _numTrees;
+
+		for (int i = 0; i < _numTrees; ++i) {
+			int index = offset + i;
+			double entryWeight = parentSlot == NO_SLOT ? Double.POSITIVE_INFINITY : _weights[parentOffset + i];
+
+			if (entryWeight == Double.POSITIVE_INFINITY && parentSlot != NO_SLOT) {
+				_weights[index] = Double.POSITIVE_INFINITY;
+				_edges[index] = EdgeIterator.NO_EDGE;
+				_parents[index] = NO_SLOT;
+				_updates[index] = false;
+				continue;
+			}
+
+			_weights[index] = edgeWeight + entryWeight;
+			_edges[index] = edgeId;
+			_parents[index] = parentSlot;
+			_updates[index] = updated;
+			totalWeight += _weights[index];
+		}
+
+		_totalWeights[slot] = totalWeight;
+
+		return slot;
+	}
+
+	public int getAdjNode(int slot) {
+		return _adjNodes[slot];
+	}
+
+	public boolean isVisited(int slot) {
+		return _visited[slot];
+	}
+
+	public void setVisited(int slot, boolean value) {
+		_visited[slot] = value;
+	}
+
+	public double getTotalWeight(int slot) {
+		return _totalWeights[slot];
+	}
+
+	public void updateTotalWeight(int slot) {
+		double totalWeight = 0.0;
+		int offset = slot * _numTrees;
+
+		for (int i = offset; i < offset + _numTrees; i++) {
+			if (_weights[i] == Double.POSITIVE_INFINITY)
+				continue;
+			totalWeight += _weights[i];
+		}
+
+		_totalWeights[slot] = totalWeight;
+	}
+
+	public void resetUpdate(int slot, boolean value) {
+		int offset = slot * _numTrees;
+		Arrays.fill(_updates, offset, offset + _numTrees, value);
+	}
+
+	public double getWeight(int slot, int tree) {
+		return _weights[slot * _numTrees + tree];
+	}
+
+	public void setWeight(int slot, int tree, double weight) {
+		_weights[slot * _numTrees + tree] = weight;
+	}
+
+	public int getEdge(int slot, int tree) {
+		return _edges[slot * _numTrees + tree];
+	}
+
+	public int getParent(int slot, int tree) {
+		return _parents[slot * _numTrees + tree];
+	}
+
+	public boolean isUpdate(int slot, int tree) {
+		return _updates[slot * _numTrees + tree];
+	}
+
+	public void setUpdate(int slot, int tree, boolean value) {
+		_updates[slot * _numTrees + tree] = value;
+	}
+
+	public void setItem(int slot, int tree, double weight, int edge, int parentSlot) {
+		int index = slot * _numTrees + tree;
+		_weights[index] = weight;
+		_edges[index] = edge;
+		_parents[index] = parentSlot;
+		_updates[index] = true;
+	}
+
+	private void grow() {
+		_capacity = _capacity + (_capacity >> 1);
+
+		_adjNodes = Arrays.copyOf(_adjNodes, _capacity);
+		_visited = Arrays.copyOf(_visited, _capacity);
+		_totalWeights = Arrays.copyOf(_totalWeights, _capacity);
+
+		int itemsCapacity = _capacity * _numTrees;
+		_weights = Arrays.copyOf(_weights, itemsCapacity);
+		_edges = Arrays.copyOf(_edges, itemsCapacity);
+		_parents = Arrays.copyOf(_parents, itemsCapacity);
+		_updates = Arrays.copyOf(_updates, itemsCapacity);
+	}
+}
@@ -14,6 +14,7 @@
 package heigit.ors.routing.graphhopper.extensions.weighting;
 
 
+import com.carrotsearch.hppc.IntObjectMap;
 import com.graphhopper.routing.EdgeIteratorStateHelper;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.AbstractWeighting;
@@ -22,12 +23,11 @@ import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PMap;
 import heigit.ors.routing.graphhopper.extensions.flagencoders.CarFlagEncoder;
 import heigit.ors.routing.graphhopper.extensions.flagencoders.tomove.exghoverwrite.ExGhORSCarFlagEncoder;
-import heigit.ors.routing.traffic.AvoidEdgeInfo;
 import heigit.ors.routing.traffic.TmcEventCodesTable;
 import heigit.ors.routing.traffic.TmcMode;
 import heigit.ors.routing.traffic.TrafficEventInfo;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 public class TrafficAvoidWeighting extends AbstractWeighting {
 
@@ -37,7 +37,7 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
      */
     protected final static double SPEED_CONV = 1;
     private double maxSpeed;
-	private HashMap<Integer, AvoidEdgeInfo> forbiddenEdges;
+	private IntObjectMap<short[]> forbiddenEdges;
 
     public TrafficAvoidWeighting( FlagEncoder encoder, PMap map)
     {
@@ -55,7 +55,7 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
     }
 
 
-    public TrafficAvoidWeighting(Weighting defultWeighting, FlagEncoder encoder, HashMap<Integer, AvoidEdgeInfo> forbiddenEdges)
+    public TrafficAvoidWeighting(Weighting defultWeighting, FlagEncoder encoder, IntObjectMap<short[]> forbiddenEdges)
     {
         this(encoder, new PMap(0));
 		this.forbiddenEdges = forbiddenEdges;     
@@ -76,10 +76,9 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
             return Double.POSITIVE_INFINITY;
 
     
-	    AvoidEdgeInfo ei = forbiddenEdges.get(edge.getEdge());
-		if (ei!= null){
+	    short[] codes = forbiddenEdges.get(edge.getEdge());
+		if (codes != null){
 
-			short[] codes = ei.getCodes();
 			TrafficEventInfo tec = null;
 			double givenSpeed = Double.MAX_VALUE;
 			double speedFactor = 1;
@@ -128,7 +127,7 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
 				
 				 System.err.println("traffic weighting method didn't give the weight");
 				 throw new IllegalStateException("edge " + EdgeIteratorStateHelper.getOriginalEdge(edge) +
-						   "has no considered event codes " + ei.getCodesAsString());
+						   "has no considered event codes " + Arrays.toString(codes));
 			}
 		}
 		
@@ -13,6 +13,10 @@
  */
 package heigit.ors.routing.traffic;
 
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.IntSet;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.Helper;
@@ -44,6 +48,9 @@ import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 public class RealTrafficDataProvider {
+	// number of snapshots per profile kept for the requests which are still using them
+	private static final int RECENT_SNAPSHOTS = 3;
+
 	public class UpdateTask extends TimerTask {
 
 		private RealTrafficDataProvider m_provider;
@@ -58,21 +65,14 @@ public class RealTrafficDataProvider {
 	}
 
 	private class RouteProfileTmcData {
-		private HashMap<Integer, EdgeInfo> m_edges;
-		private HashMap<Integer, AvoidEdgeInfo> m_avoidEdges;
-		private List<Integer> m_blockedEdges;
-		private HashMap<Integer, Integer> m_edgeIdsMap;
 		private RoutingProfile m_routeProfile;
-		private List<Integer> m_blockedEdges_hv; // for heavy vehicles
+		private volatile TrafficSnapshot m_snapshot = TrafficSnapshot.EMPTY; // read by the routing threads
+		// the latest snapshots, newest first, so that running requests still find the version they started with
+		private volatile TrafficSnapshot[] m_recentSnapshots = new TrafficSnapshot[] { TrafficSnapshot.EMPTY };
 		private HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature;  // one edge corresponds to one TrafficFeatureInfo
 
 		public RouteProfileTmcData(RoutingProfile rp) {
 			m_routeProfile = rp;
-			m_edges = new HashMap<Integer, EdgeInfo>();
-			m_avoidEdges = new HashMap<Integer, AvoidEdgeInfo>();
-			m_blockedEdges = new ArrayList<Integer>();
-			m_edgeIdsMap = new HashMap<Integer, Integer>();
-			m_blockedEdges_hv =  new ArrayList<Integer>();			
 			m_edgeId2trafficFeature = new HashMap<Integer, TrafficFeatureInfo>();
 		}
 
@@ -85,28 +85,35 @@ public class RealTrafficDataProvider {
 			return m_edgeId2trafficFeature;
 		}
 		
-		public List<Integer> getBlockedEdges() {
-			return m_blockedEdges;
-		}
-		
-		public List<Integer> getHeavyVehicleBlockedEdges() {
-			return m_blockedEdges_hv;
+		public TrafficSnapshot getSnapshot() {
+			return m_snapshot;
 		}
 
-		public HashMap<Integer, AvoidEdgeInfo> getAvoidEdges() {
-			return m_avoidEdges;
-		}
+		/**
+		 * Returns the snapshot of the given version if it is one of the latest ones, or null otherwise.
+		 */
+		public TrafficSnapshot getSnapshot(long version) {
+			for (TrafficSnapshot snapshot : m_recentSnapshots) {
+				if (snapshot.getVersion() == version)
+					return snapshot;
+			}
 
-		public HashMap<Integer, EdgeInfo> getEdges() {
-			return m_edges;
+			return null;
 		}
 
-		public void update(HashMap<Integer, EdgeInfo> edges, HashMap<Integer, AvoidEdgeInfo> avoidEdges,
-				List<Integer> blockedEdges, List<Integer> blockedEdges_hv) {
-			m_avoidEdges = avoidEdges;
-			m_blockedEdges = blockedEdges;
-			m_edges = edges;
-			m_blockedEdges_hv = blockedEdges_hv;
+		/**
+		 * Publishes a new snapshot built from the given collections, which must not be modified afterwards.
+		 */
+		public void update(IntObjectMap<EdgeInfo> edges, IntObjectMap<short[]> avoidEdges,
+				IntSet blockedEdges, IntSet blockedEdges_hv) {
+			TrafficSnapshot snapshot = new TrafficSnapshot(m_snapshot.getVersion() + 1, edges, avoidEdges, blockedEdges, blockedEdges_hv);
+
+			TrafficSnapshot[] recent = new TrafficSnapshot[Math.min(m_recentSnapshots.length + 1, RECENT_SNAPSHOTS)];
+			recent[0] = snapshot;
+			System.arraycopy(m_recentSnapshots, 0, recent, 1, recent.length - 1);
+
+			m_recentSnapshots = recent;
+			m_snapshot = snapshot;
 		}
 		
 		public void setMapEddgeId2trafficFeature(HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature){
@@ -463,10 +470,10 @@ public class RealTrafficDataProvider {
 		if (m_edgeId2trafficFeature.size() == 0)
 			return;
 
-		HashMap<Integer, AvoidEdgeInfo> avoidEdges = new HashMap<Integer, AvoidEdgeInfo>();
-		List<Integer> blockedEdges = new ArrayList<Integer>();
-		List<Integer> blockedEdges_hv = new ArrayList<Integer>();
-		HashMap<Integer, EdgeInfo> edges = new HashMap<Integer, EdgeInfo>();
+		GHIntObjectHashMap<short[]> avoidEdges = new GHIntObjectHashMap<short[]>();
+		GHIntHashSet blockedEdges = new GHIntHashSet();
+		GHIntHashSet blockedEdges_hv = new GHIntHashSet();
+		GHIntObjectHashMap<EdgeInfo> edges = new GHIntObjectHashMap<EdgeInfo>(m_edgeId2trafficFeature.size());
 
 		try {
 			long diff = new Date().getTime() - updateInfo.time.getTime();
@@ -508,22 +515,16 @@ public class RealTrafficDataProvider {
 							int codeType = tec.type;
 							int mode = tec.mode;
 							if (codeType == TrafficEventType.AVOID) {
-								if (!avoidEdges.containsKey(newEdgeId)){				
-								
-										AvoidEdgeInfo edgeInfo = new AvoidEdgeInfo(newEdgeId, codes);
-										avoidEdges.put(newEdgeId, edgeInfo);
-								
-								} 
+								if (!avoidEdges.containsKey(newEdgeId))
+									avoidEdges.put(newEdgeId, codes);
 								
 							 } else if (codeType == TrafficEventType.BLOCKED && mode == TmcMode.CAR) {
 								 
-									    if (!blockedEdges.contains(newEdgeId))
-									        blockedEdges.add(newEdgeId);
+									    blockedEdges.add(newEdgeId);
 							
 							 } else if (codeType == TrafficEventType.BLOCKED && mode == TmcMode.HEAVY_VEHICLE) {
 								 
-								        if (!blockedEdges_hv.contains(newEdgeId))
-								        	blockedEdges_hv.add(newEdgeId);
+								        blockedEdges_hv.add(newEdgeId);
 						
 						     }  else if (codeType != TrafficEventType.ANY) {
 								
@@ -542,7 +543,9 @@ public class RealTrafficDataProvider {
 			logger.info(ex.toString());
 		}
 
-		// TODO make it thread safe.
+		// edges blocked for all vehicles are blocked for heavy vehicles as well
+		blockedEdges_hv.addAll(blockedEdges);
+
 	    // System.out.println("edges size " +  edges.size() + " ; avoid edges size = "+ avoidEdges.size() + " ; blocked edges size = " + blockedEdges.size());
 		rptd.update(edges, avoidEdges, blockedEdges, blockedEdges_hv);
 		
@@ -738,7 +741,7 @@ public class RealTrafficDataProvider {
 		if (rptd == null)
 			return "";
 		else {
-			EdgeInfo ei = rptd.getEdges().get(edgeId);
+			EdgeInfo ei = rptd.getSnapshot().getEdges().get(edgeId);
 
 			if (ei != null)
 				return ei.getCodesAsString() + " | " + ei.getMessage();
@@ -747,47 +750,36 @@ public class RealTrafficDataProvider {
 		}
 	}
 
-	public List<Integer> getBlockedEdges(GraphStorage graphStorage) {
+	/**
+	 * Returns the current traffic snapshot of the profile using the given graph. The snapshot stays valid and
+	 * unchanged while newer ones are published, so a request should fetch it once and keep it.
+	 */
+	public TrafficSnapshot getSnapshot(GraphStorage graphStorage) {
 		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
 
 		if (rptd == null)
-			return null;
+			return TrafficSnapshot.EMPTY;
 		else
-			return rptd.getBlockedEdges();
-		 //Test AAS 
-		 /*{
-			List<Integer> list = new ArrayList();
-			for(Entry<Integer, AvoidEdgeInfo> entry: rptd.getAvoidEdges().entrySet())
-			{
-				list.add(entry.getValue().getEdgeId());
-			}
-			
-			return list;
-		}*/
+			return rptd.getSnapshot();
 	}
 
-	public HashMap<Integer, AvoidEdgeInfo> getAvoidEdges(GraphStorage graphStorage) {
+	/**
+	 * Returns the snapshot of the given version, which a request has fetched before, e.g. for parts of the request
+	 * which only get the version passed on in the hints. If the version has been outdated by more than
+	 * {@value #RECENT_SNAPSHOTS} updates in the meantime, the current snapshot is returned.
+	 */
+	public TrafficSnapshot getSnapshot(GraphStorage graphStorage, long version) {
 		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
 
 		if (rptd == null)
-			return null;
-		else
-			return rptd.getAvoidEdges();
+			return TrafficSnapshot.EMPTY;
+
+		TrafficSnapshot snapshot = rptd.getSnapshot(version);
+		return snapshot != null ? snapshot : rptd.getSnapshot();
 	}
 	
 	private RouteProfileTmcData getRouteProfileTmcData(GraphStorage graphStorage)
 	{
 		return m_routeProfilesMap.get(graphStorage.getDirectory().getLocation().hashCode());
 	}
-	
-	
-	public List<Integer> getHeavyVehicleBlockedEdges(GraphStorage graphStorage) {
-		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
-
-		if (rptd == null)
-			return null;
-	
-		else
-			return rptd.getHeavyVehicleBlockedEdges();
-	}
 }
@@ -13,7 +13,11 @@
  */
 package heigit.ors.routing.traffic;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
@@ -29,6 +33,7 @@ import com.vividsolutions.jts.operation.distance.DistanceOp;
 public class TmcSegmentsCollection
 {
 	private List<TmcSegment> segments;
+	private Map<Long, List<TmcSegment>> pairIndex;
 	private Quadtree quadTree;
 	private GeometryFactory geomFactory;
 	private DistanceCalc distanceCalc;
@@ -38,6 +43,30 @@ public class TmcSegmentsCollection
 		this.segments = segments;
 		this.geomFactory = new GeometryFactory();
 		this.distanceCalc = new DistanceCalcEarth();
+		
+		buildPairIndex();
+	}
+	
+	private void buildPairIndex()
+	{
+		pairIndex = new HashMap<Long, List<TmcSegment>>(segments.size());
+		for (TmcSegment seg : segments) {
+			Long key = getPairKey(seg.getFrom(), seg.getTo());
+			List<TmcSegment> list = pairIndex.get(key);
+			if (list == null)
+			{
+				list = new ArrayList<TmcSegment>(2);
+				pairIndex.put(key, list);
+			}
+			list.add(seg);
+		}
+	}
+	
+	private static long getPairKey(int locationCode1, int locationCode2)
+	{
+		int min = Math.min(locationCode1, locationCode2);
+		int max = Math.max(locationCode1, locationCode2);
+		return ((long)min << 32) | (max & 0xFFFFFFFFL);
 	}
 	
 	private void buildQuadTree()
@@ -63,6 +92,15 @@ public class TmcSegmentsCollection
 		return segments;
 	}
 	
+	/**
+	 * Returns the segments between the two location codes, in both orders and directions.
+	 */
+	public List<TmcSegment> getSegments(int locationCode1, int locationCode2)
+	{
+		List<TmcSegment> res = pairIndex.get(getPairKey(locationCode1, locationCode2));
+		return res == null ? Collections.<TmcSegment>emptyList() : res;
+	}
+	
 	public TmcSegment getClosestSegment(Coordinate c, double thresholdDistance)
 	{
 		if (quadTree == null)
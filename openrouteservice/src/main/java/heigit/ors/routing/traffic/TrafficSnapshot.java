@@ -0,0 +1,73 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.routing.traffic;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.IntSet;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
+
+/**
+ * Immutable traffic state of one routing profile. Every feed update builds a new snapshot and publishes it as a
+ * whole, so that a request works on one consistent version and can use its sets and maps directly, without
+ * copying or locking. The collections must not be modified once the snapshot has been created.
+ */
+public class TrafficSnapshot {
+	public static final TrafficSnapshot EMPTY = new TrafficSnapshot(0, new GHIntObjectHashMap<EdgeInfo>(0),
+			new GHIntObjectHashMap<short[]>(0), new GHIntHashSet(0), new GHIntHashSet(0));
+
+	private final long m_version;
+	private final IntObjectMap<EdgeInfo> m_edges;
+	private final IntObjectMap<short[]> m_avoidEdges;
+	private final IntSet m_blockedEdges;
+	private final IntSet m_blockedEdges_hv;
+
+	/**
+	 * @param blockedEdges_hv edges blocked for heavy vehicles, including those blocked for all vehicles
+	 */
+	public TrafficSnapshot(long version, IntObjectMap<EdgeInfo> edges, IntObjectMap<short[]> avoidEdges,
+			IntSet blockedEdges, IntSet blockedEdges_hv) {
+		m_version = version;
+		m_edges = edges;
+		m_avoidEdges = avoidEdges;
+		m_blockedEdges = blockedEdges;
+		m_blockedEdges_hv = blockedEdges_hv;
+	}
+
+	public long getVersion() {
+		return m_version;
+	}
+
+	/**
+	 * Returns the traffic messages of the edges, by edge id.
+	 */
+	public IntObjectMap<EdgeInfo> getEdges() {
+		return m_edges;
+	}
+
+	/**
+	 * Returns the event codes of the edges which should be avoided, by edge id.
+	 */
+	public IntObjectMap<short[]> getAvoidEdges() {
+		return m_avoidEdges;
+	}
+
+	public IntSet getBlockedEdges() {
+		return m_blockedEdges;
+	}
+
+	public IntSet getHeavyVehicleBlockedEdges() {
+		return m_blockedEdges_hv;
+	}
+}
@@ -463,52 +463,48 @@ public class TrafficUtility {
 					List<Integer> edgeIds_reverse = new ArrayList<Integer>();
 
 					for (int j = 0; j < m.locationCodes.size() - 1; j++) {
-						Integer lcl_fr = m.locationCodes.get(j);
-						Integer lcl_to = m.locationCodes.get(j + 1);
+						int lcl_fr = m.locationCodes.get(j);
+						int lcl_to = m.locationCodes.get(j + 1);
 						
-						for (int si = 0; si < segments.size(); si++) {
-							TmcSegment seg = segments.get(si);
-
+						for (TmcSegment seg : segments.getSegments(lcl_fr, lcl_to)) {
 							int osm_fr = seg.getFrom();
 							int osm_to = seg.getTo();
 
-							if ((lcl_fr == osm_fr && lcl_to == osm_to) || (lcl_fr == osm_to && lcl_to == osm_fr)) {
-								if (m.bothDirections || m.direction != seg.getDirection()) {
-									/*
-									 * in unserem XML kodiert das Element LDR
-									 * die Richtungsangabe. Dabei ist 0 =
-									 * positive Richtung und 1 = negative
-									 * Richtung. Dies bezieht sich auf die
-									 * Verknüpfungsrichtung in der TMC Tabelle.
-									 * Beispiel: In der TMC Tabelle ist A
-									 * positiv verknüpft ist mit B. Auf der
-									 * Strecke von A nach B ist bei B ein Unfall
-									 * passiert und es Staut sich zurück bis
-									 * nach A.
-									 * 
-									 * Dann ist die Meldung wie folgt kodiert:
-									 * PrimaryLocation = B (hier ist der Unfall)
-									 * SecondaryLocation = A (bis hier reicht
-									 * der Stau) LocationDirection = 1 (negativ)
-									 * 
-									 * Die LocationDirection (LDR) ist negative,
-									 * weil man vom PrimaryLocation zum
-									 * SecondaryLocation nur kommt, indem man
-									 * sich rückwärts (negativ) durch die TMC
-									 * Verknüpfung hangelt.
-									 */
-									if ((lcl_fr == osm_to && lcl_to == osm_fr))
-									{
-										geoms_reverse.add(seg.getGeometry());
-										edgeIds_reverse.addAll(seg.getEdgeIDs());
-									}
-									else
-									{
-										geoms.add(seg.getGeometry());
-										edgeIds.addAll(seg.getEdgeIDs());
-									}
-									bAdd = true;
+							if (m.bothDirections || m.direction != seg.getDirection()) {
+								/*
+								 * in unserem XML kodiert das Element LDR
+								 * die Richtungsangabe. Dabei ist 0 =
+								 * positive Richtung und 1 = negative
+								 * Richtung. Dies bezieht sich auf die
+								 * Verknüpfungsrichtung in der TMC Tabelle.
+								 * Beispiel: In der TMC Tabelle ist A
+								 * positiv verknüpft ist mit B. Auf der
+								 * Strecke von A nach B ist bei B ein Unfall
+								 * passiert und es Staut sich zurück bis
+								 * nach A.
+								 * 
+								 * Dann ist die Meldung wie folgt kodiert:
+								 * PrimaryLocation = B (hier ist der Unfall)
+								 * SecondaryLocation = A (bis hier reicht
+								 * der Stau) LocationDirection = 1 (negativ)
+								 * 
+								 * Die LocationDirection (LDR) ist negative,
+								 * weil man vom PrimaryLocation zum
+								 * SecondaryLocation nur kommt, indem man
+								 * sich rückwärts (negativ) durch die TMC
+								 * Verknüpfung hangelt.
+								 */
+								if ((lcl_fr == osm_to && lcl_to == osm_fr))
+								{
+									geoms_reverse.add(seg.getGeometry());
+									edgeIds_reverse.addAll(seg.getEdgeIDs());
+								}
+								else
+								{
+									geoms.add(seg.getGeometry());
+									edgeIds.addAll(seg.getEdgeIDs());
 								}
+								bAdd = true;
 							}
 						}
 					}
@@ -14,10 +14,12 @@
 package heigit.ors.services;
 
 import com.graphhopper.storage.StorableProperties;
+import heigit.ors.isochrones.IsochroneCache;
 import heigit.ors.localization.LocalizationManager;
 import heigit.ors.routing.RoutingProfile;
 import heigit.ors.routing.RoutingProfileManager;
 import heigit.ors.routing.RoutingProfileManagerStatus;
+import heigit.ors.routing.algorithms.TargetGraphCache;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
 //import heigit.ors.services.accessibility.AccessibilityServiceSettings;
@@ -105,6 +107,26 @@ public class ORSServicesUtils {
 					if (jProfileLimits.length() > 0)
 						jProfileProps.put("limits", jProfileLimits);
 
+					IsochroneCache isochroneCache = rp.getGraphhopper().getIsochroneCache();
+					if (isochroneCache != null) {
+						JSONObject jCache = new JSONObject(true);
+						jCache.put("entries", isochroneCache.getEntriesCount());
+						jCache.put("size", isochroneCache.getSize());
+						jCache.put("hits", isochroneCache.getHits());
+						jCache.put("misses", isochroneCache.getMisses());
+						jProfileProps.put("isochrones_cache", jCache);
+					}
+
+					TargetGraphCache targetGraphCache = rp.getGraphhopper().getTargetGraphCache();
+					if (targetGraphCache != null) {
+						JSONObject jCache = new JSONObject(true);
+						jCache.put("entries", targetGraphCache.getEntriesCount());
+						jCache.put("size", targetGraphCache.getSize());
+						jCache.put("hits", targetGraphCache.getHits());
+						jCache.put("misses", targetGraphCache.getMisses());
+						jProfileProps.put("matrix_target_graph_cache", jCache);
+					}
+
 					jProfiles.put("profile " + Integer.toString(i), jProfileProps);
 
 					i++;
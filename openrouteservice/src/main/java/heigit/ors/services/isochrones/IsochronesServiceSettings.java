@@ -37,6 +37,10 @@ public class IsochronesServiceSettings {
 	private static boolean allowComputeArea = true;
 	private static Map<String, StatisticsProviderConfiguration> statsProviders;
 	private static String attribution = "";
+	private static int parallelThreads = Runtime.getRuntime().availableProcessors();
+	private static int maximumParallelLocations = 4;
+	private static int cacheSize = 32; // in megabytes
+	private static int statisticsCacheSize = 1000; // in entries
 
 	static 
 	{
@@ -120,6 +124,18 @@ public class IsochronesServiceSettings {
 		value = AppConfig.Global().getServiceParameter("isochrones", "attribution");
 		if (value != null)
 			attribution = value;
+		value = AppConfig.Global().getServiceParameter("isochrones", "parallel_threads");
+		if (value != null)
+			parallelThreads = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_parallel_locations");
+		if (value != null)
+			maximumParallelLocations = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("isochrones", "cache_size");
+		if (value != null)
+			cacheSize = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("isochrones", "statistics_cache_size");
+		if (value != null)
+			statisticsCacheSize = Math.max(0, Integer.parseInt(value));
 	}
 
 	private static Map<Integer, Integer> getParameters(List<? extends ConfigObject> params)
@@ -200,5 +216,27 @@ public class IsochronesServiceSettings {
 
 	public static String getAttribution() {
 		return attribution;
-	}	
+	}
+
+	public static int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	public static int getMaximumParallelLocations() {
+		return maximumParallelLocations;
+	}
+
+	/**
+	 * Returns the memory (in megabytes) the cached isochrone maps of a graph may take, 0 disables the cache.
+	 */
+	public static int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Returns the number of isochrone statistics results kept in memory, 0 disables the cache.
+	 */
+	public static int getStatisticsCacheSize() {
+		return statisticsCacheSize;
+	}
 }
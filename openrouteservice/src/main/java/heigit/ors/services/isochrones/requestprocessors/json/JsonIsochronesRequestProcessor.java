@@ -112,13 +112,11 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 		{
 			String[] nonDefaultAttrs = req.getNonDefaultAttributes();
 			
-			IsochroneMapCollection isoMaps = new IsochroneMapCollection();
+			List<IsochroneSearchParameters> searchParams = new ArrayList<IsochroneSearchParameters>(travellers.size());
+			for (int i = 0;i < travellers.size(); ++i)
+				searchParams.add(req.getSearchParameters(i));
 
-			for (int i = 0;i < travellers.size(); ++i){
-				IsochroneSearchParameters searchParams = req.getSearchParameters(i);
-				IsochroneMap isochroneMap = RoutingProfileManager.getInstance().buildIsochrone(searchParams, nonDefaultAttrs);
-				isoMaps.add(isochroneMap);
-			}
+			IsochroneMapCollection isoMaps = RoutingProfileManager.getInstance().buildIsochrones(searchParams, nonDefaultAttrs);
 
 			writeResponse(response, req, isoMaps);
 		}
@@ -21,6 +21,10 @@ public class MapMatchingServiceSettings {
 	private static double maximumSearchRadius = 200;
 	private static int maximumVisitedNodes = 10000;
 	private static String attribution = "";
+	private static int onlineMatchingThreshold = 50;
+	private static int maximumBatchSize = 100;
+	private static int parallelThreads = Runtime.getRuntime().availableProcessors();
+	private static int maximumParallelTraces = 4;
 		
 	static 
 	{
@@ -39,6 +43,18 @@ public class MapMatchingServiceSettings {
 		value = AppConfig.Global().getServiceParameter("mapmatching", "attribution");
 		if (value != null)
 			attribution = value;
+		value = AppConfig.Global().getServiceParameter("mapmatching", "online_matching_threshold");
+		if (value != null)
+			onlineMatchingThreshold = Math.max(2, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("mapmatching", "maximum_batch_size");
+		if (value != null)
+			maximumBatchSize = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("mapmatching", "parallel_threads");
+		if (value != null)
+			parallelThreads = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("mapmatching", "maximum_parallel_traces");
+		if (value != null)
+			maximumParallelTraces = Math.max(1, Integer.parseInt(value));
 	}
 	
 	public static Boolean getEnabled() {
@@ -60,4 +76,32 @@ public class MapMatchingServiceSettings {
 	public static int getMaximumVisitedNodes() {
 		return maximumVisitedNodes;
 	}
+
+	/**
+	 * Returns the number of locations above which traces are matched with the windowed online matcher.
+	 */
+	public static int getOnlineMatchingThreshold() {
+		return onlineMatchingThreshold;
+	}
+
+	/**
+	 * Returns the maximum number of traces accepted by a single batch request.
+	 */
+	public static int getMaximumBatchSize() {
+		return maximumBatchSize;
+	}
+
+	/**
+	 * Returns the number of threads of the pool shared by all batch requests.
+	 */
+	public static int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	/**
+	 * Returns how many traces of a single batch request may be matched at the same time.
+	 */
+	public static int getMaximumParallelTraces() {
+		return maximumParallelTraces;
+	}
 }
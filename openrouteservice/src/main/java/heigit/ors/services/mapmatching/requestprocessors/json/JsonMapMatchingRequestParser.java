@@ -13,14 +13,25 @@
  */
 package heigit.ors.services.mapmatching.requestprocessors.json;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Coordinate;
 
 import heigit.ors.common.DistanceUnit;
+import heigit.ors.common.StatusCode;
 import heigit.ors.exceptions.MissingParameterException;
+import heigit.ors.exceptions.ParameterOutOfRangeException;
 import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.exceptions.StatusCodeException;
 import heigit.ors.exceptions.UnknownParameterValueException;
 import heigit.ors.localization.LocalizationManager;
 import heigit.ors.mapmatching.MapMatchingErrorCodes;
@@ -36,12 +47,147 @@ import heigit.ors.util.DistanceUnitUtil;
 
 public class JsonMapMatchingRequestParser 
 {
-	public static MapMatchingRequest parseFromRequestParams(HttpServletRequest request) throws Exception
+	/**
+	 * Access to the parameters of a request, whether they are given in the query string or in a JSON object.
+	 */
+	private interface RequestParameters
+	{
+		String get(String name);
+
+		/**
+		 * Returns the locations of the parameter or null if it is missing.
+		 */
+		Coordinate[] getCoordinates(String name) throws Exception;
+	}
+
+	/**
+	 * Splits the body of a batch request into its traces. A newline-delimited body holds one trace object per line,
+	 * blank lines are skipped. Otherwise the body is a JSON array of trace objects or a single trace object, which
+	 * becomes a batch of one. The traces themselves are parsed with {@link #parseFromJson(JSONObject)}, so that an
+	 * invalid trace only fails on its own.
+	 * 
+	 * @param ndjson true if the body is sent as newline-delimited JSON
+	 */
+	public static List<JSONObject> parseBatch(String body, boolean ndjson) throws Exception
+	{
+		if (Helper.isEmpty(body))
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document.");
+
+		List<JSONObject> traces = new ArrayList<JSONObject>();
+
+		try
+		{
+			if (ndjson)
+			{
+				for (String line : body.split("\\r?\\n"))
+				{
+					if (!Helper.isEmpty(line.trim()))
+						traces.add(new JSONObject(line));
+				}
+			}
+			else
+			{
+				JSONTokener tokener = new JSONTokener(body);
+				Object value = tokener.nextValue();
+				if (tokener.nextClean() != 0)
+					throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document. A single JSON array or object was expected, use application/x-ndjson for one trace per line.");
+
+				if (value instanceof JSONArray)
+				{
+					JSONArray jTraces = (JSONArray) value;
+					for (int i = 0; i < jTraces.length(); i++)
+						traces.add(jTraces.getJSONObject(i));
+				}
+				else if (value instanceof JSONObject)
+					traces.add((JSONObject) value);
+				else
+					throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document. A JSON array of traces or a single trace object was expected.");
+			}
+		}
+		catch (JSONException ex)
+		{
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document. " + ex.getMessage());
+		}
+
+		if (traces.isEmpty())
+			throw new MissingParameterException(MapMatchingErrorCodes.MISSING_PARAMETER, "traces");
+
+		if (traces.size() > MapMatchingServiceSettings.getMaximumBatchSize())
+			throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "traces", Integer.toString(traces.size()), Integer.toString(MapMatchingServiceSettings.getMaximumBatchSize()));
+
+		return traces;
+	}
+
+	public static MapMatchingRequest parseFromJson(final JSONObject json) throws Exception
+	{
+		return parse(new RequestParameters() {
+			@Override
+			public String get(String name) {
+				return json.optString(name);
+			}
+
+			@Override
+			public Coordinate[] getCoordinates(String name) throws Exception {
+				JSONArray jCoordinates = json.optJSONArray(name);
+				if (jCoordinates == null)
+					return null;
+
+				Coordinate[] coords = new Coordinate[jCoordinates.length()];
+
+				try
+				{
+					for (int i = 0; i < coords.length; i++)
+					{
+						JSONArray jCoordinate = jCoordinates.getJSONArray(i);
+
+						if (jCoordinate.length() < 2)
+							throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_FORMAT, name);
+
+						coords[i] = new Coordinate(jCoordinate.getDouble(0), jCoordinate.getDouble(1));
+					}
+				}
+				catch(JSONException ex)
+				{
+					throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_FORMAT, name);
+				}
+
+				return coords;
+			}
+		});
+	}
+
+	public static MapMatchingRequest parseFromRequestParams(final HttpServletRequest request) throws Exception
+	{
+		return parse(new RequestParameters() {
+			@Override
+			public String get(String name) {
+				return request.getParameter(name);
+			}
+
+			@Override
+			public Coordinate[] getCoordinates(String name) throws Exception {
+				String value = request.getParameter(name);
+				if (Helper.isEmpty(value))
+					return null;
+
+				try
+				{
+					return CoordTools.parse(value, "\\|", true, false);
+				}
+				catch(NumberFormatException ex)
+				{
+					throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_FORMAT, name);
+				}
+			}
+		});
+	}
+
+	private static MapMatchingRequest parse(RequestParameters params) throws Exception
 	{
 		MapMatchingRequest req = new MapMatchingRequest();
 		RouteSearchParameters searchParams = req.getSearchParameters();
 
-		String value = request.getParameter("profile");
+		String value = params.get("profile");
 		if (!Helper.isEmpty(value))
 		{
 			int profileType = RoutingProfileType.getFromString(value);
@@ -53,7 +199,7 @@ public class JsonMapMatchingRequestParser
 		else
 			throw new MissingParameterException(MapMatchingErrorCodes.MISSING_PARAMETER, "profile");
 
-		value = request.getParameter("preference");
+		value = params.get("preference");
 		if (!Helper.isEmpty(value))
 		{
 			int weightingMethod = WeightingMethod.getFromString(value);
@@ -63,30 +209,21 @@ public class JsonMapMatchingRequestParser
 			searchParams.setWeightingMethod(weightingMethod);
 		}
 
-		value = request.getParameter("coordinates");
-		if (!Helper.isEmpty(value))
+		Coordinate[] coords = params.getCoordinates("coordinates");
+		if (coords != null)
 		{
-			Coordinate[] coords = null;
-
-			try
-			{
-				coords = CoordTools.parse(value, "\\|", true, false);		
-			}
-			catch(NumberFormatException ex)
-			{
-				throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_FORMAT, "coordinates");
-			}
-
 			if (coords.length < 2)
 				throw new ParameterValueException(MapMatchingErrorCodes.INVALID_PARAMETER_VALUE, "coordinates parameter must contain at least two locations");
 
 			if (coords.length > MapMatchingServiceSettings.getMaximumLocations())
-				throw new ParameterValueException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "coordinates parameter must contain at least two locations");
-			
+				throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "coordinates", Integer.toString(coords.length), Integer.toString(MapMatchingServiceSettings.getMaximumLocations()));
+
 			req.setCoordinates(coords);
-		}		
+		}
+		else
+			throw new MissingParameterException(MapMatchingErrorCodes.MISSING_PARAMETER, "coordinates");
 
-		value = request.getParameter("units");
+		value = params.get("units");
 		if (!Helper.isEmpty(value))
 		{
 			DistanceUnit units = DistanceUnitUtil.getFromString(value, DistanceUnit.Unknown);
@@ -97,7 +234,7 @@ public class JsonMapMatchingRequestParser
 			req.setUnits(units);
 		}
 
-		value = request.getParameter("language");
+		value = params.get("language");
 		if (!Helper.isEmpty(value))
 		{
 			if(!LocalizationManager.getInstance().isLanguageSupported(value))
@@ -106,11 +243,11 @@ public class JsonMapMatchingRequestParser
 			req.setLanguage(value);
 		}
 
-		value = request.getParameter("geometry");
+		value = params.get("geometry");
 		if (!Helper.isEmpty(value))
 			req.setIncludeGeometry(Boolean.parseBoolean(value));
 
-		value = request.getParameter("geometry_format");
+		value = params.get("geometry_format");
 		if (!Helper.isEmpty(value))
 		{
 			if (!("geojson".equalsIgnoreCase(value) || "polyline".equalsIgnoreCase(value) || "encodedpolyline".equalsIgnoreCase(value)))
@@ -119,15 +256,15 @@ public class JsonMapMatchingRequestParser
 			req.setGeometryFormat(value);
 		}
 
-		value = request.getParameter("instructions");
+		value = params.get("instructions");
 		if (!Helper.isEmpty(value))
 			req.setIncludeInstructions(Boolean.parseBoolean(value));
 
-		value = request.getParameter("elevation");
+		value = params.get("elevation");
 		if (!Helper.isEmpty(value))
 			req.setIncludeElevation(Boolean.parseBoolean(value));
 
-		value = request.getParameter("instructions_format");
+		value = params.get("instructions_format");
 		if (!Helper.isEmpty(value))
 		{
 			RouteInstructionsFormat instrFormat = RouteInstructionsFormat.fromString(value);
@@ -137,16 +274,16 @@ public class JsonMapMatchingRequestParser
 			req.setInstructionsFormat(instrFormat);
 		}
 
-		value = request.getParameter("extra_info");
+		value = params.get("extra_info");
 		if (!Helper.isEmpty(value))
 			req.setExtraInfo(RouteExtraInfoFlag.getFromString(value));
 
-		value = request.getParameter("attributes");
+		value = params.get("attributes");
 		if (!Helper.isEmpty(value))
 			req.setAttributes(value.split("\\|"));
 
 		/* options are not supported in mapmatching
-		value = request.getParameter("options");
+		value = params.get("options");
 		if (!Helper.isEmpty(value))
 		{
 			try
@@ -163,7 +300,7 @@ public class JsonMapMatchingRequestParser
 			}
 		}
 		*/
-		value = request.getParameter("id");
+		value = params.get("id");
 		if (!Helper.isEmpty(value))
 			req.setId(value);
 
@@ -13,6 +13,11 @@
  */
 package heigit.ors.services.mapmatching.requestprocessors.json;
 
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -25,14 +30,18 @@ import heigit.ors.exceptions.ParameterOutOfRangeException;
 import heigit.ors.exceptions.StatusCodeException;
 import heigit.ors.mapmatching.MapMatchingErrorCodes;
 import heigit.ors.mapmatching.MapMatchingRequest;
+import heigit.ors.mapmatching.ParallelMapMatchingExecutor;
 import heigit.ors.routing.RouteResult;
 import heigit.ors.routing.RoutingProfileManager;
 import heigit.ors.services.mapmatching.MapMatchingServiceSettings;
-import heigit.ors.services.matrix.MatrixServiceSettings;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.util.ServletUtility;
+import heigit.ors.util.StreamUtility;
 
 public class JsonMapMatchingRequestProcessor extends AbstractHttpRequestProcessor {
+	public static final String JSON_CONTENT_TYPE = "application/json";
+	public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+	public static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
 
 	public JsonMapMatchingRequestProcessor(HttpServletRequest request) throws Exception 
 	{
@@ -41,12 +50,48 @@ public class JsonMapMatchingRequestProcessor extends AbstractHttpRequestProcesso
 
 	@Override
 	public void process(HttpServletResponse response) throws Exception {
+		switch (_request.getMethod())
+		{
+		case "GET":
+			processSingle(response);
+			break;
+		case "POST":
+			String mediaType = getMediaType(_request.getContentType());
+			// form posts carry a single trace in their parameters like a GET request
+			if (mediaType == null || FORM_CONTENT_TYPE.equals(mediaType))
+				processSingle(response);
+			else if (JSON_CONTENT_TYPE.equals(mediaType))
+				processBatch(response, false);
+			else if (NDJSON_CONTENT_TYPE.equals(mediaType))
+				processBatch(response, true);
+			else
+				throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.INVALID_JSON_FORMAT, "Unsupported content type '" + mediaType + "', expected "
+						+ JSON_CONTENT_TYPE + ", " + NDJSON_CONTENT_TYPE + " or " + FORM_CONTENT_TYPE + ".");
+			break;
+		default:
+			throw new StatusCodeException(StatusCode.METHOD_NOT_ALLOWED);
+		}
+	}
+
+	/**
+	 * Returns the lower case media type of the content type without its parameters, or null if there is none.
+	 */
+	private static String getMediaType(String contentType) {
+		if (contentType == null)
+			return null;
+
+		int pos = contentType.indexOf(';');
+		String mediaType = (pos < 0 ? contentType : contentType.substring(0, pos)).trim().toLowerCase();
+		return mediaType.isEmpty() ? null : mediaType;
+	}
+
+	private void processSingle(HttpServletResponse response) throws Exception {
 		MapMatchingRequest req = JsonMapMatchingRequestParser.parseFromRequestParams(_request);
 		
 		if (req == null)
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, MapMatchingErrorCodes.UNKNOWN, "MapMatchingRequest object is null.");
 
-		if (MapMatchingServiceSettings.getMaximumLocations() > 0 && req.getCoordinates().length > MatrixServiceSettings.getMaximumLocations(false))
+		if (MapMatchingServiceSettings.getMaximumLocations() > 0 && req.getCoordinates().length > MapMatchingServiceSettings.getMaximumLocations())
 			throw new ParameterOutOfRangeException(MapMatchingErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "sources/destinations", Integer.toString(req.getCoordinates().length), Integer.toString(MapMatchingServiceSettings.getMaximumLocations()));
 
 		
@@ -62,4 +107,73 @@ public class JsonMapMatchingRequestProcessor extends AbstractHttpRequestProcesso
 		
 		ServletUtility.write(response, json, "UTF-8");
 	}
+
+	/**
+	 * Matches the traces of a batch in parallel and streams each result back as soon as its trace completes.
+	 * Results come in completion order and carry the {@code index} of their trace in the batch. A newline-delimited
+	 * body is answered with one JSON object per line, a JSON body with a JSON array. A trace which cannot be
+	 * matched yields an {@code error} object in place of its routes and does not affect the others.
+	 */
+	private void processBatch(HttpServletResponse response, final boolean ndjson) throws Exception {
+		String body = StreamUtility.readStream(_request.getInputStream());
+		final List<JSONObject> traces = JsonMapMatchingRequestParser.parseBatch(body, ndjson);
+
+		List<Callable<JSONObject>> tasks = new ArrayList<Callable<JSONObject>>(traces.size());
+		for (final JSONObject trace : traces)
+		{
+			tasks.add(new Callable<JSONObject>() {
+				@Override
+				public JSONObject call() throws Exception {
+					MapMatchingRequest req = JsonMapMatchingRequestParser.parseFromJson(trace);
+					RouteResult result = RoutingProfileManager.getInstance().matchTrack(req);
+					return JsonMapMatchingResponseWriter.toJson(req, new RouteResult[] { result });
+				}
+			});
+		}
+
+		final OutputStream outStream = ServletUtility.getOutputStream(response, ndjson ? NDJSON_CONTENT_TYPE : JSON_CONTENT_TYPE, "UTF-8");
+		try
+		{
+			if (!ndjson)
+				outStream.write('[');
+
+			ParallelMapMatchingExecutor.execute(tasks, new ParallelMapMatchingExecutor.CompletionListener<JSONObject>() {
+				private boolean _first = true;
+
+				@Override
+				public void completed(int index, JSONObject result, Exception error) throws Exception {
+					JSONObject json = error == null ? result : toJsonError(error);
+					json.put("index", index);
+
+					if (!ndjson && !_first)
+						outStream.write(',');
+					outStream.write(json.toString().getBytes("UTF-8"));
+					if (ndjson)
+						outStream.write('\n');
+					outStream.flush();
+
+					_first = false;
+				}
+			});
+
+			if (!ndjson)
+				outStream.write(']');
+		}
+		finally
+		{
+			outStream.close();
+		}
+	}
+
+	private static JSONObject toJsonError(Exception ex) {
+		JSONObject jError = new JSONObject();
+		jError.put("message", ex.getMessage());
+
+		if (ex instanceof StatusCodeException && ((StatusCodeException)ex).getInternalCode() > 0)
+			jError.put("code", ((StatusCodeException)ex).getInternalCode());
+
+		JSONObject json = new JSONObject();
+		json.put("error", jError);
+		return json;
+	}
 }
@@ -24,6 +24,14 @@ public class MatrixServiceSettings
 	private static boolean allowResolveLocations = true;
 	private static String attribution = "";
 	private static boolean enabled = true;
+	private static int targetGraphCacheSize = 32;
+	private static int blockedSweepMinSources = 32;
+	private static int parallelThreads = Runtime.getRuntime().availableProcessors();
+	private static int parallelMinSources = 16;
+	private static int parallelMinSourcesFlexible = 4;
+	private static double bucketPairsPerSearch = 50;
+	private static double rphastSetupCost = 60;
+	private static int shortcutCacheSize = 1 << 22;
 	
 	static 
 	{
@@ -48,6 +56,30 @@ public class MatrixServiceSettings
 		value = AppConfig.Global().getServiceParameter("matrix", "attribution");
 		if (value != null)
 			attribution = value;
+		value = AppConfig.Global().getServiceParameter("matrix", "target_graph_cache_size");
+		if (value != null)
+			targetGraphCacheSize = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "blocked_sweep_min_sources");
+		if (value != null)
+			blockedSweepMinSources = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "parallel_threads");
+		if (value != null)
+			parallelThreads = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "parallel_min_sources");
+		if (value != null)
+			parallelMinSources = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "parallel_min_sources_flexible");
+		if (value != null)
+			parallelMinSourcesFlexible = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "bucket_pairs_per_search");
+		if (value != null)
+			bucketPairsPerSearch = Math.max(1, Double.parseDouble(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "rphast_setup_cost");
+		if (value != null)
+			rphastSetupCost = Math.max(0, Double.parseDouble(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "shortcut_cache_size");
+		if (value != null)
+			shortcutCacheSize = Math.max(1, Integer.parseInt(value));
 	}
 	
 	public static Boolean getEnabled() {
@@ -73,4 +105,39 @@ public class MatrixServiceSettings
 	public static String getAttribution() {
 		return attribution;
 	}
+
+	/**
+	 * Returns the memory (in megabytes) for target graphs cached per profile.
+	 */
+	public static int getTargetGraphCacheSize() {
+		return targetGraphCacheSize;
+	}
+
+	public static int getBlockedSweepMinSources() {
+		return blockedSweepMinSources;
+	}
+
+	public static int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	public static int getParallelMinSources() {
+		return parallelMinSources;
+	}
+
+	public static int getParallelMinSourcesFlexible() {
+		return parallelMinSourcesFlexible;
+	}
+
+	public static double getBucketPairsPerSearch() {
+		return bucketPairsPerSearch;
+	}
+
+	public static double getRPHASTSetupCost() {
+		return rphastSetupCost;
+	}
+
+	public static int getShortcutCacheSize() {
+		return shortcutCacheSize;
+	}
 }
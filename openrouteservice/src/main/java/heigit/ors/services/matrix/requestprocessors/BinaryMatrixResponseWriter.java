@@ -0,0 +1,96 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.services.matrix.requestprocessors;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+
+/**
+ * Writes the value tables of a matrix response in a compact binary layout. All numbers are
+ * little-endian:
+ * <pre>
+ *   bytes 0-3   magic "ORSM"
+ *   int32       format version (1)
+ *   int32       number of rows (sources)
+ *   int32       number of columns (destinations)
+ *   int32       metrics bit mask (see {@link MatrixMetricsType})
+ *   float32[]   one rows x columns table per metric in the order duration, distance, weight
+ * </pre>
+ * Tables are stored row by row. Unreachable pairs are written as NaN.
+ */
+public class BinaryMatrixResponseWriter 
+{
+	public static final String CONTENT_TYPE = "application/octet-stream";
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = new byte[] { 'O', 'R', 'S', 'M' };
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final OutputStream _stream;
+	private final ByteBuffer _buffer;
+
+	public BinaryMatrixResponseWriter(OutputStream stream)
+	{
+		_stream = stream;
+		_buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public void write(MatrixRequest request, MatrixResult result) throws IOException
+	{
+		int rows = request.getSources().length;
+		int clms = request.getDestinations().length;
+		int metrics = request.getMetrics() & (MatrixMetricsType.Duration | MatrixMetricsType.Distance | MatrixMetricsType.Weight);
+
+		_buffer.clear();
+		_buffer.put(MAGIC);
+		_buffer.putInt(VERSION);
+		_buffer.putInt(rows);
+		_buffer.putInt(clms);
+		_buffer.putInt(metrics);
+
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			writeTable(result.getTable(MatrixMetricsType.Duration), rows * clms);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			writeTable(result.getTable(MatrixMetricsType.Distance), rows * clms);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			writeTable(result.getTable(MatrixMetricsType.Weight), rows * clms);
+
+		flushBuffer();
+		_stream.flush();
+	}
+
+	private void writeTable(float[] values, int size) throws IOException
+	{
+		for (int i = 0; i < size; ++i)
+		{
+			if (_buffer.remaining() < 4)
+				flushBuffer();
+
+			float value = values[i];
+			_buffer.putFloat(value == -1 ? Float.NaN : value);
+		}
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		_stream.write(_buffer.array(), 0, _buffer.position());
+		_buffer.clear();
+	}
+}
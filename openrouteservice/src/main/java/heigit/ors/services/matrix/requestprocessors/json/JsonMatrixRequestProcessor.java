@@ -13,33 +13,22 @@
  */
 package heigit.ors.services.matrix.requestprocessors.json;
 
+import java.io.OutputStream;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import heigit.ors.routing.RoutingProfilesCollection;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import com.graphhopper.util.Helper;
-import com.vividsolutions.jts.geom.Coordinate;
-
 import heigit.ors.common.StatusCode;
-import heigit.ors.config.AppConfig;
 import heigit.ors.exceptions.ParameterOutOfRangeException;
 import heigit.ors.exceptions.StatusCodeException;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
-import heigit.ors.matrix.ResolvedLocation;
 import heigit.ors.matrix.MatrixErrorCodes;
-import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.routing.RoutingProfileManager;
-import heigit.ors.routing.RoutingProfileType;
 import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.services.matrix.requestprocessors.BinaryMatrixResponseWriter;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.util.ServletUtility;
-import heigit.ors.util.AppInfo;
-import heigit.ors.util.DistanceUnitUtil;
-import heigit.ors.util.FormatUtility;
 
 public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor 
 {
@@ -117,102 +106,31 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 	
 	private void writeResponse(HttpServletResponse response, MatrixRequest request, MatrixResult mtxResult) throws Exception
 	{
-		JSONObject jResp = new JSONObject(true);
-		
-		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Distance))
-			jResp.put("distances", createTable(mtxResult.getTable(MatrixMetricsType.Distance), request.getSources().length, request.getDestinations().length));
-		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Duration))
-			jResp.put("durations", createTable(mtxResult.getTable(MatrixMetricsType.Duration), request.getSources().length, request.getDestinations().length));
-		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Weight))
-			jResp.put("weights", createTable(mtxResult.getTable(MatrixMetricsType.Weight), request.getSources().length, request.getDestinations().length));		
-
-		jResp.put("destinations", createLocations(mtxResult.getDestinations(), request.getResolveLocations()));
-		jResp.put("sources", createLocations(mtxResult.getSources(), request.getResolveLocations()));
-		
-		JSONObject jInfo = new JSONObject(true);
-		jInfo.put("service", "matrix");
-		jInfo.put("engine", AppInfo.getEngineInfo());
-		if (!Helper.isEmpty(MatrixServiceSettings.getAttribution()))
-			jInfo.put("attribution", MatrixServiceSettings.getAttribution());
-		jInfo.put("timestamp", System.currentTimeMillis());
-
-		if (AppConfig.hasValidMD5Hash())
-			jInfo.put("osm_file_md5_hash", AppConfig.getMD5Hash());
-
-		JSONObject jQuery = new JSONObject();
-
-		jQuery.put("profile", RoutingProfileType.getName(request.getProfileType()));
+		String accept = _request.getHeader("Accept");
 
-		if (request.getUnits() != null)
-			jQuery.put("units", DistanceUnitUtil.toString(request.getUnits()));
-		
-		if (request.getWeightingMethod() != null)
-			jQuery.put("preference", request.getWeightingMethod());
-
-		if (request.getId() != null)
-			jQuery.put("id", request.getId());
-
-		jInfo.put("query", jQuery);
-		jResp.put("info", jInfo);
-		
-		ServletUtility.write(response, jResp);
-	}
-	
-	private JSONArray createLocations(ResolvedLocation[] locations, boolean includeLocationNames)
-	{
-		JSONArray jLocations = new JSONArray(locations.length);
-		
-		for (int i = 0; i < locations.length; i++)
+		if (accept != null && accept.contains(BinaryMatrixResponseWriter.CONTENT_TYPE))
 		{
-			JSONObject jLoc = new JSONObject(true);
-
-			ResolvedLocation loc = locations[i];
-			if (loc != null)
+			OutputStream outStream = ServletUtility.getOutputStream(response, BinaryMatrixResponseWriter.CONTENT_TYPE, "UTF-8");
+			try
 			{
-				Coordinate c = locations[i].getCoordinate();
-				JSONArray jCoord = new JSONArray(2);
-				jCoord.put(FormatUtility.roundToDecimals(c.x, 6));
-				jCoord.put(FormatUtility.roundToDecimals(c.y, 6));
-				jLoc.put("location", jCoord);
-
-				if (includeLocationNames && loc.getName() != null)
-					jLoc.put("name", loc.getName());
-
-				jLoc.put("snapped_distance",FormatUtility.roundToDecimals( loc.getSnappedDistance(), 2));
+				new BinaryMatrixResponseWriter(outStream).write(request, mtxResult);
+			}
+			finally
+			{
+				outStream.close();
 			}
-			else
-				jLoc.put("location", JSONObject.NULL);
-			
-			jLocations.put(jLoc);
 		}
-		
-		return jLocations;
-	}
-	
-	private JSONArray createTable(float[] values, int rows, int clms)
-	{
-		JSONArray jMatrix = new JSONArray(rows);
-		
-		int rowOffset = 0;
-		float value = 0;
-		
-		for (int i = 0; i < rows; ++i)
+		else
 		{
-			JSONArray jRow = new JSONArray(clms);
-			rowOffset = i*clms;
-			
-			for (int j = 0; j < clms; ++j)
+			OutputStream outStream = ServletUtility.getOutputStream(response, JsonMatrixResponseWriter.CONTENT_TYPE, "UTF-8");
+			try
 			{
-				value = values[rowOffset + j];
-				if (value == -1)
-					jRow.put(JSONObject.NULL);
-				else
-					jRow.put(FormatUtility.roundToDecimals(value, 2));
+				new JsonMatrixResponseWriter(outStream, "UTF-8").write(request, mtxResult);
+			}
+			finally
+			{
+				outStream.close();
 			}
-			
-			jMatrix.put(jRow);
 		}
-		
-		return jMatrix;
 	}
 }
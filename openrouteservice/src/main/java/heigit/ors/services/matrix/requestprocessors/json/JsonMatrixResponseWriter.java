@@ -0,0 +1,203 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.services.matrix.requestprocessors.json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.config.AppConfig;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.ResolvedLocation;
+import heigit.ors.routing.RoutingProfileType;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.util.AppInfo;
+import heigit.ors.util.DistanceUnitUtil;
+import heigit.ors.util.DoubleFormatUtil;
+import heigit.ors.util.FormatUtility;
+
+/**
+ * Writes a matrix response as JSON directly to an output stream. The value tables are formatted
+ * row by row from the result arrays, so no JSON tree of boxed numbers is built for them.
+ */
+public class JsonMatrixResponseWriter 
+{
+	public static final String CONTENT_TYPE = "application/json";
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Writer _writer;
+	private final StringBuffer _numberBuffer = new StringBuffer(24);
+	private final char[] _numberChars = new char[24];
+	private boolean _hasMembers;
+
+	public JsonMatrixResponseWriter(OutputStream stream, String encoding) throws IOException
+	{
+		_writer = new BufferedWriter(new OutputStreamWriter(stream, encoding), BUFFER_SIZE);
+	}
+
+	public void write(MatrixRequest request, MatrixResult result) throws IOException
+	{
+		int rows = request.getSources().length;
+		int clms = request.getDestinations().length;
+
+		_hasMembers = false;
+		_writer.write('{');
+
+		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Distance))
+			writeTable("distances", result.getTable(MatrixMetricsType.Distance), rows, clms);
+		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Duration))
+			writeTable("durations", result.getTable(MatrixMetricsType.Duration), rows, clms);
+		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Weight))
+			writeTable("weights", result.getTable(MatrixMetricsType.Weight), rows, clms);
+
+		writeMember("destinations", createLocations(result.getDestinations(), request.getResolveLocations()).toString());
+		writeMember("sources", createLocations(result.getSources(), request.getResolveLocations()).toString());
+		writeMember("info", createInfo(request).toString());
+
+		_writer.write('}');
+		_writer.flush();
+	}
+
+	private void writeName(String name) throws IOException
+	{
+		if (_hasMembers)
+			_writer.write(',');
+		_writer.write(JSONObject.quote(name));
+		_writer.write(':');
+		_hasMembers = true;
+	}
+
+	private void writeMember(String name, String json) throws IOException
+	{
+		writeName(name);
+		_writer.write(json);
+	}
+
+	private void writeTable(String name, float[] values, int rows, int clms) throws IOException
+	{
+		writeName(name);
+
+		_writer.write('[');
+		for (int i = 0; i < rows; ++i)
+		{
+			if (i > 0)
+				_writer.write(',');
+
+			_writer.write('[');
+			int rowOffset = i*clms;
+			for (int j = 0; j < clms; ++j)
+			{
+				if (j > 0)
+					_writer.write(',');
+
+				float value = values[rowOffset + j];
+				if (value == -1)
+					_writer.write("null");
+				else
+					writeNumber(value);
+			}
+			_writer.write(']');
+		}
+		_writer.write(']');
+	}
+
+	private void writeNumber(double value) throws IOException
+	{
+		_numberBuffer.setLength(0);
+		DoubleFormatUtil.formatDouble(value, 2, 2, _numberBuffer);
+
+		int length = _numberBuffer.length();
+		if (length > _numberChars.length)
+		{
+			_writer.write(_numberBuffer.toString());
+		}
+		else
+		{
+			_numberBuffer.getChars(0, length, _numberChars, 0);
+			_writer.write(_numberChars, 0, length);
+		}
+	}
+
+	private JSONObject createInfo(MatrixRequest request)
+	{
+		JSONObject jInfo = new JSONObject(true);
+		jInfo.put("service", "matrix");
+		jInfo.put("engine", AppInfo.getEngineInfo());
+		if (!Helper.isEmpty(MatrixServiceSettings.getAttribution()))
+			jInfo.put("attribution", MatrixServiceSettings.getAttribution());
+		jInfo.put("timestamp", System.currentTimeMillis());
+
+		if (AppConfig.hasValidMD5Hash())
+			jInfo.put("osm_file_md5_hash", AppConfig.getMD5Hash());
+
+		JSONObject jQuery = new JSONObject();
+
+		jQuery.put("profile", RoutingProfileType.getName(request.getProfileType()));
+
+		if (request.getUnits() != null)
+			jQuery.put("units", DistanceUnitUtil.toString(request.getUnits()));
+
+		if (request.getWeightingMethod() != null)
+			jQuery.put("preference", request.getWeightingMethod());
+
+		if (request.getId() != null)
+			jQuery.put("id", request.getId());
+
+		jInfo.put("query", jQuery);
+
+		return jInfo;
+	}
+
+	private JSONArray createLocations(ResolvedLocation[] locations, boolean includeLocationNames)
+	{
+		JSONArray jLocations = new JSONArray(locations.length);
+
+		for (int i = 0; i < locations.length; i++)
+		{
+			JSONObject jLoc = new JSONObject(true);
+
+			ResolvedLocation loc = locations[i];
+			if (loc != null)
+			{
+				Coordinate c = locations[i].getCoordinate();
+				JSONArray jCoord = new JSONArray(2);
+				jCoord.put(FormatUtility.roundToDecimals(c.x, 6));
+				jCoord.put(FormatUtility.roundToDecimals(c.y, 6));
+				jLoc.put("location", jCoord);
+
+				if (includeLocationNames && loc.getName() != null)
+					jLoc.put("name", loc.getName());
+
+				jLoc.put("snapped_distance",FormatUtility.roundToDecimals( loc.getSnappedDistance(), 2));
+			}
+			else
+				jLoc.put("location", JSONObject.NULL);
+
+			jLocations.put(jLoc);
+		}
+
+		return jLocations;
+	}
+}
@@ -82,6 +82,21 @@ public class ServletUtility
 		write (response, bytes, contentType, encoding, StatusCode.OK);
 	}
 
+	/**
+	 * Prepares the response headers for a body of unknown length and returns the output stream
+	 * to write it to. The caller is responsible for closing the stream.
+	 */
+	public static OutputStream getOutputStream(HttpServletResponse response, String contentType, String encoding) throws IOException
+	{
+		response.setHeader("Content-Type", contentType);
+		response.setCharacterEncoding(encoding);
+		response.setContentType(contentType);
+		response.addHeader("Vary", "Accept-Encoding");
+		response.addHeader("Vary", "Accept");
+
+		return response.getOutputStream();
+	}
+
 	public static void write(HttpServletResponse response, byte[] bytes, String contentType, String encoding, int statusCode) throws IOException
 	{
 
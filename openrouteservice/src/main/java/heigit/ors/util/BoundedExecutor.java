@@ -0,0 +1,68 @@
+/*  This file is part of Openrouteservice.
+ *
+ *  Openrouteservice is free software; you can redistribute it and/or modify it under the terms of the 
+ *  GNU Lesser General Public License as published by the Free Software Foundation; either version 2.1 
+ *  of the License, or (at your option) any later version.
+
+ *  This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ *  See the GNU Lesser General Public License for more details.
+
+ *  You should have received a copy of the GNU Lesser General Public License along with this library; 
+ *  if not, see <https://www.gnu.org/licenses/>.  
+ */
+package heigit.ors.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Pool with a fixed number of threads which is created on first use. The parallel executors of the services each
+ * keep one instance, so that all requests of a service share its threads.
+ */
+public class BoundedExecutor {
+	private final int _threads;
+	private ForkJoinPool _pool;
+
+	public BoundedExecutor(int threads) {
+		_threads = Math.max(1, threads);
+	}
+
+	public int getThreads() {
+		return _threads;
+	}
+
+	public synchronized ExecutorService getPool() {
+		if (_pool == null)
+			_pool = new ForkJoinPool(_threads);
+
+		return _pool;
+	}
+
+	/**
+	 * Runs the tasks in the pool and waits for all of them. The first failure is rethrown. A single task is run on
+	 * the calling thread.
+	 */
+	public void invokeAll(List<Callable<Void>> tasks) throws Exception {
+		if (tasks.size() == 1) {
+			tasks.get(0).call();
+			return;
+		}
+
+		List<Future<Void>> futures = getPool().invokeAll(tasks);
+
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof Exception)
+					throw (Exception) ex.getCause();
+				throw ex;
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package heigit.ors.benchmark;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import heigit.ors.isochrones.builders.concaveballs.FastConcaveHull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opensphere.geometry.algorithm.ConcaveHull;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the opensphere {@link ConcaveHull} with {@link FastConcaveHull} on point clouds shaped like the input of
+ * the concave balls isochrone builder: a ragged star around a center, in degrees, with the default hull threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConcaveHullBenchmark {
+    @Param({"5000", "50000"})
+    public int pointsCount;
+
+    private static final double THRESHOLD = 0.012;
+
+    private GeometryFactory geomFactory;
+    private GeometryCollection points;
+    private double[] coords;
+
+    @Setup
+    public void setup() {
+        geomFactory = new GeometryFactory();
+        coords = new double[2 * pointsCount];
+        Geometry[] geometries = new Geometry[pointsCount];
+
+        Random rnd = new Random(42);
+        for (int i = 0; i < pointsCount; i++) {
+            double angle = rnd.nextDouble() * 2 * Math.PI;
+            double reach = 0.3 + 0.2 * Math.sin(7 * angle) + 0.05 * rnd.nextDouble();
+            double r = reach * Math.sqrt(rnd.nextDouble());
+            coords[2 * i] = 8.68 + r * Math.cos(angle);
+            coords[2 * i + 1] = 49.41 + r * Math.sin(angle);
+            geometries[i] = geomFactory.createPoint(new Coordinate(coords[2 * i], coords[2 * i + 1]));
+        }
+
+        points = new GeometryCollection(geometries, geomFactory);
+    }
+
+    @Benchmark
+    public Geometry opensphereConcaveHull() {
+        return new ConcaveHull(points, THRESHOLD, false).getConcaveHull();
+    }
+
+    @Benchmark
+    public Geometry fastConcaveHull() {
+        int[] ring = new FastConcaveHull(coords, THRESHOLD).getRing();
+
+        Coordinate[] shell = new Coordinate[ring.length + 1];
+        for (int i = 0; i < ring.length; i++)
+            shell[i] = new Coordinate(coords[2 * ring[i]], coords[2 * ring[i] + 1]);
+        shell[ring.length] = new Coordinate(shell[0]);
+
+        return geomFactory.createPolygon(geomFactory.createLinearRing(shell), null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ConcaveHullBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
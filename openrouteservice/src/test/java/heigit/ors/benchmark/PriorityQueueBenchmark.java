@@ -0,0 +1,167 @@
+package heigit.ors.benchmark;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.ch.PreparationWeighting;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import heigit.ors.routing.algorithms.IndexedMinHeap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the decrease-key capable {@link IndexedMinHeap} with the remove/add pattern on
+ * {@link java.util.PriorityQueue} used before, running bounded Dijkstra searches on a CH graph.
+ * <p>
+ * The graph is imported (or loaded, if already prepared) from the OSM file given by {@code -Dors.benchmark.osm}
+ * into the folder given by {@code -Dors.benchmark.graph}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PriorityQueueBenchmark {
+    @Param({"10000", "100000"})
+    public int settledNodes;
+
+    private GraphHopper gh;
+    private CHGraph graph;
+    private Weighting weighting;
+    private EdgeExplorer explorer;
+    private int[] sources;
+
+    @Setup
+    public void setup() {
+        gh = new GraphHopperOSM();
+        gh.setDataReaderFile(System.getProperty("ors.benchmark.osm"));
+        gh.setGraphHopperLocation(System.getProperty("ors.benchmark.graph", "benchmark-gh"));
+        gh.setEncodingManager(new EncodingManager("car"));
+        gh.setCHEnabled(true);
+        gh.getCHFactoryDecorator().setWeightingsAsStrings("fastest");
+        gh.importOrLoad();
+
+        FlagEncoder encoder = gh.getEncodingManager().getEncoder("car");
+        graph = gh.getGraphHopperStorage().getGraph(CHGraph.class);
+        weighting = new PreparationWeighting(new FastestWeighting(encoder));
+        explorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+
+        Random rnd = new Random(42);
+        sources = new int[20];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = rnd.nextInt(graph.getNodes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        gh.close();
+    }
+
+    @Benchmark
+    public double priorityQueue() {
+        double sum = 0;
+
+        for (int source : sources) {
+            IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>(1000);
+            PriorityQueue<SPTEntry> queue = new PriorityQueue<SPTEntry>(1000);
+            SPTEntry curr = new SPTEntry(EdgeIterator.NO_EDGE, source, 0);
+            map.put(source, curr);
+
+            for (int settled = 0; settled < settledNodes; settled++) {
+                EdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+                while (iter.next()) {
+                    double weight = curr.weight + weighting.calcWeight(iter, false, curr.edge);
+                    if (Double.isInfinite(weight))
+                        continue;
+
+                    SPTEntry entry = map.get(iter.getAdjNode());
+                    if (entry == null) {
+                        entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+                        entry.parent = curr;
+                        map.put(iter.getAdjNode(), entry);
+                        queue.add(entry);
+                    } else if (entry.weight > weight) {
+                        queue.remove(entry);
+                        entry.edge = iter.getEdge();
+                        entry.weight = weight;
+                        entry.parent = curr;
+                        queue.add(entry);
+                    }
+                }
+
+                if (queue.isEmpty())
+                    break;
+                curr = queue.poll();
+            }
+
+            sum += curr.weight;
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public double indexedMinHeap() {
+        double sum = 0;
+
+        for (int source : sources) {
+            IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>(1000);
+            IndexedMinHeap heap = new IndexedMinHeap(1000);
+            SPTEntry curr = new SPTEntry(EdgeIterator.NO_EDGE, source, 0);
+            map.put(source, curr);
+
+            for (int settled = 0; settled < settledNodes; settled++) {
+                EdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+                while (iter.next()) {
+                    double weight = curr.weight + weighting.calcWeight(iter, false, curr.edge);
+                    if (Double.isInfinite(weight))
+                        continue;
+
+                    SPTEntry entry = map.get(iter.getAdjNode());
+                    if (entry == null) {
+                        entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+                        entry.parent = curr;
+                        map.put(iter.getAdjNode(), entry);
+                        heap.push(iter.getAdjNode(), weight);
+                    } else if (entry.weight > weight) {
+                        entry.edge = iter.getEdge();
+                        entry.weight = weight;
+                        entry.parent = curr;
+                        heap.push(iter.getAdjNode(), weight);
+                    }
+                }
+
+                if (heap.isEmpty())
+                    break;
+                curr = map.get(heap.poll());
+            }
+
+            sum += curr.weight;
+        }
+
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(PriorityQueueBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,190 @@
+package heigit.ors.isochrones.builders.concaveballs;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Test;
+import org.opensphere.geometry.algorithm.ConcaveHull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FastConcaveHullTest {
+	private static double[] createLShapedPoints(int count) {
+		Random rnd = new Random(42);
+		double[] coords = new double[2 * count];
+		int i = 0;
+		while (i < count) {
+			double x = rnd.nextDouble();
+			double y = rnd.nextDouble();
+			if (x > 0.5 && y > 0.5)
+				continue;
+			coords[2 * i] = x;
+			coords[2 * i + 1] = y;
+			i++;
+		}
+		return coords;
+	}
+
+	private static double area(double[] coords, int[] ring) {
+		double area = 0;
+		for (int i = 0; i < ring.length; i++) {
+			int p = ring[i];
+			int q = ring[(i + 1) % ring.length];
+			area += coords[2 * p] * coords[2 * q + 1] - coords[2 * q] * coords[2 * p + 1];
+		}
+		return Math.abs(area) / 2;
+	}
+
+	private static boolean containsOrTouches(double[] coords, int[] ring, double x, double y) {
+		boolean inside = false;
+		for (int i = 0, j = ring.length - 1; i < ring.length; j = i++) {
+			double xi = coords[2 * ring[i]], yi = coords[2 * ring[i] + 1];
+			double xj = coords[2 * ring[j]], yj = coords[2 * ring[j] + 1];
+			if ((xi == x && yi == y))
+				return true;
+			if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+				inside = !inside;
+		}
+		return inside;
+	}
+
+	private static double[] createRandomPoints(int count, long seed) {
+		Random rnd = new Random(seed);
+		double[] coords = new double[2 * count];
+		for (int i = 0; i < coords.length; i++)
+			coords[i] = rnd.nextDouble();
+		return coords;
+	}
+
+	/**
+	 * Creates points like the ones an isochrone is built from: the points along the roads reached from a start
+	 * location, which branch off each other and end at an irregular distance.
+	 */
+	private static double[] createIsochronePoints(long seed) {
+		Random rnd = new Random(seed);
+		double lon0 = 8.681495, lat0 = 49.41461;
+		double step = 0.0005;
+		double[] coords = new double[2 * 20000];
+		int count = 0;
+
+		for (int road = 0; road < 200 && count < 20000; road++) {
+			// the first road leaves the start location, the others branch off a point already reached
+			int from = rnd.nextInt(Math.max(1, count));
+			double x = count == 0 ? lon0 : coords[2 * from];
+			double y = count == 0 ? lat0 : coords[2 * from + 1];
+			double direction = rnd.nextDouble() * 2 * Math.PI;
+
+			for (int i = 0; i < 100 && count < 20000; i++) {
+				direction += (rnd.nextDouble() - 0.5) * 0.4;
+				x += Math.cos(direction) * step * (0.5 + rnd.nextDouble());
+				y += Math.sin(direction) * step * (0.5 + rnd.nextDouble());
+
+				double dx = x - lon0, dy = y - lat0;
+				double limit = 0.03 + 0.015 * Math.sin(3 * Math.atan2(dy, dx));
+				if (dx * dx + dy * dy > limit * limit)
+					break;
+
+				coords[2 * count] = x;
+				coords[2 * count + 1] = y;
+				count++;
+			}
+		}
+
+		return Arrays.copyOf(coords, 2 * count);
+	}
+
+	/**
+	 * Checks that the ring has the same points and area as the hull computed by the JTS based implementation the
+	 * isochrone builder used before.
+	 */
+	private static void assertSameHull(double[] coords, double threshold) {
+		GeometryFactory geomFactory = new GeometryFactory();
+		Coordinate[] points = new Coordinate[coords.length / 2];
+		for (int i = 0; i < points.length; i++)
+			points[i] = new Coordinate(coords[2 * i], coords[2 * i + 1]);
+
+		Geometry expected = new ConcaveHull(geomFactory.createMultiPoint(points), threshold).getConcaveHull();
+		assertTrue(expected instanceof Polygon);
+
+		Coordinate[] shell = ((Polygon) expected).getExteriorRing().getCoordinates();
+		Set<Coordinate> expectedPoints = new HashSet<Coordinate>(Arrays.asList(shell));
+
+		int[] ring = new FastConcaveHull(coords, threshold).getRing();
+		assertEquals(shell.length - 1, ring.length);
+		for (int p : ring)
+			assertTrue(expectedPoints.contains(points[p]));
+
+		assertEquals(expected.getArea(), area(coords, ring), 1e-9 * expected.getArea());
+	}
+
+	@Test
+	public void TestConvexHullForLargeThreshold() {
+		double[] coords = new double[] { 0, 0, 1, 0, 1, 1, 0, 1, 0.5, 0.5, 0.2, 0.7 };
+		int[] ring = new FastConcaveHull(coords, 10).getRing();
+
+		assertEquals(4, ring.length);
+		assertEquals(1.0, area(coords, ring), 1e-12);
+	}
+
+	@Test
+	public void TestConcaveShape() {
+		double[] coords = createLShapedPoints(2000);
+
+		int[] convex = new FastConcaveHull(coords, 10).getRing();
+		int[] concave = new FastConcaveHull(coords, 0.1).getRing();
+
+		// the convex hull of the L covers 0.875, its interior 0.75
+		assertTrue(area(coords, convex) > 0.8);
+		assertTrue(area(coords, concave) < 0.75);
+		assertTrue(area(coords, concave) > 0.7);
+
+		boolean[] used = new boolean[coords.length / 2];
+		for (int p : concave) {
+			assertFalse(used[p]);
+			used[p] = true;
+		}
+
+		for (int i = 0; i < coords.length / 2; i++)
+			assertTrue(containsOrTouches(coords, concave, coords[2 * i], coords[2 * i + 1]));
+	}
+
+	@Test
+	public void TestDegenerateInput() {
+		assertEquals(0, new FastConcaveHull(new double[] { 0, 0, 1, 1, 2, 2 }, 0.1).getRing().length);
+		assertEquals(0, new FastConcaveHull(new double[] { 0, 0, 1, 1 }, 0.1).getRing().length);
+		assertEquals(3, new FastConcaveHull(new double[] { 0, 0, 1, 0, 0, 1, 0, 0 }, 0.1).getRing().length);
+	}
+
+	@Test
+	public void TestSameAsConcaveHullForRandomPoints() {
+		for (long seed = 1; seed <= 5; seed++) {
+			double[] coords = createRandomPoints(1000, seed);
+			assertSameHull(coords, 0.05);
+			assertSameHull(coords, 0.1);
+		}
+
+		assertSameHull(createLShapedPoints(2000), 0.1);
+	}
+
+	@Test
+	public void TestSameAsConcaveHullForIsochronePoints() {
+		// the thresholds the builder passes for the default smoothing and for a 5 km isochrone with smoothing 10 and 30
+		double[] thresholds = new double[] {
+				ConcaveBallsIsochroneMapBuilder.convertSmoothingFactorToDistance(-1, 5000),
+				ConcaveBallsIsochroneMapBuilder.convertSmoothingFactorToDistance(10, 5000),
+				ConcaveBallsIsochroneMapBuilder.convertSmoothingFactorToDistance(30, 5000)
+		};
+
+		for (long seed = 1; seed <= 3; seed++) {
+			double[] coords = createIsochronePoints(seed);
+			for (double threshold : thresholds)
+				assertSameHull(coords, threshold);
+		}
+	}
+}
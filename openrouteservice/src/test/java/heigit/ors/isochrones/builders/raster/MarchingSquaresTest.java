@@ -0,0 +1,107 @@
+package heigit.ors.isochrones.builders.raster;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MarchingSquaresTest {
+    private static double signedArea(double[] ring) {
+        double area = 0;
+        int n = ring.length / 2;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += ring[2 * i] * ring[2 * j + 1] - ring[2 * j] * ring[2 * i + 1];
+        }
+        return area / 2;
+    }
+
+    /**
+     * A 3x3 block of cheap samples around an expensive center.
+     */
+    private static CostGrid createRingGrid() {
+        CostGrid grid = new CostGrid(7, 7);
+        for (int y = 2; y <= 4; y++)
+            for (int x = 2; x <= 4; x++)
+                grid.setMinValue(x, y, 1);
+        grid.setMinValue(3, 3, 0);
+        return grid;
+    }
+
+    @Test
+    public void TestOuterRingAndHole() {
+        CostGrid grid = new CostGrid(7, 7);
+        for (int y = 2; y <= 4; y++)
+            for (int x = 2; x <= 4; x++)
+                grid.setMinValue(x, y, x == 3 && y == 3 ? 10 : 1);
+
+        List<List<double[]>> contours = new MarchingSquares(grid).traceContours(new double[] { 5, 20 });
+
+        List<double[]> rings = contours.get(0);
+        assertEquals(2, rings.size());
+        double a0 = signedArea(rings.get(0));
+        double a1 = signedArea(rings.get(1));
+        // the outer ring runs counter-clockwise, the hole clockwise
+        assertTrue(Math.max(a0, a1) > 0);
+        assertTrue(Math.min(a0, a1) < 0);
+        assertTrue(Math.max(a0, a1) > -Math.min(a0, a1));
+
+        rings = contours.get(1);
+        assertEquals(1, rings.size());
+        assertTrue(signedArea(rings.get(0)) > 0);
+    }
+
+    @Test
+    public void TestNestedThresholds() {
+        CostGrid grid = createRingGrid();
+
+        List<List<double[]>> contours = new MarchingSquares(grid).traceContours(new double[] { 0.5, 2 });
+
+        assertEquals(1, contours.get(0).size());
+        assertEquals(1, contours.get(1).size());
+        double inner = signedArea(contours.get(0).get(0));
+        double outer = signedArea(contours.get(1).get(0));
+        assertTrue(inner > 0);
+        assertTrue(outer > inner);
+
+        // points are interpolated between the sample costs: half way between 0 and 1 is a quarter of the way
+        // from the center to its neighbours
+        for (int i = 0; i < contours.get(0).get(0).length; i += 2) {
+            double dx = contours.get(0).get(0)[i] - 3;
+            double dy = contours.get(0).get(0)[i + 1] - 3;
+            assertEquals(0.5, Math.abs(dx) + Math.abs(dy), 1e-9);
+        }
+    }
+
+    @Test
+    public void TestClosingRestoresIsolatedSample() {
+        CostGrid grid = new CostGrid(9, 9);
+        grid.setMinValue(4, 4, 3);
+
+        grid.applyMinFilter(2);
+        assertEquals(3f, grid.getValue(2, 2), 0);
+        assertEquals(3f, grid.getValue(6, 5), 0);
+        assertTrue(Float.isInfinite(grid.getValue(1, 4)));
+
+        grid.applyMaxFilter(2);
+        assertEquals(3f, grid.getValue(4, 4), 0);
+        assertTrue(Float.isInfinite(grid.getValue(4, 5)));
+    }
+
+    @Test
+    public void TestClosingFillsGaps() {
+        CostGrid grid = new CostGrid(12, 5);
+        grid.setMinValue(3, 2, 1);
+        grid.setMinValue(7, 2, 2);
+
+        grid.applyMinFilter(2);
+        grid.applyMaxFilter(2);
+
+        // the gap between the two samples is filled with the higher of both costs
+        assertEquals(1f, grid.getValue(3, 2), 0);
+        assertEquals(2f, grid.getValue(5, 2), 0);
+        assertEquals(2f, grid.getValue(7, 2), 0);
+        assertTrue(Float.isInfinite(grid.getValue(0, 2)));
+    }
+}
@@ -0,0 +1,83 @@
+package heigit.ors.isochrones.statistics;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatisticsCacheTest {
+    private static final String PROVIDER = "population";
+    private static final String[] PROPERTIES = { "total_pop" };
+
+    private final GeometryFactory _geometryFactory = new GeometryFactory();
+
+    private Geometry createTriangle(double x, double y) {
+        return _geometryFactory.createPolygon(new Coordinate[] { new Coordinate(8.0, 49.0), new Coordinate(x, y),
+                new Coordinate(8.0, 49.1), new Coordinate(8.0, 49.0) });
+    }
+
+    @Test
+    public void TestHit() {
+        StatisticsCache cache = new StatisticsCache(10);
+        assertNull(cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.05)));
+
+        cache.put(PROVIDER, PROPERTIES, createTriangle(8.1, 49.05), new double[] { 42 });
+        double[] values = cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.05));
+        assertArrayEquals(new double[] { 42 }, values, 0);
+
+        // the cache hands out copies
+        values[0] = 0;
+        assertArrayEquals(new double[] { 42 }, cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.05)), 0);
+        assertNull(cache.get(PROVIDER, new String[] { "total_area_km" }, createTriangle(8.1, 49.05)));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void TestHashCollision() {
+        // the hash of the coordinates is 31 * h(x) + h(y) per vertex on the raw bits, so increasing the bits of x by
+        // one and decreasing the bits of y by 31 gives a slightly different geometry with the same hash
+        double x = 8.1;
+        double y = 49.05;
+        double collidingX = Double.longBitsToDouble(Double.doubleToLongBits(x) + 1);
+        double collidingY = Double.longBitsToDouble(Double.doubleToLongBits(y) - 31);
+
+        Geometry geometry = createTriangle(x, y);
+        Geometry colliding = createTriangle(collidingX, collidingY);
+        assertFalse(geometry.equalsExact(colliding));
+
+        StatisticsCache cache = new StatisticsCache(10);
+        cache.put(PROVIDER, PROPERTIES, geometry, new double[] { 42 });
+
+        assertNull(cache.get(PROVIDER, PROPERTIES, colliding));
+        assertEquals(1, cache.getMisses());
+
+        // the colliding geometry replaces the entry under the same key
+        cache.put(PROVIDER, PROPERTIES, colliding, new double[] { 7 });
+        assertEquals(1, cache.getEntriesCount());
+        assertArrayEquals(new double[] { 7 }, cache.get(PROVIDER, PROPERTIES, colliding), 0);
+        assertNull(cache.get(PROVIDER, PROPERTIES, geometry));
+    }
+
+    @Test
+    public void TestLeastRecentlyUsedEviction() {
+        StatisticsCache cache = new StatisticsCache(2);
+        cache.put(PROVIDER, PROPERTIES, createTriangle(8.1, 49.01), new double[] { 1 });
+        cache.put(PROVIDER, PROPERTIES, createTriangle(8.1, 49.02), new double[] { 2 });
+
+        // the access makes the first entry the most recently used one, so the second one is evicted
+        assertNotNull(cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.01)));
+        cache.put(PROVIDER, PROPERTIES, createTriangle(8.1, 49.03), new double[] { 3 });
+
+        assertEquals(2, cache.getEntriesCount());
+        assertNull(cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.02)));
+        assertArrayEquals(new double[] { 1 }, cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.01)), 0);
+        assertArrayEquals(new double[] { 3 }, cache.get(PROVIDER, PROPERTIES, createTriangle(8.1, 49.03)), 0);
+
+        cache.clear();
+        assertEquals(0, cache.getEntriesCount());
+    }
+}
@@ -0,0 +1,91 @@
+package heigit.ors.isochrones.statistics.raster;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+public class PopulationGridTest {
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    /**
+     * 4x4 cells of 0.1 degrees from 8.0/49.0 to 8.4/49.4, the first line is the northernmost row. The cell in the
+     * second row and column has no data, all cells sum up to 130.
+     */
+    private static final String GRID = "ncols 4\n"
+            + "nrows 4\n"
+            + "xllcorner 8.0\n"
+            + "yllcorner 49.0\n"
+            + "cellsize 0.1\n"
+            + "NODATA_value -9999\n"
+            + "1 2 3 4\n"
+            + "5 -9999 7 8\n"
+            + "\n"
+            + "9 10 11 12\n"
+            + "13 14 15 16\n";
+
+    private static PopulationGrid grid;
+
+    @BeforeClass
+    public static void loadGrid() throws IOException {
+        File file = File.createTempFile("population", ".asc");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(GRID);
+        }
+        grid = PopulationGrid.load(file.getPath());
+    }
+
+    private static Coordinate[] rectangle(double minX, double minY, double maxX, double maxY) {
+        return new Coordinate[] { new Coordinate(minX, minY), new Coordinate(maxX, minY), new Coordinate(maxX, maxY),
+                new Coordinate(minX, maxY), new Coordinate(minX, minY) };
+    }
+
+    private static Polygon createRectangle(double minX, double minY, double maxX, double maxY) {
+        return GEOMETRY_FACTORY.createPolygon(rectangle(minX, minY, maxX, maxY));
+    }
+
+    @Test
+    public void TestWholeGrid() {
+        // the border of the polygon runs along the outer cell borders, all centres are inside
+        assertEquals(130, grid.sum(createRectangle(8.0, 49.0, 8.4, 49.4)), 1e-6);
+    }
+
+    @Test
+    public void TestNoDataCell() {
+        // the second and third column of the three northern rows, including the cell without data
+        assertEquals(2 + 3 + 7 + 10 + 11, grid.sum(createRectangle(8.1, 49.1, 8.3, 49.4)), 1e-6);
+    }
+
+    @Test
+    public void TestPolygonBeyondGrid() {
+        // only the centres of the last column in the two southern rows are inside
+        assertEquals(12 + 16, grid.sum(createRectangle(8.28, 48.0, 9.0, 49.2)), 1e-6);
+        assertEquals(0, grid.sum(createRectangle(9.0, 49.0, 9.5, 49.4)), 1e-6);
+    }
+
+    @Test
+    public void TestHole() {
+        LinearRing shell = GEOMETRY_FACTORY.createLinearRing(rectangle(8.0, 49.0, 8.4, 49.4));
+        LinearRing hole = GEOMETRY_FACTORY.createLinearRing(rectangle(8.1, 49.1, 8.3, 49.3));
+        Polygon polygon = GEOMETRY_FACTORY.createPolygon(shell, new LinearRing[] { hole });
+
+        assertEquals(130 - (7 + 10 + 11), grid.sum(polygon), 1e-6);
+    }
+
+    @Test
+    public void TestMultiPolygon() {
+        Polygon[] polygons = { createRectangle(8.1, 49.1, 8.3, 49.4), createRectangle(8.28, 48.0, 9.0, 49.2) };
+
+        assertEquals(33 + 28, grid.sum(GEOMETRY_FACTORY.createMultiPolygon(polygons)), 1e-6);
+    }
+}
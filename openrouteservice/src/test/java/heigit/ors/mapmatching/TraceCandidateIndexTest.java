@@ -0,0 +1,208 @@
+package heigit.ors.mapmatching;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
+import heigit.ors.routing.graphhopper.extensions.flagencoders.FlagEncoderNames;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceCandidateIndexTest {
+	private static final int GRID_SIZE = 10;
+	// about 1 km between the nodes of the grid, so that the grid spans more than one chunk
+	private static final double GRID_STEP = 0.01;
+	private static final double RADIUS = 60;
+
+	private final EncodingManager encoder = new EncodingManager(new ORSDefaultFlagEncoderFactory(), FlagEncoderNames.CAR_ORS, 4);
+	private final DistanceCalc distCalc = Helper.DIST_PLANE;
+
+	private final GraphHopperStorage graph;
+	private final LocationIndexTree locationIndex;
+
+	public TraceCandidateIndexTest() {
+		graph = new GraphHopperStorage(new GHDirectory("", DAType.RAM_STORE), encoder, false, new GraphExtension.NoOpExtension());
+		graph.create(100);
+
+		NodeAccess nodeAccess = graph.getNodeAccess();
+		for (int y = 0; y < GRID_SIZE; y++) {
+			for (int x = 0; x < GRID_SIZE; x++)
+				nodeAccess.setNode(y * GRID_SIZE + x, 49.0 + y * GRID_STEP, 8.0 + x * GRID_STEP);
+		}
+
+		// a grid whose horizontal edges are bent by a pillar node, so that all kinds of snaps occur
+		for (int y = 0; y < GRID_SIZE; y++) {
+			for (int x = 0; x < GRID_SIZE; x++) {
+				int node = y * GRID_SIZE + x;
+				if (x + 1 < GRID_SIZE) {
+					EdgeIteratorState edge = graph.edge(node, node + 1, 120, true);
+					edge.setWayGeometry(Helper.createPointList(49.0 + (y + 0.02) * GRID_STEP, 8.0 + (x + 0.5) * GRID_STEP));
+				}
+				if (y + 1 < GRID_SIZE)
+					graph.edge(node, node + GRID_SIZE, 110, true);
+			}
+		}
+
+		locationIndex = new LocationIndexTree(graph, new RAMDirectory());
+		locationIndex.prepareIndex();
+	}
+
+	@Test
+	public void TestClosestCandidateMatchesLocationIndex() {
+		Coordinate[] trace = createTrace(new Random(1), 200);
+
+		TraceCandidateIndex index = new TraceCandidateIndex(graph, locationIndex);
+		index.build(trace, RADIUS, EdgeFilter.ALL_EDGES);
+
+		for (Coordinate c : trace) {
+			QueryResult expected = locationIndex.findClosest(c.y, c.x, EdgeFilter.ALL_EDGES);
+			int n = index.findCandidates(c.y, c.x, RADIUS);
+
+			if (!expected.isValid() || expected.getQueryDistance() > RADIUS) {
+				assertEquals(0, n);
+				continue;
+			}
+
+			assertTrue(n > 0);
+			QueryResult actual = index.createQueryResult(0, c.y, c.x);
+
+			assertEquals(expected.getQueryDistance(), actual.getQueryDistance(), 1e-6);
+			assertEquals(expected.getSnappedPoint().getLat(), actual.getSnappedPoint().getLat(), 1e-9);
+			assertEquals(expected.getSnappedPoint().getLon(), actual.getSnappedPoint().getLon(), 1e-9);
+			assertEquals(expected.getSnappedPosition(), actual.getSnappedPosition());
+
+			// at tower nodes all edges of the node are equally close, so only the node has to agree
+			if (expected.getSnappedPosition() == QueryResult.Position.TOWER)
+				assertEquals(expected.getClosestNode(), actual.getClosestNode());
+			else {
+				assertEquals(expected.getClosestEdge().getEdge(), actual.getClosestEdge().getEdge());
+				assertEquals(expected.getWayIndex(), getWayIndex(actual, expected.getClosestEdge().getBaseNode()));
+			}
+		}
+	}
+
+	@Test
+	public void TestCandidatesAreAllEdgesWithinRadius() {
+		Coordinate[] trace = createTrace(new Random(2), 100);
+
+		TraceCandidateIndex index = new TraceCandidateIndex(graph, locationIndex);
+		index.build(trace, RADIUS, EdgeFilter.ALL_EDGES);
+
+		for (Coordinate c : trace) {
+			int n = index.findCandidates(c.y, c.x, RADIUS);
+
+			Set<Integer> actual = new HashSet<Integer>();
+			for (int i = 0; i < n; i++) {
+				actual.add(index.getEdge(i));
+				if (i > 0)
+					assertTrue(index.getDistance(i - 1) <= index.getDistance(i));
+			}
+
+			assertEquals(findEdgesWithinRadius(c), actual);
+		}
+	}
+
+	@Test
+	public void TestChunksMatchWholeTrace() {
+		// along a row of nodes through the whole grid, which needs several chunks
+		Coordinate[] trace = new Coordinate[400];
+		double extent = (GRID_SIZE - 1) * GRID_STEP;
+		for (int i = 0; i < trace.length; i++)
+			trace[i] = new Coordinate(8.0 + i * extent / trace.length, 49.0 + 4 * GRID_STEP + 0.0002);
+
+		TraceCandidateIndex whole = new TraceCandidateIndex(graph, locationIndex);
+		whole.build(trace, RADIUS, EdgeFilter.ALL_EDGES);
+		TraceCandidateIndex chunked = new TraceCandidateIndex(graph, locationIndex);
+
+		int end = 0;
+		for (int t = 0; t < trace.length; t++) {
+			if (t >= end) {
+				end = chunked.buildChunk(trace, t, RADIUS, EdgeFilter.ALL_EDGES);
+				assertTrue(end > t);
+			}
+
+			Coordinate c = trace[t];
+			int n = whole.findCandidates(c.y, c.x, RADIUS);
+			assertEquals(n, chunked.findCandidates(c.y, c.x, RADIUS));
+			for (int i = 0; i < n; i++) {
+				assertEquals(whole.getEdge(i), chunked.getEdge(i));
+				assertEquals(whole.getDistance(i), chunked.getDistance(i), 1e-9);
+			}
+		}
+
+		chunked.trim();
+		assertEquals(0, chunked.findCandidates(trace[0].y, trace[0].x, RADIUS));
+	}
+
+	/**
+	 * Returns the way index of the snap as counted from the given end of its edge, since the location index may
+	 * return the edge in either direction.
+	 */
+	private static int getWayIndex(QueryResult qr, int baseNode) {
+		EdgeIteratorState edge = qr.getClosestEdge();
+		if (edge.getBaseNode() == baseNode)
+			return qr.getWayIndex();
+
+		int last = edge.fetchWayGeometry(3).size() - 1;
+		return qr.getSnappedPosition() == QueryResult.Position.EDGE ? last - 1 - qr.getWayIndex() : last - qr.getWayIndex();
+	}
+
+	/**
+	 * Creates random points close to the lines of the grid, up to about 100 m off.
+	 */
+	private Coordinate[] createTrace(Random random, int size) {
+		Coordinate[] trace = new Coordinate[size];
+		double extent = (GRID_SIZE - 1) * GRID_STEP;
+		for (int i = 0; i < size; i++) {
+			double along = random.nextDouble() * extent;
+			double across = random.nextInt(GRID_SIZE) * GRID_STEP + (random.nextDouble() - 0.5) * 0.0018;
+			if (random.nextBoolean())
+				trace[i] = new Coordinate(8.0 + along, 49.0 + across);
+			else
+				trace[i] = new Coordinate(8.0 + across, 49.0 + along);
+		}
+		return trace;
+	}
+
+	private Set<Integer> findEdgesWithinRadius(Coordinate c) {
+		double maxDist = distCalc.calcNormalizedDist(RADIUS);
+		Set<Integer> edges = new HashSet<Integer>();
+
+		for (int edge = 0; edge < graph.getAllEdges().getMaxId(); edge++) {
+			PointList points = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).fetchWayGeometry(3);
+			for (int i = 0; i + 1 < points.size(); i++) {
+				double dist;
+				if (distCalc.validEdgeDistance(c.y, c.x, points.getLat(i), points.getLon(i), points.getLat(i + 1), points.getLon(i + 1)))
+					dist = distCalc.calcNormalizedEdgeDistance(c.y, c.x, points.getLat(i), points.getLon(i), points.getLat(i + 1), points.getLon(i + 1));
+				else
+					dist = Math.min(distCalc.calcNormalizedDist(c.y, c.x, points.getLat(i), points.getLon(i)),
+							distCalc.calcNormalizedDist(c.y, c.x, points.getLat(i + 1), points.getLon(i + 1)));
+
+				if (dist <= maxDist) {
+					edges.add(edge);
+					break;
+				}
+			}
+		}
+
+		return edges;
+	}
+}
@@ -0,0 +1,46 @@
+package heigit.ors.mapmatching.hmm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HmmProbabilityModelTest {
+	private static final double MAX_SPEED = 100;
+
+	@Test
+	public void TestEmissionMatchesGaussian() {
+		double sigma = HmmProbabilityModel.SIGMA_Z;
+		double expected = Math.exp(-0.5 * (10 / sigma) * (10 / sigma)) / (Math.sqrt(2 * Math.PI) * sigma);
+
+		assertEquals(expected, Math.exp(HmmProbabilityModel.logEmission(10)), 1e-12);
+		assertTrue(HmmProbabilityModel.logEmission(0) > HmmProbabilityModel.logEmission(5));
+	}
+
+	@Test
+	public void TestDirectPathIsMostLikely() {
+		double gpsDistance = 200;
+		double perfTime = gpsDistance / MAX_SPEED * 3600;
+		double direct = HmmProbabilityModel.logTransition(gpsDistance, gpsDistance, perfTime, MAX_SPEED);
+
+		assertEquals(-Math.log(HmmProbabilityModel.BETA), direct, 1e-9);
+		assertTrue(HmmProbabilityModel.logTransition(gpsDistance, 300, perfTime, MAX_SPEED) < direct);
+		assertTrue(HmmProbabilityModel.logTransition(gpsDistance, gpsDistance, 2 * perfTime, MAX_SPEED) < direct);
+	}
+
+	@Test
+	public void TestDeviationIsRelativeToStep() {
+		// the same relative detour is as likely on short and on long steps
+		double shortStep = HmmProbabilityModel.logTransition(100, 120, 100 / MAX_SPEED * 3600, MAX_SPEED);
+		double longStep = HmmProbabilityModel.logTransition(1000, 1200, 1000 / MAX_SPEED * 3600, MAX_SPEED);
+
+		assertEquals(shortStep, longStep, 1e-9);
+	}
+
+	@Test
+	public void TestRepeatedMeasurement() {
+		double logProb = HmmProbabilityModel.logTransition(0, 0, 0, MAX_SPEED);
+
+		assertFalse(Double.isNaN(logProb));
+		assertFalse(Double.isInfinite(logProb));
+	}
+}
@@ -0,0 +1,123 @@
+package heigit.ors.mapmatching.hmm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OnlineViterbiSolverTest {
+    private static class Recorder implements OnlineViterbiSolver.CommitListener {
+        private final List<Integer> times = new ArrayList<Integer>();
+        private final List<Integer> states = new ArrayList<Integer>();
+
+        @Override
+        public void commit(int time, int state) {
+            times.add(time);
+            states.add(state);
+        }
+    }
+
+    private static void addDense(OnlineViterbiSolver solver, double[][] trans, double[][] emission, int t) {
+        int n = trans.length;
+        double[] logEmissions = new double[n];
+        int[] from = new int[n * n];
+        int[] to = new int[n * n];
+        double[] logTrans = new double[n * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            logEmissions[i] = Math.log(emission[i][t]);
+            for (int j = 0; j < n; j++) {
+                from[k] = i;
+                to[k] = j;
+                logTrans[k] = Math.log(trans[i][j]);
+                k++;
+            }
+        }
+        assertTrue(solver.next(logEmissions, n, from, to, logTrans, k));
+    }
+
+    @Test
+    public void TestMatchesDenseSolver() {
+        Random rnd = new Random(7);
+        for (int run = 0; run < 20; run++) {
+            int nStates = 2 + rnd.nextInt(4);
+            int nObservations = 2 + rnd.nextInt(20);
+            double[] start = new double[nStates];
+            double[][] trans = new double[nStates][nStates];
+            double[][] emission = new double[nStates][nObservations];
+            for (int i = 0; i < nStates; i++) {
+                start[i] = rnd.nextDouble() + 0.01;
+                for (int j = 0; j < nStates; j++)
+                    trans[i][j] = rnd.nextDouble() + 0.01;
+                for (int t = 0; t < nObservations; t++)
+                    emission[i][t] = rnd.nextDouble() + 0.01;
+            }
+
+            int[] expected = new ViterbiSolver().findPath(start, trans, emission, true);
+
+            Recorder recorder = new Recorder();
+            OnlineViterbiSolver solver = new OnlineViterbiSolver(recorder, 1000);
+            double[] logStart = new double[nStates];
+            for (int i = 0; i < nStates; i++)
+                logStart[i] = Math.log(start[i] * emission[i][0]);
+            assertTrue(solver.start(logStart, nStates));
+            for (int t = 1; t < nObservations; t++)
+                addDense(solver, trans, emission, t);
+            solver.finish();
+
+            assertEquals(nObservations, recorder.states.size());
+            for (int t = 0; t < nObservations; t++) {
+                assertEquals(t, (int) recorder.times.get(t));
+                assertEquals(expected[t], (int) recorder.states.get(t));
+            }
+        }
+    }
+
+    @Test
+    public void TestCommitsConvergedPaths() {
+        Recorder recorder = new Recorder();
+        OnlineViterbiSolver solver = new OnlineViterbiSolver(recorder, 1000);
+        assertTrue(solver.start(new double[]{Math.log(0.5), Math.log(0.5)}, 2));
+
+        // both states of step 1 can only be reached from state 1 of step 0
+        assertTrue(solver.next(new double[]{0, 0}, 2, new int[]{1, 1}, new int[]{0, 1}, new double[]{0, 0}, 2));
+        assertEquals(1, recorder.states.size());
+        assertEquals(1, (int) recorder.states.get(0));
+        assertEquals(1, solver.getWindowSize());
+
+        // no transition leads anywhere: the solver does not change
+        assertFalse(solver.next(new double[]{0, 0}, 2, new int[0], new int[0], new double[0], 0));
+        assertEquals(1, solver.getTime());
+    }
+
+    @Test
+    public void TestWindowIsBounded() {
+        Random rnd = new Random(3);
+        int nStates = 3;
+        int nObservations = 50;
+        double[][] trans = new double[nStates][nStates];
+        double[][] emission = new double[nStates][nObservations];
+        for (int i = 0; i < nStates; i++) {
+            for (int j = 0; j < nStates; j++)
+                trans[i][j] = 1.0 / nStates;
+            for (int t = 0; t < nObservations; t++)
+                emission[i][t] = rnd.nextDouble() + 0.5;
+        }
+
+        Recorder recorder = new Recorder();
+        OnlineViterbiSolver solver = new OnlineViterbiSolver(recorder, 4);
+        assertTrue(solver.start(new double[]{0, 0, 0}, nStates));
+        for (int t = 1; t < nObservations; t++) {
+            addDense(solver, trans, emission, t);
+            assertTrue(solver.getWindowSize() <= 4);
+        }
+        solver.finish();
+
+        assertEquals(nObservations, recorder.states.size());
+        for (int t = 0; t < nObservations; t++)
+            assertEquals(t, (int) recorder.times.get(t));
+    }
+}
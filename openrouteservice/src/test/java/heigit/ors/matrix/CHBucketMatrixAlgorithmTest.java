@@ -0,0 +1,57 @@
+package heigit.ors.matrix;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.matrix.algorithms.buckets.CHBucketMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CHBucketMatrixAlgorithmTest {
+	private final MatrixTestGraph _graph = new MatrixTestGraph(false);
+
+	@Test
+	public void TestSameResultsAsRPHAST() throws Exception {
+		// the first two sources are destinations as well, the island is reachable from itself only
+		Coordinate[] sources = new Coordinate[] {
+				MatrixTestGraph.getNode(2, 2),
+				MatrixTestGraph.getEdgePoint(3, 1),
+				MatrixTestGraph.getNode(0, 4),
+				MatrixTestGraph.getEdgePoint(1, 0),
+				MatrixTestGraph.getIsland()
+		};
+		Coordinate[] destinations = new Coordinate[] {
+				MatrixTestGraph.getNode(4, 0),
+				MatrixTestGraph.getNode(2, 2),
+				MatrixTestGraph.getEdgePoint(3, 1),
+				MatrixTestGraph.getNode(1, 3),
+				MatrixTestGraph.getIsland()
+		};
+
+		MatrixResult expected = _graph.compute(new RPHASTMatrixAlgorithm(), sources, destinations, true);
+		MatrixResult actual = _graph.compute(new CHBucketMatrixAlgorithm(), sources, destinations, true);
+
+		float[] durations = actual.getTable(MatrixMetricsType.Duration);
+		float[] distances = actual.getTable(MatrixMetricsType.Distance);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Duration), durations, 1e-3f);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Distance), distances, 1e-3f);
+
+		int dstCount = destinations.length;
+		assertEquals(0, durations[1], 0);
+		assertEquals(0, distances[1], 0);
+		assertEquals(0, durations[dstCount + 2], 0);
+		assertEquals(0, distances[dstCount + 2], 0);
+
+		for (int i = 0; i < sources.length - 1; i++) {
+			for (int j = 0; j < dstCount - 1; j++) {
+				if (!sources[i].equals(destinations[j]))
+					assertTrue(durations[i * dstCount + j] > 0);
+			}
+
+			assertEquals(-1, durations[i * dstCount + dstCount - 1], 0);
+			assertEquals(-1, distances[i * dstCount + dstCount - 1], 0);
+			assertEquals(-1, durations[(sources.length - 1) * dstCount + i], 0);
+		}
+		assertEquals(0, durations[sources.length * dstCount - 1], 0);
+	}
+}
@@ -0,0 +1,43 @@
+package heigit.ors.matrix;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.lm.LMMatrixAlgorithm;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LMMatrixAlgorithmTest {
+	private final MatrixTestGraph _graph = new MatrixTestGraph(true);
+
+	@Test
+	public void TestSameResultsAsDijkstra() throws Exception {
+		Coordinate[] sources = new Coordinate[] {
+				MatrixTestGraph.getNode(0, 0),
+				MatrixTestGraph.getEdgePoint(2, 3),
+				MatrixTestGraph.getNode(4, 2)
+		};
+		// the targets are spread over the grid, the one on the one-way street is snapped to a virtual node
+		Coordinate[] destinations = new Coordinate[] {
+				MatrixTestGraph.getNode(4, 4),
+				MatrixTestGraph.getEdgePoint(3, 1),
+				MatrixTestGraph.getNode(1, 2),
+				MatrixTestGraph.getNode(0, 3),
+				MatrixTestGraph.getNode(0, 0)
+		};
+
+		MatrixResult expected = _graph.compute(new DijkstraMatrixAlgorithm(), sources, destinations, false);
+		MatrixResult actual = _graph.compute(new LMMatrixAlgorithm(), sources, destinations, false);
+
+		float[] durations = actual.getTable(MatrixMetricsType.Duration);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Duration), durations, 1e-3f);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Distance), actual.getTable(MatrixMetricsType.Distance), 1e-3f);
+
+		for (int i = 0; i < durations.length; i++) {
+			if (i == destinations.length - 1)
+				assertEquals(0, durations[i], 0);
+			else
+				assertTrue(durations[i] > 0);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package heigit.ors.matrix;
+
+import java.util.Collections;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.common.DistanceUnit;
+import heigit.ors.matrix.algorithms.MatrixAlgorithm;
+import heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
+import heigit.ors.routing.graphhopper.extensions.flagencoders.FlagEncoderNames;
+
+/**
+ * Grid of {@link #SIZE} x {@link #SIZE} nodes with varying speeds and a few one-way streets, plus an island of two
+ * nodes which cannot be reached from the grid. The graph is contracted and, if requested, has landmarks, so that all
+ * matrix algorithms can be run on it.
+ */
+class MatrixTestGraph {
+	static final int SIZE = 5;
+
+	private static final double LAT = 49.40;
+	private static final double LON = 8.68;
+	private static final double STEP = 0.002;
+	private static final double[] SPEEDS = { 30, 50, 70, 90 };
+
+	private final FlagEncoder _encoder;
+	private final Weighting _weighting;
+	private final GraphHopperStorage _storage;
+	private final GraphHopper _graphHopper;
+	private final LocationIndex _locationIndex;
+
+	MatrixTestGraph(boolean landmarks) {
+		EncodingManager encodingManager = new EncodingManager(new ORSDefaultFlagEncoderFactory(), FlagEncoderNames.CAR_ORS, 4);
+		_encoder = encodingManager.getEncoder(FlagEncoderNames.CAR_ORS);
+		_weighting = new FastestWeighting(_encoder);
+		_storage = new GraphHopperStorage(Collections.singletonList(_weighting), new RAMDirectory(), encodingManager, false, new GraphExtension.NoOpExtension()).create(100);
+
+		NodeAccess nodeAccess = _storage.getNodeAccess();
+		for (int row = 0; row < SIZE; row++)
+			for (int col = 0; col < SIZE; col++)
+				nodeAccess.setNode(getNodeId(row, col), LAT + row * STEP, LON + col * STEP);
+		nodeAccess.setNode(SIZE * SIZE, LAT + 0.05, LON);
+		nodeAccess.setNode(SIZE * SIZE + 1, LAT + 0.05, LON + STEP);
+
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				double speed = SPEEDS[(row + 2 * col) % SPEEDS.length];
+				// rows 1 and 3 are one-way streets in opposite directions, column 2 is one-way to the north
+				if (col + 1 < SIZE) {
+					if (row == 3)
+						addEdge(getNodeId(row, col + 1), getNodeId(row, col), speed, false);
+					else
+						addEdge(getNodeId(row, col), getNodeId(row, col + 1), speed, row != 1);
+				}
+				if (row + 1 < SIZE)
+					addEdge(getNodeId(row, col), getNodeId(row + 1, col), SPEEDS[(row + col + 1) % SPEEDS.length], col != 2);
+			}
+		}
+		addEdge(SIZE * SIZE, SIZE * SIZE + 1, 50, true);
+
+		_storage.freeze();
+
+		_graphHopper = new GraphHopper();
+		_graphHopper.setEncodingManager(encodingManager);
+
+		PrepareContractionHierarchies prepareCH = new PrepareContractionHierarchies(new RAMDirectory(), _storage,
+				_storage.getGraph(CHGraph.class, _weighting), _weighting, TraversalMode.NODE_BASED);
+		prepareCH.doWork();
+		_graphHopper.getCHFactoryDecorator().addWeighting(_weighting);
+		_graphHopper.getCHFactoryDecorator().addPreparation(prepareCH);
+
+		if (landmarks) {
+			PrepareLandmarks prepareLM = new PrepareLandmarks(new RAMDirectory(), _storage, _weighting,
+					TraversalMode.NODE_BASED, 4, 2);
+			// the island is too small to get landmarks of its own
+			prepareLM.setMinimumNodes(SIZE * SIZE / 2);
+			prepareLM.doWork();
+			_graphHopper.getLMFactoryDecorator().setEnabled(true);
+			_graphHopper.getLMFactoryDecorator().addWeighting(_weighting);
+			_graphHopper.getLMFactoryDecorator().addPreparation(prepareLM);
+		}
+
+		_graphHopper.setGraphHopperStorage(_storage);
+		_locationIndex = new LocationIndexTree(_storage, new RAMDirectory()).prepareIndex();
+	}
+
+	private static int getNodeId(int row, int col) {
+		return row * SIZE + col;
+	}
+
+	private void addEdge(int from, int to, double speed, boolean bothDirections) {
+		NodeAccess nodeAccess = _storage.getNodeAccess();
+		double distance = Helper.DIST_EARTH.calcDist(nodeAccess.getLat(from), nodeAccess.getLon(from),
+				nodeAccess.getLat(to), nodeAccess.getLon(to));
+		_storage.edge(from, to, distance, bothDirections).setFlags(_encoder.setProperties(speed, true, bothDirections));
+	}
+
+	/**
+	 * Returns the location of a grid node.
+	 */
+	static Coordinate getNode(int row, int col) {
+		return new Coordinate(LON + col * STEP, LAT + row * STEP);
+	}
+
+	/**
+	 * Returns a location a bit off the edge to the east of the grid node, which is snapped to a virtual node.
+	 */
+	static Coordinate getEdgePoint(int row, int col) {
+		return new Coordinate(LON + (col + 0.3) * STEP, LAT + row * STEP + 0.00005);
+	}
+
+	/**
+	 * Returns a location on the island which cannot be reached from the grid.
+	 */
+	static Coordinate getIsland() {
+		return new Coordinate(LON, LAT + 0.05);
+	}
+
+	/**
+	 * Computes durations and distances of the fastest routes, on the contracted graph or on the base graph.
+	 */
+	MatrixResult compute(MatrixAlgorithm algorithm, Coordinate[] sources, Coordinate[] destinations, boolean contracted) throws Exception {
+		MatrixRequest req = new MatrixRequest();
+		req.setSources(sources);
+		req.setDestinations(destinations);
+		req.setMetrics(MatrixMetricsType.Duration | MatrixMetricsType.Distance);
+		req.setUnits(DistanceUnit.Meters);
+		req.setWeightingMethod("fastest");
+		req.setFlexibleMode(!contracted);
+
+		Graph graph = contracted ? _storage.getGraph(CHGraph.class, _weighting) : _storage.getBaseGraph();
+		MatrixSearchContext searchContext = new MatrixSearchContextBuilder(_locationIndex, new DefaultEdgeFilter(_encoder), false)
+				.create(graph, sources, destinations, 1000);
+
+		algorithm.init(req, _graphHopper, searchContext.getGraph(), _encoder, _weighting);
+		return algorithm.compute(searchContext.getSources(), searchContext.getDestinations(), req.getMetrics());
+	}
+}
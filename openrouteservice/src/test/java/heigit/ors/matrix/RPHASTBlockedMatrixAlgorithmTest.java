@@ -0,0 +1,72 @@
+package heigit.ors.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.matrix.algorithms.rphast.RPHASTBlockedMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RPHASTBlockedMatrixAlgorithmTest {
+	private final MatrixTestGraph _graph = new MatrixTestGraph(false);
+
+	private static Coordinate[] createSources(int count) {
+		List<Coordinate> sources = new ArrayList<Coordinate>(count);
+		for (int i = 0; sources.size() < count; i++) {
+			int row = (i * 3) % MatrixTestGraph.SIZE;
+			int col = i % (MatrixTestGraph.SIZE - 1);
+			sources.add(i % 4 == 3 ? MatrixTestGraph.getEdgePoint(row, col) : MatrixTestGraph.getNode(row, col));
+		}
+		return sources.toArray(new Coordinate[count]);
+	}
+
+	private static Coordinate[] createDestinations() {
+		return new Coordinate[] {
+				MatrixTestGraph.getNode(0, 0),
+				MatrixTestGraph.getNode(4, 4),
+				MatrixTestGraph.getNode(2, 3),
+				MatrixTestGraph.getEdgePoint(3, 1),
+				MatrixTestGraph.getEdgePoint(1, 2),
+				MatrixTestGraph.getIsland()
+		};
+	}
+
+	private void assertSameResults(int sourcesCount) throws Exception {
+		Coordinate[] sources = createSources(sourcesCount);
+		Coordinate[] destinations = createDestinations();
+
+		MatrixResult expected = _graph.compute(new RPHASTMatrixAlgorithm(), sources, destinations, true);
+		MatrixResult actual = _graph.compute(new RPHASTBlockedMatrixAlgorithm(), sources, destinations, true);
+
+		float[] durations = actual.getTable(MatrixMetricsType.Duration);
+		float[] distances = actual.getTable(MatrixMetricsType.Distance);
+		assertEquals(sourcesCount * destinations.length, durations.length);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Duration), durations, 1e-3f);
+		assertArrayEquals(expected.getTable(MatrixMetricsType.Distance), distances, 1e-3f);
+
+		// the island is not reachable, the other destinations are
+		for (int i = 0; i < sourcesCount; i++) {
+			for (int j = 0; j < destinations.length - 1; j++)
+				assertTrue(durations[i * destinations.length + j] >= 0);
+			assertEquals(-1, durations[(i + 1) * destinations.length - 1], 0);
+		}
+	}
+
+	@Test
+	public void TestLessSourcesThanBlockSize() throws Exception {
+		assertSameResults(3);
+	}
+
+	@Test
+	public void TestOneBlock() throws Exception {
+		assertSameResults(RPHASTBlockedMatrixAlgorithm.BLOCK_SIZE);
+	}
+
+	@Test
+	public void TestPartialLastBlock() throws Exception {
+		assertSameResults(2 * RPHASTBlockedMatrixAlgorithm.BLOCK_SIZE - 3);
+	}
+}
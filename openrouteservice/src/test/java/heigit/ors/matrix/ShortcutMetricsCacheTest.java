@@ -0,0 +1,81 @@
+package heigit.ors.matrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShortcutMetricsCacheTest {
+    @Test
+    public void TestBothDirections() {
+        ShortcutMetricsCache cache = new ShortcutMetricsCache(100);
+        double[] values = new double[3];
+        assertFalse(cache.get(7, 3, values));
+
+        cache.put(7, 5, 3, 10.0, 100.0, 12.0);
+        cache.put(7, 3, 5, 20.0, 100.0, 24.0);
+
+        assertTrue(cache.get(7, 3, values));
+        assertEquals(10.0, values[0], 1e-6);
+        assertEquals(12.0, values[2], 1e-6);
+
+        assertTrue(cache.get(7, 5, values));
+        assertEquals(20.0, values[0], 1e-6);
+        assertEquals(100.0, values[1], 1e-6);
+
+        assertFalse(cache.get(7, 4, values));
+    }
+
+    @Test
+    public void TestNotCacheableEdges() {
+        ShortcutMetricsCache cache = new ShortcutMetricsCache(10);
+        assertFalse(cache.isCacheable(10));
+
+        cache.put(2, 4, 4, 1.0, 1.0, 1.0);
+        assertFalse(cache.get(2, 4, new double[3]));
+    }
+
+    @Test
+    public void TestLargeEdgeIds() {
+        ShortcutMetricsCache cache = new ShortcutMetricsCache(1000000);
+        double[] values = new double[3];
+        cache.put(999999, 1, 2, 3.0, 4.0, 5.0);
+
+        assertTrue(cache.get(999999, 2, values));
+        assertEquals(4.0, values[1], 1e-6);
+        assertFalse(cache.get(999998, 2, values));
+    }
+
+    @Test
+    public void TestValuesAreNotRounded() {
+        ShortcutMetricsCache cache = new ShortcutMetricsCache(10);
+        double[] values = new double[3];
+        // a long distance which a float cannot represent exactly
+        cache.put(1, 0, 1, 123456.789, 9876543.21, 0.1);
+
+        assertTrue(cache.get(1, 1, values));
+        assertEquals(123456.789, values[0], 0.0);
+        assertEquals(9876543.21, values[1], 0.0);
+        assertEquals(0.1, values[2], 0.0);
+    }
+
+    @Test
+    public void TestPagesAreEvicted() {
+        // one page holds the entries of 2048 edges
+        ShortcutMetricsCache cache = new ShortcutMetricsCache(100000, 2 * 4096);
+        double[] values = new double[3];
+
+        cache.put(0, 0, 1, 1.0, 1.0, 1.0);
+        cache.put(5000, 0, 1, 2.0, 2.0, 2.0);
+        assertEquals(2, cache.getPagesCount());
+
+        // the first page has been read, so the second one is evicted
+        assertTrue(cache.get(0, 1, values));
+        cache.put(10000, 0, 1, 3.0, 3.0, 3.0);
+
+        assertEquals(2, cache.getPagesCount());
+        assertTrue(cache.get(0, 1, values));
+        assertFalse(cache.get(5000, 1, values));
+        assertTrue(cache.get(10000, 1, values));
+        assertEquals(3.0, values[0], 0.0);
+    }
+}
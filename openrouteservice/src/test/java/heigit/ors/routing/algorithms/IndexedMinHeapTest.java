@@ -0,0 +1,72 @@
+package heigit.ors.routing.algorithms;
+
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexedMinHeapTest {
+    @Test
+    public void TestPollOrder() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.push(1, 5.0);
+        heap.push(2, 1.0);
+        heap.push(3, 3.0);
+
+        assertEquals(3, heap.size());
+        assertEquals(2, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(1, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void TestDecreaseAndIncreaseKey() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.push(1, 5.0);
+        heap.push(2, 1.0);
+        heap.push(3, 3.0);
+
+        heap.push(1, 0.5);
+        assertEquals(3, heap.size());
+        assertEquals(1, heap.peekKey());
+        assertEquals(0.5, heap.peekWeight(), 0.0);
+
+        heap.push(1, 10.0);
+        assertEquals(2, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(1, heap.poll());
+        assertFalse(heap.contains(1));
+    }
+
+    @Test
+    public void TestMatchesPriorityQueue() {
+        Random rnd = new Random(42);
+        IndexedMinHeap heap = new IndexedMinHeap(16);
+        double[] weights = new double[1000];
+        PriorityQueue<Double> reference = new PriorityQueue<Double>();
+
+        for (int key = 0; key < weights.length; key++) {
+            weights[key] = rnd.nextDouble() * 1000;
+            heap.push(key, weights[key]);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            int key = rnd.nextInt(weights.length);
+            weights[key] = weights[key] * rnd.nextDouble();
+            heap.push(key, weights[key]);
+        }
+
+        for (double weight : weights)
+            reference.add(weight);
+
+        while (!reference.isEmpty()) {
+            double expected = reference.poll();
+            assertEquals(expected, heap.peekWeight(), 0.0);
+            assertEquals(expected, weights[heap.poll()], 0.0);
+        }
+        assertTrue(heap.isEmpty());
+    }
+}
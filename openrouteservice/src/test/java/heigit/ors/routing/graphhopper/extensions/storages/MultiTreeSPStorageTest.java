@@ -0,0 +1,71 @@
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.graphhopper.util.EdgeIterator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MultiTreeSPStorageTest {
+    @Test
+    public void TestSourceEntryCreation() {
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(3, 4);
+
+        int slot = storage.addEntry(10, EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+        storage.setWeight(slot, 1, 0.0);
+
+        assertEquals(slot, storage.getSlot(10));
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getSlot(11));
+        assertEquals(10, storage.getAdjNode(slot));
+        assertEquals(0.0, storage.getWeight(slot, 1), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, storage.getWeight(slot, 0), 0.0);
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getParent(slot, 1));
+    }
+
+    @Test
+    public void TestEntryDerivedFromParent() {
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(2, 4);
+
+        int source = storage.addEntry(1, EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+        storage.setWeight(source, 0, 0.0);
+
+        int slot = storage.addEntry(2, 5, 3.5, true, source);
+
+        assertEquals(3.5, storage.getWeight(slot, 0), 0.0);
+        assertEquals(5, storage.getEdge(slot, 0));
+        assertEquals(source, storage.getParent(slot, 0));
+        assertTrue(storage.isUpdate(slot, 0));
+
+        assertEquals(Double.POSITIVE_INFINITY, storage.getWeight(slot, 1), 0.0);
+        assertEquals(EdgeIterator.NO_EDGE, storage.getEdge(slot, 1));
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getParent(slot, 1));
+        assertFalse(storage.isUpdate(slot, 1));
+        assertEquals(3.5, storage.getTotalWeight(slot), 0.0);
+
+        storage.setItem(slot, 1, 2.0, 7, source);
+        storage.updateTotalWeight(slot);
+        assertEquals(5.5, storage.getTotalWeight(slot), 0.0);
+    }
+
+    @Test
+    public void TestGrowKeepsLabels() {
+        MultiTreeSPStorage storage = new MultiTreeSPStorage(2, 1);
+
+        int prev = storage.addEntry(0, EdgeIterator.NO_EDGE, 0.0, true, MultiTreeSPStorage.NO_SLOT);
+        storage.setWeight(prev, 0, 0.0);
+        storage.setWeight(prev, 1, 0.0);
+
+        for (int node = 1; node < 100; node++)
+            prev = storage.addEntry(node, node, 1.0, false, prev);
+
+        assertEquals(100, storage.size());
+        for (int node = 0; node < 100; node++) {
+            int slot = storage.getSlot(node);
+            assertEquals(node, storage.getWeight(slot, 0), 0.0);
+            assertEquals(node, storage.getWeight(slot, 1), 0.0);
+        }
+
+        storage.clear();
+        assertEquals(0, storage.size());
+        assertEquals(MultiTreeSPStorage.NO_SLOT, storage.getSlot(5));
+    }
+}
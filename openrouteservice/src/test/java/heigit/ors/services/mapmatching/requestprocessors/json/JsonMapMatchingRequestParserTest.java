@@ -0,0 +1,55 @@
+package heigit.ors.services.mapmatching.requestprocessors.json;
+
+import java.util.List;
+
+import heigit.ors.exceptions.StatusCodeException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonMapMatchingRequestParserTest {
+	private static final String TRACE_1 = "{\"profile\":\"driving-car\",\"coordinates\":[[8.68,49.41],[8.69,49.42]]}";
+	private static final String TRACE_2 = "{\"profile\":\"cycling-regular\",\"coordinates\":[[8.70,49.40],[8.71,49.41]]}";
+
+	private static void assertTraces(List<JSONObject> traces, String... profiles) {
+		assertEquals(profiles.length, traces.size());
+		for (int i = 0; i < profiles.length; i++)
+			assertEquals(profiles[i], traces.get(i).getString("profile"));
+	}
+
+	@Test
+	public void TestArray() throws Exception {
+		assertTraces(JsonMapMatchingRequestParser.parseBatch(" [" + TRACE_1 + ",\n" + TRACE_2 + "]\n", false), "driving-car", "cycling-regular");
+	}
+
+	@Test
+	public void TestSingleObject() throws Exception {
+		assertTraces(JsonMapMatchingRequestParser.parseBatch(TRACE_1, false), "driving-car");
+	}
+
+	@Test
+	public void TestNdjson() throws Exception {
+		assertTraces(JsonMapMatchingRequestParser.parseBatch(TRACE_1 + "\r\n" + TRACE_2 + "\n", true), "driving-car", "cycling-regular");
+	}
+
+	@Test
+	public void TestNdjsonBlankLines() throws Exception {
+		assertTraces(JsonMapMatchingRequestParser.parseBatch("\n" + TRACE_1 + "\n  \n\n" + TRACE_2 + "\n\n", true), "driving-car", "cycling-regular");
+	}
+
+	@Test(expected = StatusCodeException.class)
+	public void TestNdjsonSentAsJson() throws Exception {
+		JsonMapMatchingRequestParser.parseBatch(TRACE_1 + "\n" + TRACE_2, false);
+	}
+
+	@Test(expected = StatusCodeException.class)
+	public void TestArraySentAsNdjson() throws Exception {
+		JsonMapMatchingRequestParser.parseBatch("[" + TRACE_1 + "]", true);
+	}
+
+	@Test(expected = StatusCodeException.class)
+	public void TestBlankBody() throws Exception {
+		JsonMapMatchingRequestParser.parseBatch(" \n ", true);
+	}
+}
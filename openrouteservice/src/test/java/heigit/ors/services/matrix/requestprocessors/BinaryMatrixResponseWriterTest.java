@@ -0,0 +1,50 @@
+package heigit.ors.services.matrix.requestprocessors;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class BinaryMatrixResponseWriterTest {
+    @Test
+    public void TestLayout() throws Exception {
+        MatrixRequest req = new MatrixRequest();
+        req.setSources(new Coordinate[] { new Coordinate(8.68, 49.41), new Coordinate(8.69, 49.42) });
+        req.setDestinations(new Coordinate[] { new Coordinate(8.7, 49.4), new Coordinate(8.71, 49.43), new Coordinate(8.72, 49.44) });
+        req.setMetrics(MatrixMetricsType.Duration | MatrixMetricsType.Distance);
+
+        MatrixResult result = new MatrixResult(null, null);
+        result.setTable(MatrixMetricsType.Duration, new float[] { 0, 1.5f, -1, 3, 4, 5 });
+        result.setTable(MatrixMetricsType.Distance, new float[] { 10, 11, 12, 13, 14, 15 });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new BinaryMatrixResponseWriter(stream).write(req, result);
+
+        ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(20 + 2 * 6 * 4, buffer.remaining());
+        assertEquals('O', buffer.get());
+        assertEquals('R', buffer.get());
+        assertEquals('S', buffer.get());
+        assertEquals('M', buffer.get());
+        assertEquals(BinaryMatrixResponseWriter.VERSION, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        assertEquals(MatrixMetricsType.Duration | MatrixMetricsType.Distance, buffer.getInt());
+
+        assertEquals(0f, buffer.getFloat(), 0f);
+        assertEquals(1.5f, buffer.getFloat(), 0f);
+        assertTrue(Float.isNaN(buffer.getFloat()));
+        assertEquals(3f, buffer.getFloat(), 0f);
+        buffer.position(buffer.position() + 8);
+        assertEquals(10f, buffer.getFloat(), 0f);
+        buffer.position(buffer.limit() - 4);
+        assertEquals(15f, buffer.getFloat(), 0f);
+    }
+}